@@ -0,0 +1,148 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.bench;
+
+import io.pixelsdb.pixels.core.TypeDescription;
+import io.pixelsdb.pixels.core.vector.*;
+
+import java.sql.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates the synthetic data for the benchmarks. The data is deterministic (fixed seed),
+ * so that the results of different runs and commits are comparable.
+ * <p>
+ * The default schema is a subset of TPC-H lineitem, the value distributions are similar to
+ * dbgen: keys are increasing, quantities and dates are in small ranges (good for run-length
+ * encoding), and the flags and modes have low cardinality (good for dictionary encoding).
+ * </p>
+ */
+public class BenchmarkData
+{
+    public static final String LINEITEM_SCHEMA = "struct<l_orderkey:bigint,l_partkey:bigint," +
+            "l_quantity:decimal(15,2),l_extendedprice:decimal(15,2),l_discount:double," +
+            "l_returnflag:char(1),l_shipdate:date,l_shipmode:varchar(10),l_comment:varchar(44)>";
+
+    private static final long SEED = 20220421L;
+    private static final String[] RETURN_FLAGS = {"A", "N", "R"};
+    private static final String[] SHIP_MODES = {"AIR", "FOB", "MAIL", "RAIL", "REG AIR", "SHIP", "TRUCK"};
+    private static final String[] WORDS = {"furiously", "carefully", "quickly", "final", "regular",
+            "express", "ironic", "pending", "deposits", "requests", "packages", "accounts", "blithely"};
+    /**
+     * 1992-01-01, the start date of TPC-H.
+     */
+    private static final long START_DATE_MILLIS = 694224000000L;
+    private static final long DAY_MILLIS = 86400000L;
+
+    private BenchmarkData() { }
+
+    /**
+     * Create a row batch of the given schema and fill it with numRows synthetic rows.
+     * @param schema the schema, the children should be of the types used by {@link #LINEITEM_SCHEMA}.
+     * @param numRows the number of rows.
+     * @return the row batch.
+     */
+    public static VectorizedRowBatch createRowBatch(TypeDescription schema, int numRows)
+    {
+        VectorizedRowBatch rowBatch = schema.createRowBatch(numRows);
+        List<TypeDescription> children = schema.getChildren();
+        Random random = new Random(SEED);
+        for (int i = 0; i < children.size(); ++i)
+        {
+            fill(rowBatch.cols[i], children.get(i), numRows, random);
+        }
+        rowBatch.size = numRows;
+        return rowBatch;
+    }
+
+    /**
+     * Fill the column vector with numRows synthetic values of the given type.
+     */
+    public static void fill(ColumnVector vector, TypeDescription type, int numRows, Random random)
+    {
+        switch (type.getCategory())
+        {
+            case INT:
+            case LONG:
+                LongColumnVector longVector = (LongColumnVector) vector;
+                for (int i = 0; i < numRows; ++i)
+                {
+                    // increasing keys with small steps, like l_orderkey
+                    longVector.add(i + (random.nextInt(4) == 0 ? random.nextInt(8) : 0));
+                }
+                break;
+            case DOUBLE:
+                for (int i = 0; i < numRows; ++i)
+                {
+                    vector.add(random.nextInt(11) / 100.0);
+                }
+                break;
+            case DECIMAL:
+                for (int i = 0; i < numRows; ++i)
+                {
+                    vector.add((1 + random.nextInt(100000)) / 100.0);
+                }
+                break;
+            case DATE:
+                for (int i = 0; i < numRows; ++i)
+                {
+                    vector.add(new Date(START_DATE_MILLIS + random.nextInt(2526) * DAY_MILLIS));
+                }
+                break;
+            case CHAR:
+                for (int i = 0; i < numRows; ++i)
+                {
+                    vector.add(RETURN_FLAGS[random.nextInt(RETURN_FLAGS.length)]);
+                }
+                break;
+            case STRING:
+            case VARCHAR:
+                if (type.getMaxLength() <= 10)
+                {
+                    for (int i = 0; i < numRows; ++i)
+                    {
+                        vector.add(SHIP_MODES[random.nextInt(SHIP_MODES.length)]);
+                    }
+                }
+                else
+                {
+                    StringBuilder builder = new StringBuilder();
+                    for (int i = 0; i < numRows; ++i)
+                    {
+                        builder.setLength(0);
+                        while (true)
+                        {
+                            String word = WORDS[random.nextInt(WORDS.length)];
+                            if (builder.length() + word.length() + 1 > type.getMaxLength())
+                            {
+                                break;
+                            }
+                            builder.append(word).append(' ');
+                        }
+                        vector.add(builder.toString().trim());
+                    }
+                }
+                break;
+            default:
+                throw new UnsupportedOperationException("type " + type + " is not supported in benchmarks");
+        }
+    }
+}
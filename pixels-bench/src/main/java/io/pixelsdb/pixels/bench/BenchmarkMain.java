@@ -0,0 +1,52 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The entry of pixels-bench, it runs the benchmarks and writes the results in JSON,
+ * which can be compared across commits for regression tracking.
+ * <p>
+ * Usage: java -jar pixels-bench-full.jar [regex of benchmarks] [result file]
+ * <br/>
+ * The default regex is '.*Benchmark.*' and the default result file is 'pixels-bench.json'.
+ * The standard JMH command line (java -cp pixels-bench-full.jar org.openjdk.jmh.Main ...)
+ * can also be used for other options, e.g., '-rf json -rff result.json -p encoding=true'.
+ * </p>
+ */
+public class BenchmarkMain
+{
+    public static void main(String[] args) throws RunnerException
+    {
+        String include = args.length > 0 ? args[0] : ".*Benchmark.*";
+        String resultFile = args.length > 1 ? args[1] : "pixels-bench.json";
+        ChainedOptionsBuilder builder = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile)
+                .shouldFailOnError(true);
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.bench;
+
+import io.pixelsdb.pixels.core.PixelsProto;
+import io.pixelsdb.pixels.core.TypeDescription;
+import io.pixelsdb.pixels.core.reader.ColumnReader;
+import io.pixelsdb.pixels.core.vector.ColumnVector;
+import io.pixelsdb.pixels.core.writer.ColumnWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of each {@link ColumnWriter} and {@link ColumnReader} pair,
+ * on a column chunk of {@link #NUM_ROWS} rows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColumnBenchmark
+{
+    private static final int PIXEL_STRIDE = 10000;
+    private static final int NUM_ROWS = 10 * PIXEL_STRIDE;
+    private static final int BATCH_SIZE = 10000;
+
+    @Param({"bigint", "double", "decimal(15,2)", "date", "char(1)", "varchar(10)", "varchar(44)"})
+    public String type;
+
+    @Param({"true", "false"})
+    public boolean encoding;
+
+    private TypeDescription columnType;
+    private ColumnVector input;
+    private ColumnVector output;
+    private ByteBuffer chunk;
+    private PixelsProto.ColumnEncoding chunkEncoding;
+    private PixelsProto.ColumnChunkIndex chunkIndex;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        TypeDescription schema = TypeDescription.fromString("struct<c:" + type + ">");
+        columnType = schema.getChildren().get(0);
+        input = schema.createRowBatch(NUM_ROWS).cols[0];
+        BenchmarkData.fill(input, columnType, NUM_ROWS, new Random(20220421L));
+        output = schema.createRowBatch(BATCH_SIZE).cols[0];
+
+        ColumnWriter writer = writeChunk();
+        chunk = ByteBuffer.wrap(writer.getColumnChunkContent());
+        chunkEncoding = writer.getColumnChunkEncoding().build();
+        chunkIndex = writer.getColumnChunkIndex().build();
+        writer.close();
+    }
+
+    private ColumnWriter writeChunk() throws IOException
+    {
+        ColumnWriter writer = ColumnWriter.newColumnWriter(columnType, PIXEL_STRIDE, encoding);
+        writer.write(input, NUM_ROWS);
+        writer.flush();
+        return writer;
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException
+    {
+        ColumnWriter writer = writeChunk();
+        byte[] content = writer.getColumnChunkContent();
+        writer.close();
+        return content;
+    }
+
+    @Benchmark
+    public void read(Blackhole blackhole) throws IOException
+    {
+        ColumnReader reader = ColumnReader.newColumnReader(columnType);
+        // the reader keeps the chunk buffer between the batches of the same chunk.
+        ByteBuffer input = chunk.duplicate();
+        for (int offset = 0; offset < NUM_ROWS; offset += BATCH_SIZE)
+        {
+            output.reset();
+            reader.read(input, chunkEncoding, offset, BATCH_SIZE,
+                    PIXEL_STRIDE, 0, output, chunkIndex);
+            blackhole.consume(output);
+        }
+        reader.close();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.bench;
+
+import io.pixelsdb.pixels.common.physical.Storage;
+import io.pixelsdb.pixels.common.physical.StorageFactory;
+import io.pixelsdb.pixels.core.*;
+import io.pixelsdb.pixels.core.reader.PixelsReaderOption;
+import io.pixelsdb.pixels.core.reader.PixelsRecordReader;
+import io.pixelsdb.pixels.core.vector.VectorizedRowBatch;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmarks of {@link PixelsWriterImpl} and {@link PixelsReaderImpl}
+ * on a synthetic lineitem-like table (see {@link BenchmarkData#LINEITEM_SCHEMA})
+ * stored in the local file system.
+ * <p>
+ * The file is written to -Dpixels.bench.dir (default: java.io.tmpdir), put it on tmpfs
+ * (e.g., /dev/shm) to exclude the disk I/O.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PixelsWriterBenchmark
+{
+    private static final int BATCH_SIZE = 10000;
+    private static final int PIXEL_STRIDE = 10000;
+    private static final int ROW_GROUP_SIZE = 64 * 1024 * 1024;
+    private static final long BLOCK_SIZE = 2048L * 1024 * 1024;
+
+    @Param({"100"})
+    public int numBatches;
+
+    @Param({"true", "false"})
+    public boolean encoding;
+
+    private TypeDescription schema;
+    private VectorizedRowBatch rowBatch;
+    private Storage storage;
+    private String writePath;
+    private String readPath;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        schema = TypeDescription.fromString(BenchmarkData.LINEITEM_SCHEMA);
+        rowBatch = BenchmarkData.createRowBatch(schema, BATCH_SIZE);
+        storage = StorageFactory.Instance().getStorage(Storage.Scheme.file);
+        String dir = System.getProperty("pixels.bench.dir", System.getProperty("java.io.tmpdir"));
+        writePath = new File(dir, "pixels-bench-write.pxl").getAbsolutePath();
+        readPath = new File(dir, "pixels-bench-read.pxl").getAbsolutePath();
+        writeFile(readPath);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        new File(writePath).delete();
+        new File(readPath).delete();
+    }
+
+    private void writeFile(String path) throws IOException
+    {
+        PixelsWriter writer = PixelsWriterImpl.newBuilder()
+                .setSchema(schema)
+                .setPixelStride(PIXEL_STRIDE)
+                .setRowGroupSize(ROW_GROUP_SIZE)
+                .setStorage(storage)
+                .setFilePath(path)
+                .setBlockSize(BLOCK_SIZE)
+                .setReplication((short) 1)
+                .setBlockPadding(false)
+                .setEncoding(encoding)
+                .setCompressionBlockSize(1)
+                .build();
+        for (int i = 0; i < numBatches; ++i)
+        {
+            writer.addRowBatch(rowBatch);
+        }
+        writer.close();
+    }
+
+    @Benchmark
+    public void write() throws IOException
+    {
+        writeFile(writePath);
+    }
+
+    @Benchmark
+    public long scan() throws IOException
+    {
+        long numRows = 0;
+        try (PixelsReader reader = PixelsReaderImpl.newBuilder()
+                .setStorage(storage)
+                .setPath(readPath)
+                .setEnableCache(false)
+                .setPixelsFooterCache(new PixelsFooterCache())
+                .build())
+        {
+            PixelsReaderOption option = new PixelsReaderOption();
+            option.skipCorruptRecords(true);
+            option.tolerantSchemaEvolution(true);
+            option.includeCols(schema.getFieldNames().toArray(new String[0]));
+            PixelsRecordReader recordReader = reader.read(option);
+            while (true)
+            {
+                VectorizedRowBatch batch = recordReader.readBatch(BATCH_SIZE);
+                numRows += batch.size;
+                if (batch.endOfFile)
+                {
+                    break;
+                }
+            }
+        }
+        return numRows;
+    }
+}
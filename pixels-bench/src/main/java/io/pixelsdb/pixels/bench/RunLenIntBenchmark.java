@@ -0,0 +1,106 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.bench;
+
+import io.pixelsdb.pixels.core.encoding.RunLenIntDecoder;
+import io.pixelsdb.pixels.core.encoding.RunLenIntEncoder;
+import io.pixelsdb.pixels.core.utils.ByteBufferInputStream;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link RunLenIntEncoder} and {@link RunLenIntDecoder} on the value
+ * distributions that decide which run-length sub-encoding is used.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RunLenIntBenchmark
+{
+    private static final int NUM_VALUES = 10000; // the default pixel stride
+
+    /**
+     * repeat: runs of the same value (short repeat and delta encoding),
+     * sequence: increasing values with a fixed delta (delta encoding),
+     * random: random values in a small range (direct and patched base encoding).
+     */
+    @Param({"repeat", "sequence", "random"})
+    public String distribution;
+
+    @Param({"true", "false"})
+    public boolean isSigned;
+
+    private long[] values;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        Random random = new Random(20220421L);
+        values = new long[NUM_VALUES];
+        for (int i = 0; i < NUM_VALUES; ++i)
+        {
+            switch (distribution)
+            {
+                case "repeat":
+                    values[i] = i / 100;
+                    break;
+                case "sequence":
+                    values[i] = 1000 + i * 3L;
+                    break;
+                default:
+                    values[i] = random.nextInt(1 << 20);
+            }
+        }
+        RunLenIntEncoder encoder = new RunLenIntEncoder(isSigned, true);
+        encoded = encoder.encode(values);
+        encoder.close();
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException
+    {
+        RunLenIntEncoder encoder = new RunLenIntEncoder(isSigned, true);
+        byte[] result = encoder.encode(values);
+        encoder.close();
+        return result;
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        RunLenIntDecoder decoder = new RunLenIntDecoder(
+                new ByteBufferInputStream(buffer, 0, buffer.limit()), isSigned);
+        while (decoder.hasNext())
+        {
+            blackhole.consume(decoder.next());
+        }
+        decoder.close();
+    }
+}
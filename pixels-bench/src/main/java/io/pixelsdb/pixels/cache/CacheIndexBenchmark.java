@@ -0,0 +1,136 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.cache;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the lookups in the radix and hash cache indexes.
+ * It is in the package of pixels cache to access the package-private index writers and readers.
+ * The flat index type is the radix index with flat nodes, see {@link FlatRadixIndex}.
+ * <p>
+ * The keys simulate a cache of numBlocks files, each with 32 row groups and 16 cached columns.
+ * The index files are created under -Dpixels.bench.dir (default: java.io.tmpdir).
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheIndexBenchmark
+{
+    private static final int NUM_ROW_GROUPS = 32;
+    private static final int NUM_COLUMNS = 16;
+    private static final int NUM_LOOKUPS = 1024;
+
+    @Param({"radix", "flat", "hash"})
+    public String indexType;
+
+    @Param({"64", "1024"})
+    public int numBlocks;
+
+    private File indexFile;
+    private MemoryMappedFile indexMem;
+    private CacheIndexReader indexReader;
+    private PixelsCacheKey[] lookupKeys;
+    private PixelsCacheIdx[] results;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        int numKeys = numBlocks * NUM_ROW_GROUPS * NUM_COLUMNS;
+        String dir = System.getProperty("pixels.bench.dir", System.getProperty("java.io.tmpdir"));
+        indexFile = new File(dir, "pixels-bench-" + indexType + "-index");
+        // the radix nodes are a few tens of bytes on average (the wide nodes near the root are at most 2KB),
+        // and the load factor of the hash table is kept below 0.5.
+        long indexSize = MemoryMappedFile.roundTo4096(
+                PixelsCacheUtil.INDEX_RADIX_OFFSET + 8 + (long) numKeys * 64 + 1024 * 1024);
+        indexMem = new MemoryMappedFile(indexFile.getAbsolutePath(), indexSize);
+
+        CacheIndexWriter indexWriter;
+        switch (indexType)
+        {
+            case "radix":
+                indexWriter = new RadixIndexWriter(indexMem);
+                break;
+            case "flat":
+                indexWriter = new FlatRadixIndex(indexMem);
+                break;
+            default:
+                indexWriter = new HashIndexWriter(indexMem);
+        }
+        Random random = new Random(20220421L);
+        long offset = 0;
+        for (int b = 0; b < numBlocks; ++b)
+        {
+            long blockId = 1000000L + b * 7L;
+            for (short rg = 0; rg < NUM_ROW_GROUPS; ++rg)
+            {
+                for (short col = 0; col < NUM_COLUMNS; ++col)
+                {
+                    int length = 1024 + random.nextInt(1024 * 1024);
+                    indexWriter.put(new PixelsCacheKey(blockId, rg, col), new PixelsCacheIdx(offset, length));
+                    offset += length;
+                }
+            }
+        }
+        indexWriter.flush();
+        switch (indexType)
+        {
+            case "radix":
+                indexReader = new RadixIndexReader(indexMem);
+                break;
+            case "flat":
+                indexReader = (FlatRadixIndex) indexWriter;
+                break;
+            default:
+                indexReader = new HashIndexReader(indexMem);
+        }
+
+        lookupKeys = new PixelsCacheKey[NUM_LOOKUPS];
+        results = new PixelsCacheIdx[NUM_LOOKUPS];
+        for (int i = 0; i < NUM_LOOKUPS; ++i)
+        {
+            lookupKeys[i] = new PixelsCacheKey(1000000L + random.nextInt(numBlocks) * 7L,
+                    (short) random.nextInt(NUM_ROW_GROUPS), (short) random.nextInt(NUM_COLUMNS));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        indexMem.unmap();
+        indexFile.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_LOOKUPS)
+    public PixelsCacheIdx[] lookup()
+    {
+        indexReader.batchRead(lookupKeys, results);
+        return results;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The radix index with flat nodes, as the baseline of the adaptive node layout in {@link RadixIndexLayout}.
+ * Each node stores all its children (leader + offset) in an unsorted array, which is copied out of the
+ * index file and scanned linearly in the lookups.
+ * <pre>
+ * node: header(4 bytes) + [child(8 bytes)]{n} + edge(variable size) + value(optional)
+ * header: isKey(1 bit) + edgeSize(22 bits) + childrenNum(9 bits)
+ * </pre>
+ */
+public class FlatRadixIndex implements CacheIndexWriter, CacheIndexReader
+{
+    private final PixelsRadix radix = new PixelsRadix();
+    private final MemoryMappedFile indexFile;
+    private long currentIndexOffset;
+    private long allocatedIndexOffset;
+
+    private final ByteBuffer nodeBuffer = ByteBuffer.allocate(8 * 256).order(ByteOrder.BIG_ENDIAN);
+    private final ByteBuffer cacheIdxBuffer = ByteBuffer.allocate(PixelsCacheIdx.SIZE);
+    private final byte[] nodeData = new byte[256 * 8 + 16];
+    private final ByteBuffer childrenBuffer = ByteBuffer.wrap(nodeData);
+    private final ByteBuffer keyBuffer = ByteBuffer.allocate(PixelsCacheKey.SIZE).order(ByteOrder.BIG_ENDIAN);
+
+    public FlatRadixIndex(MemoryMappedFile indexFile)
+    {
+        this.indexFile = indexFile;
+    }
+
+    @Override
+    public void put(PixelsCacheKey cacheKey, PixelsCacheIdx cacheIdx)
+    {
+        radix.put(cacheKey, cacheIdx);
+    }
+
+    @Override
+    public void clear()
+    {
+        radix.removeAll();
+    }
+
+    @Override
+    public long flush()
+    {
+        currentIndexOffset = PixelsCacheUtil.INDEX_RADIX_OFFSET;
+        allocatedIndexOffset = PixelsCacheUtil.INDEX_RADIX_OFFSET;
+        if (radix.getRoot().getSize() != 0)
+        {
+            writeRadix(radix.getRoot());
+        }
+        return currentIndexOffset;
+    }
+
+    private static int lengthInBytes(RadixNode node)
+    {
+        int len = 4 + node.getEdge().length + 8 * node.getChildren().size();
+        return node.isKey() ? len + PixelsCacheIdx.SIZE : len;
+    }
+
+    private void writeRadix(RadixNode node)
+    {
+        flushNode(node);
+        for (RadixNode n : node.getChildren().values())
+        {
+            writeRadix(n);
+        }
+    }
+
+    private void flushNode(RadixNode node)
+    {
+        nodeBuffer.clear();
+        if (node.offset == 0)
+        {
+            node.offset = currentIndexOffset;
+        }
+        else
+        {
+            currentIndexOffset = node.offset;
+        }
+        allocatedIndexOffset += lengthInBytes(node);
+        int header = (node.getEdge().length << 9) | node.getChildren().size();
+        if (node.isKey())
+        {
+            header |= 1 << 31;
+        }
+        indexFile.setInt(currentIndexOffset, header);
+        currentIndexOffset += 4;
+        for (Byte key : node.getChildren().keySet())
+        {
+            RadixNode n = node.getChild(key);
+            n.offset = allocatedIndexOffset;
+            allocatedIndexOffset += lengthInBytes(n);
+            nodeBuffer.putLong(((long) key << 56) | n.offset);
+        }
+        indexFile.setBytes(currentIndexOffset, nodeBuffer.array(), 0, nodeBuffer.position());
+        currentIndexOffset += nodeBuffer.position();
+        indexFile.setBytes(currentIndexOffset, node.getEdge());
+        currentIndexOffset += node.getEdge().length;
+        if (node.isKey())
+        {
+            node.getValue().getBytes(cacheIdxBuffer);
+            indexFile.setBytes(currentIndexOffset, cacheIdxBuffer.array());
+            currentIndexOffset += PixelsCacheIdx.SIZE;
+        }
+    }
+
+    @Override
+    public PixelsCacheIdx read(PixelsCacheKey key)
+    {
+        PixelsCacheKey.getBytes(keyBuffer, key.blockId, key.rowGroupId, key.columnId);
+        final int keyLen = keyBuffer.position();
+        long currentNodeOffset = PixelsCacheUtil.INDEX_RADIX_OFFSET;
+        int bytesMatched = 0;
+        int bytesMatchedInNodeFound = 0;
+
+        int currentNodeHeader = indexFile.getInt(currentNodeOffset);
+        int currentNodeChildrenNum = currentNodeHeader & 0x000001FF;
+        int currentNodeEdgeSize = (currentNodeHeader & 0x7FFFFE00) >>> 9;
+        if (currentNodeChildrenNum == 0 && currentNodeEdgeSize == 0)
+        {
+            return null;
+        }
+        indexFile.getBytes(currentNodeOffset + 4, this.nodeData, 0, currentNodeChildrenNum * 8);
+
+        outer_loop:
+        while (bytesMatched < keyLen)
+        {
+            long matchingChildOffset = 0L;
+            childrenBuffer.position(0);
+            childrenBuffer.limit(currentNodeChildrenNum * 8);
+            for (int i = 0; i < currentNodeChildrenNum; i++)
+            {
+                long child = childrenBuffer.getLong();
+                byte leader = (byte) ((child >>> 56) & 0xFF);
+                if (leader == keyBuffer.get(bytesMatched))
+                {
+                    matchingChildOffset = child & 0x00FFFFFFFFFFFFFFL;
+                    break;
+                }
+            }
+            if (matchingChildOffset == 0)
+            {
+                break;
+            }
+
+            currentNodeOffset = matchingChildOffset;
+            bytesMatchedInNodeFound = 0;
+            currentNodeHeader = indexFile.getInt(currentNodeOffset);
+            currentNodeChildrenNum = currentNodeHeader & 0x000001FF;
+            currentNodeEdgeSize = (currentNodeHeader & 0x7FFFFE00) >>> 9;
+            indexFile.getBytes(currentNodeOffset + 4,
+                    this.nodeData, 0, currentNodeChildrenNum * 8 + currentNodeEdgeSize);
+            int edgeEndOffset = currentNodeChildrenNum * 8 + currentNodeEdgeSize;
+            bytesMatched++;
+            bytesMatchedInNodeFound++;
+            for (int i = currentNodeChildrenNum * 8 + 1; i < edgeEndOffset && bytesMatched < keyLen; i++)
+            {
+                if (this.nodeData[i] != keyBuffer.get(bytesMatched))
+                {
+                    break outer_loop;
+                }
+                bytesMatched++;
+                bytesMatchedInNodeFound++;
+            }
+        }
+
+        if (bytesMatched == keyLen && bytesMatchedInNodeFound == currentNodeEdgeSize &&
+                ((currentNodeHeader >>> 31) & 1) > 0)
+        {
+            byte[] idx = new byte[PixelsCacheIdx.SIZE];
+            indexFile.getBytes(currentNodeOffset + 4 + (currentNodeChildrenNum * 8) + currentNodeEdgeSize,
+                    idx, 0, PixelsCacheIdx.SIZE);
+            return new PixelsCacheIdx(idx);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.common.physical.scheduler;
+
+import io.pixelsdb.pixels.common.physical.Scheduler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of sorting and merging the read requests in {@link SortMergeScheduler}.
+ * It is in the package of the scheduler to access the protected sortMerge().
+ * <p>
+ * The requests simulate reading some columns from the row groups of a file,
+ * they are shuffled as they are added to the batch in column order instead of the file order.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SortMergeSchedulerBenchmark
+{
+    @Param({"64", "1024", "16384"})
+    public int numRequests;
+
+    private SortMergeScheduler scheduler;
+    private List<Scheduler.Request> requests;
+
+    @Setup
+    public void setup()
+    {
+        scheduler = new SortMergeScheduler();
+        Random random = new Random(20220421L);
+        requests = new ArrayList<>(numRequests);
+        long offset = 0;
+        for (int i = 0; i < numRequests; ++i)
+        {
+            int length = 4096 + random.nextInt(1024 * 1024);
+            // skip the columns that are not read, so that some of the gaps are not merged.
+            offset += random.nextInt(4) == 0 ? random.nextInt(4 * 1024 * 1024) : random.nextInt(1024);
+            requests.add(new Scheduler.Request(0, offset, length));
+            offset += length;
+        }
+        Collections.shuffle(requests, random);
+    }
+
+    @Benchmark
+    public Object sortMerge()
+    {
+        Scheduler.RequestBatch batch = new Scheduler.RequestBatch(numRequests);
+        for (Scheduler.Request request : requests)
+        {
+            batch.add(request);
+        }
+        return scheduler.sortMerge(batch, 0);
+    }
+}
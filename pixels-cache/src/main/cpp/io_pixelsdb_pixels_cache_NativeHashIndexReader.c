@@ -5,60 +5,63 @@
 #include "memory_mapped_file.h"
 #include "io_pixelsdb_pixels_cache_HashIndexReader.h"
 
-#define INDEX_HASH_HEAD_OFFSET 24 // 16 + 8
-#define KEY_LEN 12       // long + short + short
-#define CACHE_IDX_LEN 12 // long + int
-#define KV_SIZE 24
+// see HashIndexLayout.java for the format of the bucketized hash index.
+#define NUM_BUCKETS_OFFSET 16
+#define BUCKET_SIZE 64
+#define SLOTS_PER_BUCKET 2
+#define SLOTS_OFFSET 16
+#define SLOT_SIZE 24
+#define SLOT_BLOCK_ID_OFFSET 8
+#define SLOT_RG_COL_OFFSET 16
+#define SLOT_LENGTH_OFFSET 20
 
-int hashcode(const char* bytes, int size) {
-  int var1 = 1;
-
-  for(int var3 = 0; var3 < size; ++var3) {
-      var1 = 31 * var1 + bytes[var3];
-  }
-
-  return var1;
+static inline uint64_t hash_key(int64_t blockId, uint32_t rgCol) {
+  uint64_t r = (uint64_t) rgCol * 0x9E3779B97F4A7C15ULL;
+  uint64_t h = (uint64_t) blockId ^ ((r << 32) | (r >> 32));
+  h ^= h >> 33;
+  h *= 0xFF51AFD7ED558CCDULL;
+  h ^= h >> 33;
+  h *= 0xC4CEB9FE1A85EC53ULL;
+  h ^= h >> 33;
+  return h;
 }
 
 JNIEXPORT void JNICALL Java_io_pixelsdb_pixels_cache_NativeHashIndexReader_doNativeSearch
   (JNIEnv *env, jobject this, jlong mmAddr, jlong mmSize, jlong blockId, jshort rowGroupId, jshort columnId, jlong retAddr_) {
-  // static variable is not thread-safe!!!
-  // static char* retAddr = NULL;
-  // if (!retAddr) {
-  //   retAddr = (*env)->GetDirectBufferAddress(env, retBuf);
-  // }
-  // char* retAddr = (*env)->GetDirectBufferAddress(env, retBuf);
   char* retAddr = (char*) retAddr_;
   *(long *)retAddr = -1;
   MemoryMappedFile indexFile = (MemoryMappedFile){(char *)mmAddr, mmSize};
 
-  char key[KEY_LEN] = {0};
-  char zeros[KV_SIZE] = {0};
-  memcpy(key, &blockId, sizeof(blockId));
-  memcpy(key + sizeof(blockId), &rowGroupId, sizeof(rowGroupId));
-  memcpy(key + sizeof(blockId) + sizeof(rowGroupId), &columnId, sizeof(columnId));
+  uint64_t numBuckets = (uint64_t) GET_LONG(indexFile, NUM_BUCKETS_OFFSET);
+  uint64_t bucketMask = numBuckets - 1;
+  // the buckets start at the first cache line boundary after the header.
+  uint64_t start = (uint64_t) mmAddr + NUM_BUCKETS_OFFSET + 8;
+  long bucketsOffset = (long) (((start + BUCKET_SIZE - 1) & ~((uint64_t) BUCKET_SIZE - 1)) - (uint64_t) mmAddr);
 
-  int tableSize = (int) GET_LONG(indexFile, 16);
-
-  int hash = hashcode(key, KEY_LEN) & 0x7fffffff;
-  int bucket = hash % tableSize; // initial bucket
-  int offset = bucket * KV_SIZE;
-  const char* kv = GET_BYTES(indexFile, offset + INDEX_HASH_HEAD_OFFSET);
-  int cmp = memcmp(kv, key, KEY_LEN);
-  for (int i = 1; cmp != 0; ++i) {
-    // quadratic probing
-    bucket += i * i;
-    bucket %= tableSize;
-    offset = bucket * KV_SIZE;
-    kv = GET_BYTES(indexFile, offset + INDEX_HASH_HEAD_OFFSET);
-    if (memcmp(kv, zeros, KV_SIZE) == 0) {
-      printf("cache miss! blk=%ld, rg=%d, col=%d, probe_i=%d, bucket=%d, offset=%d\n", blockId, rowGroupId, columnId, i, bucket, offset);
-      return;
+  uint32_t rgCol = ((uint32_t) (uint16_t) rowGroupId) | ((uint32_t) (uint16_t) columnId << 16);
+  uint64_t hash = hash_key(blockId, rgCol);
+  uint64_t fingerprint = hash >> 48;
+  if (fingerprint == 0) {
+    fingerprint = 1;
+  }
+  uint64_t bucket = hash & bucketMask;
+  for (uint64_t probe = 0; probe < numBuckets; ++probe) {
+    long bucketPos = bucketsOffset + (long) (bucket * BUCKET_SIZE);
+    uint64_t fingerprints = (uint64_t) GET_LONG(indexFile, bucketPos);
+    for (int i = 0; i < SLOTS_PER_BUCKET; ++i) {
+      uint64_t slotFingerprint = (fingerprints >> (i * 16)) & 0xFFFF;
+      if (slotFingerprint == 0) {
+        // keys are never deleted, an empty slot means the key does not exist.
+        return;
+      }
+      long slotPos = bucketPos + SLOTS_OFFSET + i * SLOT_SIZE;
+      if (slotFingerprint == fingerprint && GET_LONG(indexFile, slotPos + SLOT_BLOCK_ID_OFFSET) == blockId &&
+          (uint32_t) GET_INT(indexFile, slotPos + SLOT_RG_COL_OFFSET) == rgCol) {
+        memcpy(retAddr, GET_BYTES(indexFile, slotPos), 8); // offset
+        memcpy(retAddr + 8, GET_BYTES(indexFile, slotPos + SLOT_LENGTH_OFFSET), 4); // length
+        return;
+      }
     }
-    // check if key matches
-    cmp = memcmp(kv, key, KEY_LEN);
+    bucket = (bucket + 1) & bucketMask;
   }
-  memcpy(retAddr, kv + 12, 8); // offset
-  memcpy((char*) retAddr + 8, kv + 20, 4); // length
-
 }
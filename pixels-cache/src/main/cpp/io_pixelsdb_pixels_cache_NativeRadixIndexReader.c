@@ -3,6 +3,7 @@
 #include "string.h"
 #include "byteswap.h"
 #include "memory_mapped_file.h"
+#include "radix_index_layout.h"
 #include "io_pixelsdb_pixels_cache_NativeRadixIndexReader.h"
 
 #define INDEX_RADIX_OFFSET 16
@@ -43,34 +44,19 @@ JNIEXPORT void JNICALL Java_io_pixelsdb_pixels_cache_NativeRadixIndexReader_sear
   long currentNodeOffset = INDEX_RADIX_OFFSET;
   unsigned int currentNodeHeader = getInt(indexFile, currentNodeOffset);
   // printf("currentNodeHeader=0x%08x, currentNodeHeader=%u\n", currentNodeHeader, currentNodeHeader);
-  unsigned int currentNodeChildrenNum = currentNodeHeader & 0x000001FF;
-  unsigned int currentNodeEdgeSize = (currentNodeHeader & 0x7FFFFE00) >> 9;
+  unsigned int currentNodeChildrenNum = node_children_num(currentNodeHeader);
+  unsigned int currentNodeEdgeSize = node_edge_size(currentNodeHeader);
   if (currentNodeChildrenNum == 0 && currentNodeEdgeSize == 0)
   {
     return;
   }
   // printf("currentNodeChildrenNum=%u, currentNodeEdgeSize=%u\n", currentNodeChildrenNum, currentNodeEdgeSize);
-  const char *nodeData = getBytes(indexFile, currentNodeOffset + 4);
   int cont = 1;
   while (bytesMatched < KEY_LEN && cont)
   {
-    long matchingChildOffset = 0;
-    for (unsigned i = 0; i < currentNodeChildrenNum; ++i)
-    {
-      // long has 8 bytes, which is a child's bytes
-      unsigned long child = *((unsigned long *)nodeData);
-      nodeData += 8;
-      // first byte is matching byte
-      char leader = (char)((child >> 56) & 0xFF);
-      matchingChildOffset = (child & 0x00FFFFFFFFFFFFFF);
-      if (leader == keyBuf[bytesMatched])
-      {
-        // match a byte, then we can go to next level(byte)
-        // last 7 bytes is the offset(pointer to the children position)
-        matchingChildOffset = child & 0x00FFFFFFFFFFFFFFL;
-        break;
-      }
-    }
+    // find the matching child by the node type instead of scanning all the children
+    long matchingChildOffset = node_find_child(GET_BYTES(indexFile, currentNodeOffset + NODE_HEADER_SIZE),
+                                               currentNodeHeader, (unsigned char)keyBuf[bytesMatched]);
     if (matchingChildOffset == 0) // cache miss
     {
       break;
@@ -80,21 +66,16 @@ JNIEXPORT void JNICALL Java_io_pixelsdb_pixels_cache_NativeRadixIndexReader_sear
     bytesMatchedInNodeFound = 0;
 
     currentNodeHeader = GET_INT(indexFile, currentNodeOffset);
-    currentNodeChildrenNum = currentNodeHeader & 0x000001FF;
-    currentNodeEdgeSize = (currentNodeHeader & 0x7FFFFE00) >> 9;
-    nodeData = GET_BYTES(indexFile, currentNodeOffset + 4);
-    int edgeEndOffset = currentNodeChildrenNum * 8 + currentNodeEdgeSize;
+    currentNodeEdgeSize = node_edge_size(currentNodeHeader);
+    const char *edge = GET_BYTES(indexFile, currentNodeOffset + NODE_HEADER_SIZE + node_children_size(currentNodeHeader));
     ++bytesMatched;
     ++bytesMatchedInNodeFound;
 
-
-    // now we are visiting the edge! rather than children data
-    // it seems between children and edge, there is a one byte gap?
-    // or the first byte of the edge does not matter here anyway
-    for (int i = currentNodeChildrenNum * 8 + 1; i < edgeEndOffset && bytesMatched < KEY_LEN; ++i)
+    // the first byte of the edge is the leader that is matched in the parent node
+    for (int i = 1; i < currentNodeEdgeSize && bytesMatched < KEY_LEN; ++i)
     {
       // the edge is shared across this node, so the edge should be fully matched
-      if (nodeData[i] != keyBuf[bytesMatched])
+      if (edge[i] != keyBuf[bytesMatched])
       {
         cont = 0;
         break;
@@ -111,7 +92,7 @@ JNIEXPORT void JNICALL Java_io_pixelsdb_pixels_cache_NativeRadixIndexReader_sear
       // if the current node is leaf node.
       if (((currentNodeHeader >> 31) & 1) > 0) // TODO: why do we need & 1?
       {
-          long pos = currentNodeOffset + 4 + (currentNodeChildrenNum * 8) + currentNodeEdgeSize;
+          long pos = currentNodeOffset + NODE_HEADER_SIZE + node_children_size(currentNodeHeader) + currentNodeEdgeSize;
           long offset = getLong(indexFile, pos);
           int length = getInt(indexFile, pos + sizeof(offset));
           ret[0] = offset;
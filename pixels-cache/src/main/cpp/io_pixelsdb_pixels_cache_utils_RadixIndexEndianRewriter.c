@@ -3,6 +3,7 @@
 #include "byteswap.h"
 #include "utils.h"
 #include "memory_mapped_file.h"
+#include "radix_index_layout.h"
 #include "io_pixelsdb_pixels_cache_utils_RadixIndexEndianRewriter.h"
 
 #define INDEX_RADIX_OFFSET 16
@@ -20,22 +21,22 @@ void dfs(MemoryMappedFile indexFile, long currentNodeOffset, unsigned char *keyB
 
   // we have something
   unsigned long currentNodeHeader = getInt(indexFile, currentNodeOffset);
-  unsigned int currentNodeChildrenNum = currentNodeHeader & 0x000001FF;
-  unsigned int currentNodeEdgeSize = (currentNodeHeader & 0x7FFFFE00) >> 9;
-  int childOffset = currentNodeOffset + 4;
+  unsigned int currentNodeChildrenNum = node_children_num(currentNodeHeader);
+  unsigned int currentNodeEdgeSize = node_edge_size(currentNodeHeader);
+  long childOffset = currentNodeOffset + NODE_HEADER_SIZE + node_child_slots_offset(currentNodeHeader);
   const char *nodeData = getBytes(indexFile, childOffset);
+  const char *edge = getBytes(indexFile, currentNodeOffset + NODE_HEADER_SIZE + node_children_size(currentNodeHeader));
 
   // read the edge first
-  int edgeEndOffset = currentNodeChildrenNum * 8 + currentNodeEdgeSize;
-  for (int i = currentNodeChildrenNum * 8 + 1; i < edgeEndOffset; i++)
+  for (int i = 1; i < currentNodeEdgeSize; i++)
   {
-    keyBuf[ptr++] = nodeData[i];
+    keyBuf[ptr++] = edge[i];
   }
 
   // we reach a leaf, truly
   if (ptr == KEY_LEN) {
     // rewrite the cacheIdx
-    long pos = currentNodeOffset + 4 + (currentNodeChildrenNum * 8) + currentNodeEdgeSize;
+    long pos = currentNodeOffset + NODE_HEADER_SIZE + node_children_size(currentNodeHeader) + currentNodeEdgeSize;
     const char* cacheIdx = getBytes(indexFile, pos);
     unsigned long offset = bswap_64(*((unsigned long *) cacheIdx));
     unsigned int length = bswap_32(*((unsigned int *) (cacheIdx + 8)));
@@ -54,10 +55,18 @@ void dfs(MemoryMappedFile indexFile, long currentNodeOffset, unsigned char *keyB
   }
 
   // then children
-  for (int i = 0; i < currentNodeChildrenNum; ++i)
+  unsigned int childSlots = node_child_slots(currentNodeHeader);
+  for (int i = 0; i < childSlots; ++i)
   {
     // Note: the child is stored in big-endian!
     unsigned long child = bswap_64(*((unsigned long *)nodeData));
+    if (child == 0)
+    {
+      // absent child in NODE256
+      nodeData += 8;
+      childOffset += 8;
+      continue;
+    }
     char leader = (char)((child >> 56) & 0xFF);
     long matchingChildOffset = (child & 0x00FFFFFFFFFFFFFF);
     writeLong(indexFile, childOffset, child); // rewrite with little endian value
@@ -2,6 +2,7 @@
 #include "string.h"
 #include "byteswap.h"
 #include "io_pixelsdb_pixels_cache_utils_RadixTreeDumper.h"
+#include "radix_index_layout.h"
 
 #define INDEX_RADIX_OFFSET 16
 #define KEY_LEN 12
@@ -71,17 +72,17 @@ void dfs(MemoryMappedFile indexFile, long currentNodeOffset, unsigned char *keyB
 
   // we have something
   unsigned long currentNodeHeader = getInt(indexFile, currentNodeOffset);
-  unsigned int currentNodeChildrenNum = currentNodeHeader & 0x000001FF;
-  unsigned int currentNodeEdgeSize = (currentNodeHeader & 0x7FFFFE00) >> 9;
+  unsigned int currentNodeChildrenNum = node_children_num(currentNodeHeader);
+  unsigned int currentNodeEdgeSize = node_edge_size(currentNodeHeader);
   int isLeaf = ((currentNodeHeader >> 31) & 1) > 0;
 
-  const char *nodeData = getBytes(indexFile, currentNodeOffset + 4);
+  const char *nodeData = getBytes(indexFile, currentNodeOffset + NODE_HEADER_SIZE + node_child_slots_offset(currentNodeHeader));
+  const char *edge = getBytes(indexFile, currentNodeOffset + NODE_HEADER_SIZE + node_children_size(currentNodeHeader));
 
   // read the edge first
-  int edgeEndOffset = currentNodeChildrenNum * 8 + currentNodeEdgeSize;
-  for (int i = currentNodeChildrenNum * 8 + 1; i < edgeEndOffset; i++)
+  for (int i = 1; i < currentNodeEdgeSize; i++)
   {
-    keyBuf[ptr++] = nodeData[i];
+    keyBuf[ptr++] = edge[i];
   }
 
   // we reach a leaf, truly
@@ -105,7 +106,7 @@ void dfs(MemoryMappedFile indexFile, long currentNodeOffset, unsigned char *keyB
     fprintf(out, "%lu-%u-%u", blockId, rowGroupId, columnId);
     fputc(';', out);
     // write the cacheIdx
-    long pos = currentNodeOffset + 4 + (currentNodeChildrenNum * 8) + currentNodeEdgeSize;
+    long pos = currentNodeOffset + NODE_HEADER_SIZE + node_children_size(currentNodeHeader) + currentNodeEdgeSize;
     unsigned long offset = (getLong(indexFile, pos));
     unsigned int length = (getInt(indexFile, pos + 8));
     fprintf(out, "%lu-%u", offset, length);
@@ -124,11 +125,17 @@ void dfs(MemoryMappedFile indexFile, long currentNodeOffset, unsigned char *keyB
   }
 
   // then children
-  for (int i = 0; i < currentNodeChildrenNum; ++i)
+  unsigned int childSlots = node_child_slots(currentNodeHeader);
+  for (int i = 0; i < childSlots; ++i)
   {
     // Note: the child is stored in big-endian!
     unsigned long child = (*((unsigned long *)nodeData));
     nodeData += 8;
+    if (child == 0)
+    {
+      // absent child in NODE256
+      continue;
+    }
     char leader = (char)((child >> 56) & 0xFF);
     long matchingChildOffset = (child & 0x00FFFFFFFFFFFFFF);
     // printf("child=0x%08lx, leader=0x%08x, nextChildrenAddress=%p\n", child, leader, (char *) matchingChildOffset);
@@ -168,8 +175,8 @@ JNIEXPORT void JNICALL Java_io_pixelsdb_pixels_cache_utils_RadixTreeDumper_nativ
   long currentNodeOffset = INDEX_RADIX_OFFSET;
   unsigned int currentNodeHeader = getInt(indexFile, currentNodeOffset);
   printf("currentNodeHeader=0x%08x, currentNodeHeader=%u\n", currentNodeHeader, currentNodeHeader);
-  const unsigned int currentNodeChildrenNum = currentNodeHeader & 0x000001FF;
-  const unsigned int currentNodeEdgeSize = (currentNodeHeader & 0x7FFFFE00) >> 9;
+  const unsigned int currentNodeChildrenNum = node_children_num(currentNodeHeader);
+  const unsigned int currentNodeEdgeSize = node_edge_size(currentNodeHeader);
   printf("currentNodeChildrenNum=%u, currentNodeEdgeSize=%u\n", currentNodeChildrenNum, currentNodeEdgeSize);
   const char *nodeData = getBytes(indexFile, currentNodeOffset + 4);
 
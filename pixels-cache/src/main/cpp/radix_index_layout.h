@@ -0,0 +1,104 @@
+#ifndef _Included_radix_index_layout
+#define _Included_radix_index_layout
+
+/*
+ * The layout of the radix index nodes, see RadixIndexLayout.java.
+ * header: isKey(1 bit) + nodeType(2 bits) + edgeSize(20 bits) + childrenNum(9 bits)
+ * NODE4 and NODE16 have the children sorted by the leader, NODE48 has a 256-byte child
+ * index before the children, and NODE256 has the children directly indexed by the leader.
+ * The functions below take the children as native-order longs, i.e., after the endian rewriting.
+ */
+#define NODE4 0
+#define NODE16 1
+#define NODE48 2
+#define NODE256 3
+#define NODE_HEADER_SIZE 4
+#define CHILD_INDEX_SIZE 256
+#define CHILD_OFFSET_MASK 0x00FFFFFFFFFFFFFFL
+
+static inline unsigned int node_children_num(unsigned int header)
+{
+  return header & 0x000001FF;
+}
+
+static inline unsigned int node_edge_size(unsigned int header)
+{
+  return (header & 0x1FFFFE00) >> 9;
+}
+
+static inline unsigned int node_type(unsigned int header)
+{
+  return (header >> 29) & 0x3;
+}
+
+// the size in bytes of the children (including the child index) of the node
+static inline unsigned int node_children_size(unsigned int header)
+{
+  switch (node_type(header))
+  {
+  case NODE48:
+    return CHILD_INDEX_SIZE + node_children_num(header) * 8;
+  case NODE256:
+    return CHILD_INDEX_SIZE * 8;
+  default:
+    return node_children_num(header) * 8;
+  }
+}
+
+// the offset of the first child from the start of the children
+static inline unsigned int node_child_slots_offset(unsigned int header)
+{
+  return node_type(header) == NODE48 ? CHILD_INDEX_SIZE : 0;
+}
+
+// the number of child slots, some slots in NODE256 are 0 (absent)
+static inline unsigned int node_child_slots(unsigned int header)
+{
+  return node_type(header) == NODE256 ? CHILD_INDEX_SIZE : node_children_num(header);
+}
+
+// find the child by the leader, return the offset of the child or 0 if not found
+static inline long node_find_child(const char *children, unsigned int header, unsigned char leader)
+{
+  const unsigned long *slots = (const unsigned long *)children;
+  switch (node_type(header))
+  {
+  case NODE48:
+  {
+    unsigned char pos = (unsigned char)children[leader];
+    if (pos == 0)
+    {
+      return 0;
+    }
+    slots = (const unsigned long *)(children + CHILD_INDEX_SIZE);
+    return slots[pos - 1] & CHILD_OFFSET_MASK;
+  }
+  case NODE256:
+    return slots[leader] & CHILD_OFFSET_MASK;
+  default:
+  {
+    // sorted by the leader, NODE4 and NODE16 are small enough for binary search
+    int low = 0, high = (int)node_children_num(header) - 1;
+    while (low <= high)
+    {
+      int mid = (low + high) >> 1;
+      unsigned char current = (unsigned char)(slots[mid] >> 56);
+      if (current < leader)
+      {
+        low = mid + 1;
+      }
+      else if (current > leader)
+      {
+        high = mid - 1;
+      }
+      else
+      {
+        return slots[mid] & CHILD_OFFSET_MASK;
+      }
+    }
+    return 0;
+  }
+  }
+}
+
+#endif
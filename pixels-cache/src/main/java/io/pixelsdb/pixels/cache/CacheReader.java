@@ -16,6 +16,7 @@ public interface CacheReader {
     // TODO: caller should make sure the size is sufficient, we do the experiment first with this api
     int get(PixelsCacheKey key, byte[] buf, int size) throws IOException;
 
-    // Note: this is not safe, as the writer might begin to write the returned ByteBuffer
+    // Note: this is not safe, as the writer might begin to write the returned ByteBuffer,
+    // use PartitionCacheReader.getPinned() for pinned zero-copy reads.
     ByteBuffer getZeroCopy(PixelsCacheKey key) throws IOException;
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.cache;
+
+import io.pixelsdb.pixels.common.metadata.domain.Layout;
+
+/**
+ * The cache writer used by the cache manager to load the columnlets allocated to the node
+ * into the local cache. It is implemented by {@link PixelsCacheWriter} for the cache in memory,
+ * and by {@link PixelsPartitionCacheWriter} for the partitioned cache with the optional ssd tier.
+ */
+public interface CacheWriter
+{
+    /**
+     * Bulk load the cache content of the version.
+     * @return 0 if the cache is updated or no updates are needed, -1 if the update failed,
+     * or 2 if the update size exceeds the limit.
+     */
+    int updateAll(int version, Layout layout);
+
+    /**
+     * Update the cache content of the version incrementally, the readers are not blocked.
+     * @return the same as {@link #updateAll(int, Layout)}
+     */
+    int updateIncremental(int version, Layout layout);
+
+    boolean isCacheEmpty();
+
+    /**
+     * @return the version of the cache content, 0 if nothing is cached yet
+     */
+    int getCacheVersion();
+
+    void close() throws Exception;
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.cache;
+
+import io.pixelsdb.pixels.cache.mq.Message;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A batch of columnlet access counts, which is written into the access message queue
+ * by {@link ColumnletAccessReporter} and read by the cache manager on the same node.
+ * <pre>
+ * numEntries(4 bytes) + [rowGroupId(2 bytes) + columnId(2 bytes) + count(4 bytes)]{numEntries}
+ * </pre>
+ */
+public class ColumnletAccessMessage implements Message
+{
+    private static final int ENTRY_SIZE = 2 * Short.BYTES + Integer.BYTES;
+    /**
+     * The maximum number of entries in a message, that keeps the message smaller than 32KB.
+     */
+    public static final int MAX_ENTRIES = 4096;
+
+    private short[] rowGroupIds;
+    private short[] columnIds;
+    private int[] counts;
+    private int numEntries = 0;
+
+    public ColumnletAccessMessage()
+    {
+        this(64);
+    }
+
+    public ColumnletAccessMessage(int capacity)
+    {
+        this.rowGroupIds = new short[capacity];
+        this.columnIds = new short[capacity];
+        this.counts = new int[capacity];
+    }
+
+    /**
+     * Add an entry into this message.
+     * @return false if this message is full.
+     */
+    public boolean add(short rowGroupId, short columnId, int count)
+    {
+        if (numEntries >= MAX_ENTRIES)
+        {
+            return false;
+        }
+        ensureCapacity(numEntries + 1);
+        rowGroupIds[numEntries] = rowGroupId;
+        columnIds[numEntries] = columnId;
+        counts[numEntries] = count;
+        numEntries++;
+        return true;
+    }
+
+    public void clear()
+    {
+        numEntries = 0;
+    }
+
+    public int getNumEntries()
+    {
+        return numEntries;
+    }
+
+    public short getRowGroupId(int i)
+    {
+        return rowGroupIds[i];
+    }
+
+    public short getColumnId(int i)
+    {
+        return columnIds[i];
+    }
+
+    public int getCount(int i)
+    {
+        return counts[i];
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > counts.length)
+        {
+            int newCapacity = Math.max(capacity, counts.length * 2);
+            short[] newRowGroupIds = new short[newCapacity];
+            short[] newColumnIds = new short[newCapacity];
+            int[] newCounts = new int[newCapacity];
+            System.arraycopy(rowGroupIds, 0, newRowGroupIds, 0, numEntries);
+            System.arraycopy(columnIds, 0, newColumnIds, 0, numEntries);
+            System.arraycopy(counts, 0, newCounts, 0, numEntries);
+            rowGroupIds = newRowGroupIds;
+            columnIds = newColumnIds;
+            counts = newCounts;
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        return Integer.BYTES + numEntries * ENTRY_SIZE;
+    }
+
+    @Override
+    public void ensureSize(int messageSize)
+    {
+        checkArgument(messageSize >= Integer.BYTES && (messageSize - Integer.BYTES) % ENTRY_SIZE == 0,
+                "incorrect message size");
+        ensureCapacity((messageSize - Integer.BYTES) / ENTRY_SIZE);
+    }
+
+    @Override
+    public void read(MemoryMappedFile mem, long pos)
+    {
+        int num = mem.getInt(pos);
+        ensureCapacity(num);
+        pos += Integer.BYTES;
+        for (int i = 0; i < num; ++i, pos += ENTRY_SIZE)
+        {
+            rowGroupIds[i] = mem.getShort(pos);
+            columnIds[i] = mem.getShort(pos + Short.BYTES);
+            counts[i] = mem.getInt(pos + 2 * Short.BYTES);
+        }
+        numEntries = num;
+    }
+
+    @Override
+    public void write(MemoryMappedFile mem, long pos)
+    {
+        mem.setInt(pos, numEntries);
+        pos += Integer.BYTES;
+        for (int i = 0; i < numEntries; ++i, pos += ENTRY_SIZE)
+        {
+            mem.setShort(pos, rowGroupIds[i]);
+            mem.setShort(pos + Short.BYTES, columnIds[i]);
+            mem.setInt(pos + 2 * Short.BYTES, counts[i]);
+        }
+    }
+
+    @Override
+    public String print(MemoryMappedFile mem, long pos)
+    {
+        int num = mem.getInt(pos);
+        StringBuilder builder = new StringBuilder("columnlet accesses: ");
+        pos += Integer.BYTES;
+        for (int i = 0; i < num; ++i, pos += ENTRY_SIZE)
+        {
+            builder.append(mem.getShort(pos)).append(':').append(mem.getShort(pos + Short.BYTES))
+                    .append('=').append(mem.getInt(pos + 2 * Short.BYTES)).append(';');
+        }
+        return builder.toString();
+    }
+}
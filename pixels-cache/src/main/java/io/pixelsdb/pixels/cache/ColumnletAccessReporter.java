@@ -0,0 +1,170 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.cache;
+
+import io.pixelsdb.pixels.cache.mq.SharedMQ;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static io.pixelsdb.pixels.common.error.ErrorCode.SUCCESS;
+
+/**
+ * The reporter of the columnlet accesses in the pixels readers.
+ * The readers record the accessed columnlets into the in-process counters, which are periodically
+ * flushed into the access message queue on this node. The cache manager on this node consumes
+ * the message queue and publishes the aggregated access frequencies for the cache coordinator
+ * to plan the cached columnlets.
+ * <p>
+ * The columnlets are identified by (row group id, column id) without the file path, the same as the
+ * columnlet order in the compact layout, because all the files on a node share the same cache plan.
+ * Accesses are dropped if the message queue is full, which is fine for access frequencies.
+ */
+public class ColumnletAccessReporter
+{
+    private static final Logger logger = LogManager.getLogger(ColumnletAccessReporter.class);
+    private static ColumnletAccessReporter instance = null;
+
+    public static ColumnletAccessReporter Instance()
+    {
+        if (instance == null)
+        {
+            synchronized (ColumnletAccessReporter.class)
+            {
+                if (instance == null)
+                {
+                    instance = new ColumnletAccessReporter();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private final boolean enabled;
+    private final Map<Integer, LongAdder> accessCounts = new ConcurrentHashMap<>();
+    private final ColumnletAccessMessage message = new ColumnletAccessMessage();
+    private SharedMQ accessMQ = null;
+
+    private ColumnletAccessReporter()
+    {
+        PixelsCacheConfig cacheConfig = new PixelsCacheConfig();
+        boolean enabled = cacheConfig.isCacheEnabled() && cacheConfig.isAdmissionEnabled();
+        if (enabled)
+        {
+            try
+            {
+                this.accessMQ = new SharedMQ(cacheConfig.getAccessMQLocation(), cacheConfig.getAccessMQSize());
+            }
+            catch (Exception e)
+            {
+                logger.error("failed to open the columnlet access message queue, access reporting is disabled", e);
+                enabled = false;
+            }
+        }
+        this.enabled = enabled;
+        if (this.enabled)
+        {
+            ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor(runnable ->
+            {
+                Thread thread = new Thread(runnable, "columnlet-access-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            int interval = cacheConfig.getAccessReportInterval();
+            scheduledExecutor.scheduleAtFixedRate(this::flush, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Record an access of the columnlet. It is a no-op if access reporting is disabled.
+     */
+    public void record(short rowGroupId, short columnId)
+    {
+        if (enabled)
+        {
+            accessCounts.computeIfAbsent((rowGroupId << 16) | (columnId & 0xFFFF),
+                    key -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Flush the recorded accesses into the message queue. It is only called by the scheduled thread.
+     */
+    private void flush()
+    {
+        try
+        {
+            message.clear();
+            Iterator<Map.Entry<Integer, LongAdder>> iterator = accessCounts.entrySet().iterator();
+            while (iterator.hasNext())
+            {
+                Map.Entry<Integer, LongAdder> entry = iterator.next();
+                int count = (int) Math.min(entry.getValue().sumThenReset(), Integer.MAX_VALUE);
+                if (count == 0)
+                {
+                    // remove the idle columnlets, the concurrently recorded accesses may be lost.
+                    iterator.remove();
+                    continue;
+                }
+                int key = entry.getKey();
+                message.add((short) (key >>> 16), (short) key, count);
+                if (message.getNumEntries() == ColumnletAccessMessage.MAX_ENTRIES)
+                {
+                    send();
+                }
+            }
+            if (message.getNumEntries() > 0)
+            {
+                send();
+            }
+        }
+        catch (Throwable e)
+        {
+            // do not throw, otherwise the subsequent flushes are suppressed.
+            logger.error("failed to report the columnlet accesses", e);
+        }
+    }
+
+    private void send()
+    {
+        int ret = accessMQ.nextForWrite(message.size());
+        if (ret == SUCCESS)
+        {
+            accessMQ.writeMessage(message);
+        }
+        else
+        {
+            logger.debug("columnlet accesses are dropped, error code: " + ret);
+        }
+        message.clear();
+    }
+}
@@ -1,44 +1,202 @@
 package io.pixelsdb.pixels.cache;
 
-import java.io.FileNotFoundException;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * The cache content reader of the cache content file on local disk (e.g., ssd).
+ * <p>
+ * The reads are positional reads on a {@link FileChannel}, which do not change any state of the reader,
+ * thus this reader can be used by many query threads concurrently. The zero-copy reads are served by
+ * read-only mappings of the content file, which is mapped in segments on demand.
+ * </p>
+ * <p>
+ * In batchRead, the columnlets are sorted by offset and the adjacent ones are merged into one read,
+ * and the merged reads are issued in parallel if they are large enough in total, so that the reads
+ * use the queue depth of the ssd instead of being issued one by one.
+ * </p>
+ */
 public class DiskCacheContentReader implements CacheContentReader {
-    private final RandomAccessFile content;
+    /**
+     * The size of each mapped segment of the content file, a mapping is limited to 2GB.
+     */
+    private static final long SEGMENT_SIZE = 1L << 30;
+    /**
+     * The minimum total bytes of a batch read to issue the merged reads in parallel.
+     */
+    private static final long PARALLEL_READ_MIN_BYTES = 1024 * 1024;
+
+    private static final ExecutorService readService = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "pixels-disk-cache-read");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final FileChannel content;
+    private final long contentSize;
+    private final MappedByteBuffer[] segments;
 
     DiskCacheContentReader(String loc) throws IOException {
-        this.content = new RandomAccessFile(loc, "r");
-        this.content.seek(0);
+        this.content = FileChannel.open(Paths.get(loc), StandardOpenOption.READ);
+        this.contentSize = content.size();
+        this.segments = new MappedByteBuffer[(int) ((contentSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
     }
 
     @Override
     public ByteBuffer readZeroCopy(PixelsCacheIdx idx) throws IOException {
-        throw new IOException("disk content reader dont support zero copy");
+        int segmentId = (int) (idx.offset / SEGMENT_SIZE);
+        long segmentStart = segmentId * SEGMENT_SIZE;
+        if (segmentId >= segments.length || idx.offset + idx.length > segmentStart + SEGMENT_SIZE ||
+                idx.offset + idx.length > contentSize) {
+            // the columnlet crosses the segments or is out of the mapped size, copy it.
+            ByteBuffer buf = ByteBuffer.allocate(idx.length);
+            read(idx, buf.array(), 0);
+            return buf;
+        }
+        ByteBuffer segment = getSegment(segmentId).duplicate();
+        int start = (int) (idx.offset - segmentStart);
+        segment.position(start).limit(start + idx.length);
+        return segment.slice();
+    }
+
+    private MappedByteBuffer getSegment(int segmentId) throws IOException {
+        MappedByteBuffer segment = segments[segmentId];
+        if (segment == null) {
+            synchronized (segments) {
+                segment = segments[segmentId];
+                if (segment == null) {
+                    long segmentStart = segmentId * SEGMENT_SIZE;
+                    segment = content.map(FileChannel.MapMode.READ_ONLY, segmentStart,
+                            Math.min(SEGMENT_SIZE, contentSize - segmentStart));
+                    segments[segmentId] = segment;
+                }
+            }
+        }
+        return segment;
     }
 
     @Override
     public void read(PixelsCacheIdx idx, ByteBuffer buf) throws IOException {
         read(idx, buf.array(), 0);
     }
+
     @Override
     public void read(PixelsCacheIdx idx, byte[] buf) throws IOException {
         read(idx, buf, 0);
     }
 
     private void read(PixelsCacheIdx idx, byte[] buf, int offset) throws IOException {
-        content.seek(idx.offset);
-        content.readFully(buf, offset, idx.length);
+        readFully(idx.offset, buf, offset, idx.length);
+    }
+
+    private void readFully(long position, byte[] buf, int offset, int length) throws IOException {
+        ByteBuffer dst = ByteBuffer.wrap(buf, offset, length);
+        while (dst.hasRemaining()) {
+            int n = content.read(dst, position + dst.position() - offset);
+            if (n < 0) {
+                throw new EOFException("read beyond the end of the cache content, position " +
+                        position + ", length " + length);
+            }
+        }
     }
 
     @Override
     public void batchRead(PixelsCacheIdx[] idxs, ByteBuffer buf) throws IOException {
-        int offset = 0;
         byte[] internal = buf.array();
+        // the offset of each columnlet in buf, the columnlets are put in buf in the order of idxs.
+        int[] bufOffsets = new int[idxs.length];
+        Integer[] order = new Integer[idxs.length];
+        long totalBytes = 0;
         for (int i = 0; i < idxs.length; ++i) {
-            read(idxs[i], internal, offset);
-            offset += idxs[i].length;
+            bufOffsets[i] = (int) totalBytes;
+            totalBytes += idxs[i].length;
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(idxs[a].offset, idxs[b].offset));
+
+        List<int[]> runs = new ArrayList<>();
+        int runStart = 0;
+        for (int i = 1; i <= order.length; ++i) {
+            if (i == order.length ||
+                    idxs[order[i]].offset != idxs[order[i - 1]].offset + idxs[order[i - 1]].length) {
+                // [runStart, i) in order are adjacent in the content file.
+                runs.add(new int[]{runStart, i});
+                runStart = i;
+            }
+        }
+
+        if (runs.size() <= 1 || totalBytes < PARALLEL_READ_MIN_BYTES) {
+            for (int[] run : runs) {
+                readRun(idxs, order, bufOffsets, run[0], run[1], internal);
+            }
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<>(runs.size() - 1);
+        for (int i = 0; i < runs.size() - 1; ++i) {
+            int[] run = runs.get(i);
+            futures.add(readService.submit(() -> {
+                readRun(idxs, order, bufOffsets, run[0], run[1], internal);
+                return null;
+            }));
+        }
+        // the last run is read by the calling thread.
+        int[] last = runs.get(runs.size() - 1);
+        readRun(idxs, order, bufOffsets, last[0], last[1], internal);
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the cache content reads");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("failed to read the cache content", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Read the adjacent columnlets order[from, to) by one read. If their places in buf are also adjacent
+     * in the same order, they are read into buf directly, otherwise they are read and then copied into buf.
+     */
+    private void readRun(PixelsCacheIdx[] idxs, Integer[] order, int[] bufOffsets,
+                         int from, int to, byte[] buf) throws IOException {
+        long position = idxs[order[from]].offset;
+        int length = 0;
+        boolean inPlace = true;
+        for (int i = from; i < to; ++i) {
+            if (bufOffsets[order[i]] != bufOffsets[order[from]] + length) {
+                inPlace = false;
+            }
+            length += idxs[order[i]].length;
+        }
+        if (inPlace) {
+            readFully(position, buf, bufOffsets[order[from]], length);
+            return;
+        }
+        byte[] runBuf = new byte[length];
+        readFully(position, runBuf, 0, length);
+        int runOffset = 0;
+        for (int i = from; i < to; ++i) {
+            PixelsCacheIdx idx = idxs[order[i]];
+            System.arraycopy(runBuf, runOffset, buf, bufOffsets[order[i]], idx.length);
+            runOffset += idx.length;
         }
     }
 }
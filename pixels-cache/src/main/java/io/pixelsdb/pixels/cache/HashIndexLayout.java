@@ -0,0 +1,97 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.cache;
+
+/**
+ * The layout of the bucketized hash index, which is written by {@link HashIndexWriter}
+ * and read by {@link HashIndexReader} and {@link NativeHashIndexReader}.
+ * <pre>
+ * index:
+ * - HEADER: the common index header (16 bytes, see {@link PixelsCacheUtil}), NUM_BUCKETS (8 bytes)
+ * - padding to the next 64-byte (cache line) boundary in memory
+ * - BUCKETS: NUM_BUCKETS (a power of 2) buckets of 64 bytes
+ * bucket:
+ * - FINGERPRINTS: 2 bytes for each slot, 0 means the slot is empty (8 bytes)
+ * - padding (8 bytes)
+ * - SLOTS: 2 slots of {offset(8), blockId(8), rowGroupId(2), columnId(2), length(4)}
+ * </pre>
+ * The bucket of a key is decided by the low bits of a 64-bit mix of the key, and the fingerprint
+ * by the high 16 bits. If a bucket is full, the key is put into the next bucket (linear probing),
+ * so that a lookup usually touches only one cache line, and an overflow touches the adjacent one.
+ * As keys are never deleted, a lookup ends at the first bucket that has an empty slot.
+ * All the values are in the native byte order.
+ */
+final class HashIndexLayout
+{
+    static final int NUM_BUCKETS_OFFSET = PixelsCacheUtil.INDEX_RADIX_OFFSET;
+    static final int BUCKET_SIZE = 64;
+    static final int SLOTS_PER_BUCKET = 2;
+    static final int SLOTS_OFFSET = 16;
+    static final int SLOT_SIZE = 24;
+    static final int SLOT_BLOCK_ID_OFFSET = 8;
+    static final int SLOT_RG_COL_OFFSET = 16;
+    static final int SLOT_LENGTH_OFFSET = 20;
+    static final long FINGERPRINT_MASK = 0xFFFFL;
+
+    private HashIndexLayout() { }
+
+    /**
+     * Get the offset of the first bucket in the index file. The buckets are aligned to the cache line
+     * in memory. As the index files are mapped at page-aligned addresses, the offset is the same
+     * for the writer and the readers in other processes.
+     */
+    static long bucketsOffset(MemoryMappedFile indexFile)
+    {
+        long start = indexFile.getAddress() + NUM_BUCKETS_OFFSET + Long.BYTES;
+        long aligned = (start + BUCKET_SIZE - 1) & ~((long) BUCKET_SIZE - 1);
+        return aligned - indexFile.getAddress();
+    }
+
+    /**
+     * The finalizer of MurmurHash3 (fmix64) on the key.
+     */
+    static long hash(long blockId, short rowGroupId, short columnId)
+    {
+        long h = blockId ^ Long.rotateLeft(rgCol(rowGroupId, columnId) * 0x9E3779B97F4A7C15L, 32);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @return the fingerprint of the hash, which is never 0.
+     */
+    static int fingerprint(long hash)
+    {
+        int fingerprint = (int) (hash >>> 48);
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    /**
+     * @return the row group id and column id packed as they are stored in the slot.
+     */
+    static int rgCol(short rowGroupId, short columnId)
+    {
+        return (rowGroupId & 0xFFFF) | (columnId << 16);
+    }
+}
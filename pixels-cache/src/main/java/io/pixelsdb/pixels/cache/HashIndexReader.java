@@ -2,97 +2,104 @@ package io.pixelsdb.pixels.cache;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import sun.nio.ch.DirectBuffer;
 
-import java.nio.ByteBuffer;
-//import java.nio.
-import java.nio.ByteOrder;
-import java.util.Arrays;
+import static io.pixelsdb.pixels.cache.HashIndexLayout.*;
 
+/**
+ * Reads the bucketized hash index, see {@link HashIndexLayout} for the format.
+ * The index is read in place by {@link MemoryMappedFile#getLong(long)} and
+ * {@link MemoryMappedFile#getInt(long)}, only the returned cache idx is allocated.
+ */
 public class HashIndexReader implements AutoCloseable, CacheIndexReader {
 
     private static final Logger logger = LogManager.getLogger(HashIndexReader.class);
-    private final byte[] key = new byte[PixelsCacheKey.SIZE];
-    private final ByteBuffer keyBuf = ByteBuffer.wrap(key).order(ByteOrder.LITTLE_ENDIAN);
-    private final int kvSize = PixelsCacheKey.SIZE + PixelsCacheIdx.SIZE;
-    private final int HEADER_OFFSET = PixelsCacheUtil.INDEX_RADIX_OFFSET + 8;
-    private final byte[] kv = new byte[kvSize];
-    private final ByteBuffer kvBuf = ByteBuffer.wrap(kv).order(ByteOrder.LITTLE_ENDIAN);
+    /**
+     * The number of lookups whose buckets are loaded together in batchRead().
+     */
+    private static final int BATCH_GROUP_SIZE = 16;
 
-    private final int tableSize;
-    // private static CacheLogger cacheLogger = new CacheLogger();
+    private final long numBuckets;
+    private final long bucketMask;
+    private final long bucketsOffset;
+    private final long[] groupHashes = new long[BATCH_GROUP_SIZE];
+    private final long[] groupFingerprints = new long[BATCH_GROUP_SIZE];
 
     private final MemoryMappedFile indexFile;
-    private final ByteBuffer cacheIdxBuf = ByteBuffer.allocateDirect(16).order(ByteOrder.LITTLE_ENDIAN);
-    private final long cacheIdxBufAddr = ((DirectBuffer) this.cacheIdxBuf).address();
 
     HashIndexReader(MemoryMappedFile indexFile)
     {
         this.indexFile = indexFile;
-        this.tableSize = (int) indexFile.getLong(PixelsCacheUtil.INDEX_RADIX_OFFSET);
-        logger.trace("tableSize=" + tableSize);
-    }
-
-    private int hashcode(byte[] bytes) {
-        int var1 = 1;
-
-        for(int var3 = 0; var3 < bytes.length; ++var3) {
-            var1 = 31 * var1 + bytes[var3];
-        }
-
-        return var1;
+        this.numBuckets = indexFile.getLong(NUM_BUCKETS_OFFSET);
+        this.bucketMask = numBuckets - 1;
+        this.bucketsOffset = bucketsOffset(indexFile);
+        logger.trace("numBuckets=" + numBuckets);
     }
 
     @Override
     public PixelsCacheIdx read(PixelsCacheKey key) {
-        return search(key.blockId, key.rowGroupId, key.columnId);
+        long hash = hash(key.blockId, key.rowGroupId, key.columnId);
+        long bucketPos = bucketsOffset + (hash & bucketMask) * BUCKET_SIZE;
+        return search(key.blockId, key.rowGroupId, key.columnId, hash, indexFile.getLong(bucketPos));
     }
 
+    /**
+     * Lookup the keys in groups. In each group, the hashes of the keys are computed and the
+     * fingerprints of their buckets are loaded before any of the keys is matched. As these loads
+     * are independent, the cache misses on the buckets are overlapped (like prefetching),
+     * instead of being taken one after another.
+     */
     @Override
     public void batchRead(PixelsCacheKey[] keys, PixelsCacheIdx[] results) {
-        throw new RuntimeException("not implemented yet");
+        for (int start = 0; start < keys.length; start += BATCH_GROUP_SIZE) {
+            int end = Math.min(start + BATCH_GROUP_SIZE, keys.length);
+            for (int i = start; i < end; ++i) {
+                PixelsCacheKey key = keys[i];
+                long hash = hash(key.blockId, key.rowGroupId, key.columnId);
+                groupHashes[i - start] = hash;
+                groupFingerprints[i - start] = indexFile.getLong(bucketsOffset + (hash & bucketMask) * BUCKET_SIZE);
+            }
+            for (int i = start; i < end; ++i) {
+                PixelsCacheKey key = keys[i];
+                results[i] = search(key.blockId, key.rowGroupId, key.columnId,
+                        groupHashes[i - start], groupFingerprints[i - start]);
+            }
+        }
     }
 
     /**
-     * This interface is only used by TESTS, DO NOT USE.
-     * It will be removed soon!
+     * Search the key from its first bucket.
+     * @param hash the hash of the key.
+     * @param fingerprints the fingerprints of the first bucket.
+     * @return the cache idx, or null if the key is not found.
      */
-    private PixelsCacheIdx search(long blockId, short rowGroupId, short columnId)
+    private PixelsCacheIdx search(long blockId, short rowGroupId, short columnId, long hash, long fingerprints)
     {
-        keyBuf.position(0);
-        keyBuf.putLong(blockId).putShort(rowGroupId).putShort(columnId);
-
-        int hash = hashcode(keyBuf.array()) & 0x7fffffff;
-//        System.out.println("hash=" + hash);
-//        int bucket = hash & (tableSize - 1); // initial bucket
-        int bucket = hash % tableSize; // initial bucket
-
-        int offset = bucket * kvSize;
-        indexFile.getBytes(offset + HEADER_OFFSET, kv, 0, this.kvSize);
-        kvBuf.position(0);
-        boolean valid = keyBuf.position(0).equals(kvBuf.slice().position(0).limit(PixelsCacheKey.SIZE));
-        int dramAccess = 1;
-        for(int i = 1; !valid; ++i) {
-            bucket += i * i;
-            bucket = bucket % tableSize;
-//            bucket &= tableSize - 1;
-            offset = bucket * kvSize;
-            indexFile.getBytes(offset + HEADER_OFFSET, kv, 0, this.kvSize);
-            // check if key matches
-            if (kvBuf.getLong(0) == 0 && kvBuf.getLong(8) == 0 && kvBuf.getLong(16) == 0) {
-                System.out.printf("cache miss! blk=%d, rg=%d, col=%d, probe_i=%d, bucket=%d, offset=%d\n", blockId, rowGroupId, columnId, i, bucket, offset);
-                return null;
-            } // all zero
-
-            valid = keyBuf.position(0).equals(kvBuf.slice().position(0).limit(PixelsCacheKey.SIZE));
-//            System.out.println(bucket + " " + offset + " " + i + " " + valid + " " + keyBuf.getLong(0) + " " + kvBuf.getLong(0));
-            dramAccess++;
+        long fingerprint = fingerprint(hash);
+        int rgCol = rgCol(rowGroupId, columnId);
+        long bucket = hash & bucketMask;
+        for (int probe = 1; probe <= numBuckets; ++probe) {
+            long bucketPos = bucketsOffset + bucket * BUCKET_SIZE;
+            if (probe > 1) {
+                fingerprints = indexFile.getLong(bucketPos);
+            }
+            for (int i = 0; i < SLOTS_PER_BUCKET; ++i) {
+                long slotFingerprint = (fingerprints >>> (i * 16)) & FINGERPRINT_MASK;
+                if (slotFingerprint == 0) {
+                    // keys are never deleted, an empty slot means the key does not exist.
+                    return null;
+                }
+                long slotPos = bucketPos + SLOTS_OFFSET + (long) i * SLOT_SIZE;
+                if (slotFingerprint == fingerprint && indexFile.getLong(slotPos + SLOT_BLOCK_ID_OFFSET) == blockId &&
+                        indexFile.getInt(slotPos + SLOT_RG_COL_OFFSET) == rgCol) {
+                    PixelsCacheIdx cacheIdx = new PixelsCacheIdx(indexFile.getLong(slotPos),
+                            indexFile.getInt(slotPos + SLOT_LENGTH_OFFSET));
+                    cacheIdx.dramAccessCount = probe;
+                    return cacheIdx;
+                }
+            }
+            bucket = (bucket + 1) & bucketMask;
         }
-
-        kvBuf.position(PixelsCacheKey.SIZE);
-        PixelsCacheIdx cacheIdx = new PixelsCacheIdx(kvBuf.getLong(), kvBuf.getInt());
-        cacheIdx.dramAccessCount = dramAccess;
-        return cacheIdx;
+        return null;
     }
 
     @Override
@@ -3,67 +3,68 @@ package io.pixelsdb.pixels.cache;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import static io.pixelsdb.pixels.cache.HashIndexLayout.*;
 
+/**
+ * Writes the bucketized hash index, see {@link HashIndexLayout} for the format.
+ */
 public class HashIndexWriter implements CacheIndexWriter {
     private final static Logger logger = LogManager.getLogger(HashIndexWriter.class);
-    private long currentIndexOffset = PixelsCacheUtil.INDEX_RADIX_OFFSET;
-    private double loadFactor;
-    private final int kvSize = PixelsCacheKey.SIZE + PixelsCacheIdx.SIZE;
-    private final long tableSize;
-    private int nKeys = 0;
-    private final byte[] kv = new byte[kvSize];
-    private final ByteBuffer kvBuf = ByteBuffer.wrap(kv).order(ByteOrder.LITTLE_ENDIAN);
-    private final ByteBuffer keyBuf = ByteBuffer.allocate(PixelsCacheKey.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final long bucketsOffset;
+    private final long numBuckets;
+    private final long bucketMask;
+    private long nKeys = 0;
 
     private final MemoryMappedFile out;
 
     public HashIndexWriter(MemoryMappedFile out) {
         this.out = out;
         this.out.clear();
-        this.tableSize = out.getSize() / kvSize;
-        logger.debug("tablesize=" + this.tableSize);
-        out.setLong(currentIndexOffset, tableSize); // write table size, it can also be derived from the mmap file though
-        currentIndexOffset += 8;
+        this.bucketsOffset = bucketsOffset(out);
+        // the number of buckets is rounded down to a power of 2, so that the bucket is selected by a mask.
+        this.numBuckets = Long.highestOneBit((out.getSize() - bucketsOffset) / BUCKET_SIZE);
+        this.bucketMask = numBuckets - 1;
+        logger.debug("numBuckets=" + this.numBuckets);
+        out.setLong(NUM_BUCKETS_OFFSET, numBuckets);
     }
 
-    private int hashcode(byte[] bytes) {
-        int var1 = 1;
-
-        for(int var3 = 0; var3 < bytes.length; ++var3) {
-            var1 = 31 * var1 + bytes[var3];
-        }
-
-        return var1;
-    }
-
-
     @Override
     public void put(PixelsCacheKey cacheKey, PixelsCacheIdx cacheIdx) {
-        // construct a little endian key buf, this is good for C-compatibility
-        keyBuf.position(0);
-        keyBuf.putLong(cacheKey.blockId).putShort(cacheKey.rowGroupId).putShort(cacheKey.columnId);
-        int hash = hashcode(keyBuf.array()) & 0x7fffffff;
-        long bucket = hash % tableSize;
-        long offset = bucket * kvSize;
-        out.getBytes(offset + currentIndexOffset, kv, 0, this.kvSize);
-        boolean valid = kvBuf.getLong(0) == 0 && kvBuf.getLong(8) == 0 && kvBuf.getLong(16) == 0; // all zero
-        for(int i = 1; !valid; ++i) {
-            bucket += (long) i * i;
-            bucket = bucket % tableSize;
-            offset = bucket * kvSize;
-            out.getBytes(offset + currentIndexOffset, kv, 0, this.kvSize);
-            valid = kvBuf.getLong(0) == 0 && kvBuf.getLong(8) == 0 && kvBuf.getLong(16) == 0;
+        long hash = hash(cacheKey.blockId, cacheKey.rowGroupId, cacheKey.columnId);
+        long fingerprint = fingerprint(hash);
+        int rgCol = rgCol(cacheKey.rowGroupId, cacheKey.columnId);
+        long bucket = hash & bucketMask;
+        for (long probe = 0; probe < numBuckets; ++probe) {
+            long bucketPos = bucketsOffset + bucket * BUCKET_SIZE;
+            long fingerprints = out.getLong(bucketPos);
+            for (int i = 0; i < SLOTS_PER_BUCKET; ++i) {
+                long slotFingerprint = (fingerprints >>> (i * 16)) & FINGERPRINT_MASK;
+                long slotPos = bucketPos + SLOTS_OFFSET + (long) i * SLOT_SIZE;
+                if (slotFingerprint == 0) {
+                    // empty slot, write the slot before publishing the fingerprint.
+                    writeSlot(slotPos, cacheKey, rgCol, cacheIdx);
+                    out.setLong(bucketPos, fingerprints | (fingerprint << (i * 16)));
+                    nKeys++;
+                    logger.trace(cacheKey + " put to bucket " + bucket + " slot " + i);
+                    return;
+                }
+                if (slotFingerprint == fingerprint && out.getLong(slotPos + SLOT_BLOCK_ID_OFFSET) == cacheKey.blockId &&
+                        out.getInt(slotPos + SLOT_RG_COL_OFFSET) == rgCol) {
+                    // the key exists, overwrite the value.
+                    writeSlot(slotPos, cacheKey, rgCol, cacheIdx);
+                    return;
+                }
+            }
+            bucket = (bucket + 1) & bucketMask;
         }
-        logger.trace(cacheKey + " put to bucket " + bucket + " offset " + offset);
-        kvBuf.position(0);
-        kvBuf.putLong(cacheKey.blockId).putShort(cacheKey.rowGroupId).putShort(cacheKey.columnId)
-                .putLong(cacheIdx.offset).putInt(cacheIdx.length);
+        throw new IllegalStateException("hash index is full, keys=" + nKeys);
+    }
 
-        // find a valid position, insert into hashFile
-        out.setBytes(offset + currentIndexOffset, kv);
-        nKeys++;
+    private void writeSlot(long slotPos, PixelsCacheKey cacheKey, int rgCol, PixelsCacheIdx cacheIdx) {
+        out.setLong(slotPos, cacheIdx.offset);
+        out.setLong(slotPos + SLOT_BLOCK_ID_OFFSET, cacheKey.blockId);
+        out.setInt(slotPos + SLOT_RG_COL_OFFSET, rgCol);
+        out.setInt(slotPos + SLOT_LENGTH_OFFSET, cacheIdx.length);
     }
 
     @Override
@@ -73,8 +74,8 @@ public class HashIndexWriter implements CacheIndexWriter {
 
     @Override
     public long flush() {
-        loadFactor = nKeys / (double) tableSize;
-        logger.debug("load factor=" + loadFactor + " keys=" + nKeys + " tableSize=" + tableSize);
+        double loadFactor = nKeys / (double) (numBuckets * SLOTS_PER_BUCKET);
+        logger.debug("load factor=" + loadFactor + " keys=" + nKeys + " numBuckets=" + numBuckets);
         return 0;
     }
 }
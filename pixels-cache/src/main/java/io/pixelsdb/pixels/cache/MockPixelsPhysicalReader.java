@@ -54,6 +54,19 @@ public class MockPixelsPhysicalReader {
 
     }
 
+    /**
+     * Add a mock columnlet, so that the tests can mock the files without the dumped cache file.
+     * The content of the columnlet is filled with a byte derived from the offset and length.
+     */
+    static synchronized void addColumnlet(long blkId, short rgId, short colId, long offset, int length)
+    {
+        String key = blkId + "-" + rgId + "-" + colId;
+        String idx = offset + "-" + length;
+        cacheKeys.add(key);
+        cacheIdxs.add(idx);
+        keyToIdxs.put(key, idx);
+    }
+
     private final long blkId;
     public MockPixelsPhysicalReader(Storage storage, String path) throws IOException
     {
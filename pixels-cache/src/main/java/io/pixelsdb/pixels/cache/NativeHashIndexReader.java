@@ -12,10 +12,7 @@ public class NativeHashIndexReader implements AutoCloseable, CacheIndexReader {
         System.loadLibrary("HashIndexReader");
     }
     private static final Logger logger = LogManager.getLogger(NativeHashIndexReader.class);
-    private final int kvSize = PixelsCacheKey.SIZE + PixelsCacheIdx.SIZE;
-    private final byte[] kv = new byte[kvSize];
-
-    private final int tableSize;
+    private final long numBuckets;
 
     private final MemoryMappedFile indexFile;
     private final ByteBuffer cacheIdxBuf = ByteBuffer.allocateDirect(16).order(ByteOrder.LITTLE_ENDIAN);
@@ -24,9 +21,8 @@ public class NativeHashIndexReader implements AutoCloseable, CacheIndexReader {
     NativeHashIndexReader(MemoryMappedFile indexFile)
     {
         this.indexFile = indexFile;
-        this.tableSize = (int) indexFile.getLong(16);
-        System.out.println("tableSize=" + tableSize);
-        System.out.println("cacheIdxAddr=" + cacheIdxBufAddr);
+        this.numBuckets = indexFile.getLong(HashIndexLayout.NUM_BUCKETS_OFFSET);
+        logger.trace("numBuckets=" + numBuckets);
     }
 
     @Override
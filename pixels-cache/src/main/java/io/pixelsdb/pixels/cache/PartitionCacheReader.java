@@ -34,12 +34,15 @@ public class PartitionCacheReader implements CacheReader {
     private final CacheIndexReader[] readers; // related to physical partitions, length=partitions+1
 
     private final CacheContentReader[] contentReaders;
+    // the content readers of the ssd tier, null if the ssd tier is disabled, length=partitions+1
+    private final CacheContentReader[] ssdContentReaders;
 
 
     private PartitionCacheReader(MemoryMappedFile indexWholeRegion, MemoryMappedFile[] indexSubRegions,
                                 MemoryMappedFile cacheWholeRegion, MemoryMappedFile[] cacheSubRegions,
                                 CacheIndexReader[] readers,
                                 CacheContentReader[] contentReaders,
+                                CacheContentReader[] ssdContentReaders,
                                 int partitions) {
         assert (indexSubRegions.length == partitions + 1);
         assert (cacheSubRegions.length == partitions + 1);
@@ -52,6 +55,30 @@ public class PartitionCacheReader implements CacheReader {
         this.indexSubRegions = indexSubRegions;
         this.readers = readers;
         this.contentReaders = contentReaders;
+        this.ssdContentReaders = ssdContentReaders;
+    }
+
+    /**
+     * The cache idx in the index tells the tier of the cached item, thus the item is found in both tiers
+     * by a single index lookup.
+     * @return the content reader of the tier where the item of the cache idx is cached
+     */
+    private CacheContentReader contentReaderOf(int physicalPartition, PixelsCacheIdx cacheIdx) throws IOException {
+        if (!cacheIdx.isSsdTier()) {
+            return contentReaders[physicalPartition];
+        }
+        if (ssdContentReaders == null) {
+            throw new IOException("the item is cached in the ssd tier, but the ssd tier is not enabled");
+        }
+        return ssdContentReaders[physicalPartition];
+    }
+
+    /**
+     * Read the content as a zero-copy buffer in either tier. The content of the ssd tier is served by the
+     * read-only mapping of the ssd partition, thus a hit in the ssd tier is not copied onto the heap.
+     */
+    private ByteBuffer readBuffer(int physicalPartition, PixelsCacheIdx cacheIdx) throws IOException {
+        return contentReaderOf(physicalPartition, cacheIdx).readZeroCopy(cacheIdx.toTierIdx());
     }
 
     public PixelsCacheIdx naivesearch(PixelsCacheKey key) {
@@ -112,14 +139,17 @@ public class PartitionCacheReader implements CacheReader {
         long startMilis;
         int physicalPartition;
         int version;
+        // the reader epoch in which the reader count is increased.
+        short epoch;
         boolean valid;
         long expireMilis = PixelsCacheUtil.CACHE_READ_LEASE_MS;
         ReadLease(boolean valid) { this.valid = valid; }
-        ReadLease(long start, int partition, int version) {
+        ReadLease(long start, int partition, int version, short epoch) {
             startMilis = start;
             physicalPartition = partition;
             valid = true;
             this.version = version;
+            this.epoch = epoch;
         }
         static ReadLease invalid() {
             return new ReadLease(false);
@@ -160,30 +190,24 @@ public class PartitionCacheReader implements CacheReader {
 //        if (cnt > 1) {
 //            logger.debug(String.format("route %d times, physical partition=%d, logical partition=%d",cnt , physicalPartition, logicalPartition));
 //        }
-        return new ReadLease(start, physicalPartition, PixelsCacheUtil.getIndexVersion(indexSubRegion));
+        return new ReadLease(start, physicalPartition, PixelsCacheUtil.getIndexVersion(indexSubRegion),
+                PixelsCacheUtil.getReaderEpoch(indexSubRegion));
     }
 
     private boolean endRead(ReadLease lease) {
         MemoryMappedFile indexSubRegion = indexSubRegions[lease.physicalPartition];
-        // check the lease, version and read_count
-        int v = indexSubRegion.getIntVolatile(6);
-        int readCount = (v & PixelsCacheUtil.READER_COUNT_MASK) >>
-                PixelsCacheUtil.READER_COUNT_RIGHT_SHIFT_BITS;
-
-        if (readCount == 0 || !lease.isValid(PixelsCacheUtil.getIndexVersion(indexSubRegion))) {
-            logger.debug("read aborted readCount=" + readCount + " " + (System.currentTimeMillis() - lease.startMilis));
+        // check the lease and version
+        boolean valid = lease.isValid(PixelsCacheUtil.getIndexVersion(indexSubRegion));
+        /*
+         * The reader count is held until here even if the lease has expired, so it must be decreased,
+         * otherwise the writer waits for the leaked count until timeout. It is not decreased if the
+         * writer has already cleared it, which is detected by the reader epoch.
+         */
+        boolean released = PixelsCacheUtil.decreaseReaderCount(indexSubRegion, lease.epoch);
+        if (!valid || !released) {
+            logger.debug("read aborted released=" + released + " " + (System.currentTimeMillis() - lease.startMilis));
             return false;
         }
-        // try to decrement the reader count
-        while ((v & PixelsCacheUtil.READER_COUNT_MASK) > 0)
-        {
-            if (indexSubRegion.compareAndSwapInt(6, v, v-PixelsCacheUtil.READER_COUNT_INC))
-            {
-                // if v is not changed and the reader count is successfully decreased, break.
-                break;
-            }
-            v = indexSubRegion.getIntVolatile(6);
-        }
         return true;
     }
 
@@ -207,13 +231,13 @@ public class PartitionCacheReader implements CacheReader {
     }
 
     // return a direct buffer
+    // Note: this is not safe, as the writer may overwrite the region while the caller is processing the
+    // returned buffer. Use getPinned() if the buffer is processed after this method returns.
     public ByteBuffer getZeroCopy(PixelsCacheKey key) {
-        // TODO: 这个方案是有缺陷的! 因为返回的只是一个地址的拷贝, 在 reader 实际 process 的时候, writer 是有可能重写这部分区域的
         ReadLease lease = prepareRead(key);
 
         logger.trace("physical partition=" + lease.physicalPartition);
         CacheIndexReader reader = readers[lease.physicalPartition];
-        CacheContentReader contentReader = contentReaders[lease.physicalPartition];
 
         PixelsCacheIdx cacheIdx = reader.read(key);
         if (cacheIdx == null) {
@@ -222,7 +246,7 @@ public class PartitionCacheReader implements CacheReader {
         }
 
         try {
-            ByteBuffer ret = contentReader.readZeroCopy(cacheIdx);
+            ByteBuffer ret = readBuffer(lease.physicalPartition, cacheIdx);
             if (endRead(lease))
                 return ret;
             else
@@ -233,13 +257,50 @@ public class PartitionCacheReader implements CacheReader {
         }
     }
 
+    /**
+     * Get the cache content as a zero-copy buffer which is pinned until the returned handle is closed.
+     * The reader count of the physical partition is increased as in {@link #prepareRead(PixelsCacheKey)},
+     * but it is not decreased until the handle is closed, so that the writer does not recycle the
+     * partition while the buffer is in use.
+     * @param key the cache key.
+     * @return the pinned buffer, or null if the key is not found or the read is aborted.
+     */
+    public PinnedCacheBuffer getPinned(PixelsCacheKey key) {
+        ReadLease lease = prepareRead(key);
+        if (!lease.valid) {
+            return null;
+        }
+        MemoryMappedFile indexSubRegion = indexSubRegions[lease.physicalPartition];
+        CacheIndexReader reader = readers[lease.physicalPartition];
+
+        PixelsCacheIdx cacheIdx = reader.read(key);
+        if (cacheIdx == null) {
+            PixelsCacheUtil.decreaseReaderCount(indexSubRegion, lease.epoch);
+            return null;
+        }
+        ByteBuffer content;
+        try {
+            content = readBuffer(lease.physicalPartition, cacheIdx);
+        } catch (IOException e) {
+            logger.error("failed to read zero-copy buffer from partition " + lease.physicalPartition, e);
+            PixelsCacheUtil.decreaseReaderCount(indexSubRegion, lease.epoch);
+            return null;
+        }
+        // the lookup must finish within the lease, otherwise the writer may have cleared the reader count.
+        if (!lease.isValid(PixelsCacheUtil.getIndexVersion(indexSubRegion))) {
+            logger.debug("pinned read aborted " + (System.currentTimeMillis() - lease.startMilis));
+            PixelsCacheUtil.decreaseReaderCount(indexSubRegion, lease.epoch);
+            return null;
+        }
+        return new PinnedCacheBuffer(content, indexSubRegion, lease.version, lease.epoch);
+    }
+
     // TODO: what if buf.length is not enough to hold?
     // TODO: make the simpleGet as ligitimate get method
     public int get(PixelsCacheKey key, byte[] buf, int size) {
         ReadLease lease = prepareRead(key);
         logger.trace("physical partition=" + lease.physicalPartition);
         CacheIndexReader reader = readers[lease.physicalPartition];
-        CacheContentReader contentReader = contentReaders[lease.physicalPartition];
 
         PixelsCacheIdx cacheIdx = reader.read(key);
         if (cacheIdx == null) {
@@ -247,7 +308,7 @@ public class PartitionCacheReader implements CacheReader {
             return 0;
         }
         try {
-            contentReader.read(cacheIdx, buf);
+            contentReaderOf(lease.physicalPartition, cacheIdx).read(cacheIdx.toTierIdx(), buf);
             if (endRead(lease)) {
                 return size;
             }
@@ -267,7 +328,6 @@ public class PartitionCacheReader implements CacheReader {
         int physicalPartition = PixelsCacheUtil.retrievePhysicalPartition(indexWholeRegion, logicalPartition, partitions);
         CacheIndexReader reader = readers[physicalPartition];
         MemoryMappedFile content = cacheSubRegions[physicalPartition];
-        CacheContentReader contentReader = contentReaders[physicalPartition];
 
 
         PixelsCacheIdx cacheIdx = reader.read(key);
@@ -275,7 +335,7 @@ public class PartitionCacheReader implements CacheReader {
             return 0;
         }
         try {
-            contentReader.read(cacheIdx, buf);
+            contentReaderOf(physicalPartition, cacheIdx).read(cacheIdx.toTierIdx(), buf);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -317,7 +377,6 @@ public class PartitionCacheReader implements CacheReader {
         logger.trace("physical partition=" + physicalPartition);
         CacheIndexReader reader = readers[physicalPartition];
         MemoryMappedFile content = cacheSubRegions[physicalPartition];
-        CacheContentReader contentReader = contentReaders[physicalPartition];
 
         PixelsCacheIdx cacheIdx = reader.read(key);
 
@@ -335,7 +394,7 @@ public class PartitionCacheReader implements CacheReader {
             return 0;
         }
         try {
-            contentReader.read(cacheIdx, buf);
+            contentReaderOf(physicalPartition, cacheIdx).read(cacheIdx.toTierIdx(), buf);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -353,6 +412,7 @@ public class PartitionCacheReader implements CacheReader {
         private Function<MemoryMappedFile, CacheIndexReader> indexReaderFactory = RadixIndexReader::new;
         private String indexLoc;
         private String contentLoc;
+        private String ssdLoc = ConfigFactory.Instance().getProperty("cache.ssd.location");
 
 
         private Builder() {
@@ -385,6 +445,27 @@ public class PartitionCacheReader implements CacheReader {
         }
 
 
+        /**
+         * Enable the ssd tier, the content of the ssd tier is read from the files named physical-{partition}
+         * in the ssd location. The default location is cache.ssd.location, the ssd tier is disabled if it is empty.
+         */
+        public PartitionCacheReader.Builder setSsdLocation(String loc) {
+            this.ssdLoc = loc;
+
+            return this;
+        }
+
+        private CacheContentReader[] buildSsdContentReaders() throws IOException {
+            if (ssdLoc == null || ssdLoc.isEmpty()) {
+                return null;
+            }
+            CacheContentReader[] ssdContentReaders = new CacheContentReader[partitions + 1];
+            for (int i = 0; i < partitions + 1; ++i) {
+                ssdContentReaders[i] = new DiskCacheContentReader(Paths.get(ssdLoc, "physical-" + i).toString());
+            }
+            return ssdContentReaders;
+        }
+
         public PartitionCacheReader.Builder setIndexFile(MemoryMappedFile indexFile) {
 //            requireNonNull(indexFile, "index file is null");
             this.indexWholeRegion = indexFile;
@@ -434,7 +515,7 @@ public class PartitionCacheReader implements CacheReader {
                 contentReaders[i] = new DiskCacheContentReader(Paths.get(contentLoc, "physical-"+i).toString());
             }
             return new PartitionCacheReader(indexHeader, indexSubRegions, cacheHeader, cacheSubRegions,
-                    indexReaders, contentReaders, partitions);
+                    indexReaders, contentReaders, buildSsdContentReaders(), partitions);
         }
 
         public PartitionCacheReader build() {
@@ -460,8 +541,14 @@ public class PartitionCacheReader implements CacheReader {
                     e.printStackTrace();
                 }
             }
+            CacheContentReader[] ssdContentReaders = null;
+            try {
+                ssdContentReaders = buildSsdContentReaders();
+            } catch (IOException e) {
+                logger.error("failed to open the ssd tier in " + ssdLoc + ", only the memory tier is read", e);
+            }
             return new PartitionCacheReader(indexWholeRegion, indexSubRegions, cacheWholeRegion, cacheSubRegions,
-                    indexReaders, contentReaders, partitions);
+                    indexReaders, contentReaders, ssdContentReaders, partitions);
         }
     }
 
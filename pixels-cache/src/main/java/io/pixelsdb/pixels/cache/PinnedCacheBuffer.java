@@ -0,0 +1,86 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A zero-copy buffer over the cache content that is pinned in the shared memory.
+ * <p>
+ * While the buffer is pinned, the reader count of the index partition that the buffer belongs to
+ * is held, and the cache writer waits for the reader count to drop to zero before it recycles
+ * the partition (see {@link PixelsCacheUtil#beginIndexWrite(MemoryMappedFile, int)}).
+ * Therefore, the content of the buffer is not overwritten until this handle is closed.
+ * </p>
+ * <p>
+ * The handle must be closed as soon as the content is processed, typically in try-with-resources.
+ * If a handle is held longer than {@link PixelsCacheUtil#CACHE_PIN_TIMEOUT_MS}, the writer
+ * considers the reader as failed, clears the reader count and recycles the partition anyway,
+ * which can be detected by {@link #isValid()}. Closing such a stale handle does not decrease the
+ * reader count again, as the count is only decreased under the reader epoch that the handle was
+ * pinned in (see {@link PixelsCacheUtil#getReaderEpoch(MemoryMappedFile)}). This class is not thread safe.
+ * </p>
+ */
+public class PinnedCacheBuffer implements AutoCloseable
+{
+    private final ByteBuffer buffer;
+    private final MemoryMappedFile indexPartition;
+    private final int version;
+    private final short epoch;
+    private boolean released = false;
+
+    PinnedCacheBuffer(ByteBuffer buffer, MemoryMappedFile indexPartition, int version, short epoch)
+    {
+        this.buffer = buffer;
+        this.indexPartition = indexPartition;
+        this.version = version;
+        this.epoch = epoch;
+    }
+
+    /**
+     * @return the direct buffer over the cache content, it should not be accessed after close().
+     */
+    public ByteBuffer getBuffer()
+    {
+        return buffer;
+    }
+
+    /**
+     * @return true if the partition has not been recycled by the writer since this buffer was pinned.
+     */
+    public boolean isValid()
+    {
+        return !released && PixelsCacheUtil.getReaderEpoch(indexPartition) == epoch &&
+                PixelsCacheUtil.getIndexVersion(indexPartition) == version;
+    }
+
+    /**
+     * Unpin the buffer. Calling this method more than once has no further effect.
+     */
+    @Override
+    public void close()
+    {
+        if (!released)
+        {
+            released = true;
+            PixelsCacheUtil.decreaseReaderCount(indexPartition, epoch);
+        }
+    }
+}
@@ -62,6 +62,24 @@ public class PixelsCacheConfig
         return Long.parseLong(configFactory.getProperty("cache.size"));
     }
 
+    public boolean isSsdEnabled()
+    {
+        String ssdLocation = getSsdLocation();
+        return ssdLocation != null && !ssdLocation.isEmpty();
+    }
+
+    public String getSsdLocation()
+    {
+        return configFactory.getProperty("cache.ssd.location");
+    }
+
+    public long getSsdSize()
+    {
+        long size = Long.parseLong(configFactory.getProperty("cache.ssd.size"));
+        checkArgument(size > 0);
+        return size;
+    }
+
     public String getMetaHost()
     {
         return configFactory.getProperty("metadata.server.host");
@@ -111,4 +129,54 @@ public class PixelsCacheConfig
     {
         return Boolean.parseBoolean(configFactory.getProperty("cache.enabled"));
     }
+
+    public double getPlacementLoadFactor()
+    {
+        double loadFactor = Double.parseDouble(configFactory.getProperty("cache.placement.load.factor"));
+        checkArgument(loadFactor >= 1);
+        return loadFactor;
+    }
+
+    public boolean isAdmissionEnabled()
+    {
+        return Boolean.parseBoolean(configFactory.getProperty("cache.admission.enabled"));
+    }
+
+    public String getAccessMQLocation()
+    {
+        return configFactory.getProperty("cache.access.mq.location");
+    }
+
+    public long getAccessMQSize()
+    {
+        return Long.parseLong(configFactory.getProperty("cache.access.mq.size"));
+    }
+
+    public int getAccessReportInterval()
+    {
+        int interval = Integer.parseInt(configFactory.getProperty("cache.access.report.interval.seconds"));
+        checkArgument(interval > 0);
+        return interval;
+    }
+
+    public double getAccessDecay()
+    {
+        double decay = Double.parseDouble(configFactory.getProperty("cache.access.decay"));
+        checkArgument(decay > 0 && decay <= 1);
+        return decay;
+    }
+
+    public int getUpdateParallelism()
+    {
+        int parallelism = Integer.parseInt(configFactory.getProperty("cache.update.parallelism"));
+        checkArgument(parallelism > 0);
+        return parallelism;
+    }
+
+    public long getUpdatePrefetchSize()
+    {
+        long size = Long.parseLong(configFactory.getProperty("cache.update.prefetch.size"));
+        checkArgument(size > 0);
+        return size;
+    }
 }
@@ -30,6 +30,11 @@ import java.util.Objects;
 public class PixelsCacheIdx
 {
     static final int SIZE = Long.BYTES + Integer.BYTES;
+    /**
+     * The highest bit of the offset is set if the item is cached in the ssd tier instead of the memory tier.
+     * Thus the index has a single entry for each item and one index lookup resolves both tiers.
+     */
+    static final long SSD_TIER_FLAG = 1L << 63;
     public final long offset;
     public final int length;
     public final int partition; // physical
@@ -59,6 +64,29 @@ public class PixelsCacheIdx
 
     }
 
+    /**
+     * @param offset the offset in the content region of the ssd tier
+     * @param length the length of the cached item
+     * @return the cache idx of the item in the ssd tier
+     */
+    public static PixelsCacheIdx ofSsdTier(long offset, int length)
+    {
+        return new PixelsCacheIdx(offset | SSD_TIER_FLAG, length);
+    }
+
+    public boolean isSsdTier()
+    {
+        return (offset & SSD_TIER_FLAG) != 0;
+    }
+
+    /**
+     * @return the cache idx with the offset in the content region of the tier, i.e., without the tier flag
+     */
+    public PixelsCacheIdx toTierIdx()
+    {
+        return isSsdTier() ? new PixelsCacheIdx(offset & ~SSD_TIER_FLAG, length, partition) : this;
+    }
+
     public void getBytes(ByteBuffer cacheIdxBuffer)
     {
         cacheIdxBuffer.clear();
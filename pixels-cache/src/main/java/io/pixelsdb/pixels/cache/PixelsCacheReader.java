@@ -42,27 +42,6 @@ public class PixelsCacheReader
     private final MemoryMappedFile cacheFile;
     private final MemoryMappedFile indexFile;
 
-    /**
-     * <p>
-     *     A node can have at most 256 children, plus an edge (a segment of
-     *     lookup key). Each child is 8 bytes.
-     * </p>
-     * <p>
-     *     In pixels, where will be one PixelsCacheReader on each split. And each
-     *     split is supposed to be processed by one single thread. There are
-     *     typically 10 - 200 concurrent threads (splits) on a machine. So that it
-     *     is not a problem to allocate nodeData in each PixelsCacheReader instance.
-     *     By this, we can avoid frequent memory allocation in the search() method.
-     * </p>
-     * <p>
-     *     For the edge, although PixelsRadix can support 1MB edge length, we only
-     *     use 12 byte path (PixelsCacheKey). That means no edges can exceeds 12 bytes.
-     *     So that 16 bytes is more than enough.
-     * </p>
-     */
-    private byte[] nodeData = new byte[256 * 8 + 16];
-    private ByteBuffer childrenBuffer = ByteBuffer.wrap(nodeData);
-
     private ByteBuffer keyBuffer = ByteBuffer.allocate(PixelsCacheKey.SIZE).order(ByteOrder.BIG_ENDIAN);
 
 //    static
@@ -221,14 +200,12 @@ public class PixelsCacheReader
         // TODO: root currently does not have edge, which is not efficient in some cases.
         int currentNodeHeader = indexFile.getInt(currentNodeOffset);
         dramAccessCounter++;
-        int currentNodeChildrenNum = currentNodeHeader & 0x000001FF;
-        int currentNodeEdgeSize = (currentNodeHeader & 0x7FFFFE00) >>> 9;
+        int currentNodeChildrenNum = RadixIndexLayout.childrenNum(currentNodeHeader);
+        int currentNodeEdgeSize = RadixIndexLayout.edgeSize(currentNodeHeader);
         if (currentNodeChildrenNum == 0 && currentNodeEdgeSize == 0)
         {
             return null;
         }
-        indexFile.getBytes(currentNodeOffset + 4, this.nodeData, 0, currentNodeChildrenNum * 8);
-        dramAccessCounter++;
         radixLevel++;
 
         // search
@@ -236,24 +213,10 @@ public class PixelsCacheReader
         outer_loop:
         while (bytesMatched < keyLen)
         {
-            // search each child for the matching node
-            long matchingChildOffset = 0L;
-            childrenBuffer.position(0);
-            childrenBuffer.limit(currentNodeChildrenNum * 8);
-            // linearly scan all the children
-            for (int i = 0; i < currentNodeChildrenNum; i++)
-            {
-                // long is 8 byte, which is 64 bit
-                long child = childrenBuffer.getLong();
-                // first byte is matching byte
-                byte leader = (byte) ((child >>> 56) & 0xFF);
-                if (leader == keyBuffer.get(bytesMatched))
-                {
-                    // child last 7 bytes is grandson's offset, that is, the address is 7-bytes long
-                    matchingChildOffset = child & 0x00FFFFFFFFFFFFFFL;
-                    break;
-                }
-            }
+            // find the matching child by the node type, the children are read in place.
+            long matchingChildOffset = RadixIndexLayout.findChild(
+                    indexFile, currentNodeOffset, currentNodeHeader, keyBuffer.get(bytesMatched));
+            dramAccessCounter++;
             if (matchingChildOffset == 0)
             {
                 break;
@@ -263,13 +226,8 @@ public class PixelsCacheReader
             bytesMatchedInNodeFound = 0;
             currentNodeHeader = indexFile.getInt(currentNodeOffset);
             dramAccessCounter++;
-            currentNodeChildrenNum = currentNodeHeader & 0x000001FF;
-            currentNodeEdgeSize = (currentNodeHeader & 0x7FFFFE00) >>> 9;
-            // read the children and edge in one memory access.
-            indexFile.getBytes(currentNodeOffset + 4,
-                    this.nodeData, 0, currentNodeChildrenNum * 8 + currentNodeEdgeSize);
-            dramAccessCounter++;
-            int edgeEndOffset = currentNodeChildrenNum * 8 + currentNodeEdgeSize;
+            currentNodeEdgeSize = RadixIndexLayout.edgeSize(currentNodeHeader);
+            long edgeOffset = RadixIndexLayout.edgeOffset(currentNodeOffset, currentNodeHeader);
             /**
              * The first byte is matched in the child leader of the parent node,
              * therefore we start the matching from the second byte in edge.
@@ -277,13 +235,10 @@ public class PixelsCacheReader
              */
             bytesMatched++;
             bytesMatchedInNodeFound++;
-            // now we are visiting the edge! rather than children data
-            // it seems between children and edge, there is a one byte gap?
-            // or the first byte of the edge does not matter here anyway
-            for (int i = currentNodeChildrenNum * 8 + 1; i < edgeEndOffset && bytesMatched < keyLen; i++)
+            for (int i = 1; i < currentNodeEdgeSize && bytesMatched < keyLen; i++)
             {
                 // the edge is shared across this node, so the edge should be fully matched
-                if (this.nodeData[i] != keyBuffer.get(bytesMatched))
+                if (indexFile.getByte(edgeOffset + i) != keyBuffer.get(bytesMatched))
                 {
                     break outer_loop;
                 }
@@ -299,13 +254,11 @@ public class PixelsCacheReader
         if (bytesMatched == keyLen && bytesMatchedInNodeFound == currentNodeEdgeSize)
         {
             // if the current node is leaf node.
-            if (((currentNodeHeader >>> 31) & 1) > 0)
+            if (RadixIndexLayout.isKey(currentNodeHeader))
             {
-                byte[] idx = new byte[12];
-                indexFile.getBytes(currentNodeOffset + 4 + (currentNodeChildrenNum * 8) + currentNodeEdgeSize,
-                        idx, 0, 12);
+                PixelsCacheIdx cacheIdx = RadixIndexLayout.getValue(indexFile,
+                        RadixIndexLayout.edgeOffset(currentNodeOffset, currentNodeHeader) + currentNodeEdgeSize);
                 dramAccessCounter++;
-                PixelsCacheIdx cacheIdx = new PixelsCacheIdx(idx);
                 cacheIdx.dramAccessCount = dramAccessCounter;
                 cacheIdx.radixLevel = radixLevel;
                 return cacheIdx;
@@ -19,21 +19,28 @@
  */
 package io.pixelsdb.pixels.cache;
 
+import io.etcd.jetcd.KeyValue;
 import io.pixelsdb.pixels.common.exception.CacheException;
+import io.pixelsdb.pixels.common.metadata.domain.Compact;
 import io.pixelsdb.pixels.common.utils.Constants;
+import io.pixelsdb.pixels.common.utils.EtcdUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * pixels cache header
  * index:
- * - HEADER: MAGIC(6 bytes), RW_FLAG(1 byte), READER_COUNT(3 bytes), VERSION(4 bytes)
+ * - HEADER: MAGIC(6 bytes), RW_FLAG(1 byte), READER_COUNT(3 bytes), VERSION(4 bytes), READER_EPOCH(2 bytes)
  * - RADIX
  * cache:
  * - HEADER: MAGIC(6 bytes), STATUS(2 bytes), SIZE(8 bytes)
@@ -71,8 +78,8 @@ public class PixelsCacheUtil
     public static final int ZERO_READER_COUNT_WITH_RW_FLAG;
     public static final int READER_COUNT_RIGHT_SHIFT_BITS;
     /**
-     * We only use the first 14 bytes in the index {magic(6)+rw_flag(1)+reader_count(3)+version(4)}
-     * for metadata header, but we start radix tree from offset 16 for word alignment.
+     * We only use the first 16 bytes in the index {magic(6)+rw_flag(1)+reader_count(3)+version(4)+reader_epoch(2)}
+     * for metadata header, and we start radix tree from offset 16.
      */
     public static final int INDEX_RADIX_OFFSET = 16;
     /**
@@ -90,6 +97,12 @@ public class PixelsCacheUtil
      */
     public static final int CACHE_READ_LEASE_MS = 100;
 
+    /**
+     * The max time in millis that the cache writer waits for the pinned zero-copy
+     * reads (see {@link PinnedCacheBuffer}) on a partition to be released.
+     */
+    public static final int CACHE_PIN_TIMEOUT_MS = 10000;
+
     static
     {
         if (MemoryMappedFile.getOrder() == ByteOrder.LITTLE_ENDIAN)
@@ -152,6 +165,10 @@ public class PixelsCacheUtil
         partitionedIndexFile.setIntVolatile(16, version);
     }
 
+    public static int getPartitionedIndexFileVersion(MemoryMappedFile partitionedIndexFile) {
+        return partitionedIndexFile.getIntVolatile(16);
+    }
+
     public static void setFirstAndFree(MemoryMappedFile partitionedIndexFile, short free, short start) {
         int freeAndStart = ((int) free) << 16 | ((int) start);
         partitionedIndexFile.setIntVolatile(20, freeAndStart);
@@ -249,6 +266,19 @@ public class PixelsCacheUtil
 
      // blocking call
     public static void beginIndexWrite(MemoryMappedFile indexFile) throws InterruptedException
+    {
+        beginIndexWrite(indexFile, CACHE_READ_LEASE_MS);
+    }
+
+    /**
+     * Set the rw flag and wait for the existing readers, including the pinned zero-copy reads,
+     * to finish.
+     * @param indexFile the index file or index partition.
+     * @param timeoutMs the max time to wait.
+     * @return true if the readers finished in time, false if the reader count is cleared on timeout.
+     * @throws InterruptedException
+     */
+    public static boolean beginIndexWrite(MemoryMappedFile indexFile, int timeoutMs) throws InterruptedException
     {
         // Set the rw flag.
         indexFile.setByteVolatile(6, (byte) 1);
@@ -259,19 +289,66 @@ public class PixelsCacheUtil
             /**
              * Wait for the existing readers to finish.
              * As rw flag has been set, there will be no new readers,
-             * the existing readers should finished cache reading in
-             * 10s (10000ms). If the reader can not finish cache reading
-             * in 10s, it is considered as failed.
+             * the existing readers should finish cache reading in
+             * timeoutMs. If the reader can not finish cache reading
+             * in time, it is considered as failed.
              */
             Thread.sleep(sleepMs);
             waitMs += sleepMs;
-            if (waitMs > CACHE_READ_LEASE_MS)
+            if (waitMs > timeoutMs)
             {
+                /*
+                 * Advance the reader epoch before clearing the reader count, so that the readers
+                 * holding the cleared count do not decrease the count of the readers coming later.
+                 */
+                indexFile.setShortVolatile(14, (short) (getReaderEpoch(indexFile) + 1));
                 // clear reader count to continue writing.
                 indexFile.setIntVolatile(6, ZERO_READER_COUNT_WITH_RW_FLAG);
-                break;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The reader epoch is advanced each time the writer clears the reader count on timeout in
+     * {@link #beginIndexWrite(MemoryMappedFile, int)}. A reader records the epoch after it increases
+     * the reader count, and only decreases the count if the epoch is not changed.
+     * @param indexFile the index file or index partition.
+     * @return the current reader epoch.
+     */
+    public static short getReaderEpoch(MemoryMappedFile indexFile)
+    {
+        return indexFile.getShortVolatile(14);
+    }
+
+    /**
+     * Decrease the reader count of the index file by one, if it is positive and the reader count
+     * has not been cleared by the writer since the reader increased it.
+     * <p>
+     * The writer clears the count while the rw flag is set, so that no new reader increases the
+     * count before the clearing is visible to this method.
+     * </p>
+     * @param indexFile the index file or index partition.
+     * @param epoch the reader epoch when the reader count was increased.
+     * @return true if the reader count is decreased, false if it was cleared by the writer.
+     */
+    public static boolean decreaseReaderCount(MemoryMappedFile indexFile, short epoch)
+    {
+        if (getReaderEpoch(indexFile) != epoch)
+        {
+            return false;
+        }
+        int v = indexFile.getIntVolatile(6);
+        while ((v & READER_COUNT_MASK) > 0)
+        {
+            if (indexFile.compareAndSwapInt(6, v, v - READER_COUNT_INC))
+            {
+                return true;
             }
+            v = indexFile.getIntVolatile(6);
         }
+        return false;
     }
 
     // eliminate reader count, so writer only sleep for LEASE*2 time
@@ -414,36 +491,22 @@ public class PixelsCacheUtil
         node.offset = nodeOffset;
         int nodeHeader = indexFile.getInt(nodeOffset);
         dramAccessCounter++;
-        int nodeChildrenNum = nodeHeader & 0x000001FF;
-        int nodeEdgeSize = (nodeHeader & 0x7FFFFE00) >>> 9;
-
-        byte[] childrenData = new byte[nodeChildrenNum * 8];
-        indexFile.getBytes(nodeOffset + 4, childrenData, 0, nodeChildrenNum * 8);
-        /**
-         * To ensure the consistent endian (big-endian) in Java,
-         * we use ByteBuffer to wrap the bytes instead of directly getLong() from indexFile.
-         */
-        ByteBuffer childrenBuffer = ByteBuffer.wrap(childrenData);
-        long[] children = new long[nodeChildrenNum];
-        for (int i = 0; i < nodeChildrenNum; ++i)
-        {
-            children[i] = childrenBuffer.getLong();
-        }
+        int nodeEdgeSize = RadixIndexLayout.edgeSize(nodeHeader);
+
+        long[] children = RadixIndexLayout.getChildren(indexFile, nodeOffset, nodeHeader);
         dramAccessCounter++;
+        long edgeOffset = RadixIndexLayout.edgeOffset(nodeOffset, nodeHeader);
         byte[] edge = new byte[nodeEdgeSize];
-        indexFile.getBytes(nodeOffset + 4 + nodeChildrenNum * 8, edge, 0, nodeEdgeSize);
+        indexFile.getBytes(edgeOffset, edge, 0, nodeEdgeSize);
         dramAccessCounter++;
         node.setEdge(edge);
 
-        if (((nodeHeader >>> 31) & 1) > 0)
+        if (RadixIndexLayout.isKey(nodeHeader))
         {
             node.setKey(true);
             // read value
-            byte[] idx = new byte[12];
-            indexFile.getBytes(nodeOffset + 4 + (nodeChildrenNum * 8) + nodeEdgeSize,
-                    idx, 0, 12);
+            PixelsCacheIdx cacheIdx = RadixIndexLayout.getValue(indexFile, edgeOffset + nodeEdgeSize);
             dramAccessCounter++;
-            PixelsCacheIdx cacheIdx = new PixelsCacheIdx(idx);
             cacheIdx.dramAccessCount = dramAccessCounter;
             cacheIdx.radixLevel = level;
             node.setValue(cacheIdx);
@@ -461,6 +524,66 @@ public class PixelsCacheUtil
         // TODO: flush radix is currently implemented in PixelsCacheWriter, to be moved here.
     }
 
+    /**
+     * Get the columnlets to be cached on the node. If the cache coordinator has planned the columnlets
+     * for this node by the access frequencies (cache.admission.enabled=true), the planned columnlets are
+     * returned. Otherwise, the columnlets before the cache border in the compact layout are returned.
+     * @param etcdUtil the etcd util
+     * @param version the layout version to be cached
+     * @param host the host name of the node
+     * @param compact the compact layout of the version
+     * @return the columnlets in the format of rowGroupId:columnId
+     */
+    public static List<String> getCachedColumnlets(EtcdUtil etcdUtil, int version, String host, Compact compact)
+    {
+        KeyValue keyValue = etcdUtil.getKeyValue(Constants.CACHE_PLAN_LITERAL + version + "_" + host);
+        if (keyValue != null)
+        {
+            String planStr = keyValue.getValue().toString(StandardCharsets.UTF_8);
+            if (!planStr.isEmpty())
+            {
+                return Arrays.asList(planStr.split(";"));
+            }
+        }
+        return compact.getColumnletOrder().subList(0, compact.getCacheBorder());
+    }
+
+    /**
+     * Get the warm columnlets to be cached in the ssd tier on the node. If the cache coordinator has planned
+     * the ssd tier for this node by the access frequencies, the planned columnlets are returned, which are
+     * the next-best columnlets after the ones cached in memory. Otherwise, the columnlets in the compact
+     * layout that are not cached in memory are returned in the columnlet order of the compact layout.
+     * @param etcdUtil the etcd util
+     * @param version the layout version to be cached
+     * @param host the host name of the node
+     * @param compact the compact layout of the version
+     * @param cachedColumnlets the columnlets cached in memory, returned by getCachedColumnlets
+     * @return the columnlets in the format of rowGroupId:columnId
+     */
+    public static List<String> getSsdColumnlets(EtcdUtil etcdUtil, int version, String host, Compact compact,
+                                                List<String> cachedColumnlets)
+    {
+        KeyValue keyValue = etcdUtil.getKeyValue(Constants.CACHE_SSD_PLAN_LITERAL + version + "_" + host);
+        if (keyValue != null)
+        {
+            String planStr = keyValue.getValue().toString(StandardCharsets.UTF_8);
+            if (!planStr.isEmpty())
+            {
+                return Arrays.asList(planStr.split(";"));
+            }
+        }
+        Set<String> hot = new HashSet<>(cachedColumnlets);
+        List<String> warm = new ArrayList<>();
+        for (String columnlet : compact.getColumnletOrder())
+        {
+            if (!hot.contains(columnlet))
+            {
+                warm.add(columnlet);
+            }
+        }
+        return warm;
+    }
+
     public static void setCacheStatus(MemoryMappedFile cacheFile, short status)
     {
         cacheFile.setShortVolatile(6, status);
@@ -45,7 +45,7 @@ import static com.google.common.base.Preconditions.checkArgument;
  * @author guodong
  * @author hank
  */
-public class PixelsCacheWriter
+public class PixelsCacheWriter implements CacheWriter
 {
     private final static Logger logger = LogManager.getLogger(PixelsCacheWriter.class);
 
@@ -65,6 +65,7 @@ public class PixelsCacheWriter
     private long allocatedIndexOffset = PixelsCacheUtil.INDEX_RADIX_OFFSET;
     private long cacheOffset = PixelsCacheUtil.CACHE_DATA_OFFSET; // this is only used in the write() method.
     private ByteBuffer nodeBuffer = ByteBuffer.allocate(8 * 256);
+    private long[] childIds = new long[256];
     private ByteBuffer cacheIdxBuffer = ByteBuffer.allocate(PixelsCacheIdx.SIZE);
     private Set<String> cachedColumnlets = new HashSet<>();
 
@@ -163,6 +164,7 @@ public class PixelsCacheWriter
             MemoryMappedFile cacheFile = new MemoryMappedFile(builderCacheLocation, builderCacheSize);
             MemoryMappedFile indexFile = new MemoryMappedFile(builderIndexLocation, builderIndexSize);
             PixelsRadix radix;
+            EtcdUtil etcdUtil = EtcdUtil.Instance();
             // check if cache and index exists.
             Set<String> cachedColumnlets = new HashSet<>();
             // if overwrite is not true, and cache and index file already exists, reconstruct radix from existing index.
@@ -177,8 +179,8 @@ public class PixelsCacheWriter
                 Layout cachedLayout = metadataService.getLayout(
                         cacheConfig.getSchema(), cacheConfig.getTable(), cachedVersion);
                 Compact compact = cachedLayout.getCompactObject();
-                int cacheBorder = compact.getCacheBorder();
-                cachedColumnlets.addAll(compact.getColumnletOrder().subList(0, cacheBorder));
+                cachedColumnlets.addAll(PixelsCacheUtil.getCachedColumnlets(
+                        etcdUtil, cachedVersion, builderHostName, compact));
                 metadataService.shutdown();
             }
             //   else, create a new radix tree, and initialize the index and cache file.
@@ -187,7 +189,6 @@ public class PixelsCacheWriter
                 radix = new PixelsRadix();
                 PixelsCacheUtil.initialize(indexFile, cacheFile);
             }
-            EtcdUtil etcdUtil = EtcdUtil.Instance();
 
             Storage storage = StorageFactory.Instance().getStorage(cacheConfig.getStorageScheme());
 
@@ -206,6 +207,12 @@ public class PixelsCacheWriter
         return indexFile;
     }
 
+    @Override
+    public int getCacheVersion()
+    {
+        return PixelsCacheUtil.getIndexVersion(indexFile);
+    }
+
     /**
      * DO NOT USE THIS METHOD. Only for unit test.
      * @return
@@ -321,8 +328,7 @@ public class PixelsCacheWriter
         int status = 0;
         // get the new caching layout
         Compact compact = layout.getCompactObject();
-        int cacheBorder = compact.getCacheBorder();
-        List<String> cacheColumnletOrders = compact.getColumnletOrder().subList(0, cacheBorder);
+        List<String> cacheColumnletOrders = PixelsCacheUtil.getCachedColumnlets(etcdUtil, version, host, compact);
         // set rwFlag as write
         logger.debug("Set index rwFlag as write");
         try
@@ -429,44 +435,55 @@ public class PixelsCacheWriter
          * Get the new caching layout.
          */
         Compact compact = layout.getCompactObject();
-        int cacheBorder = compact.getCacheBorder();
-        List<String> nextVersionCached = compact.getColumnletOrder().subList(0, cacheBorder);
+        List<String> nextVersionCached = PixelsCacheUtil.getCachedColumnlets(etcdUtil, version, host, compact);
         /**
          * Prepare structures for the survived and new coming cache elements.
+         * A columnlet survives if it is cached for the same file in the current version, so that the
+         * files that stay on this node do not reload their cached columnlets, and the files newly
+         * allocated to this node load all their columnlets. Files that left this node are evicted.
          */
-        List<String> survivedColumnlets = new ArrayList<>();
-        List<String> newCachedColumnlets = new ArrayList<>();
+        List<ColumnletId> nextVersionColumnlets = new ArrayList<>(nextVersionCached.size());
         for (String columnlet : nextVersionCached)
         {
-            if (this.cachedColumnlets.contains(columnlet))
-            {
-                survivedColumnlets.add(columnlet);
-            }
-            else
-            {
-                newCachedColumnlets.add(columnlet);
-            }
+            String[] columnletIdStr = columnlet.split(":");
+            nextVersionColumnlets.add(new ColumnletId(
+                    Short.parseShort(columnletIdStr[0]), Short.parseShort(columnletIdStr[1]), false));
         }
-        this.cachedColumnlets.clear();
         PixelsRadix oldRadix = radix;
-        List<PixelsCacheEntry> survivedIdxes = new ArrayList<>(survivedColumnlets.size()*files.length);
+        List<PixelsCacheEntry> survivedIdxes = new ArrayList<>(nextVersionColumnlets.size()*files.length);
+        // key: file, value: the columnlets of the file to be loaded.
+        Map<String, List<ColumnletId>> newColumnlets = new LinkedHashMap<>();
+        int numSurvived = 0, numNew = 0;
         for (String file : files)
         {
             PixelsPhysicalReader physicalReader = new PixelsPhysicalReader(storage, file);
             // TODO: in case of block id was changed, the survived columnlets in this block can not survive in the cache update.
             // This problem only affects the efficiency, but it is better to resolve it.
             long blockId = physicalReader.getCurrentBlockId();
-            for (String survivedColumnlet : survivedColumnlets)
+            physicalReader.close();
+            List<ColumnletId> newColumnletsOfFile = new ArrayList<>();
+            for (ColumnletId columnletId : nextVersionColumnlets)
             {
-                String[] columnletIdStr = survivedColumnlet.split(":");
-                short rowGroupId = Short.parseShort(columnletIdStr[0]);
-                short columnId = Short.parseShort(columnletIdStr[1]);
-                PixelsCacheIdx curCacheIdx = oldRadix.get(blockId, rowGroupId, columnId);
-                survivedIdxes.add(
-                        new PixelsCacheEntry(new PixelsCacheKey(
-                                physicalReader.getCurrentBlockId(), rowGroupId, columnId), curCacheIdx));
+                PixelsCacheIdx curCacheIdx = oldRadix.get(blockId, columnletId.rowGroupId, columnletId.columnId);
+                if (curCacheIdx != null)
+                {
+                    survivedIdxes.add(new PixelsCacheEntry(new PixelsCacheKey(
+                            blockId, columnletId.rowGroupId, columnletId.columnId), curCacheIdx));
+                    numSurvived++;
+                }
+                else
+                {
+                    newColumnletsOfFile.add(columnletId);
+                    numNew++;
+                }
+            }
+            if (!newColumnletsOfFile.isEmpty())
+            {
+                newColumnlets.put(file, newColumnletsOfFile);
             }
         }
+        logger.debug(numSurvived + " cached columnlets survived, " + numNew + " columnlets to be loaded");
+        this.cachedColumnlets.clear();
         // ascending order according to the offset in cache file.
         Collections.sort(survivedIdxes);
 
@@ -506,11 +523,6 @@ public class PixelsCacheWriter
         oldRadix.removeAll();
         PixelsCacheUtil.setCacheStatus(cacheFile, PixelsCacheUtil.CacheStatus.OK.getId());
         PixelsCacheUtil.setCacheSize(cacheFile, newCacheOffset);
-        // save the survived columnlets into cachedColumnlets.
-        for (String survivedColumnlet : survivedColumnlets)
-        {
-            this.cachedColumnlets.add(survivedColumnlet);
-        }
         logger.debug("Cache compaction finished, index ends at offset: " + currentIndexOffset);
 
         /**
@@ -521,8 +533,9 @@ public class PixelsCacheWriter
         boolean enableAbsoluteBalancer = Boolean.parseBoolean(
                 ConfigFactory.Instance().getProperty("enable.absolute.balancer"));
         outer_loop:
-        for (String file : files)
+        for (Map.Entry<String, List<ColumnletId>> entry : newColumnlets.entrySet())
         {
+            String file = entry.getKey();
             if (enableAbsoluteBalancer && storage.hasLocality())
             {
                 // TODO: this is used for experimental purpose only.
@@ -533,11 +546,10 @@ public class PixelsCacheWriter
             int physicalLen;
             long physicalOffset;
             // update radix and cache content
-            for (int i = 0; i < newCachedColumnlets.size(); i++)
+            for (ColumnletId columnletId : entry.getValue())
             {
-                String[] columnletIdStr = newCachedColumnlets.get(i).split(":");
-                short rowGroupId = Short.parseShort(columnletIdStr[0]);
-                short columnId = Short.parseShort(columnletIdStr[1]);
+                short rowGroupId = columnletId.rowGroupId;
+                short columnId = columnletId.columnId;
                 PixelsProto.RowGroupFooter rowGroupFooter = pixelsPhysicalReader.readRowGroupFooter(rowGroupId);
                 PixelsProto.ColumnChunkIndex chunkIndex =
                         rowGroupFooter.getRowGroupIndexEntry().getColumnChunkIndexEntries(columnId);
@@ -594,11 +606,8 @@ public class PixelsCacheWriter
         }
         // flush index
         flushIndex();
-        // save the new cached columnlets into cachedColumnlets.
-        for (String newColumnlet : newCachedColumnlets)
-        {
-            this.cachedColumnlets.add(newColumnlet);
-        }
+        // save the cached columnlets of the new version into cachedColumnlets.
+        this.cachedColumnlets.addAll(nextVersionCached);
         // update cache version
         PixelsCacheUtil.setIndexVersion(indexFile, version);
         PixelsCacheUtil.setCacheStatus(cacheFile, PixelsCacheUtil.CacheStatus.OK.getId());
@@ -735,9 +744,8 @@ public class PixelsCacheWriter
 
     /**
      * Flush node content to the index file based on {@code currentIndexOffset}.
-     * Header(4 bytes) + [Child(8 bytes)]{n} + edge(variable size) + value(optional).
-     * Header: isKey(1 bit) + edgeSize(22 bits) + childrenSize(9 bits)
-     * Child: leader(1 byte) + child_offset(7 bytes)
+     * Header(4 bytes) + children(variable size) + edge(variable size) + value(optional).
+     * The layout of the children depends on the number of children, see {@link RadixIndexLayout}.
      */
     private boolean flushNode(RadixNode node)
     {
@@ -756,35 +764,26 @@ public class PixelsCacheWriter
             currentIndexOffset = node.offset;
         }
         allocatedIndexOffset += node.getLengthInBytes();
-        int header = 0;
-        int edgeSize = node.getEdge().length;
-        header = header | (edgeSize << 9);
-        int isKeyMask = 1 << 31;
-        if (node.isKey())
-        {
-            header = header | isKeyMask;
-        }
-        header = header | node.getChildren().size();
+        int childrenNum = node.getChildren().size();
+        int header = RadixIndexLayout.header(node.isKey(), node.getEdge().length, childrenNum);
         indexFile.setInt(currentIndexOffset, header);  // header
         currentIndexOffset += 4;
+        int n = 0;
         for (Byte key : node.getChildren().keySet())
         {   // children
-            RadixNode n = node.getChild(key);
-            int len = n.getLengthInBytes();
-            n.offset = allocatedIndexOffset;
+            RadixNode child = node.getChild(key);
+            int len = child.getLengthInBytes();
+            child.offset = allocatedIndexOffset;
             allocatedIndexOffset += len;
             long childId = 0L;
             childId = childId | ((long) key << 56);  // leader
-            childId = childId | n.offset;  // offset
-            nodeBuffer.putLong(childId);
-//            indexFile.putLong(currentIndexOffset, childId);
-//            currentIndexOffset += 8;
-        }
-        byte[] nodeBytes = new byte[node.getChildren().size() * 8];
-        nodeBuffer.flip();
-        nodeBuffer.get(nodeBytes);
-        indexFile.setBytes(currentIndexOffset, nodeBytes); // children
-        currentIndexOffset += nodeBytes.length;
+            childId = childId | child.offset;  // offset
+            childIds[n++] = childId;
+        }
+        RadixIndexLayout.putChildren(childIds, childrenNum, nodeBuffer);
+        int childrenSize = nodeBuffer.position();
+        indexFile.setBytes(currentIndexOffset, nodeBuffer.array(), 0, childrenSize); // children
+        currentIndexOffset += childrenSize;
         indexFile.setBytes(currentIndexOffset, node.getEdge()); // edge
         currentIndexOffset += node.getEdge().length;
         if (node.isKey())
@@ -1,6 +1,7 @@
 package io.pixelsdb.pixels.cache;
 
 
+import com.google.common.util.concurrent.RateLimiter;
 import io.etcd.jetcd.KeyValue;
 import io.pixelsdb.pixels.common.metadata.domain.Compact;
 import io.pixelsdb.pixels.common.metadata.domain.Layout;
@@ -16,16 +17,23 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
-public class PixelsPartitionCacheWriter {
+public class PixelsPartitionCacheWriter implements CacheWriter {
 
     private final static Logger logger = LogManager.getLogger(PixelsPartitionCacheWriter.class);
     private final MemoryMappedFile cacheBackFile;
@@ -34,7 +42,12 @@ public class PixelsPartitionCacheWriter {
     private final Storage storage;
     private final EtcdUtil etcdUtil;
     private final boolean writeContent;
+    /**
+     * The bandwidth limit of the cache writes in MiB/s. It is shared by all the partitions that are updated
+     * concurrently, so that the cache update does not take more than this bandwidth in total.
+     */
     private final int bandwidthLimit = 1000;
+    private final RateLimiter writeRateLimiter = RateLimiter.create(bandwidthLimit * 1024.0 * 1024.0);
 
 
     /**
@@ -46,7 +59,22 @@ public class PixelsPartitionCacheWriter {
     private final MemoryMappedFile[] indexPartitions; // length=partitions + 1
     // permanent disk copy of the index file
     private final MemoryMappedFile[] indexDiskPartitions; // length = partition
+    /**
+     * The content partitions of the ssd tier, null if the ssd tier is disabled. The warm columnlets,
+     * and the columnlets that do not fit in the memory cache partition, are written into the ssd tier.
+     */
+    private final MemoryMappedFile[] ssdPartitions; // length=partitions + 1
     private final Function<MemoryMappedFile, @Nullable CacheIndexWriter> indexWriterFactory;
+    /**
+     * The number of partitions updated concurrently in bulk load, or the number of files loaded ahead
+     * of the cache writes in incremental update.
+     */
+    private final int updateParallelism;
+    /**
+     * The maximum bytes of the columnlets loaded ahead of the cache writes in incremental update.
+     */
+    private final long updatePrefetchSize;
+    private final ExecutorService updateExecutor;
 
     private PixelsPartitionCacheWriter(MemoryMappedFile cacheFile,
                                        MemoryMappedFile indexFile,
@@ -54,12 +82,15 @@ public class PixelsPartitionCacheWriter {
                                        MemoryMappedFile[] cachePartitions,
                                        MemoryMappedFile[] indexPartitions,
                                        MemoryMappedFile[] indexDiskPartitions,
+                                       @Nullable MemoryMappedFile[] ssdPartitions,
                                        Function<MemoryMappedFile, @Nullable CacheIndexWriter> indexWriterFactory,
                                        Storage storage,
                                        int partitions,
                                        EtcdUtil etcdUtil,
                                        String host,
-                                       boolean writeContent)
+                                       boolean writeContent,
+                                       int updateParallelism,
+                                       long updatePrefetchSize)
     {
         this.cacheBackFile = cacheFile;
         this.indexBackFile = indexFile;
@@ -68,6 +99,7 @@ public class PixelsPartitionCacheWriter {
         this.cachePartitions = cachePartitions;
         this.indexPartitions = indexPartitions;
         this.indexDiskPartitions = indexDiskPartitions;
+        this.ssdPartitions = ssdPartitions;
 
         this.indexWriterFactory = indexWriterFactory;
 
@@ -77,11 +109,21 @@ public class PixelsPartitionCacheWriter {
         checkArgument(this.cachePartitions.length == this.partitions + 1);
         checkArgument(this.indexPartitions.length == this.partitions + 1);
         checkArgument(this.indexDiskPartitions.length == this.partitions);
+        checkArgument(this.ssdPartitions == null || this.ssdPartitions.length == this.partitions + 1);
 
 
         this.etcdUtil = etcdUtil;
         this.host = host;
         this.writeContent = writeContent;
+        checkArgument(updateParallelism > 0, "update parallelism should be positive");
+        this.updateParallelism = updateParallelism;
+        checkArgument(updatePrefetchSize > 0, "update prefetch size should be positive");
+        this.updatePrefetchSize = updatePrefetchSize;
+        this.updateExecutor = Executors.newFixedThreadPool(updateParallelism, runnable -> {
+            Thread thread = new Thread(runnable, "pixels-cache-update");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     public static class Builder
@@ -90,6 +132,8 @@ public class PixelsPartitionCacheWriter {
         private long builderCacheSize;
         private String builderIndexLocation = "";
         private String builderIndexDiskLocation = "";
+        private String builderSsdLocation = "";
+        private long builderSsdSize;
 
         private long builderIndexSize;
         private boolean builderOverwrite = true;
@@ -99,6 +143,9 @@ public class PixelsPartitionCacheWriter {
         // TODO: configure it with pixels.properties
         private Function<MemoryMappedFile, CacheIndexWriter> indexWriterFactory = RadixIndexWriter::new;
         private boolean writeContent = false;
+        // if not positive, cache.update.parallelism in the cache config is used
+        private int updateParallelism = 0;
+        private long updatePrefetchSize = 0;
 
         private Builder()
         {
@@ -122,6 +169,20 @@ public class PixelsPartitionCacheWriter {
             return this;
         }
 
+        public Builder setUpdateParallelism(int updateParallelism)
+        {
+            checkArgument(updateParallelism > 0, "update parallelism should be positive");
+            this.updateParallelism = updateParallelism;
+            return this;
+        }
+
+        public Builder setUpdatePrefetchSize(long updatePrefetchSize)
+        {
+            checkArgument(updatePrefetchSize > 0, "update prefetch size should be positive");
+            this.updatePrefetchSize = updatePrefetchSize;
+            return this;
+        }
+
         public Builder setPartitions(int partitions)
         {
             this.partitions = partitions;
@@ -162,6 +223,27 @@ public class PixelsPartitionCacheWriter {
             return this;
         }
 
+        /**
+         * Enable the ssd tier. The content partitions of the ssd tier are the files named physical-{partition}
+         * in the ssd location.
+         */
+        public Builder setSsdLocation(String ssdLocation)
+        {
+            checkArgument(ssdLocation != null && !ssdLocation.isEmpty(),
+                    "ssd location should not be empty");
+            this.builderSsdLocation = ssdLocation;
+
+            return this;
+        }
+
+        public Builder setSsdSize(long ssdSize)
+        {
+            checkArgument(ssdSize > 0, "ssd size should be positive");
+            this.builderSsdSize = MemoryMappedFile.roundTo4096(ssdSize);
+
+            return this;
+        }
+
         public Builder setIndexSize(long size)
         {
             checkArgument(size > 0, "index size should be positive");
@@ -191,6 +273,27 @@ public class PixelsPartitionCacheWriter {
             return this;
         }
 
+        private MemoryMappedFile[] buildSsdPartitions() throws Exception
+        {
+            if (builderSsdLocation.isEmpty())
+            {
+                return null;
+            }
+            long ssdPartitionSize = builderSsdSize / partitions;
+            checkArgument(ssdPartitionSize > PixelsCacheUtil.CACHE_DATA_OFFSET, "ssd size is too small");
+            MemoryMappedFile[] ssdPartitions = new MemoryMappedFile[partitions + 1];
+            for (int partition = 0; partition < partitions + 1; ++partition)
+            {
+                ssdPartitions[partition] = new MemoryMappedFile(
+                        Paths.get(builderSsdLocation, "physical-" + partition).toString(), ssdPartitionSize);
+                if (builderOverwrite)
+                {
+                    PixelsCacheUtil.initializeCacheFile(ssdPartitions[partition]);
+                }
+            }
+            return ssdPartitions;
+        }
+
         // TODO: what is build2 used for?
         public PixelsPartitionCacheWriter build2() throws Exception {
             long cachePartitionSize = builderCacheSize / partitions;
@@ -249,8 +352,10 @@ public class PixelsPartitionCacheWriter {
             Storage storage = StorageFactory.Instance().getStorage(cacheConfig.getStorageScheme());
 
             return new PixelsPartitionCacheWriter(cacheHeader, indexHeader, indexDiskHeader,
-                    cachePartitions, indexPartitions, indexDiskPartitions, indexWriterFactory, storage,
-                    partitions, etcdUtil, builderHostName, writeContent);
+                    cachePartitions, indexPartitions, indexDiskPartitions, buildSsdPartitions(), indexWriterFactory, storage,
+                    partitions, etcdUtil, builderHostName, writeContent,
+                    updateParallelism > 0 ? updateParallelism : cacheConfig.getUpdateParallelism(),
+                    updatePrefetchSize > 0 ? updatePrefetchSize : cacheConfig.getUpdatePrefetchSize());
         }
 
         public PixelsPartitionCacheWriter build()
@@ -286,7 +391,7 @@ public class PixelsPartitionCacheWriter {
             indexPartitions[partitions] = indexFile.regionView(PixelsCacheUtil.PARTITION_INDEX_META_SIZE +
                     partitions * indexPartitionSize, indexPartitionSize);
             cachePartitions[partitions] = cacheFile.regionView(PixelsCacheUtil.CACHE_DATA_OFFSET +
-                    partitions * indexPartitionSize, cachePartitionSize);
+                    partitions * cachePartitionSize, cachePartitionSize);
 
             // check if cache and index exists.
             // if overwrite is not true, and cache and index file already exists, reconstruct radix from existing index.
@@ -314,8 +419,10 @@ public class PixelsPartitionCacheWriter {
             Storage storage = StorageFactory.Instance().getStorage(cacheConfig.getStorageScheme());
 
             return new PixelsPartitionCacheWriter(cacheFile, indexFile, indexDiskFile,
-                    cachePartitions, indexPartitions, indexDiskPartitions, indexWriterFactory, storage,
-                    partitions, etcdUtil, builderHostName, writeContent);
+                    cachePartitions, indexPartitions, indexDiskPartitions, buildSsdPartitions(), indexWriterFactory, storage,
+                    partitions, etcdUtil, builderHostName, writeContent,
+                    updateParallelism > 0 ? updateParallelism : cacheConfig.getUpdateParallelism(),
+                    updatePrefetchSize > 0 ? updatePrefetchSize : cacheConfig.getUpdatePrefetchSize());
         }
     }
 
@@ -329,6 +436,22 @@ public class PixelsPartitionCacheWriter {
         return indexBackFile;
     }
 
+    @Override
+    public int getCacheVersion()
+    {
+        return PixelsCacheUtil.getPartitionedIndexFileVersion(indexBackFile);
+    }
+
+    /**
+     * The partitioned cache is empty until a version is loaded, as the version in the header of the index
+     * is set after all the partitions are updated.
+     */
+    @Override
+    public boolean isCacheEmpty()
+    {
+        return getCacheVersion() == 0;
+    }
+
     /**
      * <p>
      * This function is only used to bulk load all the cache content at one time.
@@ -355,9 +478,9 @@ public class PixelsPartitionCacheWriter {
             String fileStr = keyValue.getValue().toString(StandardCharsets.UTF_8);
             String[] files = fileStr.split(";");
             Compact compact = layout.getCompactObject();
-            int cacheBorder = compact.getCacheBorder();
-            List<String> cacheColumnletOrders = compact.getColumnletOrder().subList(0, cacheBorder);
-            return internalUpdateAll(version, cacheColumnletOrders, files);
+            List<String> cacheColumnletOrders = PixelsCacheUtil.getCachedColumnlets(etcdUtil, version, host, compact);
+            return internalUpdateAll(version, cacheColumnletOrders,
+                    getSsdColumnletOrders(version, cacheColumnletOrders, compact), files);
         }
         catch (IOException | InterruptedException e)
         {
@@ -381,9 +504,9 @@ public class PixelsPartitionCacheWriter {
             String fileStr = keyValue.getValue().toString(StandardCharsets.UTF_8);
             String[] files = fileStr.split(";");
             Compact compact = layout.getCompactObject();
-            int cacheBorder = compact.getCacheBorder();
-            List<String> cacheColumnletOrders = compact.getColumnletOrder().subList(0, cacheBorder);
-            return internalUpdateIncremental(version, cacheColumnletOrders, files);
+            List<String> cacheColumnletOrders = PixelsCacheUtil.getCachedColumnlets(etcdUtil, version, host, compact);
+            return internalUpdateIncremental(version, cacheColumnletOrders,
+                    getSsdColumnletOrders(version, cacheColumnletOrders, compact), files);
         }
         catch (IOException | InterruptedException e)
         {
@@ -392,12 +515,35 @@ public class PixelsPartitionCacheWriter {
         }
     }
 
+    /**
+     * The warm columnlets are planned by the cache coordinator as the next-best columnlets by the access
+     * frequencies after the hot columnlets cached in the memory tier. If there is no plan for this node,
+     * they are the columnlets in the compact layout that are not cached in the memory tier.
+     * They are written into the ssd tier in the planned order until it is full.
+     * @param version the layout version to be cached
+     * @param cacheColumnletOrders the hot columnlets cached in the memory tier
+     * @param compact the compact layout
+     * @return the warm columnlets for the ssd tier, or an empty list if the ssd tier is disabled
+     */
+    private List<String> getSsdColumnletOrders(int version, List<String> cacheColumnletOrders, Compact compact)
+    {
+        if (ssdPartitions == null)
+        {
+            return Collections.emptyList();
+        }
+        return PixelsCacheUtil.getSsdColumnlets(etcdUtil, version, host, compact, cacheColumnletOrders);
+    }
+
     // let the files be a dependency, better for test
     // bulkload will set free and start to the init state
     public int bulkLoad(int version, List<String> cacheColumnletOrders, String[] files) {
+        return bulkLoad(version, cacheColumnletOrders, Collections.emptyList(), files);
+    }
+
+    public int bulkLoad(int version, List<String> cacheColumnletOrders, List<String> ssdColumnletOrders, String[] files) {
         try
         {
-            return internalUpdateAll(version, cacheColumnletOrders, files);
+            return internalUpdateAll(version, cacheColumnletOrders, ssdColumnletOrders, files);
         }
         catch (IOException | InterruptedException e)
         {
@@ -407,9 +553,13 @@ public class PixelsPartitionCacheWriter {
     }
     // incremental load will update the cache based on last free+start version
     public int incrementalLoad(int version, List<String> cacheColumnletOrders, String[] files) {
+        return incrementalLoad(version, cacheColumnletOrders, Collections.emptyList(), files);
+    }
+
+    public int incrementalLoad(int version, List<String> cacheColumnletOrders, List<String> ssdColumnletOrders, String[] files) {
         try
         {
-            return internalUpdateIncremental(version, cacheColumnletOrders, files);
+            return internalUpdateIncremental(version, cacheColumnletOrders, ssdColumnletOrders, files);
         }
         catch (IOException | InterruptedException e)
         {
@@ -418,19 +568,23 @@ public class PixelsPartitionCacheWriter {
         }
     }
 
-    public int internalUpdateIncremental(int version, List<String> cacheColumnletOrders, String[] files) throws IOException, InterruptedException {
+    public int internalUpdateIncremental(int version, List<String> cacheColumnletOrders, List<String> ssdColumnletOrders,
+                                         String[] files) throws IOException, InterruptedException {
         // now we need to consider the protocol
         int status = 0;
         List<List<Short>> partitionRgIds = new ArrayList<>(partitions);
-        for (int i = 0; i < partitions; ++i) {
-            partitionRgIds.add(new ArrayList<>());
-        }
         List<List<Short>> partitionColIds = new ArrayList<>(partitions);
+        List<List<Short>> ssdPartitionRgIds = new ArrayList<>(partitions);
+        List<List<Short>> ssdPartitionColIds = new ArrayList<>(partitions);
         for (int i = 0; i < partitions; ++i) {
+            partitionRgIds.add(new ArrayList<>());
             partitionColIds.add(new ArrayList<>());
+            ssdPartitionRgIds.add(new ArrayList<>());
+            ssdPartitionColIds.add(new ArrayList<>());
         }
         // do a partition on layout+cacheColumnOrders by the hashcode
         constructPartitionRgAndCols(cacheColumnletOrders, files, partitionRgIds, partitionColIds);
+        constructPartitionRgAndCols(ssdColumnletOrders, files, ssdPartitionRgIds, ssdPartitionColIds);
         logger.debug("partition counts = " + Arrays.toString(partitionRgIds.stream().map(List::size).toArray()));
 
         // fetch the current free and start
@@ -449,11 +603,15 @@ public class PixelsPartitionCacheWriter {
             MemoryMappedFile freeIndexPartition = indexPartitions[free];
             MemoryMappedFile freeIndexDiskPartition = indexDiskPartitions[writeLogicalPartition];
             MemoryMappedFile freeCachePartition = cachePartitions[free];
+            MemoryMappedFile freeSsdPartition = ssdPartitions == null ? null : ssdPartitions[free];
 
             // start update, write the update on `writeLogicalPartition` to `free`
+            // the partitions are rotated through the single free partition one after another,
+            // thus the files of the partition are loaded ahead in parallel instead.
             status = partitionUpdateAll(version, writeLogicalPartition, indexWriterFactory,
-                    freeIndexPartition, freeIndexDiskPartition, freeCachePartition,
-                    files, partitionRgIds.get(writeLogicalPartition), partitionColIds.get(writeLogicalPartition));
+                    freeIndexPartition, freeIndexDiskPartition, freeCachePartition, freeSsdPartition,
+                    files, partitionRgIds.get(writeLogicalPartition), partitionColIds.get(writeLogicalPartition),
+                    ssdPartitionRgIds.get(writeLogicalPartition), ssdPartitionColIds.get(writeLogicalPartition), true);
             if (status != 0) {
                 return status; // TODO: now a single partition fail will cause a full failure
             }
@@ -487,12 +645,27 @@ public class PixelsPartitionCacheWriter {
 
 
     // Note: the xxxPartition are guaranteed by the caller that they are safe to write anything
+    // the hot columnlets (rgIds, colIds) are written into the cachePartition in memory, and the warm columnlets
+    // (ssdRgIds, ssdColIds) are written into the ssdPartition. The columnlets in both tiers are put into the same
+    // index partition, so that the readers find them in one index lookup.
+    // if prefetch is true, the columnlets of the next files are loaded on the update executor while the
+    // columnlets of the current file are written, otherwise they are loaded by the calling thread.
     private int partitionUpdateAll(int version, int partition, java.util.function.Function<MemoryMappedFile, @Nullable CacheIndexWriter> indexWriterFactory,
                                    MemoryMappedFile indexPartition, MemoryMappedFile indexDiskPartition, MemoryMappedFile cachePartition,
-                                   String[] files, List<Short> rgIds, List<Short> colIds) throws IOException, InterruptedException {
+                                   @Nullable MemoryMappedFile ssdPartition, String[] files, List<Short> rgIds, List<Short> colIds,
+                                   List<Short> ssdRgIds, List<Short> ssdColIds, boolean prefetch)
+            throws IOException, InterruptedException {
         try {
             PixelsCacheUtil.beginIndexWriteNoReaderCount(indexDiskPartition);
-            PixelsCacheUtil.beginIndexWriteNoReaderCount(indexPartition);
+            /*
+             * The readers may still hold pinned zero-copy buffers (PinnedCacheBuffer) on this partition,
+             * which hold the reader count of the partition. Wait for them to be released before
+             * overwriting the cache content of this partition.
+             */
+            if (!PixelsCacheUtil.beginIndexWrite(indexPartition, PixelsCacheUtil.CACHE_PIN_TIMEOUT_MS)) {
+                logger.warn("Pinned cache buffers on partition " + partition + " are not released in " +
+                        PixelsCacheUtil.CACHE_PIN_TIMEOUT_MS + "ms, recycle it anyway.");
+            }
         } catch (InterruptedException e) {
             logger.error("Failed to get write permission on index disk partition " + partition, e);
             return -1;
@@ -501,65 +674,109 @@ public class PixelsPartitionCacheWriter {
         CacheIndexWriter indexWriter = indexWriterFactory.apply(indexDiskPartition);
 
         long currCacheOffset = PixelsCacheUtil.CACHE_DATA_OFFSET;
+        long currSsdOffset = PixelsCacheUtil.CACHE_DATA_OFFSET;
+        // the warm columnlets are not cached if the ssd tier is disabled
+        int numColumnlets = ssdPartition == null ? rgIds.size() : rgIds.size() + ssdRgIds.size();
+        short[] loadRgIds = new short[numColumnlets];
+        short[] loadColIds = new short[numColumnlets];
+        for (int i = 0; i < numColumnlets; ++i) {
+            boolean warm = i >= rgIds.size();
+            loadRgIds[i] = warm ? ssdRgIds.get(i - rgIds.size()) : rgIds.get(i);
+            loadColIds[i] = warm ? ssdColIds.get(i - rgIds.size()) : colIds.get(i);
+        }
 
         logger.debug("number of files=" + files.length);
-        logger.debug("rgId.size=" + rgIds.size() + " colId.size=" + colIds.size());
-
-//        int bandwidthLimit = 50; // 50 mib/s
-        long startTime = System.currentTimeMillis();
-        long windowWriteBytes = 0;
-        byte[] columnletBuf = new byte[1024 * 1024];
-        for (String file : files)
+        logger.debug("rgId.size=" + rgIds.size() + " colId.size=" + colIds.size() + " ssdRgId.size=" + ssdRgIds.size());
+
+        // at most updateParallelism files and updatePrefetchSize bytes are loaded ahead, which bounds the memory
+        // of the loaded columnlets. The files have the same layout, thus the bytes of a file to be loaded are
+        // estimated by the largest file loaded so far, and only one file is loaded ahead before the first one is loaded.
+        Deque<Future<LoadedColumnlets>> loading = new ArrayDeque<>();
+        int numLoading = 0;
+        long fileBytes = 0;
+        try
         {
-//            PixelsPhysicalReader pixelsPhysicalReader = new PixelsPhysicalReader(storage, file);
-            // FIXME: I tried to make Mock compatible with PixelsPhysicalReader at MockReader level, but it
-            //        seems too hard and the refactor of PixelsPhysicalReader. So now we have to uncomment to
-            //        use MockPixelsPhysicalReader
-            MockPixelsPhysicalReader pixelsPhysicalReader = new MockPixelsPhysicalReader(storage, file);
-
-            int physicalLen;
-            long physicalOffset;
-            // update radix and cache content
-            for (int i = 0; i < rgIds.size(); i++)
+            for (int f = 0; f < files.length; ++f)
             {
-                short rowGroupId = rgIds.get(i);
-                short columnId = colIds.get(i);
-                long blockId = pixelsPhysicalReader.getCurrentBlockId();
-                int columnletLen = pixelsPhysicalReader.read(rowGroupId, columnId, columnletBuf);
-
-                while (columnletBuf.length < columnletLen) {
-                    columnletBuf = new byte[columnletBuf.length * 2];
-                    columnletLen = pixelsPhysicalReader.read(rowGroupId, columnId, columnletBuf);
-                    logger.debug("increase columnletBuf size");
-                }
-                physicalLen = columnletLen;
-                if (currCacheOffset + physicalLen >= cachePartition.getSize())
-                {
-                    logger.warn("Cache writes have exceeded cache size. Break. Current size: " + currCacheOffset);
-                    return 2;
+                String file = files[f];
+                LoadedColumnlets loaded;
+                if (prefetch) {
+                    int maxLoading = fileBytes == 0 ? 1 :
+                            (int) Math.max(1, Math.min(updateParallelism, updatePrefetchSize / fileBytes));
+                    while (numLoading < files.length && numLoading - f < maxLoading) {
+                        String loadFile = files[numLoading++];
+                        loading.addLast(updateExecutor.submit(() -> loadColumnlets(loadFile, loadRgIds, loadColIds)));
+                    }
+                    loaded = loading.pollFirst().get();
+                    fileBytes = Math.max(fileBytes, loaded.bytes);
+                } else {
+                    loaded = loadColumnlets(file, loadRgIds, loadColIds);
                 }
-                indexWriter.put(new PixelsCacheKey(blockId, rowGroupId, columnId),
-                        new PixelsCacheIdx(currCacheOffset, physicalLen));
-                // TODO: uncomment it! we now test the index write first
-                if (writeContent) {
-                    cachePartition.setBytes(currCacheOffset, columnletBuf, 0, columnletLen); // sequential write pattern
-                    windowWriteBytes += columnletLen;
-                    if (windowWriteBytes / 1024.0 / 1024 / ((System.currentTimeMillis() - startTime) / 1000.0) > bandwidthLimit) {
-                        double writeMib = windowWriteBytes / 1024.0 / 1024;
-                        double expectTimeMili = writeMib / bandwidthLimit * 1000;
-//                        checkArgument(expectTimeMili > System.currentTimeMillis() - startTime);
-//                        logger.debug("trigger sleep " + windowWriteBytes / 1024.0 / 1024 / ((System.currentTimeMillis() - startTime) / 1000.0));
-//                        Thread.sleep((long) (expectTimeMili - System.currentTimeMillis() + startTime) * 2);
-                        Thread.sleep(100);
 
+                int physicalLen;
+                long physicalOffset;
+                // update radix and cache content
+                for (int i = 0; i < numColumnlets; i++)
+                {
+                    boolean warm = i >= rgIds.size();
+                    short rowGroupId = loadRgIds[i];
+                    short columnId = loadColIds[i];
+                    long blockId = loaded.blockId;
+                    byte[] columnletBuf = loaded.contents[i];
+                    int columnletLen = columnletBuf.length;
+                    physicalLen = columnletLen;
+                    boolean toSsd = warm;
+                    if (!toSsd && currCacheOffset + physicalLen >= cachePartition.getSize())
+                    {
+                        if (ssdPartition == null)
+                        {
+                            logger.warn("Cache writes have exceeded cache size. Break. Current size: " + currCacheOffset);
+                            return 2;
+                        }
+                        // demote the columnlet to the ssd tier instead of leaving it in the remote storage
+                        toSsd = true;
+                    }
+                    if (toSsd && currSsdOffset + physicalLen >= ssdPartition.getSize())
+                    {
+                        logger.warn("Cache writes have exceeded ssd cache size. Break. Current size: " + currSsdOffset);
+                        return 2;
+                    }
+                    MemoryMappedFile contentPartition = toSsd ? ssdPartition : cachePartition;
+                    physicalOffset = toSsd ? currSsdOffset : currCacheOffset;
+                    indexWriter.put(new PixelsCacheKey(blockId, rowGroupId, columnId), toSsd ?
+                            PixelsCacheIdx.ofSsdTier(physicalOffset, physicalLen) :
+                            new PixelsCacheIdx(physicalOffset, physicalLen));
+                    // TODO: uncomment it! we now test the index write first
+                    if (writeContent) {
+                        if (columnletLen > 0) {
+                            writeRateLimiter.acquire(columnletLen);
+                        }
+                        contentPartition.setBytes(physicalOffset, columnletBuf, 0, columnletLen); // sequential write pattern
+                    }
+                    logger.trace("Cache write: " + file + "-" + rowGroupId + "-" + columnId + ", ssd: " + toSsd +
+                            ", offset: " + physicalOffset + ", length: " + columnletLen);
+                    if (toSsd) {
+                        currSsdOffset += physicalLen;
+                    } else {
+                        currCacheOffset += physicalLen;
                     }
                 }
-                logger.trace(
-                        "Cache write: " + file + "-" + rowGroupId + "-" + columnId + ", offset: " + currCacheOffset + ", length: " + columnletLen);
-                currCacheOffset += physicalLen;
             }
         }
-        logger.debug("Cache writer ends at offset: " + currCacheOffset / 1024.0 / 1024.0 / 1024.0 + "GiB");
+        catch (ExecutionException e)
+        {
+            logger.error("Failed to load the columnlets of partition " + partition, e.getCause());
+            return -1;
+        }
+        finally
+        {
+            // cancel the loads in flight if the update is broken
+            for (Future<LoadedColumnlets> load : loading) {
+                load.cancel(true);
+            }
+        }
+        logger.debug("Cache writer ends at offset: " + currCacheOffset / 1024.0 / 1024.0 / 1024.0 + "GiB, ssd offset: " +
+                currSsdOffset / 1024.0 / 1024.0 / 1024.0 + "GiB");
 
         // first write to the indexDiskPartition
         // write the cache version
@@ -572,6 +789,10 @@ public class PixelsPartitionCacheWriter {
         PixelsCacheUtil.setIndexVersion(indexDiskPartition, version);
         PixelsCacheUtil.setCacheStatus(cachePartition, PixelsCacheUtil.CacheStatus.OK.getId());
         PixelsCacheUtil.setCacheSize(cachePartition, currCacheOffset);
+        if (ssdPartition != null) {
+            PixelsCacheUtil.setCacheStatus(ssdPartition, PixelsCacheUtil.CacheStatus.OK.getId());
+            PixelsCacheUtil.setCacheSize(ssdPartition, currSsdOffset);
+        }
 
         PixelsCacheUtil.endIndexWrite(indexDiskPartition);
 
@@ -579,13 +800,54 @@ public class PixelsPartitionCacheWriter {
         // TODO: ensure that the indexDiskPartition is flushed to the disk, so the index in memory is safe
         // then copy the indexDiskPartition to indexPartition in the tmpfs
         // Note: we should not copy serializeOffset bytes, it is not precise and some items might not be copied
-        indexPartition.copyMemory(indexDiskPartition.getAddress(), indexPartition.getAddress(), indexDiskPartition.getSize());
+        // Note: the rw flag, reader count and reader epoch in the header of the indexPartition are not copied,
+        // so that no reader comes in with the old version before the new version is set.
+        indexPartition.copyMemory(indexDiskPartition.getAddress(), indexPartition.getAddress(), 6);
+        indexPartition.copyMemory(indexDiskPartition.getAddress() + PixelsCacheUtil.INDEX_RADIX_OFFSET,
+                indexPartition.getAddress() + PixelsCacheUtil.INDEX_RADIX_OFFSET,
+                indexDiskPartition.getSize() - PixelsCacheUtil.INDEX_RADIX_OFFSET);
         PixelsCacheUtil.setIndexVersion(indexPartition, version);
         PixelsCacheUtil.endIndexWrite(indexPartition);
         return 0;
 
     }
 
+    /**
+     * The columnlets of a file loaded from the storage.
+     */
+    private static class LoadedColumnlets
+    {
+        final long blockId;
+        final byte[][] contents;
+        final long bytes;
+
+        LoadedColumnlets(long blockId, byte[][] contents)
+        {
+            this.blockId = blockId;
+            this.contents = contents;
+            long bytes = 0;
+            for (byte[] content : contents)
+            {
+                bytes += content.length;
+            }
+            this.bytes = bytes;
+        }
+    }
+
+    // each call has its own physical reader, so that the files can be loaded concurrently
+    private LoadedColumnlets loadColumnlets(String file, short[] rgIds, short[] colIds) throws IOException {
+//        PixelsPhysicalReader pixelsPhysicalReader = new PixelsPhysicalReader(storage, file);
+        // FIXME: I tried to make Mock compatible with PixelsPhysicalReader at MockReader level, but it
+        //        seems too hard and the refactor of PixelsPhysicalReader. So now we have to uncomment to
+        //        use MockPixelsPhysicalReader
+        MockPixelsPhysicalReader pixelsPhysicalReader = new MockPixelsPhysicalReader(storage, file);
+        byte[][] contents = new byte[rgIds.length][];
+        for (int i = 0; i < rgIds.length; ++i) {
+            contents[i] = pixelsPhysicalReader.read(rgIds[i], colIds[i]);
+        }
+        return new LoadedColumnlets(pixelsPhysicalReader.getCurrentBlockId(), contents);
+    }
+
     private void constructPartitionRgAndCols(List<String> cacheColumnletOrders, String[] files,
                                              List<List<Short>> partitionRgIds, List<List<Short>> partitionColIds) {
         ByteBuffer hashKeyBuf = ByteBuffer.allocate(2 + 2);
@@ -603,28 +865,45 @@ public class PixelsPartitionCacheWriter {
     }
 
     // bulk load method, it will write all the partitions at once.
-    private int internalUpdateAll(int version, List<String> cacheColumnletOrders, String[] files)
-            throws IOException, InterruptedException {
+    private int internalUpdateAll(int version, List<String> cacheColumnletOrders, List<String> ssdColumnletOrders,
+                                  String[] files) throws IOException, InterruptedException {
         int status = 0;
         List<List<Short>> partitionRgIds = new ArrayList<>(partitions);
-        for (int i = 0; i < partitions; ++i) {
-            partitionRgIds.add(new ArrayList<>());
-        }
         List<List<Short>> partitionColIds = new ArrayList<>(partitions);
+        List<List<Short>> ssdPartitionRgIds = new ArrayList<>(partitions);
+        List<List<Short>> ssdPartitionColIds = new ArrayList<>(partitions);
         for (int i = 0; i < partitions; ++i) {
+            partitionRgIds.add(new ArrayList<>());
             partitionColIds.add(new ArrayList<>());
+            ssdPartitionRgIds.add(new ArrayList<>());
+            ssdPartitionColIds.add(new ArrayList<>());
         }
         // do a partition on layout+cacheColumnOrders by the hashcode
         constructPartitionRgAndCols(cacheColumnletOrders, files, partitionRgIds, partitionColIds);
+        constructPartitionRgAndCols(ssdColumnletOrders, files, ssdPartitionRgIds, ssdPartitionColIds);
         logger.debug("partition counts = " + Arrays.toString(partitionRgIds.stream().map(List::size).toArray()));
 
-        // update region by region
+        // the partitions are independent in bulk load, update them concurrently.
+        // each partition is only blocked for the readers while it is being updated.
+        List<Future<Integer>> updates = new ArrayList<>(partitions);
         for (int partition = 0; partition < partitions; ++partition) {
-            status = partitionUpdateAll(version, partition, indexWriterFactory,
-                    indexPartitions[partition], indexDiskPartitions[partition], cachePartitions[partition],
-                    files, partitionRgIds.get(partition), partitionColIds.get(partition));
-            if (status != 0) {
-                return status; // TODO: now a single partition fail will cause a full failure
+            final int p = partition;
+            updates.add(updateExecutor.submit(() -> partitionUpdateAll(version, p, indexWriterFactory,
+                    indexPartitions[p], indexDiskPartitions[p], cachePartitions[p],
+                    ssdPartitions == null ? null : ssdPartitions[p],
+                    files, partitionRgIds.get(p), partitionColIds.get(p),
+                    ssdPartitionRgIds.get(p), ssdPartitionColIds.get(p), false)));
+        }
+        for (int partition = 0; partition < partitions; ++partition) {
+            int partitionStatus;
+            try {
+                partitionStatus = updates.get(partition).get();
+            } catch (ExecutionException e) {
+                logger.error("Failed to update partition " + partition, e.getCause());
+                partitionStatus = -1;
+            }
+            if (status == 0) {
+                status = partitionStatus; // TODO: now a single partition fail will cause a full failure
             }
         }
 
@@ -636,7 +915,13 @@ public class PixelsPartitionCacheWriter {
     {
         indexBackFile.unmap();
         indexDiskBackFile.unmap();
+        updateExecutor.shutdownNow();
         cacheBackFile.unmap();
+        if (ssdPartitions != null) {
+            for (MemoryMappedFile ssdPartition : ssdPartitions) {
+                ssdPartition.unmap();
+            }
+        }
     }
 
 
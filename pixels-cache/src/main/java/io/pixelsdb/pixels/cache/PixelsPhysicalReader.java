@@ -118,4 +118,14 @@ public class PixelsPhysicalReader
     {
         return physicalReader.getBlockId();
     }
+
+    public int getRowGroupNum()
+    {
+        return fileTail.getFooter().getRowGroupInfosCount();
+    }
+
+    public void close() throws IOException
+    {
+        physicalReader.close();
+    }
 }
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * The layout of the nodes in the serialized radix index, which is written by {@link RadixIndexWriter}
+ * and {@link PixelsCacheWriter}, and read by {@link RadixIndexReader} and {@link PixelsCacheReader}.
+ * <pre>
+ * node:
+ * - HEADER: isKey(1 bit) + nodeType(2 bits) + edgeSize(20 bits) + childrenNum(9 bits) (4 bytes)
+ * - CHILDREN: depends on the node type, see below
+ * - EDGE: edgeSize bytes, the first byte is the leader of this node in its parent
+ * - VALUE: the cache idx {offset(8), length(4)}, only if isKey
+ * child:
+ * - leader(1 byte) + child_offset(7 bytes), 0 means absent
+ * node types (similar to the adaptive radix tree):
+ * - NODE4: at most 4 children sorted by the leader, searched linearly
+ * - NODE16: at most 16 children sorted by the leader, binary searched
+ * - NODE48: at most 48 children, with a 256-byte child index before the children,
+ *   the i-th byte of which is 1 + the position of the child with leader i, or 0 if absent
+ * - NODE256: 256 children directly indexed by the leader
+ * </pre>
+ * The children and the value are big-endian (see RadixIndexEndianRewriter for the native reader).
+ * The readers locate the child by a single lookup in the direct-indexed nodes instead of scanning
+ * all the children, and read the fields in place from the index file.
+ */
+final class RadixIndexLayout
+{
+    static final int NODE_HEADER_SIZE = 4;
+    static final int NODE4 = 0;
+    static final int NODE16 = 1;
+    static final int NODE48 = 2;
+    static final int NODE256 = 3;
+    static final int CHILD_INDEX_SIZE = 256;
+    static final int CHILD_SIZE = 8;
+    static final long CHILD_OFFSET_MASK = 0x00FFFFFFFFFFFFFFL;
+
+    private static final int IS_KEY_MASK = 1 << 31;
+    private static final int NODE_TYPE_SHIFT = 29;
+    private static final int EDGE_SIZE_MASK = 0x1FFFFE00;
+    private static final int EDGE_SIZE_SHIFT = 9;
+    private static final int CHILDREN_NUM_MASK = 0x000001FF;
+    private static final boolean NATIVE_BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+
+    private RadixIndexLayout() { }
+
+    static int nodeType(int childrenNum)
+    {
+        if (childrenNum <= 4)
+        {
+            return NODE4;
+        }
+        if (childrenNum <= 16)
+        {
+            return NODE16;
+        }
+        if (childrenNum <= 48)
+        {
+            return NODE48;
+        }
+        return NODE256;
+    }
+
+    static int header(boolean isKey, int edgeSize, int childrenNum)
+    {
+        int header = (nodeType(childrenNum) << NODE_TYPE_SHIFT) | (edgeSize << EDGE_SIZE_SHIFT) | childrenNum;
+        return isKey ? header | IS_KEY_MASK : header;
+    }
+
+    static boolean isKey(int header)
+    {
+        return (header & IS_KEY_MASK) != 0;
+    }
+
+    static int nodeTypeOf(int header)
+    {
+        return (int) (header >>> NODE_TYPE_SHIFT) & 0x3;
+    }
+
+    static int edgeSize(int header)
+    {
+        return (header & EDGE_SIZE_MASK) >>> EDGE_SIZE_SHIFT;
+    }
+
+    static int childrenNum(int header)
+    {
+        return header & CHILDREN_NUM_MASK;
+    }
+
+    /**
+     * @return the size in bytes of the children (including the child index) of a node.
+     */
+    static int childrenSize(int childrenNum)
+    {
+        switch (nodeType(childrenNum))
+        {
+            case NODE48:
+                return CHILD_INDEX_SIZE + childrenNum * CHILD_SIZE;
+            case NODE256:
+                return CHILD_INDEX_SIZE * CHILD_SIZE;
+            default:
+                return childrenNum * CHILD_SIZE;
+        }
+    }
+
+    /**
+     * @return the size in bytes of a serialized node.
+     */
+    static int nodeSize(int childrenNum, int edgeSize, boolean isKey)
+    {
+        int size = NODE_HEADER_SIZE + childrenSize(childrenNum) + edgeSize;
+        return isKey ? size + PixelsCacheIdx.SIZE : size;
+    }
+
+    /**
+     * Serialize the children of a node into the buffer, which must be big-endian.
+     * @param childIds the children ids (leader + offset), this array is sorted in place by the leader
+     * @param childrenNum the number of children in childIds
+     * @param buffer the buffer to put the serialized children, with at least
+     *               {@link #childrenSize(int)} bytes remaining
+     */
+    static void putChildren(long[] childIds, int childrenNum, ByteBuffer buffer)
+    {
+        // sort by the unsigned leader.
+        for (int i = 0; i < childrenNum; ++i)
+        {
+            childIds[i] ^= Long.MIN_VALUE;
+        }
+        Arrays.sort(childIds, 0, childrenNum);
+        for (int i = 0; i < childrenNum; ++i)
+        {
+            childIds[i] ^= Long.MIN_VALUE;
+        }
+        switch (nodeType(childrenNum))
+        {
+            case NODE48:
+            {
+                int indexStart = buffer.position();
+                for (int i = 0; i < CHILD_INDEX_SIZE; ++i)
+                {
+                    buffer.put((byte) 0);
+                }
+                for (int i = 0; i < childrenNum; ++i)
+                {
+                    buffer.put(indexStart + leader(childIds[i]), (byte) (i + 1));
+                    buffer.putLong(childIds[i]);
+                }
+                break;
+            }
+            case NODE256:
+            {
+                int slotsStart = buffer.position();
+                for (int i = 0; i < CHILD_INDEX_SIZE; ++i)
+                {
+                    buffer.putLong(0L);
+                }
+                for (int i = 0; i < childrenNum; ++i)
+                {
+                    buffer.putLong(slotsStart + leader(childIds[i]) * CHILD_SIZE, childIds[i]);
+                }
+                break;
+            }
+            default:
+                for (int i = 0; i < childrenNum; ++i)
+                {
+                    buffer.putLong(childIds[i]);
+                }
+        }
+    }
+
+    /**
+     * Read the children ids (leader + offset) of a node.
+     * @return the children ids sorted by the leader.
+     */
+    static long[] getChildren(MemoryMappedFile indexFile, long nodeOffset, int header)
+    {
+        int childrenNum = childrenNum(header);
+        long[] childIds = new long[childrenNum];
+        long childrenOffset = nodeOffset + NODE_HEADER_SIZE;
+        switch (nodeTypeOf(header))
+        {
+            case NODE48:
+                for (int i = 0; i < childrenNum; ++i)
+                {
+                    childIds[i] = getLong(indexFile, childrenOffset + CHILD_INDEX_SIZE + i * CHILD_SIZE);
+                }
+                break;
+            case NODE256:
+                for (int i = 0, n = 0; i < CHILD_INDEX_SIZE && n < childrenNum; ++i)
+                {
+                    long childId = getLong(indexFile, childrenOffset + i * CHILD_SIZE);
+                    if (childId != 0)
+                    {
+                        childIds[n++] = childId;
+                    }
+                }
+                break;
+            default:
+                for (int i = 0; i < childrenNum; ++i)
+                {
+                    childIds[i] = getLong(indexFile, childrenOffset + i * CHILD_SIZE);
+                }
+        }
+        return childIds;
+    }
+
+    /**
+     * Find the child of a node by the leader.
+     * @return the offset of the child in the index file, or 0 if the child does not exist.
+     */
+    static long findChild(MemoryMappedFile indexFile, long nodeOffset, int header, byte leader)
+    {
+        long childrenOffset = nodeOffset + NODE_HEADER_SIZE;
+        int key = leader & 0xFF;
+        switch (nodeTypeOf(header))
+        {
+            case NODE4:
+            {
+                int childrenNum = childrenNum(header);
+                for (int i = 0; i < childrenNum; ++i)
+                {
+                    // the leader is the first byte of the big-endian child.
+                    int current = indexFile.getByte(childrenOffset + i * CHILD_SIZE) & 0xFF;
+                    if (current == key)
+                    {
+                        return getLong(indexFile, childrenOffset + i * CHILD_SIZE) & CHILD_OFFSET_MASK;
+                    }
+                    if (current > key)
+                    {
+                        break;
+                    }
+                }
+                return 0L;
+            }
+            case NODE16:
+            {
+                int low = 0, high = childrenNum(header) - 1;
+                while (low <= high)
+                {
+                    int mid = (low + high) >>> 1;
+                    int current = indexFile.getByte(childrenOffset + mid * CHILD_SIZE) & 0xFF;
+                    if (current < key)
+                    {
+                        low = mid + 1;
+                    }
+                    else if (current > key)
+                    {
+                        high = mid - 1;
+                    }
+                    else
+                    {
+                        return getLong(indexFile, childrenOffset + mid * CHILD_SIZE) & CHILD_OFFSET_MASK;
+                    }
+                }
+                return 0L;
+            }
+            case NODE48:
+            {
+                int pos = indexFile.getByte(childrenOffset + key) & 0xFF;
+                if (pos == 0)
+                {
+                    return 0L;
+                }
+                return getLong(indexFile, childrenOffset + CHILD_INDEX_SIZE +
+                        (pos - 1) * CHILD_SIZE) & CHILD_OFFSET_MASK;
+            }
+            default:
+                return getLong(indexFile, childrenOffset + key * CHILD_SIZE) & CHILD_OFFSET_MASK;
+        }
+    }
+
+    /**
+     * @return the offset of the edge of a node in the index file.
+     */
+    static long edgeOffset(long nodeOffset, int header)
+    {
+        return nodeOffset + NODE_HEADER_SIZE + childrenSize(childrenNum(header));
+    }
+
+    /**
+     * Read the big-endian value (cache idx) in place.
+     */
+    static PixelsCacheIdx getValue(MemoryMappedFile indexFile, long valueOffset)
+    {
+        long offset = getLong(indexFile, valueOffset);
+        int length = indexFile.getInt(valueOffset + Long.BYTES);
+        return new PixelsCacheIdx(offset, NATIVE_BIG_ENDIAN ? length : Integer.reverseBytes(length));
+    }
+
+    private static int leader(long childId)
+    {
+        return (int) (childId >>> 56);
+    }
+
+    private static long getLong(MemoryMappedFile indexFile, long pos)
+    {
+        long value = indexFile.getLong(pos);
+        return NATIVE_BIG_ENDIAN ? value : Long.reverseBytes(value);
+    }
+}
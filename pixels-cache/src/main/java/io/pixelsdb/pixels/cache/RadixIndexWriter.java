@@ -17,6 +17,7 @@ public class RadixIndexWriter implements CacheIndexWriter {
     private long allocatedIndexOffset = PixelsCacheUtil.INDEX_RADIX_OFFSET;
 
     private final ByteBuffer nodeBuffer = ByteBuffer.allocate(8 * 256);
+    private final long[] childIds = new long[256];
     private final ByteBuffer cacheIdxBuffer = ByteBuffer.allocate(PixelsCacheIdx.SIZE);
     private final int bandwidthLimit = 50; // 50 mib/s
     private long startTime;
@@ -47,9 +48,8 @@ public class RadixIndexWriter implements CacheIndexWriter {
 
     /**
      * Flush node content to the index file based on {@code currentIndexOffset}.
-     * Header(4 bytes) + [Child(8 bytes)]{n} + edge(variable size) + value(optional).
-     * Header: isKey(1 bit) + edgeSize(22 bits) + childrenSize(9 bits)
-     * Child: leader(1 byte) + child_offset(7 bytes)
+     * Header(4 bytes) + children(variable size) + edge(variable size) + value(optional).
+     * The layout of the children depends on the number of children, see {@link RadixIndexLayout}.
      */
     private boolean flushNode(RadixNode node) throws InterruptedException {
         nodeBuffer.clear();
@@ -67,38 +67,29 @@ public class RadixIndexWriter implements CacheIndexWriter {
             currentIndexOffset = node.offset;
         }
         allocatedIndexOffset += node.getLengthInBytes();
-        int header = 0;
-        int edgeSize = node.getEdge().length;
-        header = header | (edgeSize << 9);
-        int isKeyMask = 1 << 31;
-        if (node.isKey())
-        {
-            header = header | isKeyMask;
-        }
-        header = header | node.getChildren().size();
+        int childrenNum = node.getChildren().size();
+        int header = RadixIndexLayout.header(node.isKey(), node.getEdge().length, childrenNum);
         out.setInt(currentIndexOffset, header);  // header
         currentIndexOffset += 4;
+        int n = 0;
         for (Byte key : node.getChildren().keySet())
         {   // children
-            RadixNode n = node.getChild(key);
-            int len = n.getLengthInBytes();
-            n.offset = allocatedIndexOffset;
+            RadixNode child = node.getChild(key);
+            int len = child.getLengthInBytes();
+            child.offset = allocatedIndexOffset;
             allocatedIndexOffset += len;
             long childId = 0L;
             childId = childId | ((long) key << 56);  // leader
-            childId = childId | n.offset;  // offset
-            nodeBuffer.putLong(childId);
-//            indexFile.putLong(currentIndexOffset, childId);
-//            currentIndexOffset += 8;
+            childId = childId | child.offset;  // offset
+            childIds[n++] = childId;
         }
-        byte[] nodeBytes = new byte[node.getChildren().size() * 8];
-        nodeBuffer.flip();
-        nodeBuffer.get(nodeBytes);
-        out.setBytes(currentIndexOffset, nodeBytes); // children
-        currentIndexOffset += nodeBytes.length;
+        RadixIndexLayout.putChildren(childIds, childrenNum, nodeBuffer);
+        int childrenSize = nodeBuffer.position();
+        out.setBytes(currentIndexOffset, nodeBuffer.array(), 0, childrenSize); // children
+        currentIndexOffset += childrenSize;
         out.setBytes(currentIndexOffset, node.getEdge()); // edge
         currentIndexOffset += node.getEdge().length;
-        windowWriteBytes += nodeBytes.length + node.getEdge().length;
+        windowWriteBytes += childrenSize + node.getEdge().length;
         // below code can be used to limit write bandwidth, leaving more bandwidth for the reader
 //        if (windowWriteBytes / 1024.0 / 1024 / ((System.currentTimeMillis() - startTime) / 1000.0) > bandwidthLimit) {
 //            double writeMib = windowWriteBytes / 1024.0 / 1024;
@@ -131,23 +131,10 @@ public class RadixNode
     }
 
     /**
-     * Content length in bytes
+     * Content length in bytes, see {@link RadixIndexLayout} for the layout of the serialized node.
      */
     public int getLengthInBytes()
     {
-        int len = 4 + edge.length;  // header
-        /**
-         * Issue #72:
-         * leader is already contained in the highest 8 bits in each children (id),
-         * no needed to allocate memory space for leaders.
-         */
-        // len += 1 * children.size(); // leaders
-        len += 8 * children.size(); // offsets
-        // value
-        if (isKey)
-        {
-            len += PixelsCacheIdx.SIZE;
-        }
-        return len;
+        return RadixIndexLayout.nodeSize(children.size(), edge.length, isKey);
     }
 }
@@ -48,8 +48,19 @@ public class SharedMQ
     public static final long SHARED_MQ_STRUCT_READ_LIMIT = 0L;
     public static final long SHARED_MQ_STRUCT_WRITE_LIMIT = 8L;
     public static final long SHARED_MQ_STRUCT_INIT_FLAG = 16L;
-    // although only use 17 bytes are used for metadata, we use 24 bytes for word alignment.
-    public static final long SHARED_MQ_STRUCT_DATA = 24L;
+    /**
+     * The commit limit is the end of the messages whose sizes (or flip flags) have been published
+     * by the writers. It follows the write limit in the order of reservation, and the readers only
+     * read the messages before the commit limit, so that they never see an unpublished message size.
+     */
+    public static final long SHARED_MQ_STRUCT_COMMIT_LIMIT = 24L;
+    /**
+     * The free limit is the end of the messages that have been read (or rolled back) by the readers.
+     * It follows the read limit in the order of reservation, and the writers only write into the
+     * bytes before the free limit, so that they never overwrite a message that is being read.
+     */
+    public static final long SHARED_MQ_STRUCT_FREE_LIMIT = 32L;
+    public static final long SHARED_MQ_STRUCT_DATA = 40L;
     public static final long SHARED_MQ_LIMIT_FLAG = 0x4000000000000000L;
     public static final long SHARED_MQ_LIMIT_MASK = 0x3FFFFFFFFFFFFFFFL;
     /**
@@ -60,7 +71,11 @@ public class SharedMQ
     public static final int SHARED_MQ_LENGTH_MESSAGE_STATUSES = 2;
     public static final int SHARED_MQ_LENGTH_MESSAGE_STATUS = 1;
     public static final int SHARED_MQ_DEFAULT_TIMEOUT_MS = 1000;
-    public static final byte SHARED_MQ_INITIALIZED = 0x66;
+    /**
+     * It is changed from 0x66 to 0x67 when the commit and free limits are added, so that the message
+     * queues initialized in the old layout are initialized again.
+     */
+    public static final byte SHARED_MQ_INITIALIZED = 0x67;
 
     public static int SHARED_MQ_ENTRY_SIZE(int messageSize)
     {
@@ -92,13 +107,17 @@ public class SharedMQ
      * unread message in the shared memory.
      */
     private long _readLimit;
+    /**
+     * The read limit (with the flip flag) before and after the message being read is reserved.
+     */
+    private long _readReservedFrom;
+    private long _readReservedTo;
     /**
      * The writer's head of the queue, i.e., the start offset for the next
      * message to be written in the shared memory.
      */
     private long _writeLimit;
     private long _readStartTime;
-    private long _writeStartTime;
     /**
      * The end of the queue. It is also the length of the shared memory
      * used by this message queue.
@@ -124,7 +143,6 @@ public class SharedMQ
         _readLimit = SHARED_MQ_STRUCT_DATA;
         _writeLimit = SHARED_MQ_STRUCT_DATA;
         _readStartTime = 0;
-        _writeStartTime = 0;
         _sharedMemory = new MemoryMappedFile(location, totalSize);
         _EOQ = _sharedMemory.getSize();
         init(forceInit);
@@ -134,9 +152,10 @@ public class SharedMQ
     {
         while (true)
         {
-            _writeLimit = _sharedMemory.getLong(SHARED_MQ_STRUCT_WRITE_LIMIT);
+            _writeLimit = _sharedMemory.getLongVolatile(SHARED_MQ_STRUCT_WRITE_LIMIT);
             // check if the mq is full.
-            if (isFull(_writeLimit, _sharedMemory.getLong(SHARED_MQ_STRUCT_READ_LIMIT)))
+            if (isFull(_writeLimit, _sharedMemory.getLongVolatile(SHARED_MQ_STRUCT_FREE_LIMIT),
+                    SHARED_MQ_ENTRY_SIZE(messageSize)))
             {
                 return ERROR_MQ_IS_FULL;
             }
@@ -147,46 +166,73 @@ public class SharedMQ
                  * We have reached the end of the shared memory, try to flip to the beginning.
                  * If the flip is not successful, we get the latest write limit and retry the allocation.
                  *
-                 * Before flipping, we set the flip flag (message size == 0) for readers if the
-                 * remaining bytes are more than SHARED_MQ_LENGTH_MESSAGE_HEADER.
+                 * After flipping, the bytes from the old write limit to the end of the queue are owned by
+                 * this writer, and we set the flip flag (message size == 0) for readers if the remaining
+                 * bytes are more than SHARED_MQ_LENGTH_MESSAGE_HEADER. The flip is then committed, so
+                 * that the readers see the flip flag before they flip.
                  */
-                if (SHARED_MQ_REAL_LIMIT(_writeLimit) + SHARED_MQ_LENGTH_MESSAGE_HEADER < _EOQ)
-                {
-                    _sharedMemory.setInt(
-                            SHARED_MQ_REAL_LIMIT(_writeLimit) + SHARED_MQ_LENGTH_MESSAGE_STATUSES, 0);
-                }
-                if (_sharedMemory.compareAndSwapLong(SHARED_MQ_STRUCT_WRITE_LIMIT, _writeLimit,
-                        SHARED_MQ_FLIP_LIMIT(_writeLimit)))
-                {
-                    _writeLimit = SHARED_MQ_FLIP_LIMIT(_writeLimit);
-                }
-                else
+                long flipped = SHARED_MQ_FLIP_LIMIT(_writeLimit);
+                if (_sharedMemory.compareAndSwapLong(SHARED_MQ_STRUCT_WRITE_LIMIT, _writeLimit, flipped))
                 {
-                    continue;
+                    if (SHARED_MQ_REAL_LIMIT(_writeLimit) + SHARED_MQ_LENGTH_MESSAGE_HEADER < _EOQ)
+                    {
+                        _sharedMemory.setInt(
+                                SHARED_MQ_REAL_LIMIT(_writeLimit) + SHARED_MQ_LENGTH_MESSAGE_STATUSES, 0);
+                    }
+                    commitWriteLimit(_writeLimit, flipped);
                 }
+                // retry the allocation from the latest write limit, the mq may be full after flipping.
+                continue;
             }
 
             // push the write limit.
-            if (_sharedMemory.compareAndSwapLong(SHARED_MQ_STRUCT_WRITE_LIMIT, _writeLimit,
-                    _writeLimit + SHARED_MQ_ENTRY_SIZE(messageSize)))
+            long reserved = _writeLimit;
+            if (_sharedMemory.compareAndSwapLong(SHARED_MQ_STRUCT_WRITE_LIMIT, reserved,
+                    reserved + SHARED_MQ_ENTRY_SIZE(messageSize)))
             {
+                _writeLimit = SHARED_MQ_REAL_LIMIT(reserved);
+                /*
+                 * Set the writer status and the message size for the readers to push the read limit,
+                 * then commit them. The entry may contain the stale bytes of the freed messages, thus
+                 * the writer status must be set before commit.
+                 */
+                _sharedMemory.setByte(_writeLimit, TransactionStatus.RUNNING);
+                _sharedMemory.setInt(_writeLimit + SHARED_MQ_LENGTH_MESSAGE_STATUSES, messageSize);
+                commitWriteLimit(reserved, reserved + SHARED_MQ_ENTRY_SIZE(messageSize));
                 break;
             }
         }
-        _writeLimit = SHARED_MQ_REAL_LIMIT(_writeLimit);
         _writeLimitPushed = true;
         return SUCCESS;
     }
 
+    /**
+     * Push the commit limit over the entry (or the flipped tail) reserved by this writer.
+     * The writers that reserved the earlier entries commit first. They only set the message
+     * size between reservation and commit, thus the wait is short.
+     * @param from the write limit (with the flip flag) before the reservation.
+     * @param to the write limit (with the flip flag) after the reservation.
+     */
+    private void commitWriteLimit(long from, long to)
+    {
+        while (!_sharedMemory.compareAndSwapLong(SHARED_MQ_STRUCT_COMMIT_LIMIT, from, to))
+        {
+            Thread.yield();
+        }
+    }
+
     private int pushReadLimit(Message message)
     {
         int messageSize = 0;
 
         while (true)
         {
-            _readLimit = _sharedMemory.getLong(SHARED_MQ_STRUCT_READ_LIMIT);
-            // check if the mq is empty.
-            if (isEmpty(_readLimit, _sharedMemory.getLong(SHARED_MQ_STRUCT_WRITE_LIMIT)))
+            _readLimit = _sharedMemory.getLongVolatile(SHARED_MQ_STRUCT_READ_LIMIT);
+            /*
+             * Check if the mq is empty. The commit limit is used instead of the write limit, so that
+             * the message size (or the flip flag) at the read limit has been set by the writer.
+             */
+            if (isEmpty(_readLimit, _sharedMemory.getLongVolatile(SHARED_MQ_STRUCT_COMMIT_LIMIT)))
             {
                 return ERROR_MQ_IS_EMPTY;
             }
@@ -221,24 +267,19 @@ public class SharedMQ
                 /**
                  * We have reached the end of the queue, try to flip to the beginning.
                  * If the flip is failed, it means that another reader has already
-                 * finished the flip. In this case, we get the latest read limit and retry.
-                 * If the flip is successful, we continue pushing the read limit.
+                 * finished the flip.
                  */
                 if (_sharedMemory.compareAndSwapLong(SHARED_MQ_STRUCT_READ_LIMIT, _readLimit,
                         SHARED_MQ_FLIP_LIMIT(_readLimit)))
                 {
-                    /**
-                     * flip success, use the flipped read limit to get the real message size
-                     * and continue pushing.
-                     */
-                    _readLimit = SHARED_MQ_FLIP_LIMIT(_readLimit);
-                    messageSize = _sharedMemory.getInt(SHARED_MQ_REAL_LIMIT(_readLimit) +
-                            SHARED_MQ_LENGTH_MESSAGE_STATUSES);
-                }
-                else
-                {
-                    continue;
+                    // nothing to read in the tail, free it for the writers.
+                    freeReadLimit(_readLimit, SHARED_MQ_FLIP_LIMIT(_readLimit));
                 }
+                /**
+                 * Whether the flip is successful or not, retry from the latest read limit,
+                 * as the message after the flip may not be committed yet.
+                 */
+                continue;
             }
             // push the read limit.
             if (_sharedMemory.compareAndSwapLong(SHARED_MQ_STRUCT_READ_LIMIT, _readLimit,
@@ -248,11 +289,28 @@ public class SharedMQ
             }
         }
         message.ensureSize(messageSize);
+        _readReservedFrom = _readLimit;
+        _readReservedTo = _readLimit + SHARED_MQ_ENTRY_SIZE(messageSize);
         _readLimit = SHARED_MQ_REAL_LIMIT(_readLimit);
         _readLimitPushed = true;
         return SUCCESS;
     }
 
+    /**
+     * Push the free limit over the message (or the flipped tail) reserved by this reader.
+     * The readers that reserved the earlier messages free first, thus a reader may wait here
+     * for the earlier readers to finish reading or rolling back their messages.
+     * @param from the read limit (with the flip flag) before the reservation.
+     * @param to the read limit (with the flip flag) after the reservation.
+     */
+    private void freeReadLimit(long from, long to)
+    {
+        while (!_sharedMemory.compareAndSwapLong(SHARED_MQ_STRUCT_FREE_LIMIT, from, to))
+        {
+            Thread.yield();
+        }
+    }
+
     private boolean isEmpty(long readLimit, long writeLimit)
     {
         /**
@@ -267,15 +325,16 @@ public class SharedMQ
         return SHARED_MQ_REAL_LIMIT(readLimit) >= SHARED_MQ_REAL_LIMIT(writeLimit);
     }
 
-    private boolean isFull(long writeLimit, long readLimit)
+    private boolean isFull(long writeLimit, long freeLimit, int entrySize)
     {
         /**
-         * Read or write limit never equals to _EOQ due to flipping, so that
+         * Free or write limit never equals to _EOQ due to flipping, so that
          * we do not deal with this case here.
          */
-        if (SHARED_MQ_IS_FLIPPED(readLimit, writeLimit))
+        if (SHARED_MQ_IS_FLIPPED(freeLimit, writeLimit))
         {
-            return SHARED_MQ_REAL_LIMIT(writeLimit) >= SHARED_MQ_REAL_LIMIT(readLimit);
+            // the entry to write must not overlap the messages that are not freed.
+            return SHARED_MQ_REAL_LIMIT(writeLimit) + entrySize > SHARED_MQ_REAL_LIMIT(freeLimit);
         }
         // If the queue is not flipped, it is not full.
         return false;
@@ -297,6 +356,8 @@ public class SharedMQ
             _sharedMemory.clear();
             _sharedMemory.setLong(SHARED_MQ_STRUCT_READ_LIMIT, SHARED_MQ_STRUCT_DATA);
             _sharedMemory.setLong(SHARED_MQ_STRUCT_WRITE_LIMIT, SHARED_MQ_STRUCT_DATA);
+            _sharedMemory.setLong(SHARED_MQ_STRUCT_COMMIT_LIMIT, SHARED_MQ_STRUCT_DATA);
+            _sharedMemory.setLong(SHARED_MQ_STRUCT_FREE_LIMIT, SHARED_MQ_STRUCT_DATA);
             _sharedMemory.setByte(SHARED_MQ_STRUCT_INIT_FLAG, SHARED_MQ_INITIALIZED);
         }
     }
@@ -328,6 +389,7 @@ public class SharedMQ
         {
             _readStartTime = 0;
             _readLimitPushed = false;
+            freeReadLimit(_readReservedFrom, _readReservedTo);
             return ERROR_MQ_WRITER_IS_ROLLBACK;
         }
         // writerStatus == TransactionStatus::RUNNING
@@ -341,6 +403,7 @@ public class SharedMQ
             _sharedMemory.setByte(_readLimit, TransactionStatus.ROLLBACK);
             _readLimitPushed = false;
             _readStartTime = 0;
+            freeReadLimit(_readReservedFrom, _readReservedTo);
             return ERROR_MQ_WRITER_IS_ROLLBACK;
         }
         return ERROR_MQ_WRITER_IS_RUNNING;
@@ -355,6 +418,7 @@ public class SharedMQ
         message.read(_sharedMemory, _readLimit + SHARED_MQ_LENGTH_MESSAGE_HEADER);
         _sharedMemory.setByte(_readLimit + SHARED_MQ_LENGTH_MESSAGE_STATUS, TransactionStatus.COMMIT);
         _readLimitPushed = false;
+        freeReadLimit(_readReservedFrom, _readReservedTo);
     }
 
     /**
@@ -372,32 +436,12 @@ public class SharedMQ
                 return ret;
             }
         }
-        // check the status of the allocated entry.
-        byte readerStatus = _sharedMemory.getByte(_writeLimit + SHARED_MQ_LENGTH_MESSAGE_STATUS);
-        if (readerStatus == TransactionStatus.COMMIT ||
-                readerStatus == TransactionStatus.ROLLBACK ||
-                readerStatus == TransactionStatus.CLEAR)
-        {
-            _writeStartTime = 0;
-            _sharedMemory.setByte(_writeLimit + SHARED_MQ_LENGTH_MESSAGE_STATUS, TransactionStatus.RUNNING);
-            _sharedMemory.setByte(_writeLimit, TransactionStatus.RUNNING);
-            return SUCCESS;
-        }
-        // readerStatus == TransactionStatus::RUNNING
-        if (_writeStartTime == 0)
-        {
-            _writeStartTime = System.currentTimeMillis();
-            return ERROR_MQ_READER_IS_RUNNING;
-        }
-        else if (System.currentTimeMillis() - _writeStartTime >= _timeout)
-        {
-            _sharedMemory.setByte(_writeLimit + SHARED_MQ_LENGTH_MESSAGE_STATUS,
-                    TransactionStatus.ROLLBACK);
-            _writeStartTime = 0;
-            _sharedMemory.setByte(_writeLimit, TransactionStatus.RUNNING);
-            return SUCCESS;
-        }
-        return ERROR_MQ_WRITER_IS_RUNNING;
+        /*
+         * The allocated entry is before the free limit, i.e., the messages overlapping it have been
+         * read or rolled back by the readers, so there is no need to wait for the reader status.
+         */
+        _sharedMemory.setByte(_writeLimit + SHARED_MQ_LENGTH_MESSAGE_STATUS, TransactionStatus.RUNNING);
+        return SUCCESS;
     }
     /**
      * Write the given massage into message queue.
@@ -3,9 +3,21 @@ package io.pixelsdb.pixels.cache;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 
 public class TestCacheContentReader {
 
@@ -34,4 +46,58 @@ public class TestCacheContentReader {
         reader.read(new PixelsCacheIdx(4633903504L, 4608), buf);
         System.out.println(StandardCharsets.UTF_8.decode(buf));
     }
+
+    @Test
+    public void testDiskCacheContentReaderBatchRead() throws Exception {
+        File file = File.createTempFile("pixels-cache-content", ".tmp");
+        file.deleteOnExit();
+        byte[] content = new byte[8 * 1024 * 1024];
+        new Random(0).nextBytes(content);
+        Files.write(file.toPath(), content);
+        DiskCacheContentReader reader = new DiskCacheContentReader(file.getPath());
+
+        // adjacent and non-adjacent columnlets in a shuffled order.
+        List<PixelsCacheIdx> idxList = new ArrayList<>();
+        Random random = new Random(1);
+        long offset = 0;
+        while (offset < content.length - 64 * 1024) {
+            int length = 1 + random.nextInt(32 * 1024);
+            idxList.add(new PixelsCacheIdx(offset, length));
+            offset += length + (random.nextBoolean() ? 0 : random.nextInt(1024));
+        }
+        Collections.shuffle(idxList, random);
+        PixelsCacheIdx[] idxs = idxList.toArray(new PixelsCacheIdx[0]);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; ++t) {
+            futures.add(executor.submit(() -> {
+                int total = 0;
+                for (PixelsCacheIdx idx : idxs) {
+                    total += idx.length;
+                }
+                ByteBuffer buf = ByteBuffer.allocate(total);
+                reader.batchRead(idxs, buf);
+                int bufOffset = 0;
+                for (PixelsCacheIdx idx : idxs) {
+                    byte[] expected = new byte[idx.length];
+                    System.arraycopy(content, (int) idx.offset, expected, 0, idx.length);
+                    byte[] actual = new byte[idx.length];
+                    System.arraycopy(buf.array(), bufOffset, actual, 0, idx.length);
+                    assertArrayEquals(expected, actual);
+                    bufOffset += idx.length;
+
+                    ByteBuffer zeroCopy = reader.readZeroCopy(idx);
+                    assertEquals(idx.length, zeroCopy.remaining());
+                    zeroCopy.get(actual);
+                    assertArrayEquals(expected, actual);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+    }
 }
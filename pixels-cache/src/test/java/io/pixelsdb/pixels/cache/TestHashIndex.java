@@ -0,0 +1,209 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+
+import static io.pixelsdb.pixels.cache.HashIndexLayout.*;
+import static org.junit.Assert.*;
+
+/**
+ * Write the hash index by {@link HashIndexWriter} on a temporary memory mapped file, and search it
+ * by {@link HashIndexReader}. The index has a few buckets, so that the keys collide on the buckets
+ * and the fingerprints, and are probed into the following buckets.
+ */
+public class TestHashIndex
+{
+    private static final long INDEX_SIZE = 4096;
+
+    private File file;
+    private MemoryMappedFile indexFile;
+    private HashIndexWriter writer;
+    private long numBuckets;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        file = Files.createTempFile("pixels-hash-index", ".index").toFile();
+        indexFile = new MemoryMappedFile(file.getPath(), INDEX_SIZE);
+        writer = new HashIndexWriter(indexFile);
+        numBuckets = indexFile.getLong(NUM_BUCKETS_OFFSET);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        indexFile.unmap();
+        file.delete();
+    }
+
+    private static long hashOf(PixelsCacheKey key)
+    {
+        return hash(key.blockId, key.rowGroupId, key.columnId);
+    }
+
+    private static PixelsCacheIdx value(PixelsCacheKey key)
+    {
+        return new PixelsCacheIdx(key.blockId * 4096 + key.columnId, key.columnId + 1);
+    }
+
+    /**
+     * @return the keys in the order of the block id, whose first bucket is the given bucket, and
+     * whose fingerprint is the given fingerprint if it is positive.
+     */
+    private List<PixelsCacheKey> keysOf(long bucket, int fingerprint, int count)
+    {
+        List<PixelsCacheKey> keys = new ArrayList<>(count);
+        for (long blockId = 1; keys.size() < count; ++blockId)
+        {
+            PixelsCacheKey key = new PixelsCacheKey(blockId, (short) 3, (short) 7);
+            long hash = hashOf(key);
+            if ((hash & (numBuckets - 1)) == bucket && (fingerprint <= 0 || fingerprint(hash) == fingerprint))
+            {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private static void assertSameIdx(String message, PixelsCacheIdx expected, PixelsCacheIdx actual)
+    {
+        if (expected == null)
+        {
+            assertNull(message, actual);
+            return;
+        }
+        assertNotNull(message, actual);
+        assertEquals(message, expected.offset, actual.offset);
+        assertEquals(message, expected.length, actual.length);
+    }
+
+    /**
+     * Check that read and batchRead return the expected values of the keys, or null for the missing keys.
+     */
+    private void check(List<PixelsCacheKey> keys, Map<PixelsCacheKey, PixelsCacheIdx> expected)
+    {
+        HashIndexReader reader = new HashIndexReader(indexFile);
+        PixelsCacheIdx[] results = new PixelsCacheIdx[keys.size()];
+        reader.batchRead(keys.toArray(new PixelsCacheKey[0]), results);
+        for (int i = 0; i < keys.size(); ++i)
+        {
+            PixelsCacheKey key = keys.get(i);
+            PixelsCacheIdx idx = reader.read(key);
+            assertSameIdx("read " + key, expected.get(key), idx);
+            assertSameIdx("batchRead " + key, idx, results[i]);
+        }
+    }
+
+    @Test
+    public void testCollisions()
+    {
+        assertEquals(Long.highestOneBit((INDEX_SIZE - bucketsOffset(indexFile)) / BUCKET_SIZE), numBuckets);
+        long lastBucket = numBuckets - 1;
+        // the keys with the same first bucket, and the keys with also the same fingerprint as the first of them.
+        List<PixelsCacheKey> sameBucket = keysOf(3, 0, 5);
+        List<PixelsCacheKey> sameFingerprint = keysOf(3, fingerprint(hashOf(sameBucket.get(0))), 4);
+        assertEquals(sameBucket.get(0), sameFingerprint.get(0));
+        // the keys in the last bucket are probed into the first buckets.
+        List<PixelsCacheKey> wrapped = keysOf(lastBucket, 0, 4);
+
+        Map<PixelsCacheKey, PixelsCacheIdx> expected = new LinkedHashMap<>();
+        for (PixelsCacheKey key : sameBucket)
+        {
+            expected.put(key, value(key));
+        }
+        for (PixelsCacheKey key : sameFingerprint.subList(0, 3))
+        {
+            expected.put(key, value(key));
+        }
+        for (PixelsCacheKey key : wrapped.subList(0, 3))
+        {
+            expected.put(key, value(key));
+        }
+        for (Map.Entry<PixelsCacheKey, PixelsCacheIdx> entry : expected.entrySet())
+        {
+            writer.put(entry.getKey(), entry.getValue());
+        }
+        // the existing key is overwritten instead of being put into another slot.
+        PixelsCacheKey overwritten = sameBucket.get(1);
+        expected.put(overwritten, new PixelsCacheIdx(123456789L, 42));
+        writer.put(overwritten, expected.get(overwritten));
+        writer.flush();
+        // the third key of the last bucket is probed into the first bucket.
+        assertNotEquals(0L, indexFile.getLong(bucketsOffset(indexFile)));
+
+        List<PixelsCacheKey> keys = new ArrayList<>(expected.keySet());
+        // the misses with the same bucket and fingerprint as the existing keys, and with the other buckets.
+        keys.add(1, sameFingerprint.get(3));
+        keys.add(wrapped.get(3));
+        keys.add(new PixelsCacheKey(sameBucket.get(0).blockId, (short) 3, (short) 8));
+        keys.add(new PixelsCacheKey(sameBucket.get(0).blockId, (short) 4, (short) 7));
+        // more keys than a batch group of the reader.
+        for (long bucket = 0; bucket < numBuckets; bucket += 2)
+        {
+            keys.addAll(keysOf(bucket, 0, 1));
+        }
+        assertTrue(keys.size() > 16);
+        check(keys, expected);
+    }
+
+    @Test
+    public void testFullIndex()
+    {
+        Map<PixelsCacheKey, PixelsCacheIdx> expected = new LinkedHashMap<>();
+        // three keys for each of the first buckets, which overflow into the following buckets.
+        for (long bucket = 0; bucket < numBuckets / 4; ++bucket)
+        {
+            for (PixelsCacheKey key : keysOf(bucket, 0, 3))
+            {
+                expected.put(key, value(key));
+                writer.put(key, value(key));
+            }
+        }
+        // fill the remaining slots.
+        for (long blockId = 1 << 20; expected.size() < numBuckets * SLOTS_PER_BUCKET; ++blockId)
+        {
+            PixelsCacheKey key = new PixelsCacheKey(blockId, (short) 0, (short) 0);
+            expected.put(key, value(key));
+            writer.put(key, value(key));
+        }
+        try
+        {
+            writer.put(new PixelsCacheKey(-1L, (short) 0, (short) 0), new PixelsCacheIdx(0, 1));
+            fail("the full index should reject the new key");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+
+        // the search of the missing key stops after probing all the buckets.
+        List<PixelsCacheKey> keys = new ArrayList<>(expected.keySet());
+        keys.add(new PixelsCacheKey(-1L, (short) 0, (short) 0));
+        keys.add(new PixelsCacheKey(-2L, (short) 5, (short) 6));
+        check(keys, expected);
+    }
+}
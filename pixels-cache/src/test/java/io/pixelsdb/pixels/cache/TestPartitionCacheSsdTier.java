@@ -0,0 +1,224 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.cache;
+
+import io.pixelsdb.pixels.common.physical.Storage;
+import io.pixelsdb.pixels.common.physical.StorageFactory;
+import io.pixelsdb.pixels.common.utils.ConfigFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Write the columnlets into the memory tier and the ssd tier of the partitioned cache,
+ * and read them back through a single index lookup.
+ */
+public class TestPartitionCacheSsdTier
+{
+    private static final int PARTITIONS = 2;
+    private static final long CACHE_SIZE = PARTITIONS * 4096L;
+    private static final long INDEX_SIZE = PARTITIONS * 1024 * 1024L;
+    private static final long SSD_SIZE = PARTITIONS * 1024 * 1024L;
+    private static final String[] FILES = {"1", "2"};
+    private static final short ROW_GROUP_ID = 0;
+    private static final int NUM_COLUMNS = 8;
+
+    private Path dir;
+    private PixelsPartitionCacheWriter writer;
+    private MemoryMappedFile indexFile;
+    private MemoryMappedFile cacheFile;
+
+    @BeforeClass
+    public static void mockFiles()
+    {
+        for (int i = 0; i < FILES.length; ++i)
+        {
+            for (short columnId = 0; columnId < NUM_COLUMNS; ++columnId)
+            {
+                // the memory partition holds less than the columnlets of all the columns
+                MockPixelsPhysicalReader.addColumnlet(Long.parseLong(FILES[i]), ROW_GROUP_ID, columnId,
+                        (i * NUM_COLUMNS + columnId) * 1000L, 600 + columnId * 8);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ConfigFactory config = ConfigFactory.Instance();
+        config.addProperty("cache.partitions", String.valueOf(PARTITIONS));
+        config.addProperty("cache.size", String.valueOf(CACHE_SIZE));
+        config.addProperty("index.size", String.valueOf(INDEX_SIZE));
+        config.addProperty("cache.storage.scheme", "mock");
+        config.addProperty("enabled.storage.schemes", "mock");
+        dir = Files.createTempDirectory("pixels-cache-ssd");
+        Files.createDirectories(dir.resolve("ssd"));
+        writer = PixelsPartitionCacheWriter.newBuilder()
+                .setCacheLocation(dir.resolve("pixels.cache").toString())
+                .setPartitions(PARTITIONS)
+                .setCacheSize(CACHE_SIZE)
+                .setIndexLocation(dir.resolve("pixels.index").toString())
+                .setIndexSize(INDEX_SIZE)
+                .setIndexDiskLocation(dir.resolve("pixels.index.disk").toString())
+                .setSsdLocation(dir.resolve("ssd").toString())
+                .setSsdSize(SSD_SIZE)
+                .setOverwrite(true)
+                .setWriteContent(true)
+                .setUpdateParallelism(PARTITIONS)
+                .setHostName("localhost")
+                .setCacheConfig(new PixelsCacheConfig())
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        writer.close();
+        if (indexFile != null)
+        {
+            indexFile.unmap();
+        }
+        if (cacheFile != null)
+        {
+            cacheFile.unmap();
+        }
+        File[] ssdFiles = dir.resolve("ssd").toFile().listFiles();
+        if (ssdFiles != null)
+        {
+            for (File file : ssdFiles)
+            {
+                file.delete();
+            }
+        }
+        File[] files = dir.toFile().listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        dir.toFile().delete();
+    }
+
+    private PartitionCacheReader buildReader() throws Exception
+    {
+        indexFile = new MemoryMappedFile(dir.resolve("pixels.index").toString(),
+                (PARTITIONS + 1) * (INDEX_SIZE / PARTITIONS) + PixelsCacheUtil.PARTITION_INDEX_META_SIZE);
+        cacheFile = new MemoryMappedFile(dir.resolve("pixels.cache").toString(),
+                (PARTITIONS + 1) * (CACHE_SIZE / PARTITIONS) + PixelsCacheUtil.CACHE_DATA_OFFSET);
+        return PartitionCacheReader.newBuilder().setIndexFile(indexFile).setCacheFile(cacheFile)
+                .setPartitions(PARTITIONS).setSsdLocation(dir.resolve("ssd").toString()).build();
+    }
+
+    private static List<String> columnlets(int fromColumn, int toColumn)
+    {
+        List<String> columnlets = new ArrayList<>();
+        for (int columnId = fromColumn; columnId < toColumn; ++columnId)
+        {
+            columnlets.add(ROW_GROUP_ID + ":" + columnId);
+        }
+        return columnlets;
+    }
+
+    /**
+     * Check that every columnlet is read back from the cache with the content in the file.
+     * @return the number of columnlets found in the ssd tier
+     */
+    private static int checkContents(PartitionCacheReader reader) throws Exception
+    {
+        Storage storage = StorageFactory.Instance().getStorage("mock");
+        int numSsd = 0;
+        for (String file : FILES)
+        {
+            MockPixelsPhysicalReader fileReader = new MockPixelsPhysicalReader(storage, file);
+            for (short columnId = 0; columnId < NUM_COLUMNS; ++columnId)
+            {
+                byte[] expected = fileReader.read(ROW_GROUP_ID, columnId);
+                PixelsCacheKey key = new PixelsCacheKey(Long.parseLong(file), ROW_GROUP_ID, columnId);
+                PixelsCacheIdx idx = reader.search(key);
+                assertNotNull("columnlet " + key + " is not cached", idx);
+                assertEquals(expected.length, idx.length);
+                if (idx.isSsdTier())
+                {
+                    numSsd++;
+                }
+
+                byte[] content = new byte[idx.length];
+                assertEquals(idx.length, reader.get(key, content, idx.length));
+                assertArrayEquals(expected, content);
+
+                ByteBuffer buffer = reader.getZeroCopy(key);
+                assertNotNull(buffer);
+                // the hits in both tiers are served from the mapped content without copying onto the heap
+                assertTrue(buffer.isDirect());
+                content = new byte[buffer.remaining()];
+                buffer.get(content);
+                assertArrayEquals(expected, content);
+            }
+        }
+        return numSsd;
+    }
+
+    @Test
+    public void testHotAndWarmColumnlets() throws Exception
+    {
+        List<String> hot = columnlets(0, 2);
+        List<String> warm = columnlets(2, NUM_COLUMNS);
+        assertEquals(0, writer.bulkLoad(1, hot, warm, FILES));
+
+        PartitionCacheReader reader = buildReader();
+        assertEquals(FILES.length * warm.size(), checkContents(reader));
+        for (String file : FILES)
+        {
+            for (short columnId = 0; columnId < NUM_COLUMNS; ++columnId)
+            {
+                PixelsCacheIdx idx = reader.search(new PixelsCacheKey(Long.parseLong(file), ROW_GROUP_ID, columnId));
+                assertEquals(columnId >= hot.size(), idx.isSsdTier());
+            }
+        }
+    }
+
+    @Test
+    public void testOverflowToSsdTier() throws Exception
+    {
+        // all the columnlets are hot, the ones that do not fit in the memory partitions are demoted to the ssd tier
+        assertEquals(0, writer.bulkLoad(1, columnlets(0, NUM_COLUMNS), Collections.emptyList(), FILES));
+
+        PartitionCacheReader reader = buildReader();
+        int numSsd = checkContents(reader);
+        assertTrue(numSsd > 0);
+        assertTrue(numSsd < FILES.length * NUM_COLUMNS);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.cache;
+
+import io.pixelsdb.pixels.common.physical.Storage;
+import io.pixelsdb.pixels.common.physical.StorageFactory;
+import io.pixelsdb.pixels.common.utils.ConfigFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Bulk load the partitioned cache with the partitions updated concurrently, and update it incrementally
+ * with the files loaded ahead of the cache writes.
+ */
+public class TestPartitionCacheUpdate
+{
+    private static final int PARTITIONS = 4;
+    private static final long CACHE_SIZE = PARTITIONS * 64 * 1024L;
+    private static final long INDEX_SIZE = PARTITIONS * 1024 * 1024L;
+    private static final short ROW_GROUP_ID = 0;
+    private static final int NUM_FILES = 8;
+    private static final int NUM_COLUMNS = 16;
+
+    private Path dir;
+    private PixelsPartitionCacheWriter writer;
+    private MemoryMappedFile indexFile;
+    private MemoryMappedFile cacheFile;
+
+    @BeforeClass
+    public static void mockFiles()
+    {
+        for (int file = 1; file <= NUM_FILES; ++file)
+        {
+            for (short columnId = 0; columnId < NUM_COLUMNS; ++columnId)
+            {
+                MockPixelsPhysicalReader.addColumnlet(1000 + file, ROW_GROUP_ID, columnId,
+                        (file * NUM_COLUMNS + columnId) * 1000L, 100 + (file * 31 + columnId * 7) % 200);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ConfigFactory config = ConfigFactory.Instance();
+        config.addProperty("cache.partitions", String.valueOf(PARTITIONS));
+        config.addProperty("cache.size", String.valueOf(CACHE_SIZE));
+        config.addProperty("index.size", String.valueOf(INDEX_SIZE));
+        config.addProperty("cache.storage.scheme", "mock");
+        config.addProperty("enabled.storage.schemes", "mock");
+        dir = Files.createTempDirectory("pixels-cache-update");
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        if (writer != null)
+        {
+            writer.close();
+        }
+        if (indexFile != null)
+        {
+            indexFile.unmap();
+        }
+        if (cacheFile != null)
+        {
+            cacheFile.unmap();
+        }
+        File[] files = dir.toFile().listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        dir.toFile().delete();
+    }
+
+    private void buildWriter(int updateParallelism, long updatePrefetchSize) throws Exception
+    {
+        writer = PixelsPartitionCacheWriter.newBuilder()
+                .setCacheLocation(dir.resolve("pixels.cache").toString())
+                .setPartitions(PARTITIONS)
+                .setCacheSize(CACHE_SIZE)
+                .setIndexLocation(dir.resolve("pixels.index").toString())
+                .setIndexSize(INDEX_SIZE)
+                .setIndexDiskLocation(dir.resolve("pixels.index.disk").toString())
+                .setOverwrite(true)
+                .setWriteContent(true)
+                .setUpdateParallelism(updateParallelism)
+                .setUpdatePrefetchSize(updatePrefetchSize)
+                .setHostName("localhost")
+                .setCacheConfig(new PixelsCacheConfig())
+                .build();
+    }
+
+    private PartitionCacheReader buildReader() throws Exception
+    {
+        indexFile = new MemoryMappedFile(dir.resolve("pixels.index").toString(),
+                (PARTITIONS + 1) * (INDEX_SIZE / PARTITIONS) + PixelsCacheUtil.PARTITION_INDEX_META_SIZE);
+        cacheFile = new MemoryMappedFile(dir.resolve("pixels.cache").toString(),
+                (PARTITIONS + 1) * (CACHE_SIZE / PARTITIONS) + PixelsCacheUtil.CACHE_DATA_OFFSET);
+        return PartitionCacheReader.newBuilder().setIndexFile(indexFile).setCacheFile(cacheFile)
+                .setPartitions(PARTITIONS).build();
+    }
+
+    private static String[] files(int from, int to)
+    {
+        String[] files = new String[to - from + 1];
+        for (int i = 0; i < files.length; ++i)
+        {
+            files[i] = String.valueOf(1000 + from + i);
+        }
+        return files;
+    }
+
+    private static List<String> columnlets(int fromColumn, int toColumn)
+    {
+        List<String> columnlets = new ArrayList<>();
+        for (int columnId = fromColumn; columnId < toColumn; ++columnId)
+        {
+            columnlets.add(ROW_GROUP_ID + ":" + columnId);
+        }
+        return columnlets;
+    }
+
+    /**
+     * Check that exactly the columnlets of the given files and columns are cached, with the content in the files.
+     */
+    private static void checkCached(PartitionCacheReader reader, String[] files, int fromColumn, int toColumn)
+            throws Exception
+    {
+        Storage storage = StorageFactory.Instance().getStorage("mock");
+        List<String> cachedFiles = Arrays.asList(files);
+        for (String file : files(1, NUM_FILES))
+        {
+            MockPixelsPhysicalReader fileReader = new MockPixelsPhysicalReader(storage, file);
+            for (short columnId = 0; columnId < NUM_COLUMNS; ++columnId)
+            {
+                PixelsCacheKey key = new PixelsCacheKey(Long.parseLong(file), ROW_GROUP_ID, columnId);
+                PixelsCacheIdx idx = reader.search(key);
+                if (!cachedFiles.contains(file) || columnId < fromColumn || columnId >= toColumn)
+                {
+                    assertNull("columnlet " + key + " should not be cached", idx);
+                    continue;
+                }
+                assertNotNull("columnlet " + key + " is not cached", idx);
+                byte[] expected = fileReader.read(ROW_GROUP_ID, columnId);
+                byte[] content = new byte[idx.length];
+                assertEquals(expected.length, reader.get(key, content, idx.length));
+                assertArrayEquals(expected, content);
+            }
+        }
+    }
+
+    @Test
+    public void testParallelBulkLoad() throws Exception
+    {
+        buildWriter(PARTITIONS, 1024 * 1024);
+        String[] files = files(1, NUM_FILES);
+        assertEquals(0, writer.bulkLoad(1, columnlets(0, NUM_COLUMNS), files));
+        checkCached(buildReader(), files, 0, NUM_COLUMNS);
+    }
+
+    @Test
+    public void testIncrementalLoad() throws Exception
+    {
+        buildWriter(PARTITIONS, 1024 * 1024);
+        assertEquals(0, writer.bulkLoad(1, columnlets(0, 8), files(1, 4)));
+        PartitionCacheReader reader = buildReader();
+        checkCached(reader, files(1, 4), 0, 8);
+
+        // the files are loaded ahead of the cache writes, the cached columnlets are replaced
+        assertEquals(0, writer.incrementalLoad(2, columnlets(4, 12), files(3, NUM_FILES)));
+        checkCached(reader, files(3, NUM_FILES), 4, 12);
+
+        assertEquals(0, writer.incrementalLoad(3, columnlets(0, NUM_COLUMNS), files(1, NUM_FILES)));
+        checkCached(reader, files(1, NUM_FILES), 0, NUM_COLUMNS);
+    }
+
+    @Test
+    public void testIncrementalLoadWithSmallPrefetchSize() throws Exception
+    {
+        // the prefetch size is smaller than a file, the files are loaded one ahead
+        buildWriter(PARTITIONS, 1);
+        assertEquals(0, writer.bulkLoad(1, columnlets(0, 8), files(1, 4)));
+        assertEquals(0, writer.incrementalLoad(2, columnlets(4, 12), files(3, NUM_FILES)));
+        checkCached(buildReader(), files(3, NUM_FILES), 4, 12);
+    }
+
+    @Test
+    public void testIncrementalLoadFailure() throws Exception
+    {
+        buildWriter(PARTITIONS, 1024 * 1024);
+        assertEquals(0, writer.bulkLoad(1, columnlets(0, 8), files(1, 4)));
+        // the columnlets of the missing file can not be loaded, the update is broken
+        String[] files = Arrays.copyOf(files(1, 4), 5);
+        files[4] = String.valueOf(1000 + NUM_FILES + 1);
+        assertNotEquals(0, writer.incrementalLoad(2, columnlets(0, 8), files));
+    }
+}
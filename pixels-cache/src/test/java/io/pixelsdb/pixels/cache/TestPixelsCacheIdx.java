@@ -0,0 +1,63 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.cache;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestPixelsCacheIdx
+{
+    @Test
+    public void testMemoryTier()
+    {
+        PixelsCacheIdx idx = new PixelsCacheIdx(4096, 100);
+        assertFalse(idx.isSsdTier());
+        assertSame(idx, idx.toTierIdx());
+    }
+
+    @Test
+    public void testSsdTier()
+    {
+        long offset = PixelsCacheUtil.CACHE_DATA_OFFSET + (1L << 40);
+        PixelsCacheIdx idx = PixelsCacheIdx.ofSsdTier(offset, 100);
+        assertTrue(idx.isSsdTier());
+        assertEquals(100, idx.length);
+
+        PixelsCacheIdx tierIdx = idx.toTierIdx();
+        assertFalse(tierIdx.isSsdTier());
+        assertEquals(offset, tierIdx.offset);
+        assertEquals(100, tierIdx.length);
+        assertSame(tierIdx, tierIdx.toTierIdx());
+
+        // the tier flag is not lost when the idx is serialized into and deserialized from the index.
+        ByteBuffer buf = ByteBuffer.allocate(PixelsCacheIdx.SIZE);
+        idx.getBytes(buf);
+        PixelsCacheIdx deserialized = new PixelsCacheIdx(buf.array());
+        assertTrue(deserialized.isSsdTier());
+        assertEquals(offset, deserialized.toTierIdx().offset);
+        assertEquals(100, deserialized.length);
+    }
+}
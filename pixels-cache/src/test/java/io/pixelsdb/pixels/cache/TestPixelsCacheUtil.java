@@ -21,6 +21,12 @@ package io.pixelsdb.pixels.cache;
 
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 /**
  * @author guodong
  */
@@ -40,6 +46,52 @@ public class TestPixelsCacheUtil
         // start writing
     }
 
+    private static int getReaderCount(MemoryMappedFile indexFile)
+    {
+        return (indexFile.getIntVolatile(6) & PixelsCacheUtil.READER_COUNT_MASK)
+                >> PixelsCacheUtil.READER_COUNT_RIGHT_SHIFT_BITS;
+    }
+
+    private static PinnedCacheBuffer pin(MemoryMappedFile indexFile) throws InterruptedException
+    {
+        PixelsCacheUtil.beginIndexRead(indexFile);
+        return new PinnedCacheBuffer(ByteBuffer.allocate(8), indexFile,
+                PixelsCacheUtil.getIndexVersion(indexFile), PixelsCacheUtil.getReaderEpoch(indexFile));
+    }
+
+    @Test
+    public void testPinExpiryAndStaleClose() throws Exception
+    {
+        MemoryMappedFile indexFile = new MemoryMappedFile("/tmp/pixels.test.pin.index", 4096);
+        PixelsCacheUtil.initializeIndexFile(indexFile);
+        indexFile.setShortVolatile(14, (short) 0);
+
+        // the writer waits for the pinned buffer until timeout, and clears the reader count.
+        PinnedCacheBuffer stale = pin(indexFile);
+        assertEquals(1, getReaderCount(indexFile));
+        assertFalse(PixelsCacheUtil.beginIndexWrite(indexFile, 50));
+        assertEquals(0, getReaderCount(indexFile));
+        assertFalse(stale.isValid());
+        PixelsCacheUtil.setIndexVersion(indexFile, 1);
+        PixelsCacheUtil.endIndexWrite(indexFile);
+
+        // closing the stale buffer must not release the reader count of the new reader.
+        PinnedCacheBuffer fresh = pin(indexFile);
+        assertTrue(fresh.isValid());
+        stale.close();
+        assertEquals(1, getReaderCount(indexFile));
+        fresh.close();
+        fresh.close();
+        assertEquals(0, getReaderCount(indexFile));
+
+        // no count is leaked, so the next writer does not wait.
+        long start = System.currentTimeMillis();
+        assertTrue(PixelsCacheUtil.beginIndexWrite(indexFile, PixelsCacheUtil.CACHE_PIN_TIMEOUT_MS));
+        assertTrue(System.currentTimeMillis() - start < PixelsCacheUtil.CACHE_PIN_TIMEOUT_MS);
+        PixelsCacheUtil.endIndexWrite(indexFile);
+        indexFile.unmap();
+    }
+
     @Test
     public void testLogicalPartitionToPhyiscal() {
         int partitions = 4;
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Serialize the children of the radix nodes of every node type on a memory mapped file,
+ * and read them back by {@link RadixIndexLayout} and {@link RadixIndexReader}.
+ */
+public class TestRadixIndexLayout
+{
+    /**
+     * The fan-outs on both sides of the boundaries of NODE4, NODE16, NODE48 and NODE256.
+     */
+    private static final int[] FAN_OUTS = {1, 2, 4, 5, 16, 17, 48, 49, 255, 256};
+    private static final long INDEX_SIZE = 1024 * 1024;
+
+    private File file;
+    private MemoryMappedFile indexFile;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        file = Files.createTempFile("pixels-radix-layout", ".index").toFile();
+        indexFile = new MemoryMappedFile(file.getPath(), INDEX_SIZE);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        indexFile.unmap();
+        file.delete();
+    }
+
+    /**
+     * @return the leaders spread over [0, 255], including 0 and 255 if fanOut > 1, or 0x80 if fanOut = 1.
+     */
+    private static int[] leaders(int fanOut)
+    {
+        int[] leaders = new int[fanOut];
+        for (int i = 0; i < fanOut; ++i)
+        {
+            leaders[i] = fanOut == 1 ? 0x80 : i * 255 / (fanOut - 1);
+        }
+        return leaders;
+    }
+
+    private static long childOffset(int leader)
+    {
+        // the offsets use all the 7 bytes of the child id.
+        return (1L << 48) + leader * 4096L + 8;
+    }
+
+    /**
+     * Write a node with the children of the given leaders (in a random order) at the node offset.
+     * @return the header of the node
+     */
+    private int writeNode(long nodeOffset, int[] leaders, Random random)
+    {
+        long[] childIds = new long[leaders.length];
+        for (int i = 0; i < leaders.length; ++i)
+        {
+            childIds[i] = ((long) leaders[i] << 56) | childOffset(leaders[i]);
+        }
+        for (int i = childIds.length - 1; i > 0; --i)
+        {
+            int j = random.nextInt(i + 1);
+            long tmp = childIds[i];
+            childIds[i] = childIds[j];
+            childIds[j] = tmp;
+        }
+        int header = RadixIndexLayout.header(false, 0, leaders.length);
+        ByteBuffer buffer = ByteBuffer.allocate(RadixIndexLayout.childrenSize(leaders.length));
+        RadixIndexLayout.putChildren(childIds, leaders.length, buffer);
+        assertEquals(RadixIndexLayout.childrenSize(leaders.length), buffer.position());
+        indexFile.setInt(nodeOffset, header);
+        indexFile.setBytes(nodeOffset + RadixIndexLayout.NODE_HEADER_SIZE, buffer.array(), 0, buffer.position());
+        return header;
+    }
+
+    @Test
+    public void testChildrenRoundTrip()
+    {
+        Random random = new Random(20220605L);
+        int[] expectedTypes = {RadixIndexLayout.NODE4, RadixIndexLayout.NODE4, RadixIndexLayout.NODE4,
+                RadixIndexLayout.NODE16, RadixIndexLayout.NODE16, RadixIndexLayout.NODE48, RadixIndexLayout.NODE48,
+                RadixIndexLayout.NODE256, RadixIndexLayout.NODE256, RadixIndexLayout.NODE256};
+        long nodeOffset = PixelsCacheUtil.INDEX_RADIX_OFFSET;
+        for (int f = 0; f < FAN_OUTS.length; ++f)
+        {
+            int[] leaders = leaders(FAN_OUTS[f]);
+            int header = writeNode(nodeOffset, leaders, random);
+            String node = "fan-out " + FAN_OUTS[f];
+            assertEquals(node, expectedTypes[f], RadixIndexLayout.nodeTypeOf(header));
+            assertEquals(node, FAN_OUTS[f], RadixIndexLayout.childrenNum(header));
+            assertFalse(node, RadixIndexLayout.isKey(header));
+
+            long[] children = RadixIndexLayout.getChildren(indexFile, nodeOffset, header);
+            assertEquals(node, leaders.length, children.length);
+            for (int i = 0; i < leaders.length; ++i)
+            {
+                // the children are sorted by the unsigned leader.
+                assertEquals(node, leaders[i], (int) (children[i] >>> 56));
+                assertEquals(node, childOffset(leaders[i]), children[i] & RadixIndexLayout.CHILD_OFFSET_MASK);
+            }
+
+            Set<Integer> present = new HashSet<>();
+            for (int leader : leaders)
+            {
+                present.add(leader);
+            }
+            for (int leader = 0; leader < 256; ++leader)
+            {
+                long expected = present.contains(leader) ? childOffset(leader) : 0L;
+                assertEquals(node + ", leader " + leader, expected,
+                        RadixIndexLayout.findChild(indexFile, nodeOffset, header, (byte) leader));
+            }
+            nodeOffset += RadixIndexLayout.nodeSize(leaders.length, 0, false);
+        }
+    }
+
+    private static PixelsCacheKey key(int first, int second, short columnId)
+    {
+        long blockId = ((long) first << 56) | ((long) second << 48) | 0x123456789AL;
+        return new PixelsCacheKey(blockId, (short) 1, columnId);
+    }
+
+    private static PixelsCacheIdx value(PixelsCacheKey key)
+    {
+        return new PixelsCacheIdx(key.blockId >>> 8, (int) (key.blockId >>> 48) + key.columnId);
+    }
+
+    @Test
+    public void testAgreeWithIndexReader()
+    {
+        /*
+         * The first byte of the keys selects a group, and the second byte of the keys in a group is
+         * one of the leaders of the fan-out of the group. Thus the root has a child for each group,
+         * and the child of each group has the children of the fan-out.
+         */
+        int[] groups = {0x00, 0x01, 0x7F, 0x80, 0x81, 0xC0, 0xFE, 0xFF};
+        int[] fanOuts = {2, 4, 5, 16, 17, 48, 49, 256};
+        RadixIndexWriter writer = new RadixIndexWriter(indexFile);
+        List<PixelsCacheKey> keys = new ArrayList<>();
+        for (int g = 0; g < groups.length; ++g)
+        {
+            for (int second : leaders(fanOuts[g]))
+            {
+                PixelsCacheKey key = key(groups[g], second, (short) 2);
+                writer.put(key, value(key));
+                keys.add(key);
+            }
+        }
+        assertTrue(writer.flush() > 0);
+
+        RadixIndexReader reader = new RadixIndexReader(indexFile);
+        for (PixelsCacheKey key : keys)
+        {
+            PixelsCacheIdx expected = value(key);
+            PixelsCacheIdx actual = reader.read(key);
+            assertNotNull(key.toString(), actual);
+            assertEquals(key.toString(), expected.offset, actual.offset);
+            assertEquals(key.toString(), expected.length, actual.length);
+        }
+        // the leader is absent in the root, or in the node of the group, or the rest of the key does not match.
+        assertNull(reader.read(key(0x02, 0x00, (short) 2)));
+        assertNull(reader.read(key(0x00, 0x01, (short) 2)));
+        assertNull(reader.read(key(0xC0, 0x06, (short) 2)));
+        assertNull(reader.read(key(0xFF, 0x01, (short) 3)));
+
+        // every child found by findChild is the child read by getChildren, whose edge starts with the leader.
+        Set<Integer> nodeTypes = new HashSet<>();
+        Deque<Long> nodes = new ArrayDeque<>();
+        nodes.push((long) PixelsCacheUtil.INDEX_RADIX_OFFSET);
+        while (!nodes.isEmpty())
+        {
+            long nodeOffset = nodes.pop();
+            int header = indexFile.getInt(nodeOffset);
+            if (RadixIndexLayout.childrenNum(header) == 0)
+            {
+                continue;
+            }
+            nodeTypes.add(RadixIndexLayout.nodeTypeOf(header));
+            Set<Integer> present = new HashSet<>();
+            for (long childId : RadixIndexLayout.getChildren(indexFile, nodeOffset, header))
+            {
+                int leader = (int) (childId >>> 56);
+                long childOffset = childId & RadixIndexLayout.CHILD_OFFSET_MASK;
+                present.add(leader);
+                assertEquals(childOffset, RadixIndexLayout.findChild(indexFile, nodeOffset, header, (byte) leader));
+                int childHeader = indexFile.getInt(childOffset);
+                assertEquals((byte) leader, indexFile.getByte(RadixIndexLayout.edgeOffset(childOffset, childHeader)));
+                nodes.push(childOffset);
+            }
+            for (int leader = 0; leader < 256; ++leader)
+            {
+                if (!present.contains(leader))
+                {
+                    assertEquals(0L, RadixIndexLayout.findChild(indexFile, nodeOffset, header, (byte) leader));
+                }
+            }
+        }
+        assertEquals(new HashSet<>(Arrays.asList(RadixIndexLayout.NODE4, RadixIndexLayout.NODE16,
+                RadixIndexLayout.NODE48, RadixIndexLayout.NODE256)), nodeTypes);
+    }
+}
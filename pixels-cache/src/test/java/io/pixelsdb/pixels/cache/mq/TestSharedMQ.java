@@ -0,0 +1,213 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.cache.mq;
+
+import io.pixelsdb.pixels.cache.MemoryMappedFile;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.pixelsdb.pixels.common.error.ErrorCode.SUCCESS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestSharedMQ
+{
+    private static final String MQ_LOCATION = "/tmp/pixels.test.shared.mq";
+
+    /**
+     * A message of a writer id, a sequence number and a padding of the given length.
+     */
+    private static class TestMessage implements Message
+    {
+        private int writerId;
+        private int seq;
+        private int padding;
+
+        TestMessage() { }
+
+        TestMessage(int writerId, int seq, int padding)
+        {
+            this.writerId = writerId;
+            this.seq = seq;
+            this.padding = padding;
+        }
+
+        @Override
+        public int size()
+        {
+            return 2 * Integer.BYTES + padding;
+        }
+
+        @Override
+        public void ensureSize(int messageSize)
+        {
+            this.padding = messageSize - 2 * Integer.BYTES;
+        }
+
+        @Override
+        public void read(MemoryMappedFile mem, long pos)
+        {
+            this.writerId = mem.getInt(pos);
+            this.seq = mem.getInt(pos + Integer.BYTES);
+            for (int i = 0; i < padding; ++i)
+            {
+                // the padding is filled with the low byte of the sequence number.
+                assertEquals("corrupted message", (byte) seq, mem.getByte(pos + 2 * Integer.BYTES + i));
+            }
+        }
+
+        @Override
+        public void write(MemoryMappedFile mem, long pos)
+        {
+            mem.setInt(pos, writerId);
+            mem.setInt(pos + Integer.BYTES, seq);
+            for (int i = 0; i < padding; ++i)
+            {
+                mem.setByte(pos + 2 * Integer.BYTES + i, (byte) seq);
+            }
+        }
+
+        @Override
+        public String print(MemoryMappedFile mem, long pos)
+        {
+            return mem.getInt(pos) + ":" + mem.getInt(pos + Integer.BYTES);
+        }
+    }
+
+    /**
+     * Concurrent writers and readers on a small queue, so that the queue is flipped many times
+     * and the readers often reach the entries whose sizes are being set by the writers.
+     * Every message must be read exactly once, and in order for each writer.
+     */
+    @Test
+    public void testConcurrentWriteAndRead() throws Exception
+    {
+        final int numWriters = 4, numReaders = 2, numMessages = 20000;
+        new SharedMQ(MQ_LOCATION, 4096, true).close();
+
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        AtomicInteger numRead = new AtomicInteger(0);
+        int[][] received = new int[numWriters][numMessages];
+        for (int w = 0; w < numWriters; ++w)
+        {
+            final int writerId = w;
+            threads.add(new Thread(() ->
+            {
+                try
+                {
+                    SharedMQ mq = new SharedMQ(MQ_LOCATION, 4096, 60000, false);
+                    for (int i = 0; i < numMessages; ++i)
+                    {
+                        // variable message sizes, so that the entries are not aligned across flips.
+                        TestMessage message = new TestMessage(writerId, i, (i * 7 + writerId) % 50);
+                        while (mq.nextForWrite(message.size()) != SUCCESS)
+                        {
+                            Thread.yield();
+                        }
+                        mq.writeMessage(message);
+                    }
+                    mq.close();
+                } catch (Throwable e)
+                {
+                    synchronized (errors)
+                    {
+                        errors.add(e);
+                    }
+                }
+            }));
+        }
+        for (int r = 0; r < numReaders; ++r)
+        {
+            threads.add(new Thread(() ->
+            {
+                try
+                {
+                    SharedMQ mq = new SharedMQ(MQ_LOCATION, 4096, 60000, false);
+                    TestMessage message = new TestMessage();
+                    while (numRead.get() < numWriters * numMessages)
+                    {
+                        if (mq.nextForRead(message) != SUCCESS)
+                        {
+                            Thread.yield();
+                            continue;
+                        }
+                        mq.readMessage(message);
+                        synchronized (received)
+                        {
+                            received[message.writerId][message.seq]++;
+                        }
+                        numRead.incrementAndGet();
+                    }
+                    mq.close();
+                } catch (Throwable e)
+                {
+                    synchronized (errors)
+                    {
+                        errors.add(e);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads)
+        {
+            thread.start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join(60000);
+            assertTrue("the queue is stuck", !thread.isAlive());
+        }
+        assertTrue("errors: " + errors, errors.isEmpty());
+        for (int w = 0; w < numWriters; ++w)
+        {
+            for (int i = 0; i < numMessages; ++i)
+            {
+                assertEquals("message " + w + ":" + i, 1, received[w][i]);
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyAndFull() throws Exception
+    {
+        SharedMQ mq = new SharedMQ(MQ_LOCATION, 4096, true);
+        TestMessage message = new TestMessage();
+        assertTrue(mq.nextForRead(message) != SUCCESS);
+        int numWritten = 0;
+        while (mq.nextForWrite(new TestMessage(0, numWritten, 100).size()) == SUCCESS)
+        {
+            mq.writeMessage(new TestMessage(0, numWritten++, 100));
+            assertTrue("the queue is never full", numWritten < 4096);
+        }
+        assertTrue(numWritten > 0);
+        for (int i = 0; i < numWritten; ++i)
+        {
+            assertEquals(SUCCESS, mq.nextForRead(message));
+            mq.readMessage(message);
+            assertEquals(i, message.seq);
+        }
+        assertTrue(mq.nextForRead(message) != SUCCESS);
+        mq.close();
+    }
+}
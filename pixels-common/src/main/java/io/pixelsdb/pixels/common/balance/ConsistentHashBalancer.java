@@ -0,0 +1,298 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.common.balance;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The balancer based on consistent hashing with bounded loads.
+ * <p>
+ * Each path is weighted by its size in bytes (set by {@link #setWeight(String, long)}), and no node
+ * is assigned more than loadFactor * (total weight / number of nodes) bytes. A path is kept on the node
+ * it was assigned to in the previous balancing (set by {@link #setPrevious(Map)}) if that node is still
+ * available and its load does not exceed the average. Otherwise, it is assigned to the first node on the
+ * hash ring, clockwise from the hash of the path, whose load does not exceed the average, or the bound
+ * of the load factor if there is no such node. Therefore, adding or removing a node, or adding or removing
+ * some paths only moves the paths that have to be moved, instead of reshuffling most paths as the
+ * count-based {@link ReplicaBalancer}.
+ * <p>
+ * For the storage with data locality, the candidate nodes of a path are given by
+ * {@link #put(String, HostAddress)}, and the path is only assigned to its candidate nodes.
+ * For the storage without data locality, use {@link #autoSelect(String)} to allow any node.
+ */
+public class ConsistentHashBalancer extends Balancer
+{
+    private static final int VIRTUAL_NODES = 128;
+
+    private boolean balanced = false;
+    private final double loadFactor;
+    private final List<HostAddress> nodes;
+    private final TreeMap<Long, HostAddress> ring = new TreeMap<>();
+    /**
+     * The candidate nodes of the paths, an empty set means any node.
+     */
+    private final Map<String, Set<HostAddress>> origin = new HashMap<>();
+    private final Map<String, Long> weights = new HashMap<>();
+    private final Map<String, HostAddress> previous = new HashMap<>();
+    private final Map<String, HostAddress> result = new HashMap<>();
+
+    /**
+     * @param nodes the target node on which the files will be balanced to.
+     * @param loadFactor the maximum load of a node relative to the average load, must be >= 1.
+     */
+    public ConsistentHashBalancer(List<HostAddress> nodes, double loadFactor)
+    {
+        requireNonNull(nodes, "nodes is null");
+        checkArgument(!nodes.isEmpty(), "nodes is empty");
+        checkArgument(loadFactor >= 1, "loadFactor must be >= 1");
+        this.nodes = ImmutableList.copyOf(nodes);
+        this.loadFactor = loadFactor;
+        for (HostAddress node : nodes)
+        {
+            for (int i = 0; i < VIRTUAL_NODES; ++i)
+            {
+                ring.put(hash(node.toString() + "#" + i), node);
+            }
+        }
+    }
+
+    @Override
+    public void put(String path, HostAddress address)
+    {
+        requireNonNull(path, "path is null");
+        requireNonNull(address, "address is null");
+        this.origin.computeIfAbsent(path, k -> new HashSet<>(3)).add(address);
+        balanced = false;
+    }
+
+    @Override
+    public void put(String path, Set<HostAddress> addresses)
+    {
+        requireNonNull(path, "path is null");
+        requireNonNull(addresses, "addresses is null");
+        checkArgument(!addresses.isEmpty(), "addresses is empty");
+        for (HostAddress address : addresses)
+        {
+            // do not directly put address into origin,
+            // for it may be modified outside this method.
+            this.put(path, address);
+        }
+        balanced = false;
+    }
+
+    @Override
+    public void autoSelect(String path)
+    {
+        requireNonNull(path, "path is null");
+        this.origin.computeIfAbsent(path, k -> new HashSet<>(3));
+        balanced = false;
+    }
+
+    /**
+     * Set the weight (e.g., the size in bytes) of the path, the default weight is 1.
+     */
+    public void setWeight(String path, long weight)
+    {
+        requireNonNull(path, "path is null");
+        checkArgument(weight >= 0, "weight is negative");
+        this.weights.put(path, weight);
+        balanced = false;
+    }
+
+    /**
+     * Set the assignments of the previous balancing, which are preserved if possible.
+     */
+    public void setPrevious(Map<String, HostAddress> previous)
+    {
+        requireNonNull(previous, "previous is null");
+        this.previous.clear();
+        this.previous.putAll(previous);
+        balanced = false;
+    }
+
+    @Override
+    public HostAddress get(String path)
+    {
+        return result.get(path);
+    }
+
+    @Override
+    public Map<String, HostAddress> getAll()
+    {
+        return ImmutableMap.copyOf(result);
+    }
+
+    @Override
+    public void balance()
+    {
+        if (balanced)
+        {
+            return;
+        }
+        result.clear();
+        long totalWeight = 0, maxWeight = 0;
+        for (String path : origin.keySet())
+        {
+            long weight = weightOf(path);
+            totalWeight += weight;
+            maxWeight = Math.max(maxWeight, weight);
+        }
+        long capacity = Math.max((long) Math.ceil(loadFactor * totalWeight / nodes.size()), maxWeight);
+        /*
+         * The previous assignments are preserved up to the average load, so that the overloaded nodes
+         * (e.g., when a new node joins) shed the excess paths to the underloaded nodes.
+         */
+        long averageCapacity = Math.max((long) Math.ceil((double) totalWeight / nodes.size()), maxWeight);
+        Map<HostAddress, Long> loads = new HashMap<>();
+        for (HostAddress node : nodes)
+        {
+            loads.put(node, 0L);
+        }
+        // place the heavy paths first for a tighter packing, the order is deterministic.
+        List<String> paths = new ArrayList<>(origin.keySet());
+        paths.sort(Comparator.comparingLong(this::weightOf).reversed().thenComparing(Comparator.naturalOrder()));
+
+        List<String> unassigned = new ArrayList<>();
+        for (String path : paths)
+        {
+            HostAddress node = previous.get(path);
+            if (node != null && loads.containsKey(node) && isCandidate(path, node) &&
+                    loads.get(node) + weightOf(path) <= averageCapacity)
+            {
+                assign(path, node, loads);
+            }
+            else
+            {
+                unassigned.add(path);
+            }
+        }
+        for (String path : unassigned)
+        {
+            // prefer the nodes under the average load, so that the new nodes are filled up.
+            HostAddress chosen = walkToFit(path, averageCapacity, loads);
+            if (chosen == null)
+            {
+                chosen = walkToFit(path, capacity, loads);
+            }
+            if (chosen == null)
+            {
+                // all the candidate nodes are full, choose the least loaded one.
+                long leastLoad = Long.MAX_VALUE;
+                for (HostAddress node : nodes)
+                {
+                    if (isCandidate(path, node) && loads.get(node) < leastLoad)
+                    {
+                        leastLoad = loads.get(node);
+                        chosen = node;
+                    }
+                }
+            }
+            if (chosen != null)
+            {
+                assign(path, chosen, loads);
+            }
+        }
+        balanced = true;
+    }
+
+    @Override
+    public boolean isBalanced()
+    {
+        return balanced;
+    }
+
+    /**
+     * Walk clockwise on the ring from the hash of the path.
+     * @return the first candidate node whose load does not exceed the capacity after assigning the path,
+     * or null if there is no such node.
+     */
+    private HostAddress walkToFit(String path, long capacity, Map<HostAddress, Long> loads)
+    {
+        Set<HostAddress> visited = new HashSet<>();
+        for (HostAddress node : walk(hash(path)))
+        {
+            if (!visited.add(node))
+            {
+                continue;
+            }
+            if (isCandidate(path, node) && loads.get(node) + weightOf(path) <= capacity)
+            {
+                return node;
+            }
+            if (visited.size() == nodes.size())
+            {
+                break;
+            }
+        }
+        return null;
+    }
+
+    private void assign(String path, HostAddress node, Map<HostAddress, Long> loads)
+    {
+        result.put(path, node);
+        loads.put(node, loads.get(node) + weightOf(path));
+    }
+
+    private long weightOf(String path)
+    {
+        return weights.getOrDefault(path, 1L);
+    }
+
+    private boolean isCandidate(String path, HostAddress node)
+    {
+        Set<HostAddress> candidates = origin.get(path);
+        return candidates == null || candidates.isEmpty() || candidates.contains(node);
+    }
+
+    /**
+     * @return the virtual nodes on the ring clockwise from the hash, wrapping around once.
+     */
+    private Iterable<HostAddress> walk(long hash)
+    {
+        return Iterables.concat(ring.tailMap(hash, true).values(), ring.headMap(hash, false).values());
+    }
+
+    /**
+     * 64-bit FNV-1a hash with the murmur3 finalizer for a better avalanche.
+     */
+    private static long hash(String key)
+    {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8))
+        {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -20,6 +20,7 @@
 package io.pixelsdb.pixels.common.lock;
 
 import io.etcd.jetcd.*;
+import io.etcd.jetcd.kv.GetResponse;
 import io.etcd.jetcd.kv.PutResponse;
 import io.etcd.jetcd.options.GetOption;
 import io.etcd.jetcd.options.PutOption;
@@ -36,6 +37,7 @@ import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author: tao
@@ -45,6 +47,19 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class LockInternals
 {
     private static Logger logger = LogManager.getLogger(LockInternals.class);
+    /**
+     * The bounds of the backoff before re-listing the keys after the watch fails.
+     */
+    private static final long MIN_WATCH_RETRY_BACKOFF_MS = 10;
+    private static final long MAX_WATCH_RETRY_BACKOFF_MS = 1000;
+
+    /**
+     * The result of waiting for the deletion of a key.
+     */
+    private enum WaitResult
+    {
+        DELETED, WATCH_FAILED, TIMEOUT
+    }
 
     private final String path;
     private final Client client;
@@ -141,135 +156,74 @@ public class LockInternals
         return ourPath;
     }
 
+    /**
+     * Wait until we hold the lock or the timeout expires. A 'READ' waits for the deletion of the last 'WRIT' before
+     * it, and a 'WRIT' waits for the deletion of the last key (either 'READ' or 'WRIT') before it. The keys are
+     * re-listed only when the watched key is deleted, or after an exponential backoff if the watch fails.
+     * The timeout covers the whole wait (including the backoff), and the key is deleted if we do not get the lock.
+     */
     private synchronized boolean internalLockLoop(String ourPath, long timeout, TimeUnit unit) throws Exception
     {
         boolean haveTheLock = false;
         boolean doDelete = false;
+        long startNanos = System.nanoTime();
+        long nanosToWait = unit != null ? unit.toNanos(timeout) : Long.MAX_VALUE;
+        boolean isRead = ourPath.contains("_READ_");
+        long backoffMillis = MIN_WATCH_RETRY_BACKOFF_MS;
         try
         {
+            long revisionOfMyself = this.pathToVersion.get(ourPath);
             while (true)
             {
-                List<KeyValue> children = this.getSortedChildren();
-
-                long revisionOfMyself = this.pathToVersion.get(ourPath);
-                if (revisionOfMyself == children.get(0).getCreateRevision())
-                {
-                    DEBUG("[lock-success]: " + ourPath + "(" + revisionOfMyself + ")");
-                    haveTheLock = true;
-                    break;
-                }
-                // current is 'READ'
-                if (ourPath.contains("_READ_"))
+                GetResponse response = this.getSortedChildrenResponse();
+                List<KeyValue> children = response.getKvs();
+                KeyValue predecessor = null;
+                for (int index = children.size() - 1; index >= 0; index--)
                 {
-                    int preIndex = 0;
-                    // true: all 'READ', false: exist 'WRIT'
-                    boolean isRead = true;
-                    for (int index = children.size() - 1; index >= 0; index--)
+                    KeyValue kv = children.get(index);
+                    if (kv.getCreateRevision() >= revisionOfMyself)
                     {
-                        KeyValue kv = children.get(index);
-                        long revision = kv.getCreateRevision();
-                        // no or exist 'WRIT'
-                        if (revision >= revisionOfMyself)
-                        {
-                            continue;
-                        }
-                        else
-                        {
-                            String beforeKey = kv.getKey().toString(StandardCharsets.UTF_8);
-                            if (beforeKey.contains("_WRIT_"))
-                            {
-                                preIndex = index;
-                                isRead = false;
-                                break;
-                            }
-                        }
+                        continue;
                     }
-                    if (isRead)
+                    if (!isRead || kv.getKey().toString(StandardCharsets.UTF_8).contains("_WRIT_"))
                     {
-                        haveTheLock = true;
-                        DEBUG("[read-lock-success]: " + ourPath + "(" + revisionOfMyself + ") [read-only]");
+                        predecessor = kv;
                         break;
                     }
-                    else
+                }
+                if (predecessor == null)
+                {
+                    DEBUG((isRead ? "[read-lock-success]: " : "[write-lock-success]: ") +
+                            ourPath + "(" + revisionOfMyself + ")");
+                    haveTheLock = true;
+                    break;
+                }
+                long nanosLeft = nanosToWait - (System.nanoTime() - startNanos);
+                String preKey = predecessor.getKey().toString(StandardCharsets.UTF_8);
+                DEBUG((isRead ? "[read-lock-wait]: " : "[write-lock-wait]: ") + ourPath + "(" +
+                        revisionOfMyself + "), [wait for]: " + preKey);
+                WaitResult result = nanosLeft <= 0 ? WaitResult.TIMEOUT :
+                        waitForDelete(predecessor.getKey(), response.getHeader().getRevision() + 1, nanosLeft);
+                if (result == WaitResult.TIMEOUT)
+                {
+                    DEBUG((isRead ? "[read-lock-timeout]: " : "[write-lock-timeout]: ") +
+                            ourPath + "(" + revisionOfMyself + ")");
+                    break;
+                }
+                if (result == WaitResult.WATCH_FAILED)
+                {
+                    // back off before re-listing, so that a failing watch does not become a tight loop of listings.
+                    nanosLeft = nanosToWait - (System.nanoTime() - startNanos);
+                    long backoffNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(backoffMillis), nanosLeft);
+                    if (backoffNanos > 0)
                     {
-                        // listen last 'WRIT'
-                        ByteSequence preKeyBS = children.get(preIndex).getKey();
-                        CountDownLatch latch = new CountDownLatch(1);
-                        Watch.Watcher watcher = client.getWatchClient().watch(preKeyBS, WatchOption.DEFAULT, watchResponse ->
-                        {
-                            for (WatchEvent event : watchResponse.getEvents())
-                            {
-                                if (event.getEventType() == WatchEvent.EventType.DELETE)
-                                {
-                                    // listen to the DELETE even on the last WRIT.
-                                    latch.countDown();
-                                    break;
-                                }
-                            }
-                        });
-
-                        try
-                        {
-                            DEBUG("[read-lock-wait]: " + ourPath + "(" + revisionOfMyself +
-                                    "), [wait for]: " + preKeyBS.toString(StandardCharsets.UTF_8));
-                            if (latch.await(timeout, unit))
-                            {
-                                DEBUG("[read-lock-success]: " + ourPath + "(" + revisionOfMyself +
-                                        ") [read-write]");
-                                haveTheLock = true;
-                            }
-                            else
-                            {
-                                DEBUG("[read-lock-timeout]: " + ourPath + "(" + revisionOfMyself +
-                                        ") [read-write]");
-                                haveTheLock = false;
-                            }
-                            if (watcher != null)
-                            {
-                                // close() to avoid leaving unneeded watchers which is a type of resource leak
-                                watcher.close();
-                            }
-                            break;
-                        }
-                        catch (InterruptedException e)
-                        {
-                            logger.error("[read-lock-error]: failed to listen key.");
-                        }
+                        TimeUnit.NANOSECONDS.sleep(backoffNanos);
                     }
+                    backoffMillis = Math.min(backoffMillis * 2, MAX_WATCH_RETRY_BACKOFF_MS);
                 }
                 else
                 {
-                    // current is 'WRIT'
-                    DEBUG("[write-lock-wait]: " + ourPath + "(" + revisionOfMyself +")");
-                    long startMillis = System.currentTimeMillis();
-                    Long millisToWait = unit != null ? unit.toMillis(timeout) : null;
-                    // wait all the keys before this key to be deleted
-                    if (canGetWriteLock(ourPath))
-                    {
-                        DEBUG("[write-lock-success]: " + ourPath + "(" +
-                                revisionOfMyself + ")");
-                        haveTheLock = true;
-                        break;
-                    }
-                    else
-                    {
-                        // don't try write lock too often
-                        try
-                        {
-                            Thread.sleep(1000);
-                            if (System.currentTimeMillis() - startMillis >= millisToWait)
-                            {
-                                DEBUG("[write-lock-timeout]: " + ourPath + "(" +
-                                        revisionOfMyself + ")");
-                                haveTheLock = false;
-                                break;
-                            }
-                        }
-                        catch (InterruptedException e)
-                        {
-                            logger.error("Interrupted when waiting to acquire write lock.", e);
-                        }
-                    }
+                    backoffMillis = MIN_WATCH_RETRY_BACKOFF_MS;
                 }
             }
         }
@@ -280,8 +234,9 @@ public class LockInternals
         }
         finally
         {
-            if (doDelete)
+            if (doDelete || !haveTheLock)
             {
+                // the key is deleted if we do not get the lock, otherwise it blocks the later keys forever.
                 this.deleteOurPath(ourPath);
             }
         }
@@ -289,26 +244,46 @@ public class LockInternals
     }
 
     /**
-     * can get the write lock
+     * Wait for the deletion of the key. The watch starts from the given revision, thus a deletion after the
+     * keys are listed is not missed even if it happens before the watch is created.
      *
-     * @return true if the first key, false if not
+     * @param key the key to wait for
+     * @param fromRevision the revision to watch from, i.e., the revision of the listing plus one
+     * @param nanos the maximum time to wait
+     * @return DELETED if the key is deleted, WATCH_FAILED if the watch fails, in both cases the keys need to be
+     * re-listed, or TIMEOUT if the time expires
      */
-    private boolean canGetWriteLock(String path)
+    private WaitResult waitForDelete(ByteSequence key, long fromRevision, long nanos) throws InterruptedException
     {
-        List<KeyValue> children = null;
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<WaitResult> result = new AtomicReference<>();
+        WatchOption option = WatchOption.newBuilder().withRevision(fromRevision).build();
+        Watch.Watcher watcher = client.getWatchClient().watch(key, option, Watch.listener(watchResponse ->
+        {
+            for (WatchEvent event : watchResponse.getEvents())
+            {
+                if (event.getEventType() == WatchEvent.EventType.DELETE)
+                {
+                    result.compareAndSet(null, WaitResult.DELETED);
+                    latch.countDown();
+                    break;
+                }
+            }
+        }, e ->
+        {
+            logger.error("[lock-watch-error]: failed to watch " + key.toString(StandardCharsets.UTF_8), e);
+            result.compareAndSet(null, WaitResult.WATCH_FAILED);
+            latch.countDown();
+        }));
         try
         {
-            children = this.getSortedChildren();
+            return latch.await(nanos, TimeUnit.NANOSECONDS) ? result.get() : WaitResult.TIMEOUT;
         }
-        catch (Exception e)
+        finally
         {
-            e.printStackTrace();
+            // close() to avoid leaving unneeded watchers which is a type of resource leak
+            watcher.close();
         }
-        //only id the first key is myself can get the write-lock
-        long revisionOfMyself = this.pathToVersion.get(path);
-        boolean result = revisionOfMyself == children.get(0).getModRevision();
-
-        return result;
     }
 
     /**
@@ -319,11 +294,19 @@ public class LockInternals
      */
     List<KeyValue> getSortedChildren() throws Exception
     {
-        List<KeyValue> kvList = client.getKVClient().get(ByteSequence.from(basePath, StandardCharsets.UTF_8),
+        return getSortedChildrenResponse().getKvs();
+    }
+
+    /**
+     * @return the response of getting all the keys with this prefix, order by MOD, the revision in the header
+     * is the revision of the listing
+     */
+    private GetResponse getSortedChildrenResponse() throws Exception
+    {
+        return client.getKVClient().get(ByteSequence.from(basePath, StandardCharsets.UTF_8),
                 GetOption.newBuilder().withPrefix(ByteSequence.from(basePath, StandardCharsets.UTF_8))
                         .withSortField(GetOption.SortTarget.MOD).build())
-                .get().getKvs();
-        return kvList;
+                .get();
     }
 
     /**
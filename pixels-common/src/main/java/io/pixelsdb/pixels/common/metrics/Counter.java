@@ -0,0 +1,47 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.common.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free monotonic counter.
+ */
+public class Counter
+{
+    private final LongAdder value = new LongAdder();
+
+    protected Counter() { }
+
+    public void inc()
+    {
+        value.increment();
+    }
+
+    public void add(long n)
+    {
+        value.add(n);
+    }
+
+    public long get()
+    {
+        return value.sum();
+    }
+}
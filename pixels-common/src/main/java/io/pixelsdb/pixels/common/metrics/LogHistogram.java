@@ -0,0 +1,138 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative long values (e.g., latencies in microseconds
+ * or request sizes in bytes), with log-linear buckets as in HdrHistogram.
+ * <p>
+ * Each power of two is divided into 2^{@link #SUB_BUCKET_BITS} linear sub-buckets, thus the
+ * relative error of the percentiles is at most 1/2^SUB_BUCKET_BITS (12.5%). Values smaller than
+ * the number of sub-buckets are recorded exactly. Recording a value costs an increment on an
+ * {@link AtomicLongArray} slot and on two {@link LongAdder}s, without allocation or locking.
+ * </p>
+ */
+public class LogHistogram
+{
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Create a histogram that is not registered in the {@link MetricsRegistry}, thus it is not exported.
+     * Use {@link MetricsRegistry#histogram} to create the exported histograms.
+     */
+    public LogHistogram() { }
+
+    /**
+     * Record a value, negative values are recorded as 0.
+     * @param value the value.
+     */
+    public void record(long value)
+    {
+        if (value < 0)
+        {
+            value = 0;
+        }
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    public long getSum()
+    {
+        return sum.sum();
+    }
+
+    /**
+     * Get the approximate value at the given percentile. The buckets are read without
+     * synchronization, thus the result may not reflect the concurrent recordings.
+     * @param percentile in (0, 1].
+     * @return the upper bound of the bucket containing the percentile, or 0 if there is no value.
+     */
+    public long getPercentile(double percentile)
+    {
+        long[] counts = new long[NUM_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; ++i)
+        {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0)
+        {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile * total);
+        long accumulated = 0;
+        for (int i = 0; i < NUM_BUCKETS; ++i)
+        {
+            accumulated += counts[i];
+            if (accumulated >= rank)
+            {
+                return bucketUpperBound(i);
+            }
+        }
+        return bucketUpperBound(NUM_BUCKETS - 1);
+    }
+
+    static int bucketIndex(long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketLowerBound(int index)
+    {
+        if (index < SUB_BUCKETS)
+        {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return (1L << exponent) | (subBucket << (exponent - SUB_BUCKET_BITS));
+    }
+
+    static long bucketUpperBound(int index)
+    {
+        if (index >= NUM_BUCKETS - 1)
+        {
+            return Long.MAX_VALUE;
+        }
+        return bucketLowerBound(index + 1) - 1;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.common.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A minimal http server that exposes the metrics in {@link MetricsRegistry}
+ * to Prometheus at http://host:port/metrics.
+ * It is started by the Pixels daemon on metrics.http.port. In the processes that read
+ * Pixels files (e.g., the query engine workers), it is started by the pixels readers on
+ * metrics.reader.http.port, see {@link #startInProcess(int)}.
+ */
+public class MetricsHttpServer
+{
+    private static final Logger logger = LogManager.getLogger(MetricsHttpServer.class);
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static MetricsHttpServer processServer = null;
+
+    private final HttpServer server;
+
+    /**
+     * Create and start the metrics http server.
+     * @param port the port to listen on.
+     * @throws IOException if the port can not be bound.
+     */
+    public MetricsHttpServer(int port) throws IOException
+    {
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.createContext("/metrics", exchange ->
+        {
+            byte[] body = MetricsRegistry.Instance().toPromTextFormat().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        // use the default executor, i.e., the requests are handled in the dispatcher thread.
+        this.server.start();
+        logger.info("metrics http server is listening on port " + port);
+    }
+
+    /**
+     * Start the metrics http server of this process, if it is not started yet.
+     * The server runs until the process exits, thus it should only be started in
+     * long-running processes such as the query engine workers.
+     * @param port the port to listen on.
+     * @throws IOException if the port can not be bound.
+     */
+    public static synchronized void startInProcess(int port) throws IOException
+    {
+        if (processServer == null)
+        {
+            processServer = new MetricsHttpServer(port);
+        }
+    }
+
+    public void stop()
+    {
+        this.server.stop(0);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.common.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The process-wide registry of the in-process metrics, i.e., {@link Counter}s and
+ * {@link LogHistogram}s. A metric is identified by its name and label values.
+ * <p>
+ * Looking up a metric in the registry involves string concatenation and hashing,
+ * hot paths should look up the metrics once and keep the references (e.g., in static
+ * fields or in an EnumMap per storage scheme), so that only the recording is on the hot path.
+ * </p>
+ * <p>
+ * The metrics are exported in the Prometheus text format by {@link #toPromTextFormat()},
+ * counters as counter and histograms as summary with quantiles.
+ * {@link MetricsHttpServer} serves this text at /metrics.
+ * </p>
+ */
+public class MetricsRegistry
+{
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static MetricsRegistry instance;
+
+    public static MetricsRegistry Instance()
+    {
+        if (instance == null)
+        {
+            synchronized (MetricsRegistry.class)
+            {
+                if (instance == null)
+                {
+                    instance = new MetricsRegistry();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static class Family
+    {
+        private final String name;
+        private final String help;
+        private final boolean isCounter;
+        /**
+         * Key: the label string in Prometheus format, e.g., {scheme="s3"}, value: the metric.
+         */
+        private final Map<String, Object> children = new ConcurrentHashMap<>();
+
+        private Family(String name, String help, boolean isCounter)
+        {
+            this.name = name;
+            this.help = help;
+            this.isCounter = isCounter;
+        }
+    }
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    private MetricsRegistry() { }
+
+    /**
+     * Get or create a counter.
+     * @param name the metric name, should end with _total by the Prometheus convention.
+     * @param help the description of the metric.
+     * @param labels the label names and values, e.g., "scheme", "s3".
+     * @return the counter.
+     */
+    public Counter counter(String name, String help, String... labels)
+    {
+        Family family = getFamily(name, help, true);
+        return (Counter) family.children.computeIfAbsent(labelString(labels), k -> new Counter());
+    }
+
+    /**
+     * Get or create a histogram.
+     * @param name the metric name, should end with the unit, e.g., _us or _bytes.
+     * @param help the description of the metric.
+     * @param labels the label names and values, e.g., "scheme", "s3".
+     * @return the histogram.
+     */
+    public LogHistogram histogram(String name, String help, String... labels)
+    {
+        Family family = getFamily(name, help, false);
+        return (LogHistogram) family.children.computeIfAbsent(labelString(labels), k -> new LogHistogram());
+    }
+
+    private Family getFamily(String name, String help, boolean isCounter)
+    {
+        Family family = families.computeIfAbsent(name, k -> new Family(name, help, isCounter));
+        if (family.isCounter != isCounter)
+        {
+            throw new IllegalArgumentException("metric '" + name + "' is already registered with another type");
+        }
+        return family;
+    }
+
+    private static String labelString(String... labels)
+    {
+        if (labels.length % 2 != 0)
+        {
+            throw new IllegalArgumentException("labels should be name-value pairs");
+        }
+        if (labels.length == 0)
+        {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2)
+        {
+            if (i > 0)
+            {
+                builder.append(',');
+            }
+            builder.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\""))
+                    .append('"');
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * @return the metrics in the Prometheus text exposition format (version 0.0.4).
+     */
+    public String toPromTextFormat()
+    {
+        StringBuilder builder = new StringBuilder();
+        for (Family family : new TreeMap<>(families).values())
+        {
+            builder.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            builder.append("# TYPE ").append(family.name).append(' ')
+                    .append(family.isCounter ? "counter" : "summary").append('\n');
+            for (Map.Entry<String, Object> entry : new TreeMap<>(family.children).entrySet())
+            {
+                String labels = entry.getKey();
+                if (family.isCounter)
+                {
+                    builder.append(family.name).append(labels).append(' ')
+                            .append(((Counter) entry.getValue()).get()).append('\n');
+                    continue;
+                }
+                LogHistogram histogram = (LogHistogram) entry.getValue();
+                for (double quantile : QUANTILES)
+                {
+                    String quantileLabel = "quantile=\"" + quantile + "\"";
+                    builder.append(family.name).append(labels.isEmpty() ? "{" + quantileLabel + "}" :
+                            labels.substring(0, labels.length() - 1) + "," + quantileLabel + "}")
+                            .append(' ').append(histogram.getPercentile(quantile)).append('\n');
+                }
+                builder.append(family.name).append("_sum").append(labels).append(' ')
+                        .append(histogram.getSum()).append('\n');
+                builder.append(family.name).append("_count").append(labels).append(' ')
+                        .append(histogram.getCount()).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+}
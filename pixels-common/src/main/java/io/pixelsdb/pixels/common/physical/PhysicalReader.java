@@ -23,6 +23,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
 
 /**
  * @author guodong
@@ -55,6 +56,23 @@ public interface PhysicalReader
      */
     CompletableFuture<ByteBuffer> readAsync(long offset, int length) throws IOException;
 
+    /**
+     * Same as readAsync(offset, length), but the time (System.nanoTime()) when the request is dispatched
+     * to the storage is passed to the dispatch listener. It excludes the time the request waits in the
+     * executor of this reader, hence the latency of the storage can be measured from it.
+     * @param offset
+     * @param length
+     * @param dispatchListener the listener of the dispatch time
+     * @return
+     * @throws IOException
+     */
+    default CompletableFuture<ByteBuffer> readAsync(long offset, int length, LongConsumer dispatchListener)
+            throws IOException
+    {
+        dispatchListener.accept(System.nanoTime());
+        return readAsync(offset, length);
+    }
+
     long readLong() throws IOException;
 
     int readInt() throws IOException;
@@ -57,6 +57,16 @@ public interface PhysicalWriter
      */
     long append(byte[] buffer, int offset, int length) throws IOException;
 
+    /**
+     * Append the remaining bytes of the buffers to the file in order (gathering write),
+     * without copying them into an intermediate byte array.
+     * The positions of the buffers are advanced to their limits.
+     *
+     * @param buffers the content buffers, can be direct buffers
+     * @return start offset of content in the file.
+     */
+    long append(ByteBuffer[] buffers) throws IOException;
+
     /**
      * Close writer.
      */
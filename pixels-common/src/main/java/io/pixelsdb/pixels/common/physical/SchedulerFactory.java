@@ -21,6 +21,7 @@ package io.pixelsdb.pixels.common.physical;
 
 import io.pixelsdb.pixels.common.physical.scheduler.NoopScheduler;
 import io.pixelsdb.pixels.common.physical.scheduler.RateLimitedScheduler;
+import io.pixelsdb.pixels.common.physical.scheduler.SingleFlightScheduler;
 import io.pixelsdb.pixels.common.physical.scheduler.SortMergeScheduler;
 import io.pixelsdb.pixels.common.utils.ConfigFactory;
 
@@ -62,6 +63,11 @@ public class SchedulerFactory
                 throw new UnsupportedOperationException("The read request scheduler '" +
                         name + "' is not supported.");
         }
+        if (Boolean.parseBoolean(ConfigFactory.Instance().getProperty("read.request.dedup.enabled")))
+        {
+            // share the identical reads of the concurrent queries.
+            scheduler = new SingleFlightScheduler(scheduler);
+        }
     }
 
     public Scheduler getScheduler()
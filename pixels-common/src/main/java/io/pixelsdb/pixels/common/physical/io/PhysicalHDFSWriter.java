@@ -39,6 +39,7 @@ public class PhysicalHDFSWriter
         implements PhysicalWriter
 {
     private static final Logger LOGGER = LogManager.getLogger(PhysicalHDFSWriter.class);
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
 
     private final HDFS hdfs;
     private final String path;
@@ -46,6 +47,7 @@ public class PhysicalHDFSWriter
     private final short replication;
     private final boolean addBlockPadding;
     private final FSDataOutputStream rawWriter;
+    private byte[] transferBuffer = null;
 
     public PhysicalHDFSWriter(Storage storage, String path, short replication,
                               boolean addBlockPadding, long blockSize) throws IOException
@@ -109,6 +111,33 @@ public class PhysicalHDFSWriter
         return start;
     }
 
+    @Override
+    public long append(ByteBuffer[] buffers) throws IOException
+    {
+        long start = rawWriter.getPos();
+        for (ByteBuffer buffer : buffers)
+        {
+            if (buffer.hasArray())
+            {
+                rawWriter.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                buffer.position(buffer.limit());
+                continue;
+            }
+            // the output stream of hdfs only accepts byte arrays, copy the direct buffer in small pieces.
+            if (transferBuffer == null)
+            {
+                transferBuffer = new byte[TRANSFER_BUFFER_SIZE];
+            }
+            while (buffer.hasRemaining())
+            {
+                int length = Math.min(buffer.remaining(), transferBuffer.length);
+                buffer.get(transferBuffer, 0, length);
+                rawWriter.write(transferBuffer, 0, length);
+            }
+        }
+        return start;
+    }
+
     @Override
     public void close() throws IOException
     {
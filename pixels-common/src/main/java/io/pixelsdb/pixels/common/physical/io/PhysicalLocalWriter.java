@@ -24,9 +24,12 @@ import io.pixelsdb.pixels.common.physical.Storage;
 import io.pixelsdb.pixels.common.physical.storage.LocalFS;
 import io.pixelsdb.pixels.common.utils.Constants;
 
+import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * Created at: 30/08/2021
@@ -38,6 +41,10 @@ public class PhysicalLocalWriter implements PhysicalWriter
     private String path;
     private long position;
     private DataOutputStream rawWriter;
+    /**
+     * The channel of the file output stream under rawWriter, they share the file position.
+     */
+    private FileChannel channel;
 
     public PhysicalLocalWriter(Storage storage, String path) throws IOException
     {
@@ -56,7 +63,9 @@ public class PhysicalLocalWriter implements PhysicalWriter
         }
         this.path = path;
         this.position = 0;
-        this.rawWriter = this.local.create(path, false, Constants.LOCAL_BUFFER_SIZE, (short) 1);
+        FileOutputStream out = this.local.createFile(path, false);
+        this.channel = out.getChannel();
+        this.rawWriter = new DataOutputStream(new BufferedOutputStream(out, Constants.LOCAL_BUFFER_SIZE));
     }
 
     /**
@@ -103,6 +112,32 @@ public class PhysicalLocalWriter implements PhysicalWriter
         return start;
     }
 
+    /**
+     * Append the buffers to the file by a gathering write of the file channel.
+     *
+     * @param buffers the content buffers
+     * @return start offset of content in the file.
+     */
+    @Override
+    public long append(ByteBuffer[] buffers) throws IOException
+    {
+        long start = position;
+        long length = 0;
+        for (ByteBuffer buffer : buffers)
+        {
+            length += buffer.remaining();
+        }
+        // the buffered bytes must be written before the buffers.
+        rawWriter.flush();
+        long written = 0;
+        while (written < length)
+        {
+            written += channel.write(buffers);
+        }
+        position += length;
+        return start;
+    }
+
     /**
      * Close writer.
      */
@@ -38,7 +38,9 @@ import java.nio.ByteBuffer;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
 
 /**
  * Created at: 06/09/2021
@@ -201,6 +203,13 @@ public class PhysicalS3Reader implements PhysicalReader
 
     @Override
     public CompletableFuture<ByteBuffer> readAsync(long offset, int len) throws IOException
+    {
+        return readAsync(offset, len, dispatchNs -> { });
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> readAsync(long offset, int len, LongConsumer dispatchListener)
+            throws IOException
     {
         if (offset + len > this.length)
         {
@@ -210,8 +219,10 @@ public class PhysicalS3Reader implements PhysicalReader
         GetObjectRequest request = GetObjectRequest.builder().bucket(path.bucket)
                 .key(path.key).range(toRange(offset, len)).build();
         CompletableFuture<ResponseBytes<GetObjectResponse>> future;
+        Future<?> task = null;
         if (useAsyncClient && len < ADAPTIVE_READ_TH)
         {
+            dispatchListener.accept(System.nanoTime());
             if (S3.isRequestDiversionEnabled())
             {
                 if (len < LEN_1M)
@@ -232,13 +243,23 @@ public class PhysicalS3Reader implements PhysicalReader
         }
         else
         {
-            future = new CompletableFuture<>();
-            clientService.execute(() -> {
-                ResponseBytes<GetObjectResponse> response =
-                        client.getObject(request, ResponseTransformer.toBytes());
-                future.complete(response);
+            CompletableFuture<ResponseBytes<GetObjectResponse>> syncFuture = new CompletableFuture<>();
+            task = clientService.submit(() -> {
+                dispatchListener.accept(System.nanoTime());
+                try
+                {
+                    ResponseBytes<GetObjectResponse> response =
+                            client.getObject(request, ResponseTransformer.toBytes());
+                    syncFuture.complete(response);
+                }
+                catch (Exception e)
+                {
+                    syncFuture.completeExceptionally(e);
+                }
             });
+            future = syncFuture;
         }
+        Future<?> syncTask = task;
 
         try
         {
@@ -247,7 +268,7 @@ public class PhysicalS3Reader implements PhysicalReader
              * We tried to use thenApplySync using the clientService executor,
              * it does not help improving the query performance.
              */
-            return future.thenApply(resp ->
+            CompletableFuture<ByteBuffer> result = future.thenApply(resp ->
             {
                 if (resp != null)
                 {
@@ -259,6 +280,19 @@ public class PhysicalS3Reader implements PhysicalReader
                     return null;
                 }
             });
+            // cancelling the result aborts the request, or removes it from the queue of the client service.
+            result.whenComplete((resp, e) ->
+            {
+                if (result.isCancelled())
+                {
+                    future.cancel(true);
+                    if (syncTask != null)
+                    {
+                        syncTask.cancel(true);
+                    }
+                }
+            });
+            return result;
         } catch (Exception e)
         {
             throw new IOException("Failed to read object.", e);
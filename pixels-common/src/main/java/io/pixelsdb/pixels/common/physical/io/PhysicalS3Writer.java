@@ -27,7 +27,6 @@ import org.apache.logging.log4j.Logger;
 import software.amazon.awssdk.services.s3.S3Client;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 
@@ -46,7 +45,7 @@ public class PhysicalS3Writer implements PhysicalWriter
     private String pathStr;
     private long position;
     private S3Client client;
-    private OutputStream out;
+    private S3OutputStream out;
 
     public PhysicalS3Writer(Storage storage, String path) throws IOException
     {
@@ -116,6 +115,25 @@ public class PhysicalS3Writer implements PhysicalWriter
         return start;
     }
 
+    /**
+     * Append the buffers to the file, they are copied directly into the part buffer of the output stream.
+     *
+     * @param buffers the content buffers
+     * @return start offset of content in the file.
+     */
+    @Override
+    public long append(ByteBuffer[] buffers) throws IOException
+    {
+        long start = position;
+        for (ByteBuffer buffer : buffers)
+        {
+            int length = buffer.remaining();
+            this.out.write(buffer);
+            position += length;
+        }
+        return start;
+    }
+
     /**
      * Close writer.
      */
@@ -139,6 +139,27 @@ public class S3OutputStream extends OutputStream
         this.position += remainToRead;
     }
 
+    /**
+     * Writes the remaining bytes of a byte buffer to the S3 Output Stream, the bytes are
+     * copied directly into the part buffer.
+     *
+     * @param src the buffer to write, its position is advanced to its limit
+     */
+    public void write(ByteBuffer src) throws IOException
+    {
+        this.assertOpen();
+        int remainInBuffer;
+        while (src.remaining() > (remainInBuffer = this.buffer.length - position))
+        {
+            src.get(this.buffer, this.position, remainInBuffer);
+            this.position += remainInBuffer;
+            flushBufferAndRewind();
+        }
+        int remainToRead = src.remaining();
+        src.get(this.buffer, this.position, remainToRead);
+        this.position += remainToRead;
+    }
+
     /**
      * Flushes the buffer by uploading a part to S3.
      */
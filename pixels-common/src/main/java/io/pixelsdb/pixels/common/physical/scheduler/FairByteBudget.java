@@ -0,0 +1,216 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.common.physical.scheduler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The budget of the in-flight read bytes in this process, shared fairly by the queries.
+ * <p>
+ * A read acquires its length from the budget before it is issued, and releases it when it completes.
+ * If the budget is used up, the reads wait in the order of start-time fair queuing: the start tag of
+ * a read is max(virtual time, finish tag of the last read of the same query), and the finish tag is the
+ * start tag plus the length. The virtual time advances to the start tag of the last admitted read.
+ * Therefore, a query that issues a large scan does not delay the reads of another query by more than
+ * the bytes of one of its reads, regardless of how many reads it has queued.
+ * </p>
+ * <p>
+ * A read larger than the capacity is admitted when there is no other in-flight read.
+ * </p>
+ */
+final class FairByteBudget
+{
+    private static class Waiter implements Comparable<Waiter>
+    {
+        private final long bytes;
+        private final double startTag;
+        private final long sequence;
+        private final Condition admission;
+        private boolean admitted = false;
+
+        private Waiter(long bytes, double startTag, long sequence, Condition admission)
+        {
+            this.bytes = bytes;
+            this.startTag = startTag;
+            this.sequence = sequence;
+            this.admission = admission;
+        }
+
+        @Override
+        public int compareTo(Waiter o)
+        {
+            int c = Double.compare(this.startTag, o.startTag);
+            return c != 0 ? c : Long.compare(this.sequence, o.sequence);
+        }
+    }
+
+    private static class QueryState
+    {
+        private double lastFinishTag;
+        /**
+         * The number of reads of the query that are waiting or in flight.
+         */
+        private int active = 0;
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+    private final Map<Long, QueryState> queries = new HashMap<>();
+    private volatile long capacity;
+    private long inFlightBytes = 0;
+    private double virtualTime = 0;
+    private long sequence = 0;
+
+    /**
+     * @param capacity the maximum number of in-flight bytes, non-positive for unlimited
+     */
+    FairByteBudget(long capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    void setCapacity(long capacity)
+    {
+        lock.lock();
+        try
+        {
+            this.capacity = capacity;
+            admitWaiters();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Acquire the bytes of a read for the query, block until the read is admitted.
+     * @param queryId the query id
+     * @param bytes the length of the read
+     * @return the time in nanoseconds waited for the admission
+     */
+    long acquire(long queryId, long bytes)
+    {
+        lock.lock();
+        try
+        {
+            QueryState query = queries.computeIfAbsent(queryId, k -> new QueryState());
+            query.active++;
+            double startTag = Math.max(virtualTime, query.lastFinishTag);
+            query.lastFinishTag = startTag + bytes;
+            if (waiters.isEmpty() && fits(bytes))
+            {
+                inFlightBytes += bytes;
+                virtualTime = startTag;
+                return 0;
+            }
+            long startNs = System.nanoTime();
+            Waiter waiter = new Waiter(bytes, startTag, sequence++, lock.newCondition());
+            waiters.add(waiter);
+            while (!waiter.admitted)
+            {
+                // like the rate limiters, the admission is not interruptible.
+                waiter.admission.awaitUninterruptibly();
+            }
+            return System.nanoTime() - startNs;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Release the bytes of a completed (or failed) read of the query.
+     */
+    void release(long queryId, long bytes)
+    {
+        lock.lock();
+        try
+        {
+            inFlightBytes -= bytes;
+            QueryState query = queries.get(queryId);
+            if (query != null && --query.active <= 0)
+            {
+                queries.remove(queryId);
+            }
+            admitWaiters();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of bytes of the admitted reads that have not been released
+     */
+    long getInFlightBytes()
+    {
+        lock.lock();
+        try
+        {
+            return inFlightBytes;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of the reads waiting for admission
+     */
+    int getNumWaiters()
+    {
+        lock.lock();
+        try
+        {
+            return waiters.size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private boolean fits(long bytes)
+    {
+        long capacity = this.capacity;
+        return capacity <= 0 || inFlightBytes == 0 || inFlightBytes + bytes <= capacity;
+    }
+
+    private void admitWaiters()
+    {
+        Waiter head;
+        while ((head = waiters.peek()) != null && fits(head.bytes))
+        {
+            waiters.poll();
+            inFlightBytes += head.bytes;
+            virtualTime = Math.max(virtualTime, head.startTag);
+            head.admitted = true;
+            head.admission.signal();
+        }
+    }
+}
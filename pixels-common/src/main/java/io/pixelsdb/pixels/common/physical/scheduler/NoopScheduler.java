@@ -19,6 +19,7 @@
  */
 package io.pixelsdb.pixels.common.physical.scheduler;
 
+import io.pixelsdb.pixels.common.metrics.LogHistogram;
 import io.pixelsdb.pixels.common.physical.PhysicalReader;
 import io.pixelsdb.pixels.common.physical.Scheduler;
 import org.apache.logging.log4j.LogManager;
@@ -63,6 +64,8 @@ public class NoopScheduler implements Scheduler
         }
         List<CompletableFuture<ByteBuffer>> futures = batch.getFutures();
         List<Request> requests = batch.getRequests();
+        LogHistogram latencyUs = SchedulerMetrics.readLatencyUs(reader.getStorageScheme());
+        LogHistogram sizeBytes = SchedulerMetrics.readSizeBytes(reader.getStorageScheme());
         if (reader.supportsAsync())
         {
             for (int i = 0; i < batch.size(); ++i)
@@ -70,10 +73,13 @@ public class NoopScheduler implements Scheduler
                 CompletableFuture<ByteBuffer> future = futures.get(i);
                 Request request = requests.get(i);
                 String path = reader.getPath();
+                sizeBytes.record(request.length);
+                long startNs = System.nanoTime();
                 reader.readAsync(request.start, request.length).thenAccept(resp ->
                 {
                     if (resp != null)
                     {
+                        latencyUs.record((System.nanoTime() - startNs) / 1000);
                         future.complete(resp);
                     }
                     else
@@ -88,8 +94,12 @@ public class NoopScheduler implements Scheduler
             for (int i = 0; i < batch.size(); ++i)
             {
                 Request request = requests.get(i);
+                sizeBytes.record(request.length);
+                long startNs = System.nanoTime();
                 reader.seek(request.start);
-                futures.get(i).complete(reader.readFully(request.length));
+                ByteBuffer buffer = reader.readFully(request.length);
+                latencyUs.record((System.nanoTime() - startNs) / 1000);
+                futures.get(i).complete(buffer);
             }
         }
     }
@@ -23,6 +23,8 @@ import com.google.common.util.concurrent.RateLimiter;
 import io.pixelsdb.pixels.common.physical.PhysicalReader;
 import io.pixelsdb.pixels.common.physical.Scheduler;
 import io.pixelsdb.pixels.common.physical.Storage;
+import io.pixelsdb.pixels.common.transaction.QueryTransInfo;
+import io.pixelsdb.pixels.common.transaction.TransContext;
 import io.pixelsdb.pixels.common.utils.ConfigFactory;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -31,6 +33,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * <p>
@@ -42,6 +45,13 @@ import java.util.Random;
  *     We future confirm that rate limits on both mbps and rps help keep large query
  *     performance stable.
  * </p>
+ * <p>
+ *     The rate limits only apply to S3. For all the storage schemes, the (merged) read requests
+ *     are also admitted by a process-wide budget of in-flight bytes (read.request.inflight.max.bytes),
+ *     which is shared fairly by the queries, see {@link FairByteBudget}. Thus, a large scan does not
+ *     starve the interactive queries on the same worker. The time that the read requests of a query
+ *     waited for admission is added to the {@link QueryTransInfo} of the query.
+ * </p>
  *
  * Created at: 16/10/2021
  * Author: hank
@@ -63,8 +73,7 @@ public class RateLimitedScheduler extends SortMergeScheduler
     private RateLimiter mbpsRateLimiter;
     private RateLimiter rpsRateLimiter;
     private final Random random;
-    private RetryPolicy retryPolicy;
-    private final boolean enableRetry;
+    private final FairByteBudget inFlightBudget;
 
     protected RateLimitedScheduler()
     {
@@ -100,11 +109,27 @@ public class RateLimitedScheduler extends SortMergeScheduler
 
         random = new Random(System.nanoTime());
 
-        this.enableRetry = Boolean.parseBoolean(ConfigFactory.Instance().getProperty("read.request.enable.retry"));
-        if (this.enableRetry)
+        inFlightBudget = new FairByteBudget(Long.parseLong(
+                ConfigFactory.Instance().getProperty("read.request.inflight.max.bytes")));
+        ConfigFactory.Instance().registerUpdateCallback("read.request.inflight.max.bytes", value ->
+                inFlightBudget.setCapacity(Long.parseLong(value)));
+    }
+
+    /**
+     * Acquire the bytes of a read request of the query from the in-flight byte budget,
+     * and record the time waited for the admission.
+     */
+    private void admit(Storage.Scheme scheme, long queryId, int length)
+    {
+        long waitNs = inFlightBudget.acquire(queryId, length);
+        SchedulerMetrics.admissionWaitUs(scheme).record(waitNs / 1000);
+        if (waitNs > 0)
         {
-            int interval = Integer.parseInt(ConfigFactory.Instance().getProperty("read.request.retry.interval.ms"));
-            this.retryPolicy = new RetryPolicy(interval);
+            QueryTransInfo info = TransContext.Instance().getQueryTransInfo(queryId);
+            if (info != null)
+            {
+                info.addReadAdmissionWaitNs(waitNs);
+            }
         }
     }
 
@@ -116,18 +141,22 @@ public class RateLimitedScheduler extends SortMergeScheduler
             return;
         }
 
-        List<MergedRequest> mergedRequests = sortMerge(batch, queryId);
+        List<MergedRequest> mergedRequests = sortMerge(batch, queryId, reader);
+        ReadCostModel costModel = ReadCostModel.of(reader.getStorageScheme());
 
         if (reader.supportsAsync())
         {
             Storage.Scheme scheme = reader.getStorageScheme();
+            int splitSize = splitSize(reader);
             if (scheme == Storage.Scheme.s3)
             {
                 // Only do rate limit for S3 async reads.
                 long bytes = 0;
+                int numReads = 0;
                 for (MergedRequest merged : mergedRequests)
                 {
                     bytes += merged.getLength();
+                    numReads += numReads(merged, splitSize);
                 }
                 double mb = (bytes/1024.0/1024.0);
                 int mbLimit = (int) mb;
@@ -137,39 +166,46 @@ public class RateLimitedScheduler extends SortMergeScheduler
                 {
                     mbpsRateLimiter.acquire(mbLimit);
                 }
-                rpsRateLimiter.acquire(mergedRequests.size());
+                // the split requests are counted as multiple requests.
+                rpsRateLimiter.acquire(numReads);
             }
 
             for (MergedRequest merged : mergedRequests)
             {
-                String path = reader.getPath();
-                merged.startTimeMs = System.currentTimeMillis();
-                reader.readAsync(merged.getStart(), merged.getLength()).thenAccept(resp ->
+                int length = merged.getLength();
+                admit(scheme, queryId, length);
+                CompletableFuture<ByteBuffer> future;
+                try
                 {
-                    if (resp != null)
-                    {
-                        merged.completeTimeMs = System.currentTimeMillis();
-                        merged.complete(resp);
-                    }
-                    else
-                    {
-                        logger.error("Failed to read asynchronously from path '" +
-                                path + "'.");
-                    }
-                });
-                if (enableRetry)
+                    // the hedges are bounded by the budget of the hedge policy instead of the rate limits.
+                    future = issueAsync(reader, merged, splitSize);
+                }
+                catch (IOException e)
                 {
-                    this.retryPolicy.monitor(merged, reader);
+                    inFlightBudget.release(queryId, length);
+                    throw e;
                 }
+                future.whenComplete((resp, err) -> inFlightBudget.release(queryId, length));
             }
         }
         else
         {
             for (MergedRequest merged : mergedRequests)
             {
-                reader.seek(merged.getStart());
-                ByteBuffer buffer = reader.readFully(merged.getLength());
-                merged.complete(buffer);
+                int length = merged.getLength();
+                admit(reader.getStorageScheme(), queryId, length);
+                try
+                {
+                    long startNs = System.nanoTime();
+                    reader.seek(merged.getStart());
+                    ByteBuffer buffer = reader.readFully(length);
+                    costModel.record(length, (System.nanoTime() - startNs) / 1000);
+                    merged.complete(buffer);
+                }
+                finally
+                {
+                    inFlightBudget.release(queryId, length);
+                }
             }
         }
     }
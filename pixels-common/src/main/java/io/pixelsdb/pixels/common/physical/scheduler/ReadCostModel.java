@@ -0,0 +1,149 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.common.physical.scheduler;
+
+import io.pixelsdb.pixels.common.physical.Storage;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The online cost model of the read requests on a storage scheme:
+ * latency = first-byte latency + length / bandwidth.
+ * <p>
+ * The two parameters are fitted by exponentially weighted least squares over the observed
+ * (merged) read requests, starting from a prior of the storage scheme. The scheduler uses the model
+ * to decide the merge gap, i.e., the number of bytes that can be transferred in the first-byte latency
+ * of an extra request, and the split size, i.e., the request size beyond which a single request does
+ * not get a notably higher throughput but loses the parallelism of issuing sub-requests.
+ * </p>
+ */
+final class ReadCostModel
+{
+    /**
+     * The weight of the history in each observation, about the last 100 requests are considered.
+     */
+    private static final double DECAY = 0.99;
+    private static final int MIN_OBSERVATIONS = 16;
+    /**
+     * A request of SPLIT_FACTOR * merge gap bytes spends 1 / (1 + SPLIT_FACTOR) of its time
+     * waiting for the first byte, larger requests are split.
+     */
+    private static final int SPLIT_FACTOR = 8;
+
+    private static final Map<Storage.Scheme, ReadCostModel> models = new EnumMap<>(Storage.Scheme.class);
+
+    static
+    {
+        for (Storage.Scheme scheme : Storage.Scheme.values())
+        {
+            switch (scheme)
+            {
+                case s3:
+                    // tens of milliseconds to the first byte, about 80MB/s per connection.
+                    models.put(scheme, new ReadCostModel(30_000, 80));
+                    break;
+                case hdfs:
+                    models.put(scheme, new ReadCostModel(1_000, 200));
+                    break;
+                default:
+                    // local fs and mock.
+                    models.put(scheme, new ReadCostModel(100, 1_000));
+                    break;
+            }
+        }
+    }
+
+    static ReadCostModel of(Storage.Scheme scheme)
+    {
+        return models.get(scheme);
+    }
+
+    // the exponentially weighted sums of the observations, x is the length and y is the latency.
+    private double weight, sumX, sumY, sumXX, sumXY;
+    private volatile double firstByteLatencyUs;
+    private volatile double bytesPerUs;
+
+    ReadCostModel(double firstByteLatencyUs, double bytesPerUs)
+    {
+        this.firstByteLatencyUs = firstByteLatencyUs;
+        this.bytesPerUs = bytesPerUs;
+    }
+
+    /**
+     * Record an observed read request.
+     * @param length the length of the request in bytes
+     * @param latencyUs the latency of the request in microseconds
+     */
+    synchronized void record(long length, long latencyUs)
+    {
+        weight = weight * DECAY + 1;
+        sumX = sumX * DECAY + length;
+        sumY = sumY * DECAY + latencyUs;
+        sumXX = sumXX * DECAY + (double) length * length;
+        sumXY = sumXY * DECAY + (double) length * latencyUs;
+        if (weight < MIN_OBSERVATIONS)
+        {
+            return;
+        }
+        double meanX = sumX / weight, meanY = sumY / weight;
+        double varX = sumXX / weight - meanX * meanX;
+        // the lengths must vary enough to separate the first-byte latency from the transfer time.
+        if (varX > 0.01 * meanX * meanX)
+        {
+            double usPerByte = (sumXY / weight - meanX * meanY) / varX;
+            double intercept = meanY - usPerByte * meanX;
+            if (usPerByte > 0 && intercept >= 0)
+            {
+                bytesPerUs = 1 / usPerByte;
+                firstByteLatencyUs = intercept;
+                return;
+            }
+        }
+        // keep the bandwidth and attribute the remaining latency to the first byte.
+        firstByteLatencyUs = Math.max(0, meanY - meanX / bytesPerUs);
+    }
+
+    double getFirstByteLatencyUs()
+    {
+        return firstByteLatencyUs;
+    }
+
+    double getBytesPerUs()
+    {
+        return bytesPerUs;
+    }
+
+    /**
+     * @return the gap in bytes that takes the same time to read as the first-byte latency of an extra request
+     */
+    long getMergeGap()
+    {
+        return (long) (firstByteLatencyUs * bytesPerUs);
+    }
+
+    /**
+     * @return the size in bytes beyond which a request is split into parallel sub-requests
+     */
+    long getSplitSize()
+    {
+        return SPLIT_FACTOR * getMergeGap();
+    }
+}
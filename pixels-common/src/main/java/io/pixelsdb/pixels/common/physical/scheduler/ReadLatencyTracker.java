@@ -0,0 +1,128 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.common.physical.scheduler;
+
+import io.pixelsdb.pixels.common.metrics.LogHistogram;
+import io.pixelsdb.pixels.common.physical.Storage;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The streaming latency percentiles of the read requests on a storage scheme, per size class.
+ * <p>
+ * The size class of a request is the power of two of its length, so that the requests in a class
+ * have similar transfer times. The latencies of each class are recorded in a window of
+ * {@link #WINDOW_SIZE} requests, and the percentile is refreshed every {@link #REFRESH_INTERVAL}
+ * requests from the current window, so that it follows the changes of the storage (e.g., throttling)
+ * without computing the percentile on the hot path.
+ * </p>
+ */
+final class ReadLatencyTracker
+{
+    private static final int NUM_SIZE_CLASSES = Integer.SIZE;
+    private static final int WINDOW_SIZE = 1024;
+    private static final int REFRESH_INTERVAL = 64;
+
+    private static final Map<Storage.Scheme, ReadLatencyTracker> trackers = new EnumMap<>(Storage.Scheme.class);
+
+    static
+    {
+        for (Storage.Scheme scheme : Storage.Scheme.values())
+        {
+            trackers.put(scheme, new ReadLatencyTracker());
+        }
+    }
+
+    static ReadLatencyTracker of(Storage.Scheme scheme)
+    {
+        return trackers.get(scheme);
+    }
+
+    private final SizeClass[] sizeClasses = new SizeClass[NUM_SIZE_CLASSES];
+
+    ReadLatencyTracker()
+    {
+        for (int i = 0; i < NUM_SIZE_CLASSES; ++i)
+        {
+            sizeClasses[i] = new SizeClass();
+        }
+    }
+
+    /**
+     * Record the latency of a completed read request.
+     * @param length the length of the request in bytes
+     * @param latencyUs the latency of the request in microseconds
+     * @param percentile the percentile to be refreshed, in (0, 1]
+     */
+    void record(int length, long latencyUs, double percentile)
+    {
+        sizeClasses[sizeClassOf(length)].record(latencyUs, percentile);
+    }
+
+    /**
+     * @param length the length of the request in bytes
+     * @return the latency percentile in microseconds of the size class of the length,
+     * or -1 if there are not enough requests of the size class
+     */
+    long getPercentileUs(int length)
+    {
+        return sizeClasses[sizeClassOf(length)].percentileUs;
+    }
+
+    private static int sizeClassOf(int length)
+    {
+        return length <= 0 ? 0 : Integer.SIZE - 1 - Integer.numberOfLeadingZeros(length);
+    }
+
+    private static class SizeClass
+    {
+        private volatile LogHistogram window = newWindow();
+        private volatile long percentileUs = -1;
+
+        private void record(long latencyUs, double percentile)
+        {
+            LogHistogram current = this.window;
+            current.record(latencyUs);
+            long count = current.getCount();
+            if (count % REFRESH_INTERVAL == 0)
+            {
+                percentileUs = current.getPercentile(percentile);
+            }
+            if (count >= WINDOW_SIZE)
+            {
+                synchronized (this)
+                {
+                    // the percentile of the last window is kept until the new window is refreshed.
+                    if (this.window == current)
+                    {
+                        this.window = newWindow();
+                    }
+                }
+            }
+        }
+
+        private static LogHistogram newWindow()
+        {
+            // the windows are not registered, they are not exported as metrics.
+            return new LogHistogram();
+        }
+    }
+}
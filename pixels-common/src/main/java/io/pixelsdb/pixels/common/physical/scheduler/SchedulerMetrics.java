@@ -0,0 +1,110 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.common.physical.scheduler;
+
+import io.pixelsdb.pixels.common.metrics.Counter;
+import io.pixelsdb.pixels.common.metrics.LogHistogram;
+import io.pixelsdb.pixels.common.metrics.MetricsRegistry;
+import io.pixelsdb.pixels.common.physical.Storage;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The pre-resolved metric handles of the read schedulers.
+ * The histograms are looked up once per storage scheme, so that recording a read request
+ * on the hot path is only a few atomic increments.
+ */
+final class SchedulerMetrics
+{
+    private static final Map<Storage.Scheme, LogHistogram> readLatencyUs = new EnumMap<>(Storage.Scheme.class);
+    private static final Map<Storage.Scheme, LogHistogram> readSizeBytes = new EnumMap<>(Storage.Scheme.class);
+    private static final Map<Storage.Scheme, Counter> dedupHits = new EnumMap<>(Storage.Scheme.class);
+    private static final Map<Storage.Scheme, Counter> dedupBytes = new EnumMap<>(Storage.Scheme.class);
+    private static final Map<Storage.Scheme, LogHistogram> admissionWaitUs = new EnumMap<>(Storage.Scheme.class);
+    private static final Map<Storage.Scheme, Counter> hedges = new EnumMap<>(Storage.Scheme.class);
+    private static final Map<Storage.Scheme, Counter> hedgeWins = new EnumMap<>(Storage.Scheme.class);
+
+    static
+    {
+        MetricsRegistry registry = MetricsRegistry.Instance();
+        for (Storage.Scheme scheme : Storage.Scheme.values())
+        {
+            readLatencyUs.put(scheme, registry.histogram("pixels_read_request_latency_us",
+                    "latency in microseconds of the (merged) read requests issued to the storage",
+                    "scheme", scheme.name()));
+            readSizeBytes.put(scheme, registry.histogram("pixels_read_request_size_bytes",
+                    "size in bytes of the (merged) read requests issued to the storage",
+                    "scheme", scheme.name()));
+            dedupHits.put(scheme, registry.counter("pixels_read_dedup_hits_total",
+                    "number of read requests served by an in-flight or recently completed identical read",
+                    "scheme", scheme.name()));
+            dedupBytes.put(scheme, registry.counter("pixels_read_dedup_bytes_total",
+                    "bytes of the read requests served by an in-flight or recently completed identical read",
+                    "scheme", scheme.name()));
+            admissionWaitUs.put(scheme, registry.histogram("pixels_read_admission_wait_us",
+                    "time in microseconds that the (merged) read requests waited for the in-flight byte budget",
+                    "scheme", scheme.name()));
+            hedges.put(scheme, registry.counter("pixels_read_hedges_total",
+                    "number of duplicate reads issued for the (merged) read requests slower than the percentile",
+                    "scheme", scheme.name()));
+            hedgeWins.put(scheme, registry.counter("pixels_read_hedge_wins_total",
+                    "number of duplicate reads that responded before the original reads",
+                    "scheme", scheme.name()));
+        }
+    }
+
+    private SchedulerMetrics() { }
+
+    static LogHistogram readLatencyUs(Storage.Scheme scheme)
+    {
+        return readLatencyUs.get(scheme);
+    }
+
+    static LogHistogram readSizeBytes(Storage.Scheme scheme)
+    {
+        return readSizeBytes.get(scheme);
+    }
+
+    static Counter dedupHits(Storage.Scheme scheme)
+    {
+        return dedupHits.get(scheme);
+    }
+
+    static Counter dedupBytes(Storage.Scheme scheme)
+    {
+        return dedupBytes.get(scheme);
+    }
+
+    static LogHistogram admissionWaitUs(Storage.Scheme scheme)
+    {
+        return admissionWaitUs.get(scheme);
+    }
+
+    static Counter hedges(Storage.Scheme scheme)
+    {
+        return hedges.get(scheme);
+    }
+
+    static Counter hedgeWins(Storage.Scheme scheme)
+    {
+        return hedgeWins.get(scheme);
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.common.physical.scheduler;
+
+import io.pixelsdb.pixels.common.metrics.Counter;
+import io.pixelsdb.pixels.common.physical.PhysicalReader;
+import io.pixelsdb.pixels.common.physical.Scheduler;
+import io.pixelsdb.pixels.common.utils.ConfigFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The scheduler that deduplicates the identical read requests across the queries in this process.
+ * <p>
+ * A read request on a file is attached to an in-flight (or recently completed) read on the same file
+ * if the range of the request is contained by the range of that read. The request then gets a slice of
+ * the buffer of that read, instead of reading the same bytes from the storage again. The other requests
+ * are executed by the underlying scheduler, and they are registered as in-flight reads until they complete.
+ * The files are identified by the storage scheme, the path, and the length of the file.
+ * </p>
+ * <p>
+ * An attached request does not share the failure of the read it is attached to. If that read fails, or if it
+ * does not complete in read.request.dedup.max.wait.ms, the request is detached and read by its own query.
+ * </p>
+ * <p>
+ * The completed reads are retained for read.request.dedup.retention.ms, so that the near-identical queries
+ * that arrive at almost the same time also share the reads. The total size of the retained buffers is bounded
+ * by read.request.dedup.retention.max.bytes. A retained read that is a slice of a larger (merged) buffer keeps
+ * referencing the larger buffer at its offset instead of being copied, thus the bound counts the whole larger
+ * buffer, once for all the retained reads that are slices of it.
+ * </p>
+ * <p>
+ * The synchronous readers are not thread safe, thus the batches and the detached requests on a synchronous
+ * reader are executed under the lock of the reader. The batches on an asynchronous reader are not serialized.
+ * </p>
+ */
+public class SingleFlightScheduler implements Scheduler
+{
+    private static final ScheduledExecutorService evictionService =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "pixels-read-dedup-eviction");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * The executor of the detached requests, they may be read synchronously by the underlying scheduler.
+     */
+    private static final ExecutorService detachedReadService =
+            Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "pixels-read-dedup-detached");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * A read registered for deduplication.
+     */
+    private static class InFlightRead
+    {
+        private final long start;
+        private final int length;
+        /**
+         * The buffer of this future is never consumed directly, the requests get the slices of it.
+         */
+        private final CompletableFuture<ByteBuffer> shared;
+
+        private InFlightRead(long start, int length, CompletableFuture<ByteBuffer> shared)
+        {
+            this.start = start;
+            this.length = length;
+            this.shared = shared;
+        }
+
+        private boolean contains(long start, int length)
+        {
+            return this.start <= start && start + length <= this.start + this.length;
+        }
+    }
+
+    private final Scheduler delegate;
+    private final long retentionMs;
+    private final long maxRetainedBytes;
+    private final long maxWaitMs;
+    private final AtomicLong retainedBytes = new AtomicLong(0);
+    /**
+     * Key: the backing array of the retained buffers (or the read if the buffer is not backed by an array),
+     * value: the size in bytes of the backing array and the number of the retained reads on it.
+     * Guarded by itself.
+     */
+    private final Map<Object, long[]> retainedBuffers = new IdentityHashMap<>();
+    /**
+     * Key: the file key, value: the in-flight reads on the file, keyed by the start offset.
+     * The reads of a file are modified only in the compute functions of this map, thus they are
+     * serialized per file.
+     */
+    private final Map<String, NavigableMap<Long, InFlightRead>> inFlightReads = new ConcurrentHashMap<>();
+
+    public SingleFlightScheduler(Scheduler delegate)
+    {
+        this.delegate = requireNonNull(delegate, "delegate is null");
+        this.retentionMs = Long.parseLong(ConfigFactory.Instance().getProperty("read.request.dedup.retention.ms"));
+        this.maxRetainedBytes = Long.parseLong(
+                ConfigFactory.Instance().getProperty("read.request.dedup.retention.max.bytes"));
+        this.maxWaitMs = Long.parseLong(ConfigFactory.Instance().getProperty("read.request.dedup.max.wait.ms"));
+    }
+
+    @Override
+    public void executeBatch(PhysicalReader reader, RequestBatch batch, long queryId) throws IOException
+    {
+        if (batch.size() <= 0)
+        {
+            return;
+        }
+        String key = fileKey(reader);
+        Counter hits = SchedulerMetrics.dedupHits(reader.getStorageScheme());
+        Counter hitBytes = SchedulerMetrics.dedupBytes(reader.getStorageScheme());
+        List<Request> requests = batch.getRequests();
+        List<CompletableFuture<ByteBuffer>> futures = batch.getFutures();
+        RequestBatch missed = new RequestBatch(batch.size());
+
+        for (int i = 0; i < batch.size(); ++i)
+        {
+            Request request = requests.get(i);
+            CompletableFuture<ByteBuffer> future = futures.get(i);
+            InFlightRead[] attached = new InFlightRead[1];
+            InFlightRead[] registered = new InFlightRead[1];
+            inFlightReads.compute(key, (k, reads) ->
+            {
+                if (reads == null)
+                {
+                    reads = new TreeMap<>();
+                }
+                attached[0] = findContaining(reads, request);
+                if (attached[0] == null && !reads.containsKey(request.start))
+                {
+                    registered[0] = new InFlightRead(request.start, request.length, new CompletableFuture<>());
+                    reads.put(request.start, registered[0]);
+                }
+                return reads;
+            });
+
+            if (attached[0] != null)
+            {
+                hits.inc();
+                hitBytes.add(request.length);
+                attach(reader, attached[0], request, future, queryId);
+            }
+            else if (registered[0] != null)
+            {
+                InFlightRead read = registered[0];
+                read.shared.whenComplete((buffer, e) ->
+                {
+                    completeSlice(future, buffer, e, 0, request.length);
+                    release(key, read, e == null ? buffer : null);
+                });
+                missed.add(request).whenComplete((buffer, e) ->
+                {
+                    if (e != null)
+                    {
+                        read.shared.completeExceptionally(e);
+                    }
+                    else
+                    {
+                        read.shared.complete(buffer);
+                    }
+                });
+            }
+            else
+            {
+                // an overlapping read starts at the same offset, read it without deduplication.
+                complete(missed.add(request), future);
+            }
+        }
+
+        if (missed.size() > 0)
+        {
+            try
+            {
+                executeOnReader(reader, missed, queryId);
+            }
+            catch (IOException e)
+            {
+                // release the registered reads and the requests attached to them.
+                for (CompletableFuture<ByteBuffer> future : missed.getFutures())
+                {
+                    future.completeExceptionally(e);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Execute the batch by the underlying scheduler. The batches on a synchronous reader are serialized,
+     * as the detached requests may use the reader in another thread.
+     */
+    private void executeOnReader(PhysicalReader reader, RequestBatch batch, long queryId) throws IOException
+    {
+        if (reader.supportsAsync())
+        {
+            delegate.executeBatch(reader, batch, queryId);
+            return;
+        }
+        synchronized (reader)
+        {
+            delegate.executeBatch(reader, batch, queryId);
+        }
+    }
+
+    /**
+     * @return the key of the file of the reader, the reads on the files with the same key are shared
+     * @throws IOException
+     */
+    private static String fileKey(PhysicalReader reader) throws IOException
+    {
+        return reader.getStorageScheme() + "|" + reader.getPath() + "|" + reader.getFileLength();
+    }
+
+    /**
+     * @return the latest started read that contains the request and has not failed, or null if not found
+     */
+    private static InFlightRead findContaining(NavigableMap<Long, InFlightRead> reads, Request request)
+    {
+        // a read that starts earlier may contain the request even if the floor read does not.
+        for (InFlightRead read : reads.headMap(request.start, true).descendingMap().values())
+        {
+            if (read.contains(request.start, request.length) && !read.shared.isCompletedExceptionally())
+            {
+                return read;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Complete the future of the request by the slice of the read. If the read fails, or does not complete
+     * in the max wait time, the request is detached from the read and read by the query itself.
+     */
+    private void attach(PhysicalReader reader, InFlightRead read, Request request,
+                        CompletableFuture<ByteBuffer> future, long queryId)
+    {
+        int offset = (int) (request.start - read.start);
+        AtomicBoolean done = new AtomicBoolean(false);
+        ScheduledFuture<?> timer = maxWaitMs > 0 ? evictionService.schedule(() ->
+        {
+            if (done.compareAndSet(false, true))
+            {
+                readDetached(reader, request, future, queryId);
+            }
+        }, maxWaitMs, TimeUnit.MILLISECONDS) : null;
+        read.shared.whenComplete((buffer, e) ->
+        {
+            if (!done.compareAndSet(false, true))
+            {
+                return;
+            }
+            if (timer != null)
+            {
+                timer.cancel(false);
+            }
+            if (e == null && buffer != null)
+            {
+                completeSlice(future, buffer, null, offset, request.length);
+            }
+            else
+            {
+                readDetached(reader, request, future, queryId);
+            }
+        });
+    }
+
+    private void readDetached(PhysicalReader reader, Request request, CompletableFuture<ByteBuffer> future,
+                              long queryId)
+    {
+        detachedReadService.execute(() ->
+        {
+            RequestBatch batch = new RequestBatch(1);
+            complete(batch.add(request), future);
+            try
+            {
+                executeOnReader(reader, batch, queryId);
+            }
+            catch (Throwable e)
+            {
+                future.completeExceptionally(e);
+            }
+        });
+    }
+
+    private static void complete(CompletableFuture<ByteBuffer> source, CompletableFuture<ByteBuffer> future)
+    {
+        source.whenComplete((buffer, e) ->
+        {
+            if (e != null)
+            {
+                future.completeExceptionally(e);
+            }
+            else
+            {
+                future.complete(buffer);
+            }
+        });
+    }
+
+    private static void completeSlice(CompletableFuture<ByteBuffer> future, ByteBuffer buffer, Throwable e,
+                                      int offset, int length)
+    {
+        if (e != null)
+        {
+            future.completeExceptionally(e);
+            return;
+        }
+        if (buffer == null)
+        {
+            future.complete(null);
+            return;
+        }
+        // each request gets its own slice, so that the position and limit are not shared.
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(slice.position() + offset);
+        slice.limit(slice.position() + length);
+        future.complete(slice.slice());
+    }
+
+    /**
+     * Remove the read from the in-flight reads, after the retention time if it has succeeded
+     * and the retained bytes are within the bound.
+     * @param buffer the buffer of the read, or null if the read has failed
+     */
+    private void release(String key, InFlightRead read, ByteBuffer buffer)
+    {
+        if (buffer != null && retentionMs > 0)
+        {
+            // the buffer may be a slice of a larger (merged) buffer, which is pinned by the retention.
+            Object backing = buffer.hasArray() ? buffer.array() : read;
+            if (retain(backing, buffer.hasArray() ? buffer.array().length : read.length))
+            {
+                evictionService.schedule(() ->
+                {
+                    remove(key, read);
+                    unretain(backing);
+                }, retentionMs, TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+        remove(key, read);
+    }
+
+    /**
+     * @return true if the backing buffer is retained, false if it would exceed the bound of the retained bytes
+     */
+    private boolean retain(Object backing, long size)
+    {
+        synchronized (retainedBuffers)
+        {
+            long[] retained = retainedBuffers.get(backing);
+            if (retained != null)
+            {
+                retained[1]++;
+                return true;
+            }
+            if (retainedBytes.get() + size > maxRetainedBytes)
+            {
+                return false;
+            }
+            retainedBuffers.put(backing, new long[]{size, 1});
+            retainedBytes.addAndGet(size);
+            return true;
+        }
+    }
+
+    private void unretain(Object backing)
+    {
+        synchronized (retainedBuffers)
+        {
+            long[] retained = retainedBuffers.get(backing);
+            if (--retained[1] == 0)
+            {
+                retainedBuffers.remove(backing);
+                retainedBytes.addAndGet(-retained[0]);
+            }
+        }
+    }
+
+    private void remove(String key, InFlightRead read)
+    {
+        inFlightReads.computeIfPresent(key, (k, reads) ->
+        {
+            reads.remove(read.start, read);
+            return reads.isEmpty() ? null : reads;
+        });
+    }
+
+    /**
+     * @return the total size in bytes of the retained completed reads
+     */
+    long getRetainedBytes()
+    {
+        return retainedBytes.get();
+    }
+}
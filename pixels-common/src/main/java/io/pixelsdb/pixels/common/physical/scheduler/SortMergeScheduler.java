@@ -19,8 +19,10 @@
  */
 package io.pixelsdb.pixels.common.physical.scheduler;
 
+import io.pixelsdb.pixels.common.metrics.LogHistogram;
 import io.pixelsdb.pixels.common.physical.PhysicalReader;
 import io.pixelsdb.pixels.common.physical.Scheduler;
+import io.pixelsdb.pixels.common.physical.Storage;
 import io.pixelsdb.pixels.common.transaction.TransContext;
 import io.pixelsdb.pixels.common.utils.ConfigFactory;
 import org.apache.logging.log4j.LogManager;
@@ -30,13 +32,23 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * SortMerge scheduler firstly sorts the requests in the batch by the start offset,
  * then it tries to merge the requests that can be read sequentially from the reader.
+ * <p>
+ * If read.request.merge.adaptive is true, the merge gap is decided by the {@link ReadCostModel}
+ * of the storage scheme, which is fitted online by the latencies of the issued requests, and bounded
+ * by read.request.merge.gap. For the readers that support async read, the merged requests are also
+ * bounded by the split size of the cost model, and a single request larger than the split size is read
+ * by parallel sub-range requests, so that the large scans on S3 are not bounded by the bandwidth of
+ * a single connection.
+ * </p>
  * Created at: 9/12/21
  * Author: hank
  */
@@ -45,6 +57,11 @@ public class SortMergeScheduler implements Scheduler
     private static Logger logger = LogManager.getLogger(SortMergeScheduler.class);
     private static SortMergeScheduler instance;
     private static int MaxGap;
+    private static boolean AdaptiveMerge;
+    /**
+     * The lower bound of the split size, non-positive to disable splitting.
+     */
+    private static long MinSplitSize;
 
     public static Scheduler Instance()
     {
@@ -55,16 +72,13 @@ public class SortMergeScheduler implements Scheduler
         return instance;
     }
 
-    private RetryPolicy retryPolicy;
-    private final boolean enableRetry;
+    protected HedgePolicy hedgePolicy;
 
     protected SortMergeScheduler()
     {
-        this.enableRetry = Boolean.parseBoolean(ConfigFactory.Instance().getProperty("read.request.enable.retry"));
-        if (this.enableRetry)
+        if (Boolean.parseBoolean(ConfigFactory.Instance().getProperty("read.request.enable.retry")))
         {
-            int interval = Integer.parseInt(ConfigFactory.Instance().getProperty("read.request.retry.interval.ms"));
-            this.retryPolicy = new RetryPolicy(interval);
+            this.hedgePolicy = new HedgePolicy();
         }
     }
 
@@ -73,15 +87,74 @@ public class SortMergeScheduler implements Scheduler
         ConfigFactory.Instance().registerUpdateCallback("read.request.merge.gap", value ->
                 MaxGap = Integer.parseInt(value));
         MaxGap = Integer.parseInt(ConfigFactory.Instance().getProperty("read.request.merge.gap"));
+        ConfigFactory.Instance().registerUpdateCallback("read.request.merge.adaptive", value ->
+                AdaptiveMerge = Boolean.parseBoolean(value));
+        AdaptiveMerge = Boolean.parseBoolean(ConfigFactory.Instance().getProperty("read.request.merge.adaptive"));
+        ConfigFactory.Instance().registerUpdateCallback("read.request.split.min.size", value ->
+                MinSplitSize = Long.parseLong(value));
+        MinSplitSize = Long.parseLong(ConfigFactory.Instance().getProperty("read.request.split.min.size"));
     }
 
     /**
-     * Sort the requests in the batch by their start offsets, and try to merge them.
+     * @return the maximum gap in bytes between two requests to be merged for the reader
+     */
+    protected int mergeGap(PhysicalReader reader)
+    {
+        if (!AdaptiveMerge)
+        {
+            return MaxGap;
+        }
+        return (int) Math.min(MaxGap, ReadCostModel.of(reader.getStorageScheme()).getMergeGap());
+    }
+
+    /**
+     * @return the size in bytes beyond which a read request is split, or Integer.MAX_VALUE if the requests
+     * for the reader are not split
+     */
+    protected int splitSize(PhysicalReader reader)
+    {
+        if (!AdaptiveMerge || MinSplitSize <= 0 || !reader.supportsAsync())
+        {
+            return Integer.MAX_VALUE;
+        }
+        long splitSize = Math.max(MinSplitSize, ReadCostModel.of(reader.getStorageScheme()).getSplitSize());
+        return (int) Math.min(Integer.MAX_VALUE, splitSize);
+    }
+
+    /**
+     * Sort the requests in the batch by their start offsets, and try to merge them
+     * by the global merge gap.
      * @param batch the request batch.
      * @param queryId the query id.
      * @return the merged requests.
      */
     protected List<MergedRequest> sortMerge(RequestBatch batch, long queryId)
+    {
+        return sortMerge(batch, queryId, MaxGap, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Sort the requests in the batch by their start offsets, and try to merge them
+     * by the merge gap and the split size for the reader.
+     * @param batch the request batch.
+     * @param queryId the query id.
+     * @param reader the reader to read the requests.
+     * @return the merged requests.
+     */
+    protected List<MergedRequest> sortMerge(RequestBatch batch, long queryId, PhysicalReader reader)
+    {
+        return sortMerge(batch, queryId, mergeGap(reader), splitSize(reader));
+    }
+
+    /**
+     * Sort the requests in the batch by their start offsets, and try to merge them.
+     * @param batch the request batch.
+     * @param queryId the query id.
+     * @param maxGap the maximum gap in bytes between two merged requests.
+     * @param maxLength the maximum length of a merged request, a single request may exceed it.
+     * @return the merged requests.
+     */
+    protected List<MergedRequest> sortMerge(RequestBatch batch, long queryId, int maxGap, int maxLength)
     {
         /**
          * Issue #175:
@@ -104,7 +177,7 @@ public class SortMergeScheduler implements Scheduler
         MergedRequest mr2 = mr1;
         for (int i = 1; i < batch.size(); ++i)
         {
-            mr2 = mr1.merge(requestFutures.get(i));
+            mr2 = mr1.merge(requestFutures.get(i), maxGap, maxLength);
             if (mr1 == mr2)
             {
                 continue;
@@ -125,44 +198,184 @@ public class SortMergeScheduler implements Scheduler
             return;
         }
 
-        List<MergedRequest> mergedRequests = sortMerge(batch, queryId);
+        List<MergedRequest> mergedRequests = sortMerge(batch, queryId, reader);
+        LogHistogram latencyUs = SchedulerMetrics.readLatencyUs(reader.getStorageScheme());
+        LogHistogram sizeBytes = SchedulerMetrics.readSizeBytes(reader.getStorageScheme());
+        ReadCostModel costModel = ReadCostModel.of(reader.getStorageScheme());
 
         if (reader.supportsAsync())
         {
+            int splitSize = splitSize(reader);
             for (MergedRequest merged : mergedRequests)
             {
-                String path = reader.getPath();
-                merged.startTimeMs = System.currentTimeMillis();
-                reader.readAsync(merged.start, merged.getLength()).thenAccept(resp ->
-                {
-                    if (resp != null)
-                    {
-                        merged.completeTimeMs = System.currentTimeMillis();
-                        merged.complete(resp);
-                    }
-                    else
-                    {
-                        logger.error("Asynchronous read from path '" +
-                                path + "' got null response.");
-                    }
-                });
-                if (enableRetry)
-                {
-                    this.retryPolicy.monitor(merged, reader);
-                }
+                issueAsync(reader, merged, splitSize);
             }
         }
         else
         {
             for (MergedRequest merged : mergedRequests)
             {
+                sizeBytes.record(merged.getLength());
+                long startNs = System.nanoTime();
                 reader.seek(merged.getStart());
                 ByteBuffer buffer = reader.readFully(merged.getLength());
+                long elapsedUs = (System.nanoTime() - startNs) / 1000;
+                latencyUs.record(elapsedUs);
+                costModel.record(merged.getLength(), elapsedUs);
                 merged.complete(buffer);
             }
         }
     }
 
+    /**
+     * Issue the merged request asynchronously, and monitor it by the hedge policy if retry is enabled.
+     * @param reader the reader.
+     * @param merged the merged request.
+     * @param splitSize the split size.
+     * @return the future of the original read, it is completed (or cancelled) when the merged request is
+     * completed by any read, or when the original read fails
+     * @throws IOException
+     */
+    protected CompletableFuture<ByteBuffer> issueAsync(PhysicalReader reader, MergedRequest merged, int splitSize)
+            throws IOException
+    {
+        SchedulerMetrics.readSizeBytes(reader.getStorageScheme()).record(merged.getLength());
+        merged.issuedNs = System.nanoTime();
+        CompletableFuture<ByteBuffer> future = read(reader, merged, splitSize, false);
+        if (hedgePolicy != null)
+        {
+            hedgePolicy.monitor(merged, reader, splitSize);
+        }
+        return future;
+    }
+
+    /**
+     * Issue a read of the merged request, which completes the merged request if it responds first.
+     */
+    private CompletableFuture<ByteBuffer> read(PhysicalReader reader, MergedRequest merged, int splitSize,
+                                               boolean hedge) throws IOException
+    {
+        String path = reader.getPath();
+        Storage.Scheme scheme = reader.getStorageScheme();
+        long startNs = System.nanoTime();
+        CompletableFuture<ByteBuffer> future = readAsync(reader, merged.getStart(), merged.getLength(), splitSize);
+        merged.reads.add(future);
+        if (merged.isCompleted())
+        {
+            // another read has completed the merged request before this read is registered.
+            future.cancel(true);
+        }
+        future.thenAccept(resp ->
+        {
+            if (resp != null)
+            {
+                long endNs = System.nanoTime();
+                SchedulerMetrics.readLatencyUs(scheme).record((endNs - startNs) / 1000);
+                if (merged.tryComplete(resp))
+                {
+                    if (hedgePolicy != null)
+                    {
+                        // record the latency of the merged request from its first read, as the reads that
+                        // lose the race are cancelled and their latencies are never observed.
+                        hedgePolicy.record(scheme, merged.getLength(), (endNs - merged.issuedNs) / 1000);
+                    }
+                    if (hedge)
+                    {
+                        SchedulerMetrics.hedgeWins(scheme).inc();
+                    }
+                }
+            }
+            else
+            {
+                logger.error("Asynchronous read from path '" +
+                        path + "' got null response.");
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Read the range asynchronously. If the length exceeds the split size, the range is read by
+     * parallel sub-range requests of similar sizes, and the sub-ranges are assembled into one buffer.
+     * The latency of each (sub-range) request, measured from its dispatch to the storage, is recorded in
+     * the cost model of the storage scheme.
+     * @param reader the reader.
+     * @param start the start offset of the range.
+     * @param length the length of the range.
+     * @param splitSize the split size.
+     * @return the future of the content of the range, completed with null if any read got a null response.
+     * Cancelling it cancels the reads of the reader.
+     * @throws IOException
+     */
+    protected CompletableFuture<ByteBuffer> readAsync(PhysicalReader reader, long start, int length, int splitSize)
+            throws IOException
+    {
+        ReadCostModel costModel = ReadCostModel.of(reader.getStorageScheme());
+        if (length <= splitSize)
+        {
+            AtomicLong dispatchNs = new AtomicLong();
+            // return the future of the reader, so that cancelling it cancels the read of the reader.
+            CompletableFuture<ByteBuffer> future = reader.readAsync(start, length, dispatchNs::set);
+            future.thenAccept(resp ->
+            {
+                if (resp != null)
+                {
+                    costModel.record(length, (System.nanoTime() - dispatchNs.get()) / 1000);
+                }
+            });
+            return future;
+        }
+        int numSplits = (int) ((length + (long) splitSize - 1) / splitSize);
+        int subLength = (int) ((length + (long) numSplits - 1) / numSplits);
+        ByteBuffer whole = ByteBuffer.allocate(length);
+        AtomicBoolean failed = new AtomicBoolean(false);
+        CompletableFuture<?>[] readFutures = new CompletableFuture[numSplits];
+        CompletableFuture<?>[] subFutures = new CompletableFuture[numSplits];
+        for (int i = 0; i < numSplits; ++i)
+        {
+            int subOffset = i * subLength;
+            int subLen = Math.min(subLength, length - subOffset);
+            AtomicLong dispatchNs = new AtomicLong();
+            CompletableFuture<ByteBuffer> readFuture = reader.readAsync(start + subOffset, subLen, dispatchNs::set);
+            readFutures[i] = readFuture;
+            subFutures[i] = readFuture.thenAccept(resp ->
+            {
+                if (resp == null)
+                {
+                    failed.set(true);
+                    return;
+                }
+                costModel.record(subLen, (System.nanoTime() - dispatchNs.get()) / 1000);
+                // the sub-ranges are disjoint, thus they can be copied concurrently by duplicates.
+                ByteBuffer dest = whole.duplicate();
+                dest.position(subOffset);
+                dest.put(resp);
+            });
+        }
+        CompletableFuture<ByteBuffer> future =
+                CompletableFuture.allOf(subFutures).thenApply(v -> failed.get() ? null : whole);
+        future.whenComplete((resp, err) ->
+        {
+            if (future.isCancelled())
+            {
+                for (CompletableFuture<?> readFuture : readFutures)
+                {
+                    readFuture.cancel(true);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @return the number of requests issued to the storage to read the merged request.
+     */
+    protected static int numReads(MergedRequest merged, int splitSize)
+    {
+        return merged.getLength() <= splitSize ? 1 :
+                (int) ((merged.getLength() + (long) splitSize - 1) / splitSize);
+    }
+
     protected class RequestFuture implements Comparable<RequestFuture>
     {
         public Request request;
@@ -197,10 +410,18 @@ public class SortMergeScheduler implements Scheduler
          */
         private final List<Integer> lengths;
         private final List<CompletableFuture<ByteBuffer>> futures;
-        // fields used by the retry policy.
-        protected volatile long startTimeMs = -1;
-        protected volatile long completeTimeMs = -1;
-        private int retried = 0;
+        // fields used by the hedge policy.
+        private final AtomicBoolean completed = new AtomicBoolean(false);
+        /**
+         * The issued reads of this merged request, the reads that lose the race are cancelled.
+         */
+        private final Queue<CompletableFuture<ByteBuffer>> reads = new ConcurrentLinkedQueue<>();
+        private volatile ScheduledFuture<?> timer;
+        private int hedged = 0;
+        /**
+         * The time when the first read of this merged request is issued.
+         */
+        private volatile long issuedNs;
 
         public MergedRequest(RequestFuture first)
         {
@@ -217,7 +438,14 @@ public class SortMergeScheduler implements Scheduler
             this.size = 1;
         }
 
-        public MergedRequest merge(RequestFuture curr)
+        /**
+         * Try to merge the request into this merged request.
+         * @param curr the request.
+         * @param maxGap the maximum gap in bytes between this merged request and the request.
+         * @param maxLength the maximum length of this merged request after merging.
+         * @return this if merged, or a new merged request of the request otherwise.
+         */
+        public MergedRequest merge(RequestFuture curr, int maxGap, int maxLength)
         {
             if (curr.request.start < this.end)
             {
@@ -228,7 +456,7 @@ public class SortMergeScheduler implements Scheduler
                 throw new IllegalArgumentException("Can not merge requests from different queries (transactions).");
             }
             long gap = (curr.request.start - this.end);
-            if (gap <= MaxGap && (this.length + gap + curr.request.length) <= Integer.MAX_VALUE)
+            if (gap <= maxGap && (this.length + gap + curr.request.length) <= maxLength)
             {
                 this.offsets.add(this.length + (int) gap);
                 this.lengths.add(curr.request.length);
@@ -286,157 +514,197 @@ public class SortMergeScheduler implements Scheduler
                 futures.get(i).complete(buffer.slice());
             }
         }
-    }
 
-    /**
-     * Combination of MergedRequest and PhysicalReader,
-     * it is used by the RetryPolicy.
-     */
-    protected class MergedRequestReader
-    {
-        private MergedRequest request;
-        private PhysicalReader reader;
+        /**
+         * Complete this merged request by the response of one of its reads, if it has not been completed
+         * by another read. The other reads and the hedge timer are cancelled.
+         * @param buffer the data that has been read.
+         * @return true if this merged request is completed by the buffer.
+         */
+        public boolean tryComplete(ByteBuffer buffer)
+        {
+            if (!completed.compareAndSet(false, true))
+            {
+                return false;
+            }
+            complete(buffer);
+            ScheduledFuture<?> timer = this.timer;
+            if (timer != null)
+            {
+                timer.cancel(false);
+            }
+            for (CompletableFuture<ByteBuffer> read : reads)
+            {
+                // cancelling a completed read has no effect.
+                read.cancel(true);
+            }
+            reads.clear();
+            return true;
+        }
 
-        protected MergedRequestReader(MergedRequest request, PhysicalReader reader)
+        public boolean isCompleted()
         {
-            this.request = request;
-            this.reader = reader;
+            return completed.get();
         }
     }
 
     /**
-     * The retry policy that retries timeout read requests for a given number of times at most.
-     * The timeout is determined by a cost model.
+     * The hedging policy that issues a duplicate read for a merged request, if the request has not
+     * completed when its latency exceeds the observed percentile (read.request.hedge.percentile) of the
+     * requests of the same size class. The first response completes the merged request and the other
+     * reads are cancelled. Each merged request is hedged for read.request.max.retry.num times at most.
+     * <p>
+     * Cancelling a read aborts the request to the storage if the reader supports it, e.g., the S3 reader.
+     * Otherwise, the cancelled read still consumes the bandwidth of the storage until it completes.
+     * </p>
+     * <p>
+     * The hedges are bounded by a global budget, i.e., read.request.hedge.budget hedges per issued
+     * request on average, so that hedging does not overload the storage when all the requests are slow.
+     * Before enough latencies of a size class are observed, the hedge delay is estimated by the
+     * {@link ReadCostModel} of the storage scheme.
+     * </p>
      * <p>
      *     Issue #142:
      *     We future confirm that retry helps keep the large query performance stable.
      * </p>
      */
-    protected class RetryPolicy
+    protected class HedgePolicy
     {
-        private final int maxRetryNum;
-        private final int intervalMs;
-        private final ConcurrentLinkedQueue<MergedRequestReader> requestReaders;
-        ThreadGroup monitorThreadGroup;
-        private final ExecutorService monitorService;
+        /**
+         * The hedge delay is this factor times the latency estimated by the cost model,
+         * before the percentile of the size class is available.
+         */
+        private static final int COST_MODEL_DELAY_FACTOR = 4;
+        private static final long MIN_DELAY_US = 1000;
+        /**
+         * The maximum number of unused hedges that can be accumulated by the budget.
+         */
+        private static final long MAX_BURST = 64;
+        private static final long TOKEN_UNIT = 1_000_000;
 
-        private static final int FIRST_BYTE_LATENCY_MS = 1000; // 1000ms
-        private static final int TRANSFER_RATE_BPMS = 10240; // 10KB/ms
+        private final int maxHedgeNum;
+        private final double percentile;
+        private final long tokensPerRead;
+        /**
+         * The hedge budget in 1 / TOKEN_UNIT hedges.
+         */
+        private final AtomicLong tokens = new AtomicLong(0);
+        private final ScheduledThreadPoolExecutor timerService;
 
         /**
-         * Create a retry policy, which is running as a daemon thread, for retrying the timed out requests.
-         * The policy will periodically check the request queue and find requests to retry.
-         * @param intervalMs the interval in milliseconds of two subsequent request queue checks.
+         * Create a hedging policy, the hedges are triggered by the timers on a daemon thread.
          */
-        protected RetryPolicy(int intervalMs)
-        {
-            this.maxRetryNum = Integer.parseInt(ConfigFactory.Instance().getProperty("read.request.max.retry.num"));
-            this.intervalMs = intervalMs;
-            this.requestReaders = new ConcurrentLinkedQueue<>();
-
-            // Issue #133: set the monitor thread as daemon thread with max priority.
-            this.monitorThreadGroup = new ThreadGroup("pixels.retry.monitor");
-            this.monitorThreadGroup.setMaxPriority(Thread.MAX_PRIORITY);
-            this.monitorThreadGroup.setDaemon(true);
-            this.monitorService = Executors.newSingleThreadExecutor(runnable -> {
-                Thread thread = new Thread(monitorThreadGroup, runnable);
+        protected HedgePolicy()
+        {
+            this.maxHedgeNum = Integer.parseInt(ConfigFactory.Instance().getProperty("read.request.max.retry.num"));
+            this.percentile = Double.parseDouble(ConfigFactory.Instance().getProperty("read.request.hedge.percentile"));
+            double budget = Double.parseDouble(ConfigFactory.Instance().getProperty("read.request.hedge.budget"));
+            this.tokensPerRead = (long) (budget * TOKEN_UNIT);
+
+            // Issue #133: set the timer thread as daemon thread with max priority.
+            this.timerService = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "pixels-read-hedge-timer");
                 thread.setDaemon(true);
                 thread.setPriority(Thread.MAX_PRIORITY);
                 return thread;
             });
+            // most requests complete before their timers fire, do not keep the cancelled timers.
+            this.timerService.setRemoveOnCancelPolicy(true);
+        }
 
-            this.monitorService.execute(() ->
-            {
-                while (true)
-                {
-                    long currentTimeMs = System.currentTimeMillis();
-                    for (Iterator<MergedRequestReader> it = requestReaders.iterator(); it.hasNext(); )
-                    {
-                        MergedRequestReader requestReader = it.next();
-                        MergedRequest request = requestReader.request;
-                        if (request.completeTimeMs > 0)
-                        {
-                            // request has completed.
-                            it.remove();
-                        } else if (currentTimeMs - request.startTimeMs > timeoutMs(request.getLength()))
-                        {
-                            if (request.retried >= maxRetryNum)
-                            {
-                                // give up retrying.
-                                it.remove();
-                                continue;
-                            }
-                            if (TransContext.Instance().isTerminated(request.queryId))
-                            {
-                                /**
-                                 * Issue #139:
-                                 * The query has been terminated (e.g., canceled or completed),
-                                 * give up retrying.
-                                 */
-                                it.remove();
-                                continue;
-                            }
-                            // retry request.
-                            String path = requestReader.reader.getPath();
-                            logger.debug("Retry request: path='" + path + "', start=" +
-                                    request.start + ", length=" + request.getLength());
-                            try
-                            {
-                                request.startTimeMs = System.currentTimeMillis();
-                                requestReader.reader.readAsync(request.start, request.getLength()).thenAccept(resp ->
-                                {
-                                    if (resp != null)
-                                    {
-                                        request.completeTimeMs = System.currentTimeMillis();
-                                        request.complete(resp);
-                                    }
-                                    else
-                                    {
-                                        logger.error("Asynchronous read from path '" +
-                                                path + "' got null response.");
-                                    }
-                                });
-                            } catch (IOException e)
-                            {
-                                logger.error("Failed to read asynchronously from path '" +
-                                        path + "'.");
-                            }
-                            finally
-                            {
-                                /**
-                                 * The retried request does not be removed here.
-                                 * It will be remove when:
-                                 * 1. the retry complete on time, or
-                                 * 2. the max number of retries has been reached.
-                                 */
-                                request.retried++;
-                            }
-                        }
-                    }
-                    try
-                    {
-                        // sleep for some time, to release the cpu.
-                        Thread.sleep(this.intervalMs);
-                    } catch (InterruptedException e)
-                    {
-                        logger.error("Retry policy is interrupted during sleep.", e);
-                    }
-                }
-            });
+        /**
+         * Start monitoring the merged request that has just been issued.
+         */
+        protected void monitor(MergedRequest request, PhysicalReader reader, int splitSize)
+        {
+            tokens.accumulateAndGet(tokensPerRead, (current, delta) ->
+                    Math.min(current + delta, MAX_BURST * TOKEN_UNIT));
+            schedule(request, reader, splitSize);
+        }
+
+        /**
+         * Record the latency of a completed read.
+         */
+        protected void record(Storage.Scheme scheme, int length, long latencyUs)
+        {
+            ReadLatencyTracker.of(scheme).record(length, latencyUs, percentile);
+        }
 
-            this.monitorService.shutdown();
+        private void schedule(MergedRequest request, PhysicalReader reader, int splitSize)
+        {
+            long delayUs = delayUs(reader.getStorageScheme(), request.getLength());
+            request.timer = timerService.schedule(() -> hedge(request, reader, splitSize),
+                    delayUs, TimeUnit.MICROSECONDS);
+            if (request.isCompleted())
+            {
+                // the request may complete before the timer is set.
+                request.timer.cancel(false);
+            }
+        }
 
-            Runtime.getRuntime().addShutdownHook(new Thread(monitorService::shutdownNow));
+        private void hedge(MergedRequest request, PhysicalReader reader, int splitSize)
+        {
+            if (request.isCompleted() || request.hedged >= maxHedgeNum)
+            {
+                return;
+            }
+            if (TransContext.Instance().isTerminated(request.queryId))
+            {
+                /**
+                 * Issue #139:
+                 * The query has been terminated (e.g., canceled or completed),
+                 * give up retrying.
+                 */
+                return;
+            }
+            if (!acquireBudget())
+            {
+                // the budget is used up, wait for the issued reads.
+                return;
+            }
+            String path = reader.getPath();
+            logger.debug("Hedge request: path='" + path + "', start=" +
+                    request.start + ", length=" + request.getLength());
+            request.hedged++;
+            SchedulerMetrics.hedges(reader.getStorageScheme()).inc();
+            try
+            {
+                read(reader, request, splitSize, true);
+            }
+            catch (IOException e)
+            {
+                logger.error("Failed to read asynchronously from path '" +
+                        path + "'.", e);
+            }
+            schedule(request, reader, splitSize);
         }
 
-        private int timeoutMs(int length)
+        private boolean acquireBudget()
         {
-            return FIRST_BYTE_LATENCY_MS + length/TRANSFER_RATE_BPMS;
+            while (true)
+            {
+                long current = tokens.get();
+                if (current < TOKEN_UNIT)
+                {
+                    return false;
+                }
+                if (tokens.compareAndSet(current, current - TOKEN_UNIT))
+                {
+                    return true;
+                }
+            }
         }
 
-        protected void monitor(MergedRequest request, PhysicalReader reader)
+        private long delayUs(Storage.Scheme scheme, int length)
         {
-            this.requestReaders.add(new MergedRequestReader(request, reader));
+            long delayUs = ReadLatencyTracker.of(scheme).getPercentileUs(length);
+            if (delayUs < 0)
+            {
+                ReadCostModel costModel = ReadCostModel.of(scheme);
+                delayUs = (long) (COST_MODEL_DELAY_FACTOR *
+                        (costModel.getFirstByteLatencyUs() + length / costModel.getBytesPerUs()));
+            }
+            return Math.max(MIN_DELAY_US, delayUs);
         }
     }
 }
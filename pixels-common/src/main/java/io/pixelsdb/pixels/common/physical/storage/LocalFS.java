@@ -260,6 +260,19 @@ public class LocalFS implements Storage
 
     @Override
     public DataOutputStream create(String path, boolean overwrite, int bufferSize, short replication) throws IOException
+    {
+        return new DataOutputStream(new BufferedOutputStream(createFile(path, overwrite), bufferSize));
+    }
+
+    /**
+     * Create the local file and open the file output stream, whose channel can be used for
+     * the gathering writes of byte buffers.
+     * @param path the path of the file
+     * @param overwrite whether to overwrite the file if it exists
+     * @return the unbuffered file output stream
+     * @throws IOException if the path is a directory, or the file exists and overwrite is false
+     */
+    public FileOutputStream createFile(String path, boolean overwrite) throws IOException
     {
         Path p = new Path(path);
         File file = new File(p.realPath);
@@ -282,7 +295,7 @@ public class LocalFS implements Storage
         {
             throw new IOException("Failed to create local file '" + p.realPath + "'.");
         }
-        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), bufferSize));
+        return new FileOutputStream(file);
     }
 
     @Override
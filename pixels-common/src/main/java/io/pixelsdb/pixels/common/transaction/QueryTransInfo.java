@@ -20,6 +20,7 @@
 package io.pixelsdb.pixels.common.transaction;
 
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
@@ -34,6 +35,7 @@ public class QueryTransInfo
     private long queryTimestamp;
     private AtomicReference<Status> queryStatus;
     private Properties queryProperties;
+    private AtomicLong readAdmissionWaitNs;
 
     public enum Status
     {
@@ -46,6 +48,7 @@ public class QueryTransInfo
         this.queryTimestamp = queryTimestamp;
         this.queryStatus = new AtomicReference<>(Status.PENDING);
         this.queryProperties = new Properties();
+        this.readAdmissionWaitNs = new AtomicLong(0);
     }
 
     public long getQueryId()
@@ -73,6 +76,23 @@ public class QueryTransInfo
         return this.queryProperties;
     }
 
+    /**
+     * Add the time that a read request of this query waited for the admission of the read scheduler.
+     * @param waitNs the wait time in nanoseconds
+     */
+    public void addReadAdmissionWaitNs(long waitNs)
+    {
+        this.readAdmissionWaitNs.addAndGet(waitNs);
+    }
+
+    /**
+     * @return the total time in milliseconds that the read requests of this query waited for admission
+     */
+    public long getReadAdmissionWaitMs()
+    {
+        return this.readAdmissionWaitNs.get() / 1000_000;
+    }
+
     @Override
     public String toString()
     {
@@ -80,6 +100,7 @@ public class QueryTransInfo
                 .add("queryId", queryId)
                 .add("queryTimestamp", queryTimestamp)
                 .add("queryStatus", queryStatus.get())
+                .add("readAdmissionWaitMs", getReadAdmissionWaitMs())
                 .toString();
     }
 }
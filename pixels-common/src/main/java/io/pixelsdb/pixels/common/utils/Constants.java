@@ -43,6 +43,9 @@ public final class Constants
     public static final String CACHE_COORDINATOR_LITERAL = "coordinator";
     public static final String CACHE_NODE_STATUS_LITERAL = "node_";
     public static final String CACHE_LOCATION_LITERAL = "location_";
+    public static final String CACHE_ACCESS_LITERAL = "access_";
+    public static final String CACHE_PLAN_LITERAL = "plan_";
+    public static final String CACHE_SSD_PLAN_LITERAL = "ssd_plan_";
     public static final int MAX_BLOCK_ID_LEN = 20480;
 
     /**
@@ -21,13 +21,17 @@ package io.pixelsdb.pixels.common;
 
 import io.pixelsdb.pixels.common.balance.AbsoluteBalancer;
 import io.pixelsdb.pixels.common.balance.Balancer;
+import io.pixelsdb.pixels.common.balance.ConsistentHashBalancer;
 import io.pixelsdb.pixels.common.balance.HostAddress;
 import io.pixelsdb.pixels.common.balance.ReplicaBalancer;
 import io.pixelsdb.pixels.common.exception.BalancerException;
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created at: 18-11-26
@@ -115,4 +119,56 @@ public class TestBalancer
             System.out.println(balancer.get(path).toString());
         }
     }
+
+    @Test
+    public void testConsistentHash ()
+    {
+        List<HostAddress> nodes = new ArrayList<>();
+        for (int i = 1; i <= 4; ++i)
+        {
+            nodes.add(HostAddress.fromParts("node" + i, 9000));
+        }
+        ConsistentHashBalancer balancer = new ConsistentHashBalancer(nodes, 1.25);
+        long totalSize = 0;
+        for (int i = 0; i < 1000; ++i)
+        {
+            long size = 1000 + (i % 7) * 500;
+            balancer.autoSelect("path" + i);
+            balancer.setWeight("path" + i, size);
+            totalSize += size;
+        }
+        balancer.balance();
+        Map<String, HostAddress> previous = balancer.getAll();
+        Assert.assertEquals(1000, previous.size());
+        Map<HostAddress, Long> loads = new HashMap<>();
+        for (int i = 0; i < 1000; ++i)
+        {
+            loads.merge(previous.get("path" + i), 1000L + (i % 7) * 500, Long::sum);
+        }
+        for (long load : loads.values())
+        {
+            Assert.assertTrue(load <= Math.ceil(1.25 * totalSize / 4));
+        }
+
+        // add a node and some paths, the previous assignments should be mostly preserved.
+        nodes.add(HostAddress.fromParts("node5", 9000));
+        balancer = new ConsistentHashBalancer(nodes, 1.25);
+        for (int i = 0; i < 1100; ++i)
+        {
+            balancer.autoSelect("path" + i);
+            balancer.setWeight("path" + i, 1000 + (i % 7) * 500);
+        }
+        balancer.setPrevious(previous);
+        balancer.balance();
+        int moved = 0;
+        for (int i = 0; i < 1000; ++i)
+        {
+            if (!balancer.get("path" + i).equals(previous.get("path" + i)))
+            {
+                moved++;
+            }
+        }
+        System.out.println(moved + " of 1000 paths are moved");
+        Assert.assertTrue(moved < 400);
+    }
 }
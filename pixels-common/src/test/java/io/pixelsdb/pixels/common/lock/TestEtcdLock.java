@@ -25,6 +25,16 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.junit.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
 /**
  * Created at: 18-10-28
  * Author: hank
@@ -151,4 +161,80 @@ public class TestEtcdLock
         t1.join();
         t2.join();
     }
+
+    /**
+     * The writers contend for the write lock, each holds it for a short time. The acquisition latency
+     * beyond the hold time of the predecessors should be in milliseconds, as the writers are woken up by
+     * the deletion of their predecessors instead of polling. The test fails if any writer fails or times
+     * out on the lock, or does not finish all its acquisitions.
+     */
+    @Test
+    public void testWriteLockContention() throws Exception
+    {
+        int writerNum = 8, rounds = 10;
+        long holdMillis = 5, timeoutSeconds = 60;
+        Client client = EtcdUtil.Instance().getClient();
+        String basePath = "/read-write-lock-contention";
+        EtcdUtil.Instance().deleteByPrefix(basePath);
+        AtomicLong totalNanos = new AtomicLong(0);
+        AtomicLong maxNanos = new AtomicLong(0);
+        AtomicInteger acquired = new AtomicInteger(0);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] writers = new Thread[writerNum];
+        for (int i = 0; i < writerNum; i++)
+        {
+            writers[i] = new Thread(() ->
+            {
+                try
+                {
+                    start.await();
+                    for (int j = 0; j < rounds; j++)
+                    {
+                        EtcdMutex writeLock = new EtcdReadWriteLock(client, basePath).writeLock();
+                        long startNanos = System.nanoTime();
+                        if (!writeLock.acquire(timeoutSeconds, TimeUnit.SECONDS))
+                        {
+                            throw new TimeoutException("failed to acquire the write lock in " +
+                                    timeoutSeconds + " seconds");
+                        }
+                        try
+                        {
+                            long nanos = System.nanoTime() - startNanos;
+                            totalNanos.addAndGet(nanos);
+                            maxNanos.accumulateAndGet(nanos, Math::max);
+                            acquired.incrementAndGet();
+                            Thread.sleep(holdMillis);
+                        }
+                        finally
+                        {
+                            writeLock.release();
+                        }
+                    }
+                } catch (Throwable e)
+                {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            writers[i].start();
+        }
+        long startMillis = System.currentTimeMillis();
+        start.countDown();
+        for (Thread writer : writers)
+        {
+            writer.join(TimeUnit.SECONDS.toMillis(timeoutSeconds * 2));
+            assertFalse("the writer did not finish in time", writer.isAlive());
+        }
+        long elapsedMillis = System.currentTimeMillis() - startMillis;
+        if (failure.get() != null)
+        {
+            throw new AssertionError("a writer failed on the write lock", failure.get());
+        }
+        int acquisitions = writerNum * rounds;
+        assertEquals(acquisitions, acquired.get());
+        System.out.println("write lock acquisitions: " + acquisitions + ", elapsed: " + elapsedMillis +
+                "ms, avg acquire: " + totalNanos.get() / acquisitions / 1000000.0 + "ms, max acquire: " +
+                maxNanos.get() / 1000000.0 + "ms, avg hand-off: " +
+                (elapsedMillis - (double) acquisitions * holdMillis) / acquisitions + "ms");
+    }
 }
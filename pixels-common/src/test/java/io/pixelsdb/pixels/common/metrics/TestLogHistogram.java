@@ -0,0 +1,68 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.common.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestLogHistogram
+{
+    @Test
+    public void testBuckets()
+    {
+        for (long value : new long[]{0, 1, 7, 8, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE})
+        {
+            int index = LogHistogram.bucketIndex(value);
+            assertTrue(LogHistogram.bucketLowerBound(index) <= value);
+            assertTrue(LogHistogram.bucketUpperBound(index) >= value);
+        }
+    }
+
+    @Test
+    public void testPercentile()
+    {
+        LogHistogram histogram = new LogHistogram();
+        for (int i = 1; i <= 1000; ++i)
+        {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500, histogram.getSum());
+        long p50 = histogram.getPercentile(0.5);
+        long p99 = histogram.getPercentile(0.99);
+        assertTrue(p50 >= 500 && p50 <= 500 * 1.125);
+        assertTrue(p99 >= 990 && p99 <= 990 * 1.125);
+    }
+
+    @Test
+    public void testPromTextFormat()
+    {
+        MetricsRegistry registry = MetricsRegistry.Instance();
+        registry.counter("test_requests_total", "test counter", "scheme", "s3").add(3);
+        registry.histogram("test_latency_us", "test histogram", "scheme", "s3").record(100);
+        String text = registry.toPromTextFormat();
+        assertTrue(text.contains("# TYPE test_requests_total counter"));
+        assertTrue(text.contains("test_requests_total{scheme=\"s3\"} 3"));
+        assertTrue(text.contains("test_latency_us{scheme=\"s3\",quantile=\"0.5\"} "));
+        assertTrue(text.contains("test_latency_us_count{scheme=\"s3\"} 1"));
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.common.physical.scheduler;
+
+import io.pixelsdb.pixels.common.physical.PhysicalReader;
+import io.pixelsdb.pixels.common.physical.Storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+/**
+ * The physical reader of an in-memory file for the tests of the schedulers.
+ * The byte at offset i of the file is (byte) i. The async reads are served by a thread pool
+ * after the read delay, and the issued reads are recorded. Cancelling an async read interrupts it.
+ */
+class InMemoryReader implements PhysicalReader
+{
+    private final String path;
+    private final Storage.Scheme scheme;
+    private final byte[] content;
+    private final boolean async;
+    private final ExecutorService executor;
+    private final List<long[]> reads = Collections.synchronizedList(new ArrayList<>());
+    private final ConcurrentLinkedQueue<Long> nextReadDelaysMs = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger cancelledReads = new AtomicInteger(0);
+    private volatile long readDelayMs = 0;
+    private volatile boolean nullResponse = false;
+    private long position = 0;
+
+    InMemoryReader(String path, Storage.Scheme scheme, int length, boolean async)
+    {
+        this.path = path;
+        this.scheme = scheme;
+        this.content = new byte[length];
+        for (int i = 0; i < length; ++i)
+        {
+            this.content[i] = (byte) i;
+        }
+        this.async = async;
+        this.executor = Executors.newCachedThreadPool(runnable ->
+        {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void setReadDelayMs(long readDelayMs)
+    {
+        this.readDelayMs = readDelayMs;
+    }
+
+    /**
+     * Set the delays of the next async reads, the later reads are delayed by the read delay.
+     */
+    void setNextReadDelaysMs(long... delaysMs)
+    {
+        for (long delayMs : delaysMs)
+        {
+            nextReadDelaysMs.add(delayMs);
+        }
+    }
+
+    /**
+     * @return the number of the async reads that are cancelled before they complete
+     */
+    int getCancelledReads()
+    {
+        return cancelledReads.get();
+    }
+
+    void setNullResponse(boolean nullResponse)
+    {
+        this.nullResponse = nullResponse;
+    }
+
+    /**
+     * @return the {offset, length} of the reads issued to this reader
+     */
+    List<long[]> getReads()
+    {
+        synchronized (reads)
+        {
+            return new ArrayList<>(reads);
+        }
+    }
+
+    /**
+     * @return a new buffer of the content of the range, as the physical readers return, without issuing a read
+     */
+    ByteBuffer content(long offset, int length)
+    {
+        return ByteBuffer.wrap(Arrays.copyOfRange(content, (int) offset, (int) offset + length));
+    }
+
+    static boolean isContent(ByteBuffer buffer, long offset, int length)
+    {
+        if (buffer.remaining() != length)
+        {
+            return false;
+        }
+        for (int i = 0; i < length; ++i)
+        {
+            if (buffer.get(buffer.position() + i) != (byte) (offset + i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long getFileLength()
+    {
+        return content.length;
+    }
+
+    @Override
+    public void seek(long desired)
+    {
+        this.position = desired;
+    }
+
+    @Override
+    public ByteBuffer readFully(int length)
+    {
+        reads.add(new long[]{position, length});
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(content, (int) position, length);
+        buffer.flip();
+        position += length;
+        return buffer;
+    }
+
+    @Override
+    public void readFully(byte[] buffer)
+    {
+        readFully(buffer, 0, buffer.length);
+    }
+
+    @Override
+    public void readFully(byte[] buffer, int offset, int length)
+    {
+        reads.add(new long[]{position, length});
+        System.arraycopy(content, (int) position, buffer, offset, length);
+        position += length;
+    }
+
+    @Override
+    public boolean supportsAsync()
+    {
+        return async;
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> readAsync(long offset, int length) throws IOException
+    {
+        return readAsync(offset, length, dispatchNs -> { });
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> readAsync(long offset, int length, LongConsumer dispatchListener)
+            throws IOException
+    {
+        if (!async)
+        {
+            throw new IOException("Asynchronous read is not supported.");
+        }
+        if (offset + length > content.length)
+        {
+            throw new IOException("Offset " + offset + " plus " + length +
+                    " exceeds file length " + content.length + ".");
+        }
+        reads.add(new long[]{offset, length});
+        Long nextDelayMs = nextReadDelaysMs.poll();
+        long delayMs = nextDelayMs != null ? nextDelayMs : readDelayMs;
+        CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        Future<?> task = executor.submit(() ->
+        {
+            dispatchListener.accept(System.nanoTime());
+            try
+            {
+                if (delayMs > 0)
+                {
+                    Thread.sleep(delayMs);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                future.completeExceptionally(e);
+                return;
+            }
+            future.complete(nullResponse ? null : content(offset, length));
+        });
+        future.whenComplete((buffer, e) ->
+        {
+            if (future.isCancelled())
+            {
+                cancelledReads.incrementAndGet();
+                task.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public long readLong()
+    {
+        return readFully(Long.BYTES).getLong();
+    }
+
+    @Override
+    public int readInt()
+    {
+        return readFully(Integer.BYTES).getInt();
+    }
+
+    @Override
+    public void close()
+    {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String getPath()
+    {
+        return path;
+    }
+
+    @Override
+    public String getName()
+    {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public long getBlockId()
+    {
+        return 0;
+    }
+
+    @Override
+    public Storage.Scheme getStorageScheme()
+    {
+        return scheme;
+    }
+}
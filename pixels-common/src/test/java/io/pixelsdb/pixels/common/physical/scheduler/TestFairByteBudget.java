@@ -0,0 +1,192 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.common.physical.scheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class TestFairByteBudget
+{
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(1);
+        }
+        assertTrue("the condition is not reached in time", condition.getAsBoolean());
+    }
+
+    /**
+     * Acquire the bytes on a new thread, and add the name to the admitted list when it is admitted.
+     */
+    private static Thread acquire(FairByteBudget budget, long queryId, long bytes, String name, List<String> admitted)
+    {
+        Thread thread = new Thread(() ->
+        {
+            budget.acquire(queryId, bytes);
+            admitted.add(name);
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void testFairness() throws Exception
+    {
+        FairByteBudget budget = new FairByteBudget(100);
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        budget.acquire(0, 100);
+        // query 1 queues a scan of 5 reads before query 2 issues its read.
+        for (int i = 1; i <= 5; ++i)
+        {
+            acquire(budget, 1, 100, "scan" + i, admitted);
+            int numWaiters = i;
+            waitUntil(() -> budget.getNumWaiters() == numWaiters);
+        }
+        acquire(budget, 2, 100, "point", admitted);
+        waitUntil(() -> budget.getNumWaiters() == 6);
+        assertTrue(admitted.isEmpty());
+
+        budget.release(0, 100);
+        String[] expected = {"scan1", "point", "scan2", "scan3", "scan4", "scan5"};
+        for (int i = 0; i < expected.length; ++i)
+        {
+            int numAdmitted = i + 1;
+            waitUntil(() -> admitted.size() == numAdmitted);
+            assertEquals(expected[i], admitted.get(i));
+            assertEquals(100, budget.getInFlightBytes());
+            budget.release(expected[i].equals("point") ? 2 : 1, 100);
+        }
+        assertEquals(0, budget.getInFlightBytes());
+        assertEquals(0, budget.getNumWaiters());
+    }
+
+    @Test
+    public void testRelease() throws Exception
+    {
+        FairByteBudget budget = new FairByteBudget(100);
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        assertEquals(0, budget.acquire(1, 60));
+        assertEquals(0, budget.acquire(2, 30));
+        acquire(budget, 3, 20, "read", admitted);
+        waitUntil(() -> budget.getNumWaiters() == 1);
+        assertEquals(90, budget.getInFlightBytes());
+
+        budget.release(2, 30);
+        waitUntil(() -> admitted.size() == 1);
+        assertEquals(80, budget.getInFlightBytes());
+        budget.release(1, 60);
+        budget.release(3, 20);
+        assertEquals(0, budget.getInFlightBytes());
+    }
+
+    @Test
+    public void testReadLargerThanCapacity() throws Exception
+    {
+        FairByteBudget budget = new FairByteBudget(100);
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        budget.acquire(1, 50);
+        acquire(budget, 2, 500, "large", admitted);
+        waitUntil(() -> budget.getNumWaiters() == 1);
+        acquire(budget, 3, 10, "small", admitted);
+        waitUntil(() -> budget.getNumWaiters() == 2);
+
+        // the large read is admitted when there is no other in-flight read, and it is not overtaken.
+        budget.release(1, 50);
+        waitUntil(() -> admitted.size() == 1);
+        assertEquals("large", admitted.get(0));
+        assertEquals(500, budget.getInFlightBytes());
+        assertEquals(1, budget.getNumWaiters());
+        budget.release(2, 500);
+        waitUntil(() -> admitted.size() == 2);
+        assertEquals(10, budget.getInFlightBytes());
+        budget.release(3, 10);
+    }
+
+    @Test
+    public void testCapacity() throws Exception
+    {
+        FairByteBudget unlimited = new FairByteBudget(0);
+        for (int i = 0; i < 10; ++i)
+        {
+            assertEquals(0, unlimited.acquire(i, 1 << 30));
+        }
+        assertEquals(10L << 30, unlimited.getInFlightBytes());
+
+        FairByteBudget budget = new FairByteBudget(100);
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        budget.acquire(1, 100);
+        acquire(budget, 2, 100, "read", admitted);
+        waitUntil(() -> budget.getNumWaiters() == 1);
+        // increasing the capacity admits the waiting reads.
+        budget.setCapacity(200);
+        waitUntil(() -> admitted.size() == 1);
+        assertEquals(200, budget.getInFlightBytes());
+    }
+
+    @Test
+    public void testQueueDraining() throws Exception
+    {
+        FairByteBudget budget = new FairByteBudget(1000);
+        int numQueries = 8, numReads = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(numQueries);
+        List<Future<Long>> queries = new ArrayList<>();
+        for (int q = 0; q < numQueries; ++q)
+        {
+            long queryId = q;
+            queries.add(executor.submit(() ->
+            {
+                Random random = new Random(queryId);
+                long waitNs = 0;
+                for (int i = 0; i < numReads; ++i)
+                {
+                    long bytes = 1 + random.nextInt(queryId == 0 ? 2000 : 500);
+                    waitNs += budget.acquire(queryId, bytes);
+                    assertTrue(budget.getInFlightBytes() <= Math.max(1000, bytes));
+                    Thread.sleep(0, 100_000);
+                    budget.release(queryId, bytes);
+                }
+                return waitNs;
+            }));
+        }
+        long totalWaitNs = 0;
+        for (Future<Long> query : queries)
+        {
+            totalWaitNs += query.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertTrue(totalWaitNs > 0);
+        assertEquals(0, budget.getInFlightBytes());
+        assertEquals(0, budget.getNumWaiters());
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.common.physical.scheduler;
+
+import io.pixelsdb.pixels.common.physical.Scheduler;
+import io.pixelsdb.pixels.common.physical.Storage;
+import io.pixelsdb.pixels.common.transaction.QueryTransInfo;
+import io.pixelsdb.pixels.common.transaction.TransContext;
+import io.pixelsdb.pixels.common.utils.ConfigFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestRateLimitedScheduler
+{
+    private static final String[] PROPERTIES = {"read.request.inflight.max.bytes", "read.request.enable.retry"};
+    private final String[] values = new String[PROPERTIES.length];
+
+    @Before
+    public void setUp()
+    {
+        ConfigFactory config = ConfigFactory.Instance();
+        for (int i = 0; i < PROPERTIES.length; ++i)
+        {
+            values[i] = config.getProperty(PROPERTIES[i]);
+        }
+        config.addProperty("read.request.inflight.max.bytes", "1000");
+        config.addProperty("read.request.enable.retry", "false");
+    }
+
+    @After
+    public void tearDown()
+    {
+        ConfigFactory config = ConfigFactory.Instance();
+        for (int i = 0; i < PROPERTIES.length; ++i)
+        {
+            config.addProperty(PROPERTIES[i], values[i]);
+        }
+    }
+
+    @Test
+    public void testAdmissionWaitOfQuery() throws Exception
+    {
+        RateLimitedScheduler scheduler = new RateLimitedScheduler();
+        InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 10000, true);
+        reader.setReadDelayMs(200);
+        QueryTransInfo scan = new QueryTransInfo(1001, 0);
+        QueryTransInfo point = new QueryTransInfo(1002, 0);
+        TransContext.Instance().beginQuery(scan);
+        TransContext.Instance().beginQuery(point);
+
+        Scheduler.RequestBatch scanBatch = new Scheduler.RequestBatch();
+        CompletableFuture<ByteBuffer> scanFuture = scanBatch.add(1001, 0, 1000);
+        scheduler.executeBatch(reader, scanBatch, 1001);
+        // the read of the point query waits until the read of the scan releases the budget.
+        Scheduler.RequestBatch pointBatch = new Scheduler.RequestBatch();
+        CompletableFuture<ByteBuffer> pointFuture = pointBatch.add(1002, 5000, 1000);
+        scheduler.executeBatch(reader, pointBatch, 1002);
+        assertTrue(InMemoryReader.isContent(scanFuture.get(10, TimeUnit.SECONDS), 0, 1000));
+        assertTrue(InMemoryReader.isContent(pointFuture.get(10, TimeUnit.SECONDS), 5000, 1000));
+
+        assertEquals(0, scan.getReadAdmissionWaitMs());
+        assertTrue(point.getReadAdmissionWaitMs() >= 100);
+        TransContext.Instance().commitQuery(1001);
+        TransContext.Instance().commitQuery(1002);
+        reader.close();
+    }
+}
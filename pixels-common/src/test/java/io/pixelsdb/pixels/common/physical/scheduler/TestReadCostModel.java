@@ -0,0 +1,109 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.common.physical.scheduler;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestReadCostModel
+{
+    @Test
+    public void testFit()
+    {
+        ReadCostModel model = new ReadCostModel(100, 1_000);
+        Random random = new Random(0);
+        for (int i = 0; i < 1000; ++i)
+        {
+            long length = 64 * 1024 + random.nextInt(8 * 1024 * 1024);
+            // 20ms to the first byte, 100 bytes per microsecond.
+            model.record(length, 20_000 + length / 100);
+        }
+        assertEquals(20_000, model.getFirstByteLatencyUs(), 20);
+        assertEquals(100, model.getBytesPerUs(), 0.1);
+        assertEquals(2_000_000, model.getMergeGap(), 5_000);
+        assertEquals(8 * model.getMergeGap(), model.getSplitSize());
+    }
+
+    @Test
+    public void testFitFollowsRecentRequests()
+    {
+        ReadCostModel model = new ReadCostModel(100, 1_000);
+        Random random = new Random(0);
+        for (int i = 0; i < 1000; ++i)
+        {
+            long length = 64 * 1024 + random.nextInt(8 * 1024 * 1024);
+            model.record(length, 20_000 + length / 100);
+        }
+        for (int i = 0; i < 2000; ++i)
+        {
+            long length = 64 * 1024 + random.nextInt(8 * 1024 * 1024);
+            model.record(length, 5_000 + length / 400);
+        }
+        assertEquals(5_000, model.getFirstByteLatencyUs(), 50);
+        assertEquals(400, model.getBytesPerUs(), 1);
+    }
+
+    @Test
+    public void testPriorBeforeMinObservations()
+    {
+        ReadCostModel model = new ReadCostModel(30_000, 80);
+        for (int i = 0; i < 10; ++i)
+        {
+            model.record(1024 * (i + 1), 100 + i);
+        }
+        assertEquals(30_000, model.getFirstByteLatencyUs(), 0);
+        assertEquals(80, model.getBytesPerUs(), 0);
+        assertEquals(2_400_000, model.getMergeGap());
+        assertEquals(19_200_000, model.getSplitSize());
+    }
+
+    @Test
+    public void testSameLengthKeepsBandwidth()
+    {
+        ReadCostModel model = new ReadCostModel(30_000, 80);
+        for (int i = 0; i < 100; ++i)
+        {
+            model.record(800_000, 20_000);
+        }
+        // the first-byte latency can not be separated from the transfer time of the same length.
+        assertEquals(80, model.getBytesPerUs(), 0);
+        assertEquals(10_000, model.getFirstByteLatencyUs(), 1);
+    }
+
+    @Test
+    public void testNonNegativeFirstByteLatency()
+    {
+        ReadCostModel model = new ReadCostModel(30_000, 80);
+        Random random = new Random(0);
+        for (int i = 0; i < 100; ++i)
+        {
+            long length = 64 * 1024 + random.nextInt(8 * 1024 * 1024);
+            // a negative intercept is not a valid fit, and same-length fallback must not go below zero.
+            model.record(length, Math.max(1, length / 100 - 50_000));
+        }
+        assertEquals(80, model.getBytesPerUs(), 0);
+        assertEquals(0, model.getFirstByteLatencyUs(), 0);
+        assertEquals(0, model.getMergeGap());
+        assertEquals(0, model.getSplitSize());
+    }
+}
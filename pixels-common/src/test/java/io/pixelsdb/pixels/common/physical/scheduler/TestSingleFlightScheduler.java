@@ -0,0 +1,459 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.common.physical.scheduler;
+
+import io.pixelsdb.pixels.common.physical.PhysicalReader;
+import io.pixelsdb.pixels.common.physical.Scheduler;
+import io.pixelsdb.pixels.common.physical.Storage;
+import io.pixelsdb.pixels.common.utils.ConfigFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TestSingleFlightScheduler
+{
+    private static final String[] PROPERTIES = {"read.request.dedup.retention.ms",
+            "read.request.dedup.retention.max.bytes", "read.request.dedup.max.wait.ms"};
+    private final String[] values = new String[PROPERTIES.length];
+
+    /**
+     * The underlying scheduler that holds the issued requests until the test completes them.
+     */
+    private static class PendingScheduler implements Scheduler
+    {
+        private final BlockingQueue<PendingRead> pending = new LinkedBlockingQueue<>();
+        private final AtomicInteger issued = new AtomicInteger(0);
+
+        @Override
+        public void executeBatch(PhysicalReader reader, RequestBatch batch, long queryId)
+        {
+            for (int i = 0; i < batch.size(); ++i)
+            {
+                issued.incrementAndGet();
+                pending.add(new PendingRead((InMemoryReader) reader, batch.getRequests().get(i),
+                        batch.getFutures().get(i)));
+            }
+        }
+
+        private PendingRead take() throws InterruptedException
+        {
+            PendingRead read = pending.poll(10, TimeUnit.SECONDS);
+            assertNotNull("the request is not issued", read);
+            return read;
+        }
+    }
+
+    private static class PendingRead
+    {
+        private final InMemoryReader reader;
+        private final Scheduler.Request request;
+        private final CompletableFuture<ByteBuffer> future;
+
+        private PendingRead(InMemoryReader reader, Scheduler.Request request, CompletableFuture<ByteBuffer> future)
+        {
+            this.reader = reader;
+            this.request = request;
+            this.future = future;
+        }
+
+        private void complete()
+        {
+            future.complete(reader.content(request.start, request.length));
+        }
+    }
+
+    @Before
+    public void setUp()
+    {
+        ConfigFactory config = ConfigFactory.Instance();
+        for (int i = 0; i < PROPERTIES.length; ++i)
+        {
+            values[i] = config.getProperty(PROPERTIES[i]);
+        }
+        config.addProperty("read.request.dedup.retention.ms", "0");
+        config.addProperty("read.request.dedup.retention.max.bytes", "268435456");
+        config.addProperty("read.request.dedup.max.wait.ms", "60000");
+    }
+
+    @After
+    public void tearDown()
+    {
+        ConfigFactory config = ConfigFactory.Instance();
+        for (int i = 0; i < PROPERTIES.length; ++i)
+        {
+            config.addProperty(PROPERTIES[i], values[i]);
+        }
+    }
+
+    private static CompletableFuture<ByteBuffer> read(Scheduler scheduler, PhysicalReader reader, long queryId,
+                                                      long start, int length) throws IOException
+    {
+        Scheduler.RequestBatch batch = new Scheduler.RequestBatch();
+        CompletableFuture<ByteBuffer> future = batch.add(queryId, start, length);
+        scheduler.executeBatch(reader, batch, queryId);
+        return future;
+    }
+
+    private static void assertContent(CompletableFuture<ByteBuffer> future, long start, int length)
+            throws Exception
+    {
+        assertTrue(InMemoryReader.isContent(future.get(10, TimeUnit.SECONDS), start, length));
+    }
+
+    @Test
+    public void testAttach() throws Exception
+    {
+        PendingScheduler delegate = new PendingScheduler();
+        SingleFlightScheduler scheduler = new SingleFlightScheduler(delegate);
+        InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 10000, true);
+
+        CompletableFuture<ByteBuffer> owner = read(scheduler, reader, 1, 0, 1000);
+        Scheduler.RequestBatch batch = new Scheduler.RequestBatch();
+        CompletableFuture<ByteBuffer> contained = batch.add(2, 100, 100);
+        CompletableFuture<ByteBuffer> identical = batch.add(2, 0, 1000);
+        CompletableFuture<ByteBuffer> overlapped = batch.add(2, 900, 200);
+        scheduler.executeBatch(reader, batch, 2);
+        // only the request that is not contained by the in-flight read is issued.
+        assertEquals(2, delegate.issued.get());
+        assertFalse(contained.isDone());
+
+        delegate.take().complete();
+        delegate.take().complete();
+        assertContent(owner, 0, 1000);
+        assertContent(contained, 100, 100);
+        assertContent(identical, 0, 1000);
+        assertContent(overlapped, 900, 200);
+        reader.close();
+    }
+
+    @Test
+    public void testAttachToEarlierRead() throws Exception
+    {
+        PendingScheduler delegate = new PendingScheduler();
+        SingleFlightScheduler scheduler = new SingleFlightScheduler(delegate);
+        InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 10000, true);
+
+        CompletableFuture<ByteBuffer> small = read(scheduler, reader, 1, 100, 100);
+        CompletableFuture<ByteBuffer> large = read(scheduler, reader, 1, 0, 1000);
+        // the floor read [100, 200) does not contain the request, but [0, 1000) does.
+        CompletableFuture<ByteBuffer> attached = read(scheduler, reader, 2, 300, 100);
+        assertEquals(2, delegate.issued.get());
+
+        delegate.take().complete();
+        delegate.take().complete();
+        assertContent(large, 0, 1000);
+        assertContent(small, 100, 100);
+        assertContent(attached, 300, 100);
+        reader.close();
+    }
+
+    @Test
+    public void testDifferentFiles() throws Exception
+    {
+        PendingScheduler delegate = new PendingScheduler();
+        SingleFlightScheduler scheduler = new SingleFlightScheduler(delegate);
+        InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 10000, true);
+        InMemoryReader otherScheme = new InMemoryReader("file", Storage.Scheme.s3, 10000, true);
+        InMemoryReader otherLength = new InMemoryReader("file", Storage.Scheme.mock, 20000, true);
+
+        read(scheduler, reader, 1, 0, 1000);
+        read(scheduler, otherScheme, 2, 0, 1000);
+        read(scheduler, otherLength, 3, 0, 1000);
+        assertEquals(3, delegate.issued.get());
+        for (int i = 0; i < 3; ++i)
+        {
+            delegate.take().complete();
+        }
+        reader.close();
+        otherScheme.close();
+        otherLength.close();
+    }
+
+    @Test
+    public void testFailureIsNotShared() throws Exception
+    {
+        PendingScheduler delegate = new PendingScheduler();
+        SingleFlightScheduler scheduler = new SingleFlightScheduler(delegate);
+        InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 10000, true);
+
+        CompletableFuture<ByteBuffer> owner = read(scheduler, reader, 1, 0, 1000);
+        CompletableFuture<ByteBuffer> attached = read(scheduler, reader, 2, 100, 100);
+        assertEquals(1, delegate.issued.get());
+        delegate.take().future.completeExceptionally(new IOException("read failed"));
+        try
+        {
+            owner.get(10, TimeUnit.SECONDS);
+            fail("the failure of the read is not propagated to its own query");
+        }
+        catch (ExecutionException e)
+        {
+            assertEquals("read failed", e.getCause().getMessage());
+        }
+
+        // the attached request is detached and read by itself.
+        PendingRead detached = delegate.take();
+        assertEquals(100, detached.request.start);
+        assertEquals(2, detached.request.queryId);
+        assertFalse(attached.isDone());
+        detached.complete();
+        assertContent(attached, 100, 100);
+
+        // the failed read is not shared any more.
+        read(scheduler, reader, 3, 0, 1000);
+        delegate.take().complete();
+        reader.close();
+    }
+
+    @Test
+    public void testHangIsNotShared() throws Exception
+    {
+        ConfigFactory.Instance().addProperty("read.request.dedup.max.wait.ms", "100");
+        PendingScheduler delegate = new PendingScheduler();
+        SingleFlightScheduler scheduler = new SingleFlightScheduler(delegate);
+        InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 10000, true);
+
+        CompletableFuture<ByteBuffer> owner = read(scheduler, reader, 1, 0, 1000);
+        PendingRead hung = delegate.take();
+        CompletableFuture<ByteBuffer> attached = read(scheduler, reader, 2, 100, 100);
+        PendingRead detached = delegate.take();
+        assertEquals(100, detached.request.start);
+        detached.complete();
+        assertContent(attached, 100, 100);
+
+        // the completion of the hung read does not complete the detached request again.
+        hung.complete();
+        assertContent(owner, 0, 1000);
+        assertContent(attached, 100, 100);
+        assertEquals(2, delegate.issued.get());
+        reader.close();
+    }
+
+    @Test
+    public void testRetentionEviction() throws Exception
+    {
+        ConfigFactory.Instance().addProperty("read.request.dedup.retention.ms", "200");
+        PendingScheduler delegate = new PendingScheduler();
+        SingleFlightScheduler scheduler = new SingleFlightScheduler(delegate);
+        InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 10000, true);
+
+        read(scheduler, reader, 1, 0, 1000);
+        delegate.take().complete();
+        assertEquals(1000, scheduler.getRetainedBytes());
+        // the completed read is retained and shared.
+        CompletableFuture<ByteBuffer> retained = read(scheduler, reader, 2, 500, 500);
+        assertContent(retained, 500, 500);
+        assertEquals(1, delegate.issued.get());
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (scheduler.getRetainedBytes() > 0 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(0, scheduler.getRetainedBytes());
+        read(scheduler, reader, 3, 500, 500);
+        assertEquals(2, delegate.issued.get());
+        delegate.take().complete();
+        reader.close();
+    }
+
+    @Test
+    public void testRetentionBound() throws Exception
+    {
+        ConfigFactory.Instance().addProperty("read.request.dedup.retention.ms", "60000");
+        ConfigFactory.Instance().addProperty("read.request.dedup.retention.max.bytes", "1500");
+        PendingScheduler delegate = new PendingScheduler();
+        SingleFlightScheduler scheduler = new SingleFlightScheduler(delegate);
+        InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 10000, true);
+
+        read(scheduler, reader, 1, 0, 1000);
+        delegate.take().complete();
+        read(scheduler, reader, 1, 5000, 1000);
+        delegate.take().complete();
+        // the second read exceeds the bound and is not retained.
+        assertEquals(1000, scheduler.getRetainedBytes());
+        read(scheduler, reader, 2, 0, 1000);
+        assertEquals(2, delegate.issued.get());
+        read(scheduler, reader, 2, 5000, 1000);
+        assertEquals(3, delegate.issued.get());
+        delegate.take().complete();
+        reader.close();
+    }
+
+    @Test
+    public void testRetainedSliceIsShared() throws Exception
+    {
+        ConfigFactory.Instance().addProperty("read.request.dedup.retention.ms", "60000");
+        PendingScheduler delegate = new PendingScheduler();
+        SingleFlightScheduler scheduler = new SingleFlightScheduler(delegate);
+        InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 10000, true);
+
+        // complete two reads by the slices of a larger buffer, as the merged requests do.
+        CompletableFuture<ByteBuffer> first = read(scheduler, reader, 1, 1000, 1000);
+        CompletableFuture<ByteBuffer> second = read(scheduler, reader, 1, 3000, 1000);
+        ByteBuffer merged = reader.content(0, 10000);
+        PendingRead firstRead = delegate.take();
+        PendingRead secondRead = delegate.take();
+        merged.position(1000).limit(2000);
+        firstRead.future.complete(merged.slice());
+        merged.limit(4000).position(3000);
+        secondRead.future.complete(merged.slice());
+        assertContent(first, 1000, 1000);
+        assertContent(second, 3000, 1000);
+
+        // the retained reads reference the larger buffer, which is counted once.
+        CompletableFuture<ByteBuffer> retained = read(scheduler, reader, 2, 1500, 100);
+        assertContent(retained, 1500, 100);
+        assertSame(merged.array(), retained.get().array());
+        assertContent(read(scheduler, reader, 2, 3900, 100), 3900, 100);
+        assertEquals(10000, scheduler.getRetainedBytes());
+        assertEquals(2, delegate.issued.get());
+        reader.close();
+    }
+
+    @Test
+    public void testRetainedMergedBufferBound() throws Exception
+    {
+        ConfigFactory.Instance().addProperty("read.request.dedup.retention.ms", "60000");
+        ConfigFactory.Instance().addProperty("read.request.dedup.retention.max.bytes", "5000");
+        PendingScheduler delegate = new PendingScheduler();
+        SingleFlightScheduler scheduler = new SingleFlightScheduler(delegate);
+        InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 10000, true);
+
+        // the read is small, but the larger buffer it pins exceeds the bound, thus it is not retained.
+        read(scheduler, reader, 1, 1000, 1000);
+        ByteBuffer merged = reader.content(0, 10000);
+        merged.position(1000).limit(2000);
+        delegate.take().future.complete(merged.slice());
+        assertEquals(0, scheduler.getRetainedBytes());
+        read(scheduler, reader, 2, 1000, 1000);
+        assertEquals(2, delegate.issued.get());
+        delegate.take().complete();
+        reader.close();
+    }
+
+    @Test
+    public void testAsyncReaderIsNotSerialized() throws Exception
+    {
+        CountDownLatch secondBatch = new CountDownLatch(1);
+        Scheduler delegate = (reader, batch, queryId) ->
+        {
+            if (queryId == 1)
+            {
+                // the first batch waits (e.g., for the admission) until the second batch is executed.
+                try
+                {
+                    assertTrue("the batches on the async reader are serialized",
+                            secondBatch.await(10, TimeUnit.SECONDS));
+                }
+                catch (InterruptedException e)
+                {
+                    throw new IOException(e);
+                }
+            }
+            else
+            {
+                secondBatch.countDown();
+            }
+            for (int i = 0; i < batch.size(); ++i)
+            {
+                Scheduler.Request request = batch.getRequests().get(i);
+                batch.getFutures().get(i).complete(((InMemoryReader) reader).content(request.start, request.length));
+            }
+        };
+        SingleFlightScheduler scheduler = new SingleFlightScheduler(delegate);
+        InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 10000, true);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<CompletableFuture<ByteBuffer>> first = executor.submit(() -> read(scheduler, reader, 1, 0, 100));
+        CompletableFuture<ByteBuffer> second = read(scheduler, reader, 2, 5000, 100);
+        assertContent(second, 5000, 100);
+        assertContent(first.get(10, TimeUnit.SECONDS), 0, 100);
+        executor.shutdown();
+        reader.close();
+    }
+
+    @Test
+    public void testConcurrentQueries() throws Exception
+    {
+        ConfigFactory.Instance().addProperty("read.request.dedup.retention.ms", "5");
+        AtomicInteger issued = new AtomicInteger(0);
+        Scheduler delegate = (reader, batch, queryId) ->
+        {
+            for (int i = 0; i < batch.size(); ++i)
+            {
+                issued.incrementAndGet();
+                Scheduler.Request request = batch.getRequests().get(i);
+                CompletableFuture<ByteBuffer> future = batch.getFutures().get(i);
+                reader.readAsync(request.start, request.length).whenComplete((buffer, e) -> future.complete(buffer));
+            }
+        };
+        SingleFlightScheduler scheduler = new SingleFlightScheduler(delegate);
+        InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 1 << 16, true);
+        reader.setReadDelayMs(2);
+
+        int numQueries = 16, numBatches = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(numQueries);
+        List<Future<?>> queries = new ArrayList<>();
+        for (int q = 0; q < numQueries; ++q)
+        {
+            long queryId = q;
+            queries.add(executor.submit(() ->
+            {
+                Random random = new Random(queryId);
+                for (int i = 0; i < numBatches; ++i)
+                {
+                    // the queries read the same 16 column chunks, some of them read a part of the chunk.
+                    Scheduler.RequestBatch batch = new Scheduler.RequestBatch();
+                    List<long[]> requests = new ArrayList<>();
+                    for (int c = 0; c < 4; ++c)
+                    {
+                        long start = random.nextInt(16) * 4096L;
+                        int length = random.nextBoolean() ? 4096 : 1024;
+                        requests.add(new long[]{start, length});
+                        batch.add(queryId, start, length);
+                    }
+                    scheduler.executeBatch(reader, batch, queryId);
+                    for (int c = 0; c < requests.size(); ++c)
+                    {
+                        assertContent(batch.getFutures().get(c), requests.get(c)[0], (int) requests.get(c)[1]);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> query : queries)
+        {
+            query.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertTrue(issued.get() < numQueries * numBatches * 4);
+        reader.close();
+    }
+}
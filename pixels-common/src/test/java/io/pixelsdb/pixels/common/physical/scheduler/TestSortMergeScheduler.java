@@ -0,0 +1,275 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.common.physical.scheduler;
+
+import io.pixelsdb.pixels.common.physical.Scheduler;
+import io.pixelsdb.pixels.common.physical.Storage;
+import io.pixelsdb.pixels.common.transaction.QueryTransInfo;
+import io.pixelsdb.pixels.common.transaction.TransContext;
+import io.pixelsdb.pixels.common.utils.ConfigFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TestSortMergeScheduler
+{
+    private static final String[] PROPERTIES = {"read.request.merge.gap", "read.request.merge.adaptive",
+            "read.request.split.min.size", "read.request.enable.retry", "read.request.max.retry.num",
+            "read.request.hedge.budget"};
+    private final String[] values = new String[PROPERTIES.length];
+    /**
+     * The hedges are only issued for the running queries.
+     */
+    private static final long QUERY_ID = 2001;
+
+    @Before
+    public void setUp()
+    {
+        ConfigFactory config = ConfigFactory.Instance();
+        for (int i = 0; i < PROPERTIES.length; ++i)
+        {
+            values[i] = config.getProperty(PROPERTIES[i]);
+        }
+        config.addProperty("read.request.merge.gap", "2097152");
+        config.addProperty("read.request.merge.adaptive", "true");
+        config.addProperty("read.request.split.min.size", "8388608");
+        config.addProperty("read.request.enable.retry", "false");
+        config.addProperty("read.request.max.retry.num", "3");
+        config.addProperty("read.request.hedge.budget", "1");
+    }
+
+    @After
+    public void tearDown()
+    {
+        TransContext.Instance().commitQuery(QUERY_ID);
+        ConfigFactory config = ConfigFactory.Instance();
+        for (int i = 0; i < PROPERTIES.length; ++i)
+        {
+            config.addProperty(PROPERTIES[i], values[i]);
+        }
+    }
+
+    @Test
+    public void testMergeGapAndSplitSizeClamping()
+    {
+        SortMergeScheduler scheduler = new SortMergeScheduler();
+        InMemoryReader s3Reader = new InMemoryReader("s3://bucket/file", Storage.Scheme.s3, 0, true);
+        InMemoryReader localReader = new InMemoryReader("/tmp/file", Storage.Scheme.file, 0, true);
+        InMemoryReader syncReader = new InMemoryReader("/tmp/file", Storage.Scheme.file, 0, false);
+
+        // the merge gap of the s3 prior (2.4MB) is bounded by read.request.merge.gap.
+        assertEquals(2_097_152, scheduler.mergeGap(s3Reader));
+        assertEquals(ReadCostModel.of(Storage.Scheme.file).getMergeGap(), scheduler.mergeGap(localReader));
+        // the split size of the local fs prior (800KB) is bounded by read.request.split.min.size.
+        assertEquals(ReadCostModel.of(Storage.Scheme.s3).getSplitSize(), scheduler.splitSize(s3Reader));
+        assertEquals(8_388_608, scheduler.splitSize(localReader));
+        assertEquals(Integer.MAX_VALUE, scheduler.splitSize(syncReader));
+
+        ConfigFactory.Instance().addProperty("read.request.split.min.size", "0");
+        assertEquals(Integer.MAX_VALUE, scheduler.splitSize(s3Reader));
+        ConfigFactory.Instance().addProperty("read.request.merge.adaptive", "false");
+        assertEquals(2_097_152, scheduler.mergeGap(localReader));
+        ConfigFactory.Instance().addProperty("read.request.split.min.size", "8388608");
+        assertEquals(Integer.MAX_VALUE, scheduler.splitSize(s3Reader));
+    }
+
+    @Test
+    public void testSortMerge()
+    {
+        SortMergeScheduler scheduler = new SortMergeScheduler();
+        Scheduler.RequestBatch batch = new Scheduler.RequestBatch();
+        batch.add(0, 3000, 1000);
+        batch.add(0, 0, 1000);
+        batch.add(0, 1100, 1000);
+        batch.add(0, 10000, 1000);
+        // the third request is not merged as it exceeds the max length.
+        List<SortMergeScheduler.MergedRequest> merged = scheduler.sortMerge(batch, 0, 100, 2500);
+        assertEquals(3, merged.size());
+        assertEquals(0, merged.get(0).getStart());
+        assertEquals(2100, merged.get(0).getLength());
+        assertEquals(2, merged.get(0).getSize());
+        assertEquals(3000, merged.get(1).getStart());
+        assertEquals(1, merged.get(1).getSize());
+        assertEquals(10000, merged.get(2).getStart());
+    }
+
+    @Test
+    public void testReadAsyncWithoutSplit() throws Exception
+    {
+        SortMergeScheduler scheduler = new SortMergeScheduler();
+        InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 20000, true);
+        ByteBuffer buffer = scheduler.readAsync(reader, 100, 3000, 3000).get(10, TimeUnit.SECONDS);
+        assertTrue(InMemoryReader.isContent(buffer, 100, 3000));
+        assertEquals(1, reader.getReads().size());
+        reader.close();
+    }
+
+    @Test
+    public void testReadAsyncSplitAndReassemble() throws Exception
+    {
+        SortMergeScheduler scheduler = new SortMergeScheduler();
+        InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 20000, true);
+        reader.setReadDelayMs(10);
+        ByteBuffer buffer = scheduler.readAsync(reader, 100, 10001, 3000).get(10, TimeUnit.SECONDS);
+        assertTrue(InMemoryReader.isContent(buffer, 100, 10001));
+        // 4 sub-ranges of similar sizes, the last one is shorter.
+        List<long[]> reads = reader.getReads();
+        assertEquals(4, reads.size());
+        reads.sort((a, b) -> Long.compare(a[0], b[0]));
+        long[][] expected = {{100, 2501}, {2601, 2501}, {5102, 2501}, {7603, 2498}};
+        for (int i = 0; i < expected.length; ++i)
+        {
+            assertArrayEquals(expected[i], reads.get(i));
+        }
+        reader.close();
+    }
+
+    @Test
+    public void testReadAsyncSplitNullResponse() throws Exception
+    {
+        SortMergeScheduler scheduler = new SortMergeScheduler();
+        InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 20000, true);
+        reader.setNullResponse(true);
+        assertNull(scheduler.readAsync(reader, 0, 9000, 3000).get(10, TimeUnit.SECONDS));
+        assertEquals(3, reader.getReads().size());
+        reader.close();
+    }
+
+    @Test
+    public void testExecuteBatch() throws Exception
+    {
+        SortMergeScheduler scheduler = new SortMergeScheduler();
+        ConfigFactory.Instance().addProperty("read.request.split.min.size", "4096");
+        for (boolean async : new boolean[]{false, true})
+        {
+            InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 4 << 20, async);
+            Scheduler.RequestBatch batch = new Scheduler.RequestBatch();
+            List<long[]> requests = new ArrayList<>();
+            List<CompletableFuture<ByteBuffer>> futures = new ArrayList<>();
+            for (long start : new long[]{500_000, 0, 1000, 40_000, 100_000, 100_100, 2_000_000})
+            {
+                int length = start == 2_000_000 ? 2_000_000 : 100;
+                requests.add(new long[]{start, length});
+                futures.add(batch.add(0, start, length));
+            }
+            scheduler.executeBatch(reader, batch, 0);
+            for (int i = 0; i < requests.size(); ++i)
+            {
+                ByteBuffer buffer = futures.get(i).get(10, TimeUnit.SECONDS);
+                assertTrue(InMemoryReader.isContent(buffer, requests.get(i)[0], (int) requests.get(i)[1]));
+            }
+            if (async)
+            {
+                // the large request is read by sub-range requests no larger than the split size.
+                int splitSize = scheduler.splitSize(reader);
+                assertTrue(splitSize < 2_000_000);
+                List<long[]> reads = reader.getReads();
+                assertTrue(reads.size() > 3);
+                for (long[] read : reads)
+                {
+                    assertTrue(read[1] <= splitSize);
+                }
+            }
+            reader.close();
+        }
+    }
+
+    private static SortMergeScheduler hedgingScheduler(int maxRetryNum, double budget)
+    {
+        if (TransContext.Instance().isTerminated(QUERY_ID))
+        {
+            TransContext.Instance().beginQuery(new QueryTransInfo(QUERY_ID, 0));
+        }
+        ConfigFactory.Instance().addProperty("read.request.enable.retry", "true");
+        ConfigFactory.Instance().addProperty("read.request.max.retry.num", Integer.toString(maxRetryNum));
+        ConfigFactory.Instance().addProperty("read.request.hedge.budget", Double.toString(budget));
+        return new SortMergeScheduler();
+    }
+
+    private static void waitForCancelledReads(InMemoryReader reader, int expected) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (reader.getCancelledReads() < expected && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, reader.getCancelledReads());
+    }
+
+    @Test
+    public void testHedgeTrigger() throws Exception
+    {
+        SortMergeScheduler scheduler = hedgingScheduler(3, 1);
+        InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 10000, true);
+        // the first read hangs, and the hedged read responds immediately.
+        reader.setNextReadDelaysMs(60_000);
+        Scheduler.RequestBatch batch = new Scheduler.RequestBatch();
+        CompletableFuture<ByteBuffer> future = batch.add(QUERY_ID, 1000, 1000);
+        scheduler.executeBatch(reader, batch, QUERY_ID);
+        assertTrue(InMemoryReader.isContent(future.get(10, TimeUnit.SECONDS), 1000, 1000));
+        assertEquals(2, reader.getReads().size());
+        // the hung read is cancelled.
+        waitForCancelledReads(reader, 1);
+        reader.close();
+    }
+
+    @Test
+    public void testHedgeBudget() throws Exception
+    {
+        for (double budget : new double[]{0, 1, 5})
+        {
+            // each merged request adds the budget, and is hedged for 2 times at most.
+            SortMergeScheduler scheduler = hedgingScheduler(2, budget);
+            InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 10000, true);
+            reader.setReadDelayMs(300);
+            Scheduler.RequestBatch batch = new Scheduler.RequestBatch();
+            CompletableFuture<ByteBuffer> future = batch.add(QUERY_ID, 1000, 1000);
+            scheduler.executeBatch(reader, batch, QUERY_ID);
+            assertTrue(InMemoryReader.isContent(future.get(10, TimeUnit.SECONDS), 1000, 1000));
+            assertEquals(1 + Math.min(2, (int) budget), reader.getReads().size());
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testHedgeCancelsSplitReads() throws Exception
+    {
+        SortMergeScheduler scheduler = hedgingScheduler(3, 1);
+        InMemoryReader reader = new InMemoryReader("file", Storage.Scheme.mock, 10000, true);
+        // the sub-range reads of the first read hang.
+        reader.setNextReadDelaysMs(60_000, 60_000, 60_000);
+        Scheduler.RequestBatch batch = new Scheduler.RequestBatch();
+        CompletableFuture<ByteBuffer> future = batch.add(QUERY_ID, 1000, 3000);
+        SortMergeScheduler.MergedRequest merged = scheduler.sortMerge(batch, QUERY_ID, 0, Integer.MAX_VALUE).get(0);
+        scheduler.issueAsync(reader, merged, 1000);
+        assertTrue(InMemoryReader.isContent(future.get(10, TimeUnit.SECONDS), 1000, 3000));
+        assertEquals(6, reader.getReads().size());
+        waitForCancelledReads(reader, 3);
+        reader.close();
+    }
+}
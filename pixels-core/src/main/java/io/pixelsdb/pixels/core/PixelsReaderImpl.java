@@ -31,6 +31,8 @@ import io.pixelsdb.pixels.core.exception.PixelsReaderException;
 import io.pixelsdb.pixels.core.reader.PixelsReaderOption;
 import io.pixelsdb.pixels.core.reader.PixelsRecordReader;
 import io.pixelsdb.pixels.core.reader.PixelsRecordReaderImpl;
+import io.pixelsdb.pixels.core.reader.PrefetchingRecordReader;
+import io.pixelsdb.pixels.core.reader.ReaderMetrics;
 import io.pixelsdb.pixels.core.utils.PixelsCoreConfig;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -178,6 +180,11 @@ public class PixelsReaderImpl
                 fsReader.readFully(fileTailBuffer);
                 fileTail = PixelsProto.FileTail.parseFrom(fileTailBuffer);
                 builderPixelsFooterCache.putFileTail(fileName, fileTail);
+                ReaderMetrics.FILE_TAIL_CACHE_MISS.inc();
+            }
+            else
+            {
+                ReaderMetrics.FILE_TAIL_CACHE_HIT.inc();
             }
 
             // check file MAGIC and file version
@@ -251,6 +258,10 @@ public class PixelsReaderImpl
         PixelsRecordReader recordReader = new PixelsRecordReaderImpl(physicalReader, postScript, footer, option,
                 enableMetrics, metricsDir, enableCache, cacheOrder,
                 pixelsCacheReader, pixelsFooterCache);
+        if (option.getPrefetchDepth() > 0)
+        {
+            recordReader = new PrefetchingRecordReader(recordReader, option.getPrefetchDepth());
+        }
         recordReaders.add(recordReader);
         return recordReader;
     }
@@ -21,12 +21,16 @@ package io.pixelsdb.pixels.core;
 
 /**
  * pixels
+ * <p>
+ * V2 files may have FSST compressed string column chunks, which V1 readers can not decode. The writers write
+ * V2 only if the file has such a column chunk, so that the other files are still readable by V1 readers.
+ * </p>
  *
  * @author guodong
  */
 public enum PixelsVersion
 {
-    V1(1);
+    V1(1), V2(2);
 
     private int version;
 
@@ -46,16 +50,36 @@ public enum PixelsVersion
         {
             return PixelsVersion.valueOf("V1");
         }
+        if (version == 2)
+        {
+            return PixelsVersion.valueOf("V2");
+        }
         throw new IllegalArgumentException("Wrong version.");
     }
 
     public static boolean matchVersion(int otherVersion)
     {
-        return otherVersion == V1.version;
+        return otherVersion == V1.version || otherVersion == V2.version;
     }
 
     public static PixelsVersion currentVersion()
     {
+        return V2;
+    }
+
+    /**
+     * @param rowGroupEncoding the encodings of the column chunks in a row group
+     * @return the minimum version of the file that has the row group
+     */
+    public static PixelsVersion requiredBy(PixelsProto.RowGroupEncodingOrBuilder rowGroupEncoding)
+    {
+        for (PixelsProto.ColumnEncoding encoding : rowGroupEncoding.getColumnChunkEncodingsList())
+        {
+            if (encoding.getKind() == PixelsProto.ColumnEncoding.Kind.FSST)
+            {
+                return V2;
+            }
+        }
         return V1;
     }
 }
@@ -37,6 +37,8 @@ import org.apache.logging.log4j.Logger;
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.TimeZone;
@@ -72,6 +74,10 @@ public class PixelsWriterImpl
     private final StatsRecorder[] fileColStatRecorders;
     private long fileContentLength;
     private int fileRowNum;
+    /**
+     * The version of the file, which is raised by the column chunk encodings that older readers can not read.
+     */
+    private PixelsVersion fileVersion = PixelsVersion.V1;
 
     private boolean isNewRowGroup = true;
     private long curRowGroupOffset = 0L;
@@ -342,7 +348,8 @@ public class PixelsWriterImpl
     {
         try
         {
-            if (curRowGroupNumOfRows != 0)
+            // the rows of the last row batch may have been written out if it filled the row group.
+            if (!isNewRowGroup && curRowGroupNumOfRows != 0)
             {
                 writeRowGroup();
             }
@@ -389,11 +396,13 @@ public class PixelsWriterImpl
             curRowGroupOffset = physicalWriter.prepare(rowGroupDataLength);
             if (curRowGroupOffset != -1)
             {
+                // the column chunks are appended by a gathering write without copying them.
+                List<ByteBuffer> rowGroupBuffers = new ArrayList<>();
                 for (ColumnWriter writer : columnWriters)
                 {
-                    byte[] rowGroupBuffer = writer.getColumnChunkContent();
-                    physicalWriter.append(rowGroupBuffer, 0, rowGroupBuffer.length);
+                    Collections.addAll(rowGroupBuffers, writer.getColumnChunkBuffers());
                 }
+                physicalWriter.append(rowGroupBuffers.toArray(new ByteBuffer[0]));
                 physicalWriter.flush();
             }
             else
@@ -428,6 +437,11 @@ public class PixelsWriterImpl
             writer.reset();
         }
 
+        if (PixelsVersion.requiredBy(curRowGroupEncoding).getVersion() > fileVersion.getVersion())
+        {
+            fileVersion = PixelsVersion.requiredBy(curRowGroupEncoding);
+        }
+
         // put curRowGroupIndex into rowGroupFooter
         PixelsProto.RowGroupFooter rowGroupFooter =
                 PixelsProto.RowGroupFooter.newBuilder()
@@ -488,7 +502,7 @@ public class PixelsWriterImpl
 
         // build PostScript
         postScript = PixelsProto.PostScript.newBuilder()
-                .setVersion(Constants.VERSION)
+                .setVersion(fileVersion.getVersion())
                 .setContentLength(fileContentLength)
                 .setNumberOfRows(fileRowNum)
                 .setCompression(compressionKind)
@@ -32,22 +32,40 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.TimeZone;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.Objects.requireNonNull;
 
 /**
  * Pixels file compactor
+ * <p>
+ * Each source file is opened only once and its reader is reused for reading the
+ * file footers and the column chunks. Column chunks are prefetched by a thread pool
+ * in the order of the compact layout, with the chunks from the same source file grouped
+ * into a request batch so that the read scheduler can merge them. The writer appends
+ * the chunks in the layout order while the following chunks are being prefetched.
+ * The bytes of the prefetched but not yet appended chunks are bounded by maxInFlightBytes.
+ * </p>
  *
  * @author hank
  */
 public class PixelsCompactor
 {
     private static final Logger LOGGER = LogManager.getLogger(PixelsCompactor.class);
+    /**
+     * The query id used in the read requests of compaction. Compaction is not
+     * running in a query, but the read scheduler only merges requests with the same query id.
+     */
+    private static final long COMPACT_QUERY_ID = -1L;
+    private static final int DEFAULT_READ_CONCURRENCY = 4;
+    private static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 256L * 1024L * 1024L;
 
     private final TypeDescription schema;
     private final CompactLayout compactLayout;
@@ -61,11 +79,19 @@ public class PixelsCompactor
     private final Storage storage;
     private final PhysicalWriter fsWriter;
     private final StatsRecorder[] fileColStatRecorders;
+    private final int readConcurrency;
+    private final long maxInFlightBytes;
 
     private final List<PixelsProto.RowGroupInformation.Builder> rowGroupInfoBuilderList;    // row group information in footer
     private final List<PixelsProto.RowGroupStatistic.Builder> rowGroupStatBuilderList; // row group statistic in footer
     private final List<PixelsProto.RowGroupFooter.Builder> rowGroupFooterBuilderList; // row group fotters
     private final List<String> rowGroupPaths;
+    private final Map<String, PhysicalReader> sourceReaders; // the reader of each source file
+    /**
+     * Whether compaction has failed, in which case close() deletes the partially written file
+     * instead of leaving a file whose footer points at column chunks that were never written.
+     */
+    private boolean aborted = false;
 
     private PixelsCompactor(
             TypeDescription schema,
@@ -82,7 +108,10 @@ public class PixelsCompactor
             List<PixelsProto.RowGroupInformation.Builder> rowGroupInfoBuilderList,
             List<PixelsProto.RowGroupStatistic.Builder> rowGroupStatBuilderList,
             List<PixelsProto.RowGroupFooter.Builder> rowGroupFooterBuilderList,
-            List<String> rowGroupPaths)
+            List<String> rowGroupPaths,
+            Map<String, PhysicalReader> sourceReaders,
+            int readConcurrency,
+            long maxInFlightBytes)
     {
         this.schema = requireNonNull(schema, "schema is null");
         this.compactLayout = requireNonNull(compactLayout, "compactLayout is null");
@@ -110,6 +139,11 @@ public class PixelsCompactor
         this.rowGroupStatBuilderList = ImmutableList.copyOf(rowGroupStatBuilderList);
         this.rowGroupFooterBuilderList = ImmutableList.copyOf(rowGroupFooterBuilderList);
         this.rowGroupPaths = ImmutableList.copyOf(rowGroupPaths);
+        this.sourceReaders = requireNonNull(sourceReaders, "sourceReaders is null");
+        checkArgument(readConcurrency > 0, "read concurrency is not positive");
+        this.readConcurrency = readConcurrency;
+        checkArgument(maxInFlightBytes > 0, "max in-flight bytes is not positive");
+        this.maxInFlightBytes = maxInFlightBytes;
     }
 
     public static class Builder
@@ -134,6 +168,9 @@ public class PixelsCompactor
         private List<PixelsProto.RowGroupStatistic.Builder> rowGroupStatBuilderList = new LinkedList<>();
         private List<PixelsProto.RowGroupFooter.Builder> rowGroupFooterBuilderList = new LinkedList<>();
         private List<String> rowGroupPaths = new LinkedList<>();
+        private Map<String, PhysicalReader> sourceReaders = new HashMap<>();
+        private int readConcurrency = DEFAULT_READ_CONCURRENCY;
+        private long maxInFlightBytes = DEFAULT_MAX_IN_FLIGHT_BYTES;
 
         private Builder()
         {
@@ -209,6 +246,37 @@ public class PixelsCompactor
             return this;
         }
 
+        /**
+         * Set the number of threads used to prefetch the column chunks from the source files.
+         * Default value is 4.
+         *
+         * @param readConcurrency
+         * @return
+         */
+        public PixelsCompactor.Builder setReadConcurrency(int readConcurrency)
+        {
+            checkArgument(readConcurrency > 0, "read concurrency is not positive");
+            this.readConcurrency = readConcurrency;
+
+            return this;
+        }
+
+        /**
+         * Set the max number of bytes of the column chunks that are prefetched
+         * but not yet written into the compacted file. Default value is 256MB.
+         * A single column chunk larger than this value is still read as a whole.
+         *
+         * @param maxInFlightBytes
+         * @return
+         */
+        public PixelsCompactor.Builder setMaxInFlightBytes(long maxInFlightBytes)
+        {
+            checkArgument(maxInFlightBytes > 0, "max in-flight bytes is not positive");
+            this.maxInFlightBytes = maxInFlightBytes;
+
+            return this;
+        }
+
         public PixelsCompactor build()
                 throws IOException
         {
@@ -223,11 +291,19 @@ public class PixelsCompactor
             for (int i = 0; i < sourcePaths.size(); i++)
             {
                 String path = sourcePaths.get(i);
+                if (sourceReaders.containsKey(path))
+                {
+                    closeSourceReaders();
+                    throw new IOException("Duplicate source path '" + path + "'.");
+                }
                 PhysicalReader fsReader = PhysicalReaderUtil.newPhysicalReader(builderStorage, path);
                 if (fsReader == null)
                 {
+                    closeSourceReaders();
                     throw new IOException("Read file failed.");
                 }
+                // Keep the reader open, it is reused to read the column chunks when compacting.
+                sourceReaders.put(path, fsReader);
 
                 // get FileTail
                 long fileLen = fsReader.getFileLength();
@@ -241,7 +317,7 @@ public class PixelsCompactor
 
                 if (fileTail == null)
                 {
-                    fsReader.close();
+                    closeSourceReaders();
                     throw new IOException("read file tail failed.");
                 }
 
@@ -251,12 +327,12 @@ public class PixelsCompactor
                 String fileMagic = postScript.getMagic();
                 if (!PixelsVersion.matchVersion(fileVersion))
                 {
-                    fsReader.close();
+                    closeSourceReaders();
                     throw new PixelsFileVersionInvalidException(fileVersion);
                 }
                 if (!fileMagic.contentEquals(Constants.MAGIC))
                 {
-                    fsReader.close();
+                    closeSourceReaders();
                     throw new PixelsFileMagicInvalidException(fileMagic);
                 }
 
@@ -304,7 +380,6 @@ public class PixelsCompactor
                             .add(rowGroupFooter.toBuilder()); // chunkOffset to be updated when compacting
                     rowGroupPaths.add(path);
                 }
-                fsReader.close();
             }
 
             fsWriter = PhysicalWriterUtil.newPhysicalWriter(builderStorage, builderFilePath, builderBlockSize,
@@ -325,7 +400,26 @@ public class PixelsCompactor
                     rowGroupInfoBuilderList,
                     rowGroupStatBuilderList,
                     rowGroupFooterBuilderList,
-                    rowGroupPaths);
+                    rowGroupPaths,
+                    sourceReaders,
+                    readConcurrency,
+                    maxInFlightBytes);
+        }
+
+        private void closeSourceReaders()
+        {
+            for (PhysicalReader reader : sourceReaders.values())
+            {
+                try
+                {
+                    reader.close();
+                }
+                catch (IOException e)
+                {
+                    LOGGER.error("Failed to close source reader '" + reader.getPath() + "'.", e);
+                }
+            }
+            sourceReaders.clear();
         }
     }
 
@@ -334,69 +428,172 @@ public class PixelsCompactor
         return new PixelsCompactor.Builder();
     }
 
-    public void compact()
+    /**
+     * Write the column chunks, row group footers and file tail of the compacted file.
+     * If this method throws, the compacted file is aborted and deleted by {@link #close()}.
+     * @throws IOException if any column chunk can not be read or the compacted file can not be written
+     */
+    public void compact() throws IOException
     {
-        this.writeColumnChunks();
-        this.writeRowGroupFooters();
-        this.writeFileTail();
+        try
+        {
+            this.writeColumnChunks();
+            this.writeRowGroupFooters();
+            this.writeFileTail();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            this.aborted = true;
+            throw e;
+        }
     }
 
-    private void writeColumnChunks()
+    private void writeColumnChunks() throws IOException
     {
-        for (int i = 0; i < this.compactLayout.size(); ++i)
+        int numChunks = this.compactLayout.size();
+        if (numChunks <= 0)
+        {
+            return;
+        }
+        PixelsProto.ColumnChunkIndex.Builder[] chunkIndexBuilders =
+                new PixelsProto.ColumnChunkIndex.Builder[numChunks];
+        String[] chunkPaths = new String[numChunks];
+        for (int i = 0; i < numChunks; ++i)
         {
             ColumnletIndex index = this.compactLayout.get(i);
             int rowGroupId = index.getRowGroupId();
-            int columnId = index.getColumnId();
-            PixelsProto.ColumnChunkIndex.Builder columnChunkIndexBuilder =
-                    this.rowGroupFooterBuilderList.get(rowGroupId).getRowGroupIndexEntryBuilder()
-                            .getColumnChunkIndexEntriesBuilder(columnId);
-            long columnChunkOffset = columnChunkIndexBuilder.getChunkOffset();
-            long columnChunkLength = columnChunkIndexBuilder.getChunkLength();
-            String path = this.rowGroupPaths.get(rowGroupId);
-            try (PhysicalReader fsReader = PhysicalReaderUtil.newPhysicalReader(storage, path))
+            chunkIndexBuilders[i] = this.rowGroupFooterBuilderList.get(rowGroupId).getRowGroupIndexEntryBuilder()
+                    .getColumnChunkIndexEntriesBuilder(index.getColumnId());
+            chunkPaths[i] = this.rowGroupPaths.get(rowGroupId);
+        }
+
+        Scheduler scheduler = SchedulerFactory.Instance().getScheduler();
+        ExecutorService prefetchService = Executors.newFixedThreadPool(this.readConcurrency);
+        /*
+         * The physical readers are not thread safe, the last read task of each source file
+         * is tracked so that the read tasks on the same reader are executed one after another.
+         * A read task completes when all the chunks in its batch are read, not when the batch
+         * is dispatched, as the asynchronous readers return before the reads are done.
+         */
+        Map<String, CompletableFuture<Void>> lastReadTasks = new HashMap<>();
+        List<CompletableFuture<ByteBuffer>> chunkFutures = new ArrayList<>(numChunks);
+        int numPrefetched = 0;
+        long inFlightBytes = 0;
+        try
+        {
+            for (int i = 0; i < numChunks; ++i)
             {
-                if (fsReader == null)
+                /*
+                 * Refill the prefetch window when it drops below half of the budget,
+                 * so that each refill is large enough for the scheduler to merge requests.
+                 */
+                if (numPrefetched == i || (numPrefetched < numChunks && inFlightBytes < this.maxInFlightBytes / 2))
+                {
+                    int end = numPrefetched;
+                    while (end < numChunks && (end == i ||
+                            inFlightBytes + chunkIndexBuilders[end].getChunkLength() <= this.maxInFlightBytes))
+                    {
+                        inFlightBytes += chunkIndexBuilders[end].getChunkLength();
+                        end++;
+                    }
+                    prefetchChunks(scheduler, prefetchService, lastReadTasks, chunkIndexBuilders,
+                            chunkPaths, chunkFutures, numPrefetched, end);
+                    numPrefetched = end;
+                }
+
+                ByteBuffer chunkBuffer = chunkFutures.get(i).get();
+                int columnChunkLength = (int) chunkIndexBuilders[i].getChunkLength();
+                fsWriter.prepare(columnChunkLength);
+                long offset;
+                if (chunkBuffer.hasArray())
+                {
+                    offset = this.fsWriter.append(chunkBuffer.array(),
+                            chunkBuffer.arrayOffset() + chunkBuffer.position(), columnChunkLength);
+                }
+                else
                 {
-                    throw new IOException("read file failed.");
+                    // the buffer may be direct (e.g., from the local or s3 reader).
+                    byte[] chunkBytes = new byte[columnChunkLength];
+                    chunkBuffer.get(chunkBytes);
+                    offset = this.fsWriter.append(chunkBytes, 0, columnChunkLength);
                 }
-                fsReader.seek(columnChunkOffset);
-                byte[] chunkBuffer = new byte[(int) columnChunkLength];
-                fsReader.readFully(chunkBuffer);
-                fsWriter.prepare((int) columnChunkLength);
-                long offset = this.fsWriter.append(chunkBuffer, 0, (int) columnChunkLength);
-                columnChunkIndexBuilder.setChunkOffset(offset);
+                chunkIndexBuilders[i].setChunkOffset(offset);
                 // this.fsWriter.flush(); // Issue #192: no need to flush as writing has not finished.
+                // release the reference to the chunk content as soon as it is written.
+                chunkFutures.set(i, null);
+                inFlightBytes -= columnChunkLength;
             }
-            catch (IOException e)
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while writing column chunks of the compacted file");
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException("failed to read column chunks for the compacted file", e.getCause());
+        }
+        finally
+        {
+            prefetchService.shutdownNow();
+        }
+    }
+
+    /**
+     * Submit the read requests of the column chunks in [from, to) in the compact layout.
+     * The requests on the same source file are put into one request batch.
+     * The futures of the column chunks are added into chunkFutures in the layout order.
+     */
+    private void prefetchChunks(Scheduler scheduler, ExecutorService prefetchService,
+                                Map<String, CompletableFuture<Void>> lastReadTasks,
+                                PixelsProto.ColumnChunkIndex.Builder[] chunkIndexBuilders, String[] chunkPaths,
+                                List<CompletableFuture<ByteBuffer>> chunkFutures, int from, int to)
+    {
+        Map<String, Scheduler.RequestBatch> batches = new LinkedHashMap<>();
+        for (int i = from; i < to; ++i)
+        {
+            Scheduler.RequestBatch batch = batches.computeIfAbsent(chunkPaths[i], k -> new Scheduler.RequestBatch());
+            chunkFutures.add(batch.add(COMPACT_QUERY_ID, chunkIndexBuilders[i].getChunkOffset(),
+                    (int) chunkIndexBuilders[i].getChunkLength()));
+        }
+        for (Map.Entry<String, Scheduler.RequestBatch> entry : batches.entrySet())
+        {
+            PhysicalReader reader = this.sourceReaders.get(entry.getKey());
+            Scheduler.RequestBatch batch = entry.getValue();
+            CompletableFuture<Void> last = lastReadTasks.getOrDefault(
+                    entry.getKey(), CompletableFuture.completedFuture(null));
+            CompletableFuture<Void> read = last.thenRunAsync(() ->
             {
-                LOGGER.error(e.getMessage());
-                e.printStackTrace();
-            }
+                try
+                {
+                    scheduler.executeBatch(reader, batch, COMPACT_QUERY_ID);
+                }
+                catch (Throwable e)
+                {
+                    for (CompletableFuture<ByteBuffer> future : batch.getFutures())
+                    {
+                        future.completeExceptionally(e);
+                    }
+                }
+            }, prefetchService).thenCompose(v -> CompletableFuture.allOf(
+                    batch.getFutures().toArray(new CompletableFuture[0])));
+            // the failed reads are reported by the chunk futures, the next batch on this file still runs.
+            lastReadTasks.put(entry.getKey(), read.handle((v, e) -> null));
         }
     }
 
-    private void writeRowGroupFooters()
+    private void writeRowGroupFooters() throws IOException
     {
         for (int i = 0; i < this.rowGroupFooterBuilderList.size(); ++i)
         {
             PixelsProto.RowGroupFooter rowGroupFooter = this.rowGroupFooterBuilderList.get(i).build();
             ByteBuffer rowGroupFooterBuffer = ByteBuffer.allocate(rowGroupFooter.getSerializedSize());
             rowGroupFooterBuffer.put(rowGroupFooter.toByteArray());
-            try
-            {
-                fsWriter.prepare(rowGroupFooter.getSerializedSize());
-                long rowGroupFooterOffset = fsWriter.append(rowGroupFooterBuffer);
-                // fsWriter.flush(); // Issue #192: no need to flush as writing has not finished.
-                this.rowGroupInfoBuilderList.get(i).setFooterOffset(rowGroupFooterOffset);
-                this.rowGroupInfoBuilderList.get(i).setFooterLength(rowGroupFooter.getSerializedSize());
-            }
-            catch (IOException e)
-            {
-                LOGGER.error(e.getMessage());
-                e.printStackTrace();
-                return;
-            }
+            fsWriter.prepare(rowGroupFooter.getSerializedSize());
+            long rowGroupFooterOffset = fsWriter.append(rowGroupFooterBuffer);
+            // fsWriter.flush(); // Issue #192: no need to flush as writing has not finished.
+            this.rowGroupInfoBuilderList.get(i).setFooterOffset(rowGroupFooterOffset);
+            this.rowGroupInfoBuilderList.get(i).setFooterLength(rowGroupFooter.getSerializedSize());
 
             List<PixelsProto.ColumnStatistic> columnChunkStats =
                     this.rowGroupStatBuilderList.get(i).getColumnChunkStatsList();
@@ -409,7 +606,7 @@ public class PixelsCompactor
         }
     }
 
-    private void writeFileTail()
+    private void writeFileTail() throws IOException
     {
         PixelsProto.Footer footer = writeFooter();
         PixelsProto.PostScript postScript = writePostScript();
@@ -422,23 +619,14 @@ public class PixelsCompactor
                         .setPostscriptLength(postScript.getSerializedSize())
                         .build();
 
-        try
-        {
-            // write and flush FileTail plus FileTail physical offset at the end of the file
-            int fileTailLen = fileTail.getSerializedSize() + Long.BYTES;
-            fsWriter.prepare(fileTailLen);
-            long tailOffset = fsWriter.append(fileTail.toByteArray(), 0, fileTail.getSerializedSize());
-            ByteBuffer tailOffsetBuffer = ByteBuffer.allocate(Long.BYTES);
-            tailOffsetBuffer.putLong(tailOffset);
-            fsWriter.append(tailOffsetBuffer);
-            fsWriter.flush();
-        }
-        catch (IOException e)
-        {
-            LOGGER.error(e.getMessage());
-            System.out.println("Error writing file tail out.");
-            e.printStackTrace();
-        }
+        // write and flush FileTail plus FileTail physical offset at the end of the file
+        int fileTailLen = fileTail.getSerializedSize() + Long.BYTES;
+        fsWriter.prepare(fileTailLen);
+        long tailOffset = fsWriter.append(fileTail.toByteArray(), 0, fileTail.getSerializedSize());
+        ByteBuffer tailOffsetBuffer = ByteBuffer.allocate(Long.BYTES);
+        tailOffsetBuffer.putLong(tailOffset);
+        fsWriter.append(tailOffsetBuffer);
+        fsWriter.flush();
     }
 
     private PixelsProto.Footer writeFooter()
@@ -464,8 +652,18 @@ public class PixelsCompactor
 
     private PixelsProto.PostScript writePostScript()
     {
+        // the compacted file has the version required by the column chunks copied from the source files.
+        PixelsVersion fileVersion = PixelsVersion.V1;
+        for (PixelsProto.RowGroupFooter.Builder rowGroupFooterBuilder : rowGroupFooterBuilderList)
+        {
+            PixelsVersion version = PixelsVersion.requiredBy(rowGroupFooterBuilder.getRowGroupEncoding());
+            if (version.getVersion() > fileVersion.getVersion())
+            {
+                fileVersion = version;
+            }
+        }
         return PixelsProto.PostScript.newBuilder()
-                .setVersion(Constants.VERSION)
+                .setVersion(fileVersion.getVersion())
                 .setContentLength(fileContentLength)
                 .setNumberOfRows(fileRowNum)
                 .setCompression(compressionKind)
@@ -477,19 +675,40 @@ public class PixelsCompactor
     }
 
     /**
-     * Close PixelsCompactor, indicating the end of file
+     * Close PixelsCompactor, indicating the end of file.
+     * If {@link #compact()} has failed, the partially written file is deleted.
      */
     public void close()
     {
+        for (PhysicalReader reader : sourceReaders.values())
+        {
+            try
+            {
+                reader.close();
+            }
+            catch (IOException e)
+            {
+                LOGGER.error("Failed to close source reader '" + reader.getPath() + "'.", e);
+            }
+        }
         try
         {
             fsWriter.close();
         }
         catch (IOException e)
         {
-            LOGGER.error(e.getMessage());
-            System.out.println("Error writing file tail out.");
-            e.printStackTrace();
+            LOGGER.error("Failed to close the compacted file '" + fsWriter.getPath() + "'.", e);
+        }
+        if (this.aborted)
+        {
+            try
+            {
+                this.storage.delete(fsWriter.getPath(), false);
+            }
+            catch (IOException e)
+            {
+                LOGGER.error("Failed to delete the aborted compacted file '" + fsWriter.getPath() + "'.", e);
+            }
         }
     }
 }
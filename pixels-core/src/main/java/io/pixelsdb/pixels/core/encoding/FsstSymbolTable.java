@@ -0,0 +1,373 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.core.encoding;
+
+import io.pixelsdb.pixels.core.exception.PixelsEncodingException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The static symbol table of the FSST (fast static symbol table) string compression.
+ * <p>
+ * The table maps up to 255 codes to the symbols of 1 to 8 bytes. A string is compressed into a sequence
+ * of codes by greedily matching the longest symbol at each position; a byte that is not matched by any symbol
+ * is written as the escape code followed by the byte itself. The table is trained on a sample of the strings,
+ * e.g., the first pixel of the column chunk, and is stored in the column chunk.
+ * </p>
+ * <p>
+ * Each string is compressed independently, thus a single value can be decompressed without decompressing
+ * the others. The compression is deterministic, therefore two strings are equal if and only if their
+ * compressed bytes under the same table are equal, and an equality predicate can be evaluated by comparing
+ * the compressed literal, see {@link #compress(byte[], int, int)}, with the compressed values.
+ * </p>
+ */
+public final class FsstSymbolTable
+{
+    public static final int ESCAPE = 255;
+    public static final int MAX_SYMBOL_LENGTH = 8;
+    private static final int MAX_SYMBOL_NUM = 255;
+    private static final int TRAINING_ROUNDS = 5;
+    /**
+     * The maximum number of bytes in the sample used to train the table.
+     */
+    private static final int MAX_SAMPLE_BYTES = 16 * 1024;
+    private static final long[] MASKS = new long[MAX_SYMBOL_LENGTH + 1];
+
+    static
+    {
+        for (int i = 1; i < MAX_SYMBOL_LENGTH; i++)
+        {
+            MASKS[i] = (1L << (i * Byte.SIZE)) - 1;
+        }
+        MASKS[MAX_SYMBOL_LENGTH] = -1L;
+    }
+
+    private final int symbolNum;
+    /**
+     * The bytes of each symbol, packed in little-endian order.
+     */
+    private final long[] symbols;
+    private final byte[] lengths;
+    /**
+     * The codes of the symbols starting with each byte, in descending order of the symbol length.
+     */
+    private final int[][] codesByFirstByte;
+
+    private FsstSymbolTable(long[] symbols, byte[] lengths, int symbolNum)
+    {
+        this.symbolNum = symbolNum;
+        this.symbols = symbols;
+        this.lengths = lengths;
+        List<List<Integer>> codes = new ArrayList<>(256);
+        for (int i = 0; i < 256; i++)
+        {
+            codes.add(new ArrayList<>());
+        }
+        for (int code = 0; code < symbolNum; code++)
+        {
+            codes.get((int) (symbols[code] & 0xff)).add(code);
+        }
+        this.codesByFirstByte = new int[256][];
+        for (int i = 0; i < 256; i++)
+        {
+            codesByFirstByte[i] = codes.get(i).stream()
+                    .sorted((a, b) -> lengths[b] - lengths[a]).mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Train the symbol table on the sample strings.
+     * @param buffer the bytes of the sample strings
+     * @param starts the start offset of each string in the buffer
+     * @param lens the length of each string
+     * @param num the number of strings
+     * @return the trained symbol table
+     */
+    public static FsstSymbolTable train(byte[] buffer, int[] starts, int[] lens, int num)
+    {
+        FsstSymbolTable table = new FsstSymbolTable(new long[0], new byte[0], 0);
+        for (int round = 0; round < TRAINING_ROUNDS; round++)
+        {
+            // key: the packed bytes of a candidate symbol, indexed by the symbol length
+            List<Map<Long, Long>> counts = new ArrayList<>(MAX_SYMBOL_LENGTH + 1);
+            for (int i = 0; i <= MAX_SYMBOL_LENGTH; i++)
+            {
+                counts.add(new HashMap<>());
+            }
+            int sampleBytes = 0;
+            for (int i = 0; i < num && sampleBytes < MAX_SAMPLE_BYTES; i++)
+            {
+                int pos = starts[i], end = starts[i] + lens[i];
+                sampleBytes += lens[i];
+                long prevSymbol = 0;
+                int prevLength = 0;
+                while (pos < end)
+                {
+                    int code = table.match(buffer, pos, end);
+                    long symbol;
+                    int length;
+                    if (code == ESCAPE)
+                    {
+                        symbol = buffer[pos] & 0xffL;
+                        length = 1;
+                    }
+                    else
+                    {
+                        symbol = table.symbols[code];
+                        length = table.lengths[code];
+                    }
+                    counts.get(length).merge(symbol, 1L, Long::sum);
+                    if (prevLength > 0 && prevLength < MAX_SYMBOL_LENGTH)
+                    {
+                        // the concatenation of the adjacent symbols is the candidate of a longer symbol.
+                        int concatLength = Math.min(prevLength + length, MAX_SYMBOL_LENGTH);
+                        long concat = (prevSymbol | (symbol << (prevLength * Byte.SIZE))) & MASKS[concatLength];
+                        counts.get(concatLength).merge(concat, 1L, Long::sum);
+                    }
+                    prevSymbol = symbol;
+                    prevLength = length;
+                    pos += length;
+                }
+            }
+            table = build(counts);
+        }
+        return table;
+    }
+
+    /**
+     * Build the table from the candidates with the highest gains, i.e., the number of bytes they cover.
+     */
+    private static FsstSymbolTable build(List<Map<Long, Long>> counts)
+    {
+        List<long[]> candidates = new ArrayList<>();
+        for (int length = 1; length <= MAX_SYMBOL_LENGTH; length++)
+        {
+            for (Map.Entry<Long, Long> entry : counts.get(length).entrySet())
+            {
+                candidates.add(new long[]{entry.getValue() * length, length, entry.getKey()});
+            }
+        }
+        candidates.sort((a, b) -> a[0] != b[0] ? Long.compare(b[0], a[0]) : Long.compare(b[1], a[1]));
+        int symbolNum = Math.min(candidates.size(), MAX_SYMBOL_NUM);
+        long[] symbols = new long[symbolNum];
+        byte[] lengths = new byte[symbolNum];
+        for (int i = 0; i < symbolNum; i++)
+        {
+            long[] candidate = candidates.get(i);
+            lengths[i] = (byte) candidate[1];
+            symbols[i] = candidate[2];
+        }
+        return new FsstSymbolTable(symbols, lengths, symbolNum);
+    }
+
+    /**
+     * @return the code of the longest symbol matching the bytes at pos, or ESCAPE if there is no match
+     */
+    private int match(byte[] src, int pos, int end)
+    {
+        int[] codes = codesByFirstByte[src[pos] & 0xff];
+        if (codes.length == 0)
+        {
+            return ESCAPE;
+        }
+        int remaining = Math.min(end - pos, MAX_SYMBOL_LENGTH);
+        long word = 0;
+        for (int i = 0; i < remaining; i++)
+        {
+            word |= (src[pos + i] & 0xffL) << (i * Byte.SIZE);
+        }
+        for (int code : codes)
+        {
+            int length = lengths[code];
+            if (length <= remaining && (word & MASKS[length]) == symbols[code])
+            {
+                return code;
+            }
+        }
+        return ESCAPE;
+    }
+
+    /**
+     * @param length the length of the string to compress
+     * @return the maximum number of bytes of the compressed string
+     */
+    public static int maxCompressedLength(int length)
+    {
+        return length * 2;
+    }
+
+    /**
+     * @param compressedLength the length of the compressed string
+     * @return the maximum number of bytes of the decompressed string
+     */
+    public static int maxDecompressedLength(int compressedLength)
+    {
+        return compressedLength * MAX_SYMBOL_LENGTH;
+    }
+
+    /**
+     * Compress the string into dst, which must have at least {@link #maxCompressedLength(int)} bytes from dstOffset.
+     * @return the number of bytes of the compressed string
+     */
+    public int compress(byte[] src, int offset, int length, byte[] dst, int dstOffset)
+    {
+        int pos = offset, end = offset + length, dstPos = dstOffset;
+        while (pos < end)
+        {
+            int code = match(src, pos, end);
+            dst[dstPos++] = (byte) code;
+            if (code == ESCAPE)
+            {
+                dst[dstPos++] = src[pos++];
+            }
+            else
+            {
+                pos += lengths[code];
+            }
+        }
+        return dstPos - dstOffset;
+    }
+
+    /**
+     * Compress the string, e.g., the literal of an equality predicate.
+     * @return the compressed bytes
+     */
+    public byte[] compress(byte[] src, int offset, int length)
+    {
+        byte[] dst = new byte[maxCompressedLength(length)];
+        int compressedLength = compress(src, offset, length, dst, 0);
+        byte[] compressed = new byte[compressedLength];
+        System.arraycopy(dst, 0, compressed, 0, compressedLength);
+        return compressed;
+    }
+
+    /**
+     * Decompress the string into dst, which must have at least {@link #maxDecompressedLength(int)}
+     * bytes from dstOffset.
+     * @return the number of bytes of the decompressed string
+     */
+    public int decompress(byte[] src, int offset, int length, byte[] dst, int dstOffset)
+    {
+        int pos = offset, end = offset + length, dstPos = dstOffset;
+        while (pos < end)
+        {
+            int code = src[pos++] & 0xff;
+            if (code == ESCAPE)
+            {
+                if (pos >= end)
+                {
+                    throw new PixelsEncodingException("escape code at the end of the compressed string");
+                }
+                dst[dstPos++] = src[pos++];
+            }
+            else
+            {
+                if (code >= symbolNum)
+                {
+                    throw new PixelsEncodingException("invalid symbol code " + code);
+                }
+                long symbol = symbols[code];
+                for (int i = 0, symbolLength = lengths[code]; i < symbolLength; i++)
+                {
+                    dst[dstPos++] = (byte) symbol;
+                    symbol >>>= Byte.SIZE;
+                }
+            }
+        }
+        return dstPos - dstOffset;
+    }
+
+    /**
+     * @return the number of symbols in the table
+     */
+    public int size()
+    {
+        return symbolNum;
+    }
+
+    /**
+     * @return the number of bytes of the serialized table
+     */
+    public int serializedSize()
+    {
+        int size = 1 + symbolNum;
+        for (int i = 0; i < symbolNum; i++)
+        {
+            size += lengths[i];
+        }
+        return size;
+    }
+
+    /**
+     * Serialize the table: the number of symbols (1 byte), the length of each symbol (1 byte each),
+     * and the bytes of the symbols.
+     */
+    public void writeTo(OutputStream out) throws IOException
+    {
+        out.write(symbolNum);
+        out.write(lengths, 0, symbolNum);
+        for (int i = 0; i < symbolNum; i++)
+        {
+            long symbol = symbols[i];
+            for (int j = 0; j < lengths[i]; j++)
+            {
+                out.write((int) (symbol & 0xff));
+                symbol >>>= Byte.SIZE;
+            }
+        }
+    }
+
+    /**
+     * Deserialize the table written by {@link #writeTo(OutputStream)}.
+     * @param buffer the buffer positioned at the start of the serialized table
+     * @return the symbol table
+     */
+    public static FsstSymbolTable readFrom(ByteBuffer buffer)
+    {
+        int symbolNum = buffer.get() & 0xff;
+        if (symbolNum > MAX_SYMBOL_NUM)
+        {
+            throw new PixelsEncodingException("invalid number of symbols " + symbolNum);
+        }
+        byte[] lengths = new byte[symbolNum];
+        buffer.get(lengths);
+        long[] symbols = new long[symbolNum];
+        for (int i = 0; i < symbolNum; i++)
+        {
+            if (lengths[i] < 1 || lengths[i] > MAX_SYMBOL_LENGTH)
+            {
+                throw new PixelsEncodingException("invalid symbol length " + lengths[i]);
+            }
+            long symbol = 0;
+            for (int j = 0; j < lengths[i]; j++)
+            {
+                symbol |= (buffer.get() & 0xffL) << (j * Byte.SIZE);
+            }
+            symbols[i] = symbol;
+        }
+        return new FsstSymbolTable(symbols, lengths, symbolNum);
+    }
+}
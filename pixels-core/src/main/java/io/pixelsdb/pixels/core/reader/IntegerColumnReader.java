@@ -43,6 +43,10 @@ public class IntegerColumnReader
     private int isNullOffset = 0;
     private int isNullBitIndex = 0;
     private byte[] isNull = new byte[8];
+    /**
+     * Whether the values of the current pixel are long, if the column chunk is not encoded.
+     */
+    private boolean isLong = false;
 
     IntegerColumnReader(TypeDescription type)
     {
@@ -153,79 +157,39 @@ public class IntegerColumnReader
         // if not encoded
         else
         {
-            byte firstByte = inputBuffer.get();
-            boolean isLong = firstByte == (byte) 1;
-            // if long
-            if (isLong)
+            for (int i = 0; i < size; i++)
             {
-                for (int i = 0; i < size; i++)
+                if (elementIndex % pixelStride == 0)
                 {
-                    if (elementIndex % pixelStride == 0)
-                    {
-                        int pixelId = elementIndex / pixelStride;
-                        hasNull = chunkIndex.getPixelStatistics(pixelId).getStatistic().getHasNull();
-                        if (hasNull && isNullBitIndex > 0)
-                        {
-                            BitUtils.bitWiseDeCompact(isNull, inputBuffer, isNullOffset++, 1);
-                            isNullBitIndex = 0;
-                        }
-                    }
-                    if (hasNull && isNullBitIndex >= 8)
+                    int pixelId = elementIndex / pixelStride;
+                    hasNull = chunkIndex.getPixelStatistics(pixelId).getStatistic().getHasNull();
+                    if (hasNull && isNullBitIndex > 0)
                     {
                         BitUtils.bitWiseDeCompact(isNull, inputBuffer, isNullOffset++, 1);
                         isNullBitIndex = 0;
                     }
-                    if (hasNull && isNull[isNullBitIndex] == 1)
-                    {
-                        columnVector.isNull[i + vectorIndex] = true;
-                        columnVector.noNulls = false;
-                    }
-                    else
-                    {
-                        columnVector.vector[i + vectorIndex] = inputBuffer.getLong();
-                    }
-                    if (hasNull)
-                    {
-                        isNullBitIndex++;
-                    }
-                    elementIndex++;
+                    // each pixel starts with the isLong byte.
+                    isLong = inputBuffer.get() == (byte) 1;
                 }
-            }
-            // if int
-            else
-            {
-                for (int i = 0; i < size; i++)
+                if (hasNull && isNullBitIndex >= 8)
                 {
-                    if (elementIndex % pixelStride == 0)
-                    {
-                        int pixelId = elementIndex / pixelStride;
-                        hasNull = chunkIndex.getPixelStatistics(pixelId).getStatistic().getHasNull();
-                        if (hasNull && isNullBitIndex > 0)
-                        {
-                            BitUtils.bitWiseDeCompact(isNull, inputBuffer, isNullOffset++, 1);
-                            isNullBitIndex = 0;
-                        }
-                    }
-                    if (hasNull && isNullBitIndex >= 8)
-                    {
-                        BitUtils.bitWiseDeCompact(isNull, inputBuffer, isNullOffset++, 1);
-                        isNullBitIndex = 0;
-                    }
-                    if (hasNull && isNull[isNullBitIndex] == 1)
-                    {
-                        columnVector.isNull[i + vectorIndex] = true;
-                        columnVector.noNulls = false;
-                    }
-                    else
-                    {
-                        columnVector.vector[i + vectorIndex] = inputBuffer.getInt();
-                    }
-                    if (hasNull)
-                    {
-                        isNullBitIndex++;
-                    }
-                    elementIndex++;
+                    BitUtils.bitWiseDeCompact(isNull, inputBuffer, isNullOffset++, 1);
+                    isNullBitIndex = 0;
+                }
+                if (hasNull && isNull[isNullBitIndex] == 1)
+                {
+                    columnVector.isNull[i + vectorIndex] = true;
+                    columnVector.noNulls = false;
+                }
+                else
+                {
+                    columnVector.vector[i + vectorIndex] = isLong ? inputBuffer.getLong() : inputBuffer.getInt();
                 }
+                if (hasNull)
+                {
+                    isNullBitIndex++;
+                }
+                elementIndex++;
             }
         }
     }
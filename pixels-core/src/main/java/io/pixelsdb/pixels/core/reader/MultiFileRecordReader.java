@@ -0,0 +1,573 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.core.reader;
+
+import com.google.common.collect.ImmutableList;
+import io.pixelsdb.pixels.cache.PixelsCacheReader;
+import io.pixelsdb.pixels.common.physical.Storage;
+import io.pixelsdb.pixels.core.PixelsFooterCache;
+import io.pixelsdb.pixels.core.PixelsReader;
+import io.pixelsdb.pixels.core.PixelsReaderImpl;
+import io.pixelsdb.pixels.core.TypeDescription;
+import io.pixelsdb.pixels.core.vector.VectorizedRowBatch;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The record reader that reads a list of files with the same schema and projection as a single
+ * stream of row batches, for the tables that consist of many small files.
+ * <p>
+ * Up to parallelism files are opened ahead of the file being read, in parallel on a background
+ * executor. Opening a file reads its file tail, and starts prefetching its first row batch, which
+ * issues the chunk requests of the file and decodes the first batch (see {@link PrefetchingRecordReader}).
+ * Therefore, the tails and the chunks of many files are read concurrently, instead of one file after
+ * another. The files are read in the order of the list, and the result schemas of the files must be
+ * identical. Only the last row batch of the last file is marked as end of file.
+ * </p>
+ * <p>
+ * This reader only supports reading the row batches sequentially by readBatch or readBatchAsync,
+ * {@link #prepareBatch(int)}, {@link #seekToRow(long)} and {@link #skip(long)} are not supported.
+ * </p>
+ */
+public class MultiFileRecordReader implements PixelsRecordReader
+{
+    private static final Logger logger = LogManager.getLogger(MultiFileRecordReader.class);
+
+    private static final ExecutorService openService = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "pixels-multi-file-open");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static class OpenedFile
+    {
+        private final String path;
+        private final PixelsReader pixelsReader;
+        private final PrefetchingRecordReader recordReader;
+
+        private OpenedFile(String path, PixelsReader pixelsReader, PrefetchingRecordReader recordReader)
+        {
+            this.path = path;
+            this.pixelsReader = pixelsReader;
+            this.recordReader = recordReader;
+        }
+    }
+
+    private final Storage storage;
+    private final List<String> paths;
+    private final PixelsReaderOption option;
+    private final int parallelism;
+    private final PixelsFooterCache footerCache;
+    private final boolean enableCache;
+    private final List<String> cacheOrder;
+    private final PixelsCacheReader cacheReader;
+
+    /**
+     * The files being opened or opened ahead, in the order of the paths.
+     */
+    private final Deque<CompletableFuture<OpenedFile>> opening = new ArrayDeque<>();
+    private int nextToOpen = 0;
+    private OpenedFile current = null;
+    /**
+     * The file that has been read to the end, it is closed in the next call, as the last
+     * row batch read from it may be reused.
+     */
+    private OpenedFile finished = null;
+    private TypeDescription resultSchema = null;
+    private boolean endOfFile = false;
+    private boolean closed = false;
+    private int batchSize = VectorizedRowBatch.DEFAULT_SIZE;
+    private long rowNumber = 0L;
+    // the statistics of the closed files.
+    private long completedBytes = 0L;
+    private long readTimeNanos = 0L;
+    private long memoryUsage = 0L;
+
+    private MultiFileRecordReader(Storage storage, List<String> paths, PixelsReaderOption option, int parallelism,
+                                  PixelsFooterCache footerCache, boolean enableCache, List<String> cacheOrder,
+                                  PixelsCacheReader cacheReader)
+    {
+        this.storage = storage;
+        this.paths = paths;
+        this.option = option;
+        this.parallelism = parallelism;
+        this.footerCache = footerCache;
+        this.enableCache = enableCache;
+        this.cacheOrder = cacheOrder;
+        this.cacheReader = cacheReader;
+    }
+
+    public static class Builder
+    {
+        private Storage builderStorage = null;
+        private List<String> builderPaths = null;
+        private PixelsReaderOption builderOption = null;
+        private int builderParallelism = 16;
+        private PixelsFooterCache builderPixelsFooterCache = null;
+        private boolean builderEnableCache = false;
+        private List<String> builderCacheOrder = ImmutableList.of();
+        private PixelsCacheReader builderPixelsCacheReader = null;
+
+        private Builder()
+        {
+        }
+
+        public Builder setStorage(Storage storage)
+        {
+            this.builderStorage = requireNonNull(storage);
+            return this;
+        }
+
+        /**
+         * @param paths the paths of the files to read, in order.
+         * @return
+         */
+        public Builder setPaths(List<String> paths)
+        {
+            this.builderPaths = ImmutableList.copyOf(requireNonNull(paths));
+            return this;
+        }
+
+        /**
+         * @param option the reader option applied to each file. It is copied when building the reader, and the
+         *               prefetch depth of the copy is set to 1 if it is not positive, as the row batches of each
+         *               file are prefetched.
+         * @return
+         */
+        public Builder setOption(PixelsReaderOption option)
+        {
+            this.builderOption = requireNonNull(option);
+            return this;
+        }
+
+        /**
+         * @param parallelism the maximum number of files opened ahead.
+         * @return
+         */
+        public Builder setParallelism(int parallelism)
+        {
+            checkArgument(parallelism > 0, "parallelism must be positive");
+            this.builderParallelism = parallelism;
+            return this;
+        }
+
+        public Builder setPixelsFooterCache(PixelsFooterCache pixelsFooterCache)
+        {
+            this.builderPixelsFooterCache = requireNonNull(pixelsFooterCache);
+            return this;
+        }
+
+        public Builder setEnableCache(boolean enableCache)
+        {
+            this.builderEnableCache = enableCache;
+            return this;
+        }
+
+        public Builder setCacheOrder(List<String> cacheOrder)
+        {
+            this.builderCacheOrder = requireNonNull(cacheOrder);
+            return this;
+        }
+
+        public Builder setPixelsCacheReader(PixelsCacheReader pixelsCacheReader)
+        {
+            this.builderPixelsCacheReader = pixelsCacheReader;
+            return this;
+        }
+
+        public MultiFileRecordReader build()
+        {
+            if (builderStorage == null || builderPaths == null || builderOption == null ||
+                    builderPixelsFooterCache == null)
+            {
+                throw new IllegalArgumentException("Missing argument to build MultiFileRecordReader");
+            }
+            // copy the option, so that the option of the caller is not changed.
+            PixelsReaderOption option = builderOption.copy();
+            if (option.getPrefetchDepth() <= 0)
+            {
+                // the record readers of the files are prefetching record readers owned by the pixels readers.
+                option.prefetchDepth(1);
+            }
+            return new MultiFileRecordReader(builderStorage, builderPaths, option, builderParallelism,
+                    builderPixelsFooterCache, builderEnableCache, builderCacheOrder, builderPixelsCacheReader);
+        }
+    }
+
+    public static Builder newBuilder()
+    {
+        return new Builder();
+    }
+
+    private void openAhead()
+    {
+        while (!closed && nextToOpen < paths.size() && opening.size() < parallelism)
+        {
+            String path = paths.get(nextToOpen++);
+            int batchSize = this.batchSize;
+            opening.add(CompletableFuture.supplyAsync(() -> open(path, batchSize), openService));
+        }
+    }
+
+    private OpenedFile open(String path, int batchSize)
+    {
+        PixelsReader pixelsReader = null;
+        try
+        {
+            pixelsReader = PixelsReaderImpl.newBuilder()
+                    .setStorage(storage)
+                    .setPath(path)
+                    .setEnableCache(enableCache)
+                    .setCacheOrder(cacheOrder)
+                    .setPixelsCacheReader(cacheReader)
+                    .setPixelsFooterCache(footerCache)
+                    .build();
+            // the prefetch depth of the option is positive, thus the record reader is a prefetching record reader.
+            PrefetchingRecordReader prefetchingReader = (PrefetchingRecordReader) pixelsReader.read(option);
+            // issue the chunk requests of this file while the previous files are being read.
+            prefetchingReader.prefetch(batchSize);
+            return new OpenedFile(path, pixelsReader, prefetchingReader);
+        }
+        catch (IOException e)
+        {
+            closeQuietly(pixelsReader);
+            throw new CompletionException(new IOException("failed to open file '" + path + "'", e));
+        }
+    }
+
+    /**
+     * Move to the next file.
+     * @return false if there is no more file
+     */
+    private boolean advance() throws IOException
+    {
+        while (true)
+        {
+            openAhead();
+            CompletableFuture<OpenedFile> next = opening.poll();
+            if (next == null)
+            {
+                return false;
+            }
+            openAhead();
+            OpenedFile file = await(next);
+            TypeDescription schema = file.recordReader.getResultSchema();
+            if (schema == null && file.pixelsReader.getNumberOfRows() == 0)
+            {
+                // the file without rows has no row group and no result schema, skip it.
+                closeFile(file);
+                continue;
+            }
+            if (resultSchema == null)
+            {
+                resultSchema = schema;
+            }
+            else if (schema == null || !resultSchema.toString().equals(schema.toString()))
+            {
+                closeFile(file);
+                throw new IOException("result schema " + schema + " of file '" + file.path +
+                        "' does not match the result schema " + resultSchema);
+            }
+            current = file;
+            return true;
+        }
+    }
+
+    private static OpenedFile await(CompletableFuture<OpenedFile> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while opening the file");
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ?
+                    e.getCause().getCause() : e.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            throw new IOException("failed to open the file", cause);
+        }
+    }
+
+    /**
+     * Not supported, as the files are read ahead of the consumer.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public int prepareBatch(int batchSize) throws IOException
+    {
+        throw new UnsupportedOperationException("prepareBatch is not supported by the multi-file record reader");
+    }
+
+    @Override
+    public VectorizedRowBatch readBatch(int batchSize, boolean reuse) throws IOException
+    {
+        if (closed)
+        {
+            throw new IOException("record reader is closed");
+        }
+        this.batchSize = batchSize;
+        if (finished != null)
+        {
+            closeFile(finished);
+            finished = null;
+        }
+        while (true)
+        {
+            if (current == null && (endOfFile || !advance()))
+            {
+                endOfFile = true;
+                return emptyRowBatch(resultSchema);
+            }
+            VectorizedRowBatch rowBatch = current.recordReader.readBatch(batchSize, reuse);
+            rowNumber += rowBatch.size;
+            if (!rowBatch.endOfFile)
+            {
+                return rowBatch;
+            }
+            finished = current;
+            current = null;
+            if (nextToOpen >= paths.size() && opening.isEmpty())
+            {
+                endOfFile = true;
+                return rowBatch;
+            }
+            if (rowBatch.size > 0)
+            {
+                rowBatch.endOfFile = false;
+                return rowBatch;
+            }
+            // skip the empty last row batch of the file.
+            closeFile(finished);
+            finished = null;
+        }
+    }
+
+    /**
+     * @param resultSchema the result schema of the files, or null if there is no file
+     * @return the empty row batch with end of file, in the result schema
+     */
+    private static VectorizedRowBatch emptyRowBatch(TypeDescription resultSchema)
+    {
+        VectorizedRowBatch rowBatch;
+        if (resultSchema == null)
+        {
+            rowBatch = TypeDescription.createSchema(new ArrayList<>()).createRowBatch(0);
+            rowBatch.projectionSize = 0;
+        }
+        else
+        {
+            rowBatch = resultSchema.createRowBatch(0);
+            rowBatch.projectionSize = rowBatch.numCols;
+        }
+        rowBatch.size = 0;
+        rowBatch.endOfFile = true;
+        return rowBatch;
+    }
+
+    @Override
+    public VectorizedRowBatch readBatch(int batchSize) throws IOException
+    {
+        return readBatch(batchSize, false);
+    }
+
+    @Override
+    public VectorizedRowBatch readBatch(boolean reuse) throws IOException
+    {
+        return readBatch(VectorizedRowBatch.DEFAULT_SIZE, reuse);
+    }
+
+    @Override
+    public VectorizedRowBatch readBatch() throws IOException
+    {
+        return readBatch(VectorizedRowBatch.DEFAULT_SIZE, false);
+    }
+
+    /**
+     * @return the result schema of the files, the first file is opened if it has not been opened.
+     * Null if the first file can not be opened.
+     */
+    @Override
+    public TypeDescription getResultSchema()
+    {
+        if (resultSchema == null && current == null && !endOfFile && !closed)
+        {
+            try
+            {
+                if (!advance())
+                {
+                    endOfFile = true;
+                }
+            }
+            catch (IOException e)
+            {
+                logger.error("failed to open the first file", e);
+            }
+        }
+        return resultSchema;
+    }
+
+    @Override
+    public boolean isEndOfFile()
+    {
+        return endOfFile;
+    }
+
+    /**
+     * @return the number of rows returned from all the files.
+     */
+    @Override
+    public long getRowNumber()
+    {
+        return rowNumber;
+    }
+
+    /**
+     * Not supported, as the files are read ahead of the consumer.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean seekToRow(long rowIndex) throws IOException
+    {
+        throw new UnsupportedOperationException("seekToRow is not supported by the multi-file record reader");
+    }
+
+    /**
+     * Not supported, as the files are read ahead of the consumer.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean skip(long rowNum) throws IOException
+    {
+        throw new UnsupportedOperationException("skip is not supported by the multi-file record reader");
+    }
+
+    @Override
+    public long getCompletedBytes()
+    {
+        return completedBytes + (current == null ? 0 : current.recordReader.getCompletedBytes());
+    }
+
+    @Override
+    public long getReadTimeNanos()
+    {
+        return readTimeNanos + (current == null ? 0 : current.recordReader.getReadTimeNanos());
+    }
+
+    @Override
+    public long getMemoryUsage()
+    {
+        return memoryUsage + (current == null ? 0 : current.recordReader.getMemoryUsage());
+    }
+
+    private void closeFile(OpenedFile file) throws IOException
+    {
+        completedBytes += file.recordReader.getCompletedBytes();
+        readTimeNanos += file.recordReader.getReadTimeNanos();
+        memoryUsage += file.recordReader.getMemoryUsage();
+        // the record reader is closed by the pixels reader that owns it.
+        file.pixelsReader.close();
+    }
+
+    private static void closeQuietly(PixelsReader pixelsReader)
+    {
+        if (pixelsReader != null)
+        {
+            try
+            {
+                pixelsReader.close();
+            }
+            catch (IOException e)
+            {
+                logger.error("failed to close pixels reader", e);
+            }
+        }
+    }
+
+    /**
+     * Close the file being read and the files opened ahead.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+        IOException exception = null;
+        List<OpenedFile> files = new ArrayList<>();
+        if (finished != null)
+        {
+            files.add(finished);
+        }
+        if (current != null)
+        {
+            files.add(current);
+        }
+        for (CompletableFuture<OpenedFile> future : opening)
+        {
+            try
+            {
+                files.add(await(future));
+            }
+            catch (IOException e)
+            {
+                // the file failed to open has been released.
+                logger.error("failed to open file", e);
+            }
+        }
+        opening.clear();
+        finished = current = null;
+        for (OpenedFile file : files)
+        {
+            try
+            {
+                closeFile(file);
+            }
+            catch (IOException e)
+            {
+                exception = e;
+            }
+        }
+        if (exception != null)
+        {
+            throw exception;
+        }
+    }
+}
@@ -35,6 +35,7 @@ public class PixelsReaderOption
     private long queryId = -1L;
     private int rgStart = 0;
     private int rgLen = -1;     // -1 means reading to the end of the file
+    private int prefetchDepth = 0; // 0 means reading the row batches synchronously
 
     public PixelsReaderOption()
     {
@@ -109,4 +110,35 @@ public class PixelsReaderOption
     {
         return tolerantSchemaEvolution;
     }
+
+    /**
+     * @param prefetchDepth the maximum number of row batches read ahead on a background executor,
+     *                      0 to read the row batches synchronously in readBatch
+     */
+    public void prefetchDepth(int prefetchDepth)
+    {
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    public int getPrefetchDepth()
+    {
+        return prefetchDepth;
+    }
+
+    /**
+     * @return a copy of this option, the included columns and the predicate are shared with this option
+     */
+    public PixelsReaderOption copy()
+    {
+        PixelsReaderOption option = new PixelsReaderOption();
+        option.includedCols = this.includedCols;
+        option.predicate = this.predicate;
+        option.skipCorruptRecords = this.skipCorruptRecords;
+        option.tolerantSchemaEvolution = this.tolerantSchemaEvolution;
+        option.queryId = this.queryId;
+        option.rgStart = this.rgStart;
+        option.rgLen = this.rgLen;
+        option.prefetchDepth = this.prefetchDepth;
+        return option;
+    }
 }
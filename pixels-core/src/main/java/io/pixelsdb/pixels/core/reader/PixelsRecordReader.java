@@ -23,6 +23,7 @@ import io.pixelsdb.pixels.core.TypeDescription;
 import io.pixelsdb.pixels.core.vector.VectorizedRowBatch;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author guodong
@@ -40,8 +41,16 @@ public interface PixelsRecordReader
 
     /**
      * Read the next row batch. This method is thread-safe and independent from prepareBatch().
+     * <p>
+     * If reuse is true, the returned row batch is owned by this record reader and is overwritten
+     * by the next call of readBatch. If the row batch pool is enabled (row.batch.pool.enabled),
+     * this row batch is returned to {@link io.pixelsdb.pixels.core.vector.RowBatchPool} when this
+     * record reader is closed, thus it must not be accessed after {@link #close()}.
+     * If reuse is false, the returned row batch is owned by the caller.
+     * </p>
      *
      * @param batchSize the row batch size
+     * @param reuse whether the row batch is reused across multiple calls
      * @return vectorized row batch
      * @throws java.io.IOException
      */
@@ -62,7 +71,8 @@ public interface PixelsRecordReader
 
     /**
      * Read the next row batch. This method is thread-safe and independent from prepareBatch().
-     * It is equivalent to readBatch(DEFAULT_SIZE, reuse).
+     * It is equivalent to readBatch(DEFAULT_SIZE, reuse), see {@link #readBatch(int, boolean)}
+     * for the lifetime of the reused row batch.
      *
      * @return row batch
      * @throws java.io.IOException
@@ -81,6 +91,45 @@ public interface PixelsRecordReader
     VectorizedRowBatch readBatch()
             throws IOException;
 
+    /**
+     * Read the next row batch asynchronously. The returned row batch is not reused across multiple calls.
+     * By default, the row batch is read synchronously by readBatch(batchSize).
+     * {@link PrefetchingRecordReader} reads the row batches ahead on a background executor.
+     *
+     * @param batchSize the row batch size
+     * @return the future of the vectorized row batch
+     */
+    default CompletableFuture<VectorizedRowBatch> readBatchAsync(int batchSize)
+    {
+        CompletableFuture<VectorizedRowBatch> future = new CompletableFuture<>();
+        try
+        {
+            future.complete(readBatch(batchSize));
+        }
+        catch (IOException e)
+        {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Read the rows of the given row ids (point lookup), without scanning the row groups.
+     * The row ids are the indexes of the rows in the file, they must be in the row groups
+     * of this record reader. The predicate in the read option is not applied.
+     * This method is independent from readBatch().
+     *
+     * @param rowIds the row ids, not necessarily ordered or distinct
+     * @return the row batch in which the i-th row is the row of rowIds[i]
+     * @throws java.io.IOException
+     * @throws UnsupportedOperationException if the record reader does not support point lookup
+     */
+    default VectorizedRowBatch readRows(long[] rowIds)
+            throws IOException
+    {
+        throw new UnsupportedOperationException("readRows is not supported by " + getClass().getName());
+    }
+
     /**
      * Get the schema of the included columns in the read option.
      *
@@ -135,7 +184,8 @@ public interface PixelsRecordReader
     long getMemoryUsage();
 
     /**
-     * Cleanup and release resources
+     * Cleanup and release resources. If the row batch pool is enabled, the row batch read with
+     * reuse = true is returned to the pool and must not be accessed after this method returns.
      *
      * @throws java.io.IOException
      */
@@ -20,8 +20,10 @@
 package io.pixelsdb.pixels.core.reader;
 
 import com.google.protobuf.InvalidProtocolBufferException;
+import io.pixelsdb.pixels.cache.ColumnletAccessReporter;
 import io.pixelsdb.pixels.cache.ColumnletId;
 import io.pixelsdb.pixels.cache.PixelsCacheReader;
+import io.pixelsdb.pixels.common.metrics.LogHistogram;
 import io.pixelsdb.pixels.common.metrics.ReadPerfMetrics;
 import io.pixelsdb.pixels.common.physical.PhysicalReader;
 import io.pixelsdb.pixels.common.physical.Scheduler;
@@ -33,6 +35,7 @@ import io.pixelsdb.pixels.core.predicate.PixelsPredicate;
 import io.pixelsdb.pixels.core.stats.ColumnStats;
 import io.pixelsdb.pixels.core.stats.StatsRecorder;
 import io.pixelsdb.pixels.core.vector.ColumnVector;
+import io.pixelsdb.pixels.core.vector.RowBatchPool;
 import io.pixelsdb.pixels.core.vector.VectorizedRowBatch;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -41,6 +44,9 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
 
 /**
  * @author guodong
@@ -109,6 +115,7 @@ public class PixelsRecordReaderImpl
     // buffers of each chunk in this file, arranged by chunk's row group id and column id
     private ByteBuffer[] chunkBuffers;
     private ColumnReader[] readers;      // column readers for each target columns
+    private LogHistogram[] decodeLatencies; // decode latency histograms of each target columns
 
     private long diskReadBytes = 0L;
     private long cacheReadBytes = 0L;
@@ -246,10 +253,12 @@ public class PixelsRecordReaderImpl
         // create column readers
         List<TypeDescription> columnSchemas = fileSchema.getChildren();
         readers = new ColumnReader[resultColumns.length];
+        decodeLatencies = new LogHistogram[resultColumns.length];
         for (int i = 0; i < resultColumns.length; i++)
         {
             int index = resultColumns[i];
             readers[i] = ColumnReader.newColumnReader(columnSchemas.get(index));
+            decodeLatencies[i] = ReaderMetrics.decodeLatencyNs(columnSchemas.get(index).getCategory());
         }
 
         // create result vectorized row batch
@@ -420,7 +429,22 @@ public class PixelsRecordReaderImpl
         targetRGNum = targetRGIdx;
 
         // read row group footers
-        rowGroupFooters = new PixelsProto.RowGroupFooter[targetRGNum];
+        rowGroupFooters = readRowGroupFooters(targetRGs, targetRGNum);
+
+        everPrepared = true;
+        return true;
+    }
+
+    /**
+     * Read the footers of the row groups, the footers are read from the footer cache if present.
+     * @param rgIds the ids of the row groups
+     * @param rgNum the number of row groups to read in rgIds
+     * @return the footers of the row groups, in the order of rgIds
+     * @throws IOException
+     */
+    private PixelsProto.RowGroupFooter[] readRowGroupFooters(int[] rgIds, int rgNum) throws IOException
+    {
+        PixelsProto.RowGroupFooter[] rowGroupFooters = new PixelsProto.RowGroupFooter[rgNum];
         /**
          * Issue #114:
          * Use request batch and read scheduler to execute the read requests.
@@ -430,14 +454,15 @@ public class PixelsRecordReaderImpl
          */
         Scheduler.RequestBatch requestBatch = new Scheduler.RequestBatch();
         List<CompletableFuture> actionFutures = new ArrayList<>();
-        for (int i = 0; i < targetRGNum; i++)
+        for (int i = 0; i < rgNum; i++)
         {
-            int rgId = targetRGs[i];
+            int rgId = rgIds[i];
             String rgCacheId = fileName + "-" + rgId;
             PixelsProto.RowGroupFooter rowGroupFooter = pixelsFooterCache.getRGFooter(rgCacheId);
             // cache miss, read from disk and put it into cache
             if (rowGroupFooter == null)
             {
+                ReaderMetrics.RG_FOOTER_CACHE_MISS.inc();
                 PixelsProto.RowGroupInformation rowGroupInformation =
                         footer.getRowGroupInfos(rgId);
                 long footerOffset = rowGroupInformation.getFooterOffset();
@@ -462,6 +487,7 @@ public class PixelsRecordReaderImpl
             // cache hit
             else
             {
+                ReaderMetrics.RG_FOOTER_CACHE_HIT.inc();
                 rowGroupFooters[i] = rowGroupFooter;
             }
         }
@@ -477,9 +503,7 @@ public class PixelsRecordReaderImpl
             throw new IOException("Failed to read row group footers, " +
                     "only the last error is thrown, check the logs for more information.", e);
         }
-
-        everPrepared = true;
-        return true;
+        return rowGroupFooters;
     }
 
     /**
@@ -554,6 +578,13 @@ public class PixelsRecordReaderImpl
                 //return false;
             }
             List<ColumnletId> cacheChunks = new ArrayList<>(targetRGNum * targetColumns.length);
+            ColumnletAccessReporter accessReporter = ColumnletAccessReporter.Instance();
+            /**
+             * If cache admission is enabled, the cached columnlets on each node are planned by the
+             * access frequencies and are not limited to the cacheOrder, thus we look up all the columnlets
+             * in the cache, and the missed ones are read from disks as in Issue #67.
+             */
+            boolean lookupAll = accessReporter.isEnabled();
             // find cached chunks
             for (int colId : targetColumns)
             {
@@ -567,10 +598,10 @@ public class PixelsRecordReaderImpl
                      */
                     // int rgId = rgIdx + RGStart;
                     int rgId = targetRGs[rgIdx];
-                    // TODO: not only columnlets in cacheOrder are cached.
+                    accessReporter.record((short) rgId, (short) colId);
                     String cacheIdentifier = rgId + ":" + colId;
                     // if cached, read from cache files
-                    if (cacheOrder.contains(cacheIdentifier))
+                    if (lookupAll || cacheOrder.contains(cacheIdentifier))
                     {
                         ColumnletId chunkId = new ColumnletId((short) rgId, (short) colId, true/*direct*/);
                         cacheChunks.add(chunkId);
@@ -609,6 +640,7 @@ public class PixelsRecordReaderImpl
                 chunkBuffers[(rgId - RGStart) * includedColumns.length + colId] = columnlet;
                 if (columnlet == null || columnlet.capacity() == 0)
                 {
+                    ReaderMetrics.CACHE_MISS.inc();
                     /**
                      * Issue #67 (patch):
                      * Deal with null or empty cache chunk.
@@ -626,6 +658,7 @@ public class PixelsRecordReaderImpl
                 }
                 else
                 {
+                    ReaderMetrics.CACHE_HIT.inc();
                     this.cacheReadBytes += columnlet.capacity();
                 }
             }
@@ -899,7 +932,9 @@ public class PixelsRecordReaderImpl
         {
             if (this.resultRowBatch == null || this.resultRowBatch.projectionSize != includedColumnNum)
             {
-                this.resultRowBatch = resultSchema.createRowBatch(batchSize);
+                // the reused row batch is borrowed from the pool, and returned to the pool on close.
+                RowBatchPool.Instance().giveBack(this.resultRowBatch);
+                this.resultRowBatch = RowBatchPool.Instance().borrow(resultSchema, batchSize);
                 this.resultRowBatch.projectionSize = includedColumnNum;
             }
             this.resultRowBatch.reset();
@@ -907,7 +942,11 @@ public class PixelsRecordReaderImpl
             resultRowBatch = this.resultRowBatch;
         } else
         {
-            resultRowBatch = resultSchema.createRowBatch(batchSize);
+            /*
+             * The row batch is owned by the caller, it can be returned to the pool
+             * by RowBatchPool.giveBack() when it is no longer used.
+             */
+            resultRowBatch = RowBatchPool.Instance().borrow(resultSchema, batchSize);
             resultRowBatch.projectionSize = includedColumnNum;
         }
 
@@ -940,8 +979,10 @@ public class PixelsRecordReaderImpl
                     int index = curRGIdx * includedColumns.length + resultColumns[i];
                     PixelsProto.ColumnChunkIndex chunkIndex = rowGroupFooter.getRowGroupIndexEntry()
                             .getColumnChunkIndexEntries(resultColumns[i]);
+                    long decodeStartNano = System.nanoTime();
                     readers[i].read(chunkBuffers[index], encoding, curRowInRG, curBatchSize,
                             postScript.getPixelStride(), resultRowBatch.size, columnVectors[i], chunkIndex);
+                    decodeLatencies[i].record(System.nanoTime() - decodeStartNano);
                 }
             }
 
@@ -1007,6 +1048,366 @@ public class PixelsRecordReaderImpl
         return readBatch(VectorizedRowBatch.DEFAULT_SIZE, false);
     }
 
+    /**
+     * Read the rows of the given row ids without scanning the row groups.
+     * <p>
+     * The values of each pixel are encoded independently, and the start position of each pixel in the
+     * column chunk is recorded in pixelPositions of the column chunk index. For the columns of the numeric,
+     * boolean, date and time types, only the bytes of the pixels that contain the rows and their isNull
+     * bitmaps are read, and the decoding starts at the pixel boundary. For the columns of the string and
+     * binary types, the lengths or the dictionary are stored at the end of the column chunk, thus the whole
+     * column chunk is read and decoded sequentially up to the last row to read in it.
+     * </p>
+     * <p>
+     * For each pixel that contains the rows, at most one pixel stride of rows is decoded.
+     * </p>
+     */
+    @Override
+    public VectorizedRowBatch readRows(long[] rowIds) throws IOException
+    {
+        requireNonNull(rowIds, "rowIds is null");
+        if (fileSchema == null || (includedColumnNum > 0 && resultSchema == null))
+        {
+            throw new IOException("failed to read rows, the record reader is not valid.");
+        }
+        long start = System.nanoTime();
+
+        // find the range of the rows in the row groups of this record reader
+        int rgNum = footer.getRowGroupInfosCount();
+        long[] rgFirstRows = new long[rgNum + 1];
+        for (int i = 0; i < rgNum; i++)
+        {
+            rgFirstRows[i + 1] = rgFirstRows[i] + footer.getRowGroupInfos(i).getNumberOfRows();
+        }
+        long firstRow = RGStart < rgNum ? rgFirstRows[RGStart] : 0;
+        long endRow = RGStart < rgNum ? rgFirstRows[Math.min(RGStart + RGLen, rgNum)] : 0;
+        for (long rowId : rowIds)
+        {
+            if (rowId < firstRow || rowId >= endRow)
+            {
+                throw new IllegalArgumentException("row id " + rowId + " is out of the rows [" +
+                        firstRow + ", " + endRow + ") of this record reader");
+            }
+        }
+
+        // project nothing, only the number of rows is returned.
+        if (includedColumnNum == 0)
+        {
+            VectorizedRowBatch resultRowBatch = TypeDescription.createSchema(new ArrayList<>()).createRowBatch(0);
+            resultRowBatch.projectionSize = 0;
+            resultRowBatch.size = rowIds.length;
+            return resultRowBatch;
+        }
+
+        // group the rows by the pixels, in the order of the row ids
+        int pixelStride = postScript.getPixelStride();
+        int numCols = includedColumns.length;
+        Integer[] order = new Integer[rowIds.length];
+        for (int i = 0; i < order.length; i++)
+        {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> rowIds[i]));
+        List<PixelHit> hits = new ArrayList<>();
+        int[] hitRGs = new int[rgNum];
+        int hitRGNum = 0;
+        int rgId = RGStart;
+        PixelHit hit = null;
+        for (int k = 0; k < order.length; k++)
+        {
+            long rowId = rowIds[order[k]];
+            while (rowId >= rgFirstRows[rgId + 1])
+            {
+                rgId++;
+            }
+            int pixelId = (int) ((rowId - rgFirstRows[rgId]) / pixelStride);
+            if (hit == null || hit.rgId != rgId || hit.pixelId != pixelId)
+            {
+                if (hitRGNum == 0 || hitRGs[hitRGNum - 1] != rgId)
+                {
+                    hitRGs[hitRGNum++] = rgId;
+                }
+                long pixelFirstRow = rgFirstRows[rgId] + (long) pixelId * pixelStride;
+                int pixelRows = (int) Math.min(pixelStride, rgFirstRows[rgId + 1] - pixelFirstRow);
+                hit = new PixelHit(hitRGNum - 1, rgId, pixelId, pixelFirstRow, pixelRows, k, numCols);
+                hits.add(hit);
+            }
+            hit.end = k + 1;
+            hit.lastRow = (int) (rowId - hit.firstRow);
+        }
+
+        PixelsProto.RowGroupFooter[] hitRGFooters = readRowGroupFooters(hitRGs, hitRGNum);
+        List<TypeDescription> columnSchemas = fileSchema.getChildren();
+        boolean[] seekable = new boolean[numCols];
+        for (int colId : targetColumns)
+        {
+            seekable[colId] = isPixelSeekable(columnSchemas.get(colId).getCategory());
+        }
+
+        // read the whole column chunks from cache, or from disk if they are not seekable
+        ByteBuffer[] chunks = new ByteBuffer[hitRGNum * numCols];
+        Scheduler.RequestBatch requestBatch = new Scheduler.RequestBatch();
+        List<CompletableFuture> actionFutures = new ArrayList<>();
+        long blockId = enableCache ? physicalReader.getBlockId() : -1L;
+        boolean lookupAll = enableCache && ColumnletAccessReporter.Instance().isEnabled();
+        for (int rgIdx = 0; rgIdx < hitRGNum; rgIdx++)
+        {
+            PixelsProto.RowGroupIndex rowGroupIndex = hitRGFooters[rgIdx].getRowGroupIndexEntry();
+            for (int colId : targetColumns)
+            {
+                int index = rgIdx * numCols + colId;
+                if (enableCache && (lookupAll || cacheOrder.contains(hitRGs[rgIdx] + ":" + colId)))
+                {
+                    ByteBuffer columnlet = cacheReader.get(blockId, (short) hitRGs[rgIdx], (short) colId, true);
+                    if (columnlet != null && columnlet.capacity() > 0)
+                    {
+                        ReaderMetrics.CACHE_HIT.inc();
+                        this.cacheReadBytes += columnlet.capacity();
+                        chunks[index] = columnlet;
+                        continue;
+                    }
+                    ReaderMetrics.CACHE_MISS.inc();
+                }
+                if (!seekable[colId])
+                {
+                    PixelsProto.ColumnChunkIndex chunkIndex = rowGroupIndex.getColumnChunkIndexEntries(colId);
+                    addRead(requestBatch, actionFutures, chunkIndex.getChunkOffset(),
+                            (int) chunkIndex.getChunkLength(), resp -> chunks[index] = resp);
+                }
+            }
+        }
+        // read the pixels and the isNull bitmaps of the seekable columns that are not cached
+        for (PixelHit pixelHit : hits)
+        {
+            PixelsProto.RowGroupIndex rowGroupIndex = hitRGFooters[pixelHit.rgIdx].getRowGroupIndexEntry();
+            for (int colId : targetColumns)
+            {
+                if (seekable[colId] && chunks[pixelHit.rgIdx * numCols + colId] == null)
+                {
+                    PixelsProto.ColumnChunkIndex chunkIndex = rowGroupIndex.getColumnChunkIndexEntries(colId);
+                    int[] range = pixelRange(chunkIndex, pixelHit.pixelId, pixelHit.pixelRows, pixelStride);
+                    addRead(requestBatch, actionFutures, chunkIndex.getChunkOffset() + range[0], range[1],
+                            resp -> pixelHit.data[colId] = resp);
+                    addRead(requestBatch, actionFutures, chunkIndex.getChunkOffset() + range[2], range[3],
+                            resp -> pixelHit.isNull[colId] = resp);
+                }
+            }
+        }
+        if (requestBatch.size() > 0)
+        {
+            Scheduler scheduler = SchedulerFactory.Instance().getScheduler();
+            try
+            {
+                scheduler.executeBatch(physicalReader, requestBatch, queryId);
+                requestBatch.completeAll(actionFutures).join();
+                requestBatch.clear();
+                actionFutures.clear();
+            } catch (Exception e)
+            {
+                throw new IOException("Failed to read the pixels of the rows, " +
+                        "only the last error is thrown, check the logs for more information.", e);
+            }
+        }
+
+        // decode the pixels and copy the rows into the result row batch
+        VectorizedRowBatch resultRowBatch = RowBatchPool.Instance().borrow(resultSchema, Math.max(rowIds.length, 1));
+        resultRowBatch.projectionSize = includedColumnNum;
+        VectorizedRowBatch pixelRowBatch = RowBatchPool.Instance().borrow(resultSchema, pixelStride);
+        ColumnVector[] columnVectors = resultRowBatch.cols;
+        ColumnVector[] pixelVectors = pixelRowBatch.cols;
+        ColumnReader[] lookupReaders = new ColumnReader[resultColumns.length];
+        // the index of the next row to decode in the whole column chunk of each non-seekable column
+        int[] chunkRows = new int[resultColumns.length];
+        int lastRGIdx = -1;
+        try
+        {
+            for (int i = 0; i < resultColumns.length; i++)
+            {
+                lookupReaders[i] = ColumnReader.newColumnReader(columnSchemas.get(resultColumns[i]));
+            }
+            for (PixelHit pixelHit : hits)
+            {
+                PixelsProto.RowGroupFooter rowGroupFooter = hitRGFooters[pixelHit.rgIdx];
+                if (pixelHit.rgIdx != lastRGIdx)
+                {
+                    Arrays.fill(chunkRows, 0);
+                    lastRGIdx = pixelHit.rgIdx;
+                }
+                int pixelStart = pixelHit.pixelId * pixelStride;
+                int decodeRows = pixelHit.lastRow + 1;
+                for (int i = 0; i < resultColumns.length; i++)
+                {
+                    if (columnVectors[i].duplicated)
+                    {
+                        continue;
+                    }
+                    int colId = resultColumns[i];
+                    PixelsProto.ColumnEncoding encoding = rowGroupFooter.getRowGroupEncoding()
+                            .getColumnChunkEncodings(colId);
+                    PixelsProto.ColumnChunkIndex chunkIndex = rowGroupFooter.getRowGroupIndexEntry()
+                            .getColumnChunkIndexEntries(colId);
+                    ByteBuffer chunk = chunks[pixelHit.rgIdx * numCols + colId];
+                    long decodeStartNano = System.nanoTime();
+                    if (seekable[colId])
+                    {
+                        ByteBuffer data, isNull;
+                        if (chunk != null)
+                        {
+                            int[] range = pixelRange(chunkIndex, pixelHit.pixelId, pixelHit.pixelRows, pixelStride);
+                            data = slice(chunk, range[0], range[1]);
+                            isNull = slice(chunk, range[2], range[3]);
+                        }
+                        else
+                        {
+                            data = pixelHit.data[colId];
+                            isNull = pixelHit.isNull[colId];
+                        }
+                        // the pixel is decoded as a column chunk of one pixel.
+                        ByteBuffer pixel = ByteBuffer.allocate(data.remaining() + isNull.remaining());
+                        pixel.put(data.duplicate());
+                        pixel.put(isNull.duplicate());
+                        pixel.flip();
+                        PixelsProto.ColumnChunkIndex pixelIndex = PixelsProto.ColumnChunkIndex.newBuilder()
+                                .setChunkOffset(0).setChunkLength(pixel.limit())
+                                .setIsNullOffset(data.remaining()).addPixelPositions(0)
+                                .addPixelStatistics(chunkIndex.getPixelStatistics(pixelHit.pixelId)).build();
+                        pixelVectors[i].reset();
+                        lookupReaders[i].read(pixel, encoding, 0, decodeRows, pixelStride,
+                                0, pixelVectors[i], pixelIndex);
+                    }
+                    else
+                    {
+                        // skip the rows before the pixel, the hits are ordered in the row group.
+                        while (chunkRows[i] < pixelStart)
+                        {
+                            int size = Math.min(pixelStride, pixelStart - chunkRows[i]);
+                            pixelVectors[i].reset();
+                            lookupReaders[i].read(chunk, encoding, chunkRows[i], size, pixelStride,
+                                    0, pixelVectors[i], chunkIndex);
+                            chunkRows[i] += size;
+                        }
+                        pixelVectors[i].reset();
+                        lookupReaders[i].read(chunk, encoding, chunkRows[i], decodeRows, pixelStride,
+                                0, pixelVectors[i], chunkIndex);
+                        chunkRows[i] += decodeRows;
+                    }
+                    for (int k = pixelHit.start; k < pixelHit.end; k++)
+                    {
+                        int pos = order[k];
+                        columnVectors[i].setElement(pos, (int) (rowIds[pos] - pixelHit.firstRow), pixelVectors[i]);
+                    }
+                    decodeLatencies[i].record(System.nanoTime() - decodeStartNano);
+                }
+            }
+        }
+        finally
+        {
+            for (ColumnReader lookupReader : lookupReaders)
+            {
+                if (lookupReader != null)
+                {
+                    try
+                    {
+                        lookupReader.close();
+                    } catch (IOException e)
+                    {
+                        logger.error("Failed to close column reader.", e);
+                    }
+                }
+            }
+            RowBatchPool.Instance().giveBack(pixelRowBatch);
+        }
+        resultRowBatch.size = rowIds.length;
+
+        for (ColumnVector cv : columnVectors)
+        {
+            if (cv.duplicated)
+            {
+                cv.duplicate(columnVectors[cv.originVecId]);
+            }
+        }
+        readTimeNanos += System.nanoTime() - start;
+        return resultRowBatch;
+    }
+
+    /**
+     * Whether the decoding of the column can start at the pixel boundary. The values of the numeric,
+     * boolean, date and time columns are stored in the pixels, and the other column types store
+     * the lengths of the values or the dictionary at the end of the column chunk.
+     */
+    private static boolean isPixelSeekable(TypeDescription.Category category)
+    {
+        switch (category)
+        {
+            case BOOLEAN:
+            case SHORT:
+            case INT:
+            case LONG:
+            case DOUBLE:
+            case FLOAT:
+            case DECIMAL:
+            case DATE:
+            case TIME:
+            case TIMESTAMP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Get the range of a pixel and its isNull bitmap in the column chunk. The isNull bitmap of a pixel
+     * is stored only if the pixel has null values, and it is aligned to bytes.
+     * @return the offset and length of the pixel, and the offset and length of its isNull bitmap
+     */
+    private static int[] pixelRange(PixelsProto.ColumnChunkIndex chunkIndex, int pixelId,
+                                    int pixelRows, int pixelStride)
+    {
+        int dataOffset = (int) chunkIndex.getPixelPositions(pixelId);
+        int dataEnd = pixelId + 1 < chunkIndex.getPixelPositionsCount() ?
+                (int) chunkIndex.getPixelPositions(pixelId + 1) : (int) chunkIndex.getIsNullOffset();
+        int isNullOffset = (int) chunkIndex.getIsNullOffset();
+        // the pixels before the last one are full.
+        for (int p = 0; p < pixelId; p++)
+        {
+            if (chunkIndex.getPixelStatistics(p).getStatistic().getHasNull())
+            {
+                isNullOffset += (pixelStride + 7) / 8;
+            }
+        }
+        int isNullLength = chunkIndex.getPixelStatistics(pixelId).getStatistic().getHasNull() ?
+                (pixelRows + 7) / 8 : 0;
+        return new int[] {dataOffset, dataEnd - dataOffset, isNullOffset, isNullLength};
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length)
+    {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset);
+        slice.limit(offset + length);
+        return slice.slice();
+    }
+
+    private void addRead(Scheduler.RequestBatch requestBatch, List<CompletableFuture> actionFutures,
+                         long offset, int length, Consumer<ByteBuffer> consumer)
+    {
+        if (length == 0)
+        {
+            consumer.accept(ByteBuffer.allocate(0));
+            return;
+        }
+        actionFutures.add(requestBatch.add(queryId, offset, length).thenAccept(resp ->
+        {
+            if (resp != null)
+            {
+                consumer.accept(resp);
+            }
+        }));
+        // don't update statistics in whenComplete as it may be executed in other threads.
+        diskReadBytes += length;
+        memoryUsage += length;
+    }
+
     @Override
     public TypeDescription getResultSchema()
     {
@@ -1122,7 +1523,8 @@ public class PixelsRecordReaderImpl
         }
 
         includedColumnTypes.clear();
-        // no need to close resultRowBatch
+        // no need to close resultRowBatch, return it to the pool for the other readers.
+        RowBatchPool.Instance().giveBack(resultRowBatch);
         resultRowBatch = null;
         endOfFile = true;
         // write out read performance metrics
@@ -1147,6 +1549,42 @@ public class PixelsRecordReaderImpl
 //        readPerfMetrics.clear();
     }
 
+    /**
+     * The rows to read in a pixel, they are order[start, end) in readRows().
+     */
+    private static class PixelHit
+    {
+        private final int rgIdx;
+        private final int rgId;
+        private final int pixelId;
+        private final long firstRow;
+        private final int pixelRows;
+        private final int start;
+        private int end;
+        /**
+         * The index of the last row to read in the pixel.
+         */
+        private int lastRow;
+        /**
+         * The bytes of the pixel and its isNull bitmap, indexed by the column id.
+         */
+        private final ByteBuffer[] data;
+        private final ByteBuffer[] isNull;
+
+        private PixelHit(int rgIdx, int rgId, int pixelId, long firstRow, int pixelRows, int start, int numCols)
+        {
+            this.rgIdx = rgIdx;
+            this.rgId = rgId;
+            this.pixelId = pixelId;
+            this.firstRow = firstRow;
+            this.pixelRows = pixelRows;
+            this.start = start;
+            this.end = start;
+            this.data = new ByteBuffer[numCols];
+            this.isNull = new ByteBuffer[numCols];
+        }
+    }
+
     public class ChunkId
     {
         public final int rowGroupId;
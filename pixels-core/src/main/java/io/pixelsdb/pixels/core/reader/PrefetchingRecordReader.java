@@ -0,0 +1,435 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.core.reader;
+
+import io.pixelsdb.pixels.core.TypeDescription;
+import io.pixelsdb.pixels.core.vector.RowBatchPool;
+import io.pixelsdb.pixels.core.vector.VectorizedRowBatch;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.concurrent.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The record reader that reads (i.e., reads the chunks and decodes) the row batches of the underlying
+ * record reader ahead of the consumer on a background executor, so that the consumer processes batch N
+ * while batch N+1 is being decoded. At most prefetch depth row batches are read ahead.
+ * <p>
+ * The row batches are read by the underlying reader one at a time, in order. The prefetched row batches
+ * are borrowed from the {@link RowBatchPool}. If the row batches are read with reuse = true, the last
+ * returned row batch is given back to the pool, and the steady-state reading does not allocate row batches.
+ * </p>
+ * <p>
+ * The caller can hint the next split by {@link #hintNext(Callable)}. When the last row batch of this reader
+ * is read, the next record reader is opened in the background, which reads the footer of the next file,
+ * and if the next record reader is also a prefetching record reader, it starts prefetching its row batches,
+ * which reads the chunks of the next split. The next record reader is taken by {@link #takeNext()}.
+ * </p>
+ * <p>
+ * This reader only supports sequential reading, {@link #seekToRow(long)} and {@link #skip(long)} are not
+ * supported, as the underlying reader has read ahead of the consumer.
+ * </p>
+ */
+public class PrefetchingRecordReader implements PixelsRecordReader
+{
+    private static final Logger logger = LogManager.getLogger(PrefetchingRecordReader.class);
+
+    private static final ExecutorService prefetchService = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "pixels-batch-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final PixelsRecordReader reader;
+    private final int depth;
+    /**
+     * The row batches that are prefetched and not yet consumed, in order.
+     */
+    private final Deque<CompletableFuture<VectorizedRowBatch>> prefetched = new ArrayDeque<>();
+    /**
+     * The last scheduled read, each read is chained after the previous one, thus the underlying
+     * reader is accessed by one thread at a time.
+     */
+    private CompletableFuture<VectorizedRowBatch> tail = CompletableFuture.completedFuture(null);
+    private volatile boolean closed = false;
+    /**
+     * True if the last row batch has been read from the underlying reader.
+     */
+    private volatile boolean readToEnd = false;
+    /**
+     * True if the last row batch has been consumed.
+     */
+    private volatile boolean endOfFile = false;
+    private VectorizedRowBatch lastReused = null;
+    private int lastBatchSize = VectorizedRowBatch.DEFAULT_SIZE;
+    private Callable<PixelsRecordReader> nextOpener = null;
+    private CompletableFuture<PixelsRecordReader> next = null;
+    private boolean nextTaken = false;
+
+    /**
+     * @param reader the underlying record reader, which is closed by this reader
+     * @param depth the maximum number of row batches read ahead, must be positive
+     */
+    public PrefetchingRecordReader(PixelsRecordReader reader, int depth)
+    {
+        this.reader = requireNonNull(reader, "reader is null");
+        checkArgument(depth > 0, "depth must be positive");
+        this.depth = depth;
+    }
+
+    /**
+     * Start reading ahead the row batches of the given size, if they are not being read ahead.
+     * @param batchSize the row batch size
+     */
+    public synchronized void prefetch(int batchSize)
+    {
+        lastBatchSize = batchSize;
+        while (!closed && !readToEnd && prefetched.size() < depth)
+        {
+            CompletableFuture<VectorizedRowBatch> future =
+                    tail.thenApplyAsync(previous -> readNext(previous, batchSize), prefetchService);
+            prefetched.add(future);
+            tail = future;
+        }
+    }
+
+    private VectorizedRowBatch readNext(VectorizedRowBatch previous, int batchSize)
+    {
+        if (closed || (previous != null && previous.endOfFile))
+        {
+            // the reads scheduled before the end of file is known are skipped.
+            return null;
+        }
+        try
+        {
+            VectorizedRowBatch rowBatch = reader.readBatch(batchSize, false);
+            if (rowBatch.endOfFile)
+            {
+                readToEnd = true;
+                openNext();
+            }
+            return rowBatch;
+        }
+        catch (IOException e)
+        {
+            throw new CompletionException(e);
+        }
+    }
+
+    @Override
+    public synchronized CompletableFuture<VectorizedRowBatch> readBatchAsync(int batchSize)
+    {
+        if (closed)
+        {
+            CompletableFuture<VectorizedRowBatch> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("record reader is closed"));
+            return future;
+        }
+        if (readToEnd && prefetched.isEmpty())
+        {
+            // the underlying reader returns an empty row batch with end of file.
+            tail = tail.handle((rowBatch, e) -> null)
+                    .thenApplyAsync(previous -> readNext(null, batchSize), prefetchService);
+            return tail;
+        }
+        prefetch(batchSize);
+        CompletableFuture<VectorizedRowBatch> future = prefetched.poll();
+        // keep reading ahead while the consumer processes this row batch.
+        prefetch(batchSize);
+        return future.thenApply(rowBatch ->
+        {
+            if (rowBatch == null)
+            {
+                // this read is skipped as it is scheduled after the end of file.
+                rowBatch = emptyRowBatch();
+            }
+            if (rowBatch.endOfFile)
+            {
+                endOfFile = true;
+            }
+            return rowBatch;
+        });
+    }
+
+    private static VectorizedRowBatch emptyRowBatch()
+    {
+        VectorizedRowBatch rowBatch = TypeDescription.createSchema(new ArrayList<>()).createRowBatch(0);
+        rowBatch.projectionSize = 0;
+        rowBatch.size = 0;
+        rowBatch.endOfFile = true;
+        return rowBatch;
+    }
+
+    @Override
+    public int prepareBatch(int batchSize) throws IOException
+    {
+        return reader.prepareBatch(batchSize);
+    }
+
+    @Override
+    public VectorizedRowBatch readBatch(int batchSize, boolean reuse) throws IOException
+    {
+        if (reuse)
+        {
+            // the caller does not hold the last returned row batch any more.
+            RowBatchPool.Instance().giveBack(lastReused);
+            lastReused = null;
+        }
+        VectorizedRowBatch rowBatch = await(readBatchAsync(batchSize));
+        if (reuse)
+        {
+            lastReused = rowBatch;
+        }
+        return rowBatch;
+    }
+
+    @Override
+    public VectorizedRowBatch readBatch(int batchSize) throws IOException
+    {
+        return readBatch(batchSize, false);
+    }
+
+    @Override
+    public VectorizedRowBatch readBatch(boolean reuse) throws IOException
+    {
+        return readBatch(VectorizedRowBatch.DEFAULT_SIZE, reuse);
+    }
+
+    @Override
+    public VectorizedRowBatch readBatch() throws IOException
+    {
+        return readBatch(VectorizedRowBatch.DEFAULT_SIZE, false);
+    }
+
+    /**
+     * Hint the next split to be read after this reader. When the last row batch of this reader is read
+     * (or immediately if it has been read), the next record reader is opened by the opener in the background.
+     * @param opener the opener of the next record reader, e.g., building the pixels reader of the next
+     *               file and calling read(option) on it, the caller is responsible for closing the pixels reader
+     */
+    public synchronized void hintNext(Callable<PixelsRecordReader> opener)
+    {
+        requireNonNull(opener, "opener is null");
+        if (next != null)
+        {
+            throw new IllegalStateException("next record reader has been opened");
+        }
+        this.nextOpener = opener;
+        if (readToEnd)
+        {
+            openNext();
+        }
+    }
+
+    private synchronized void openNext()
+    {
+        if (nextOpener == null || next != null || closed)
+        {
+            return;
+        }
+        Callable<PixelsRecordReader> opener = this.nextOpener;
+        int batchSize = this.lastBatchSize;
+        next = CompletableFuture.supplyAsync(() ->
+        {
+            try
+            {
+                PixelsRecordReader nextReader = opener.call();
+                if (nextReader instanceof PrefetchingRecordReader)
+                {
+                    ((PrefetchingRecordReader) nextReader).prefetch(batchSize);
+                }
+                return nextReader;
+            }
+            catch (Exception e)
+            {
+                throw new CompletionException(e);
+            }
+        }, prefetchService);
+    }
+
+    /**
+     * Take the next record reader hinted by {@link #hintNext(Callable)}, it is opened now
+     * if it has not been opened in the background.
+     * @return the next record reader, or null if the next split is not hinted
+     * @throws IOException if failed to open the next record reader
+     */
+    public PixelsRecordReader takeNext() throws IOException
+    {
+        CompletableFuture<PixelsRecordReader> next;
+        synchronized (this)
+        {
+            if (nextOpener == null || nextTaken)
+            {
+                return null;
+            }
+            openNext();
+            nextTaken = true;
+            next = this.next;
+        }
+        if (next == null)
+        {
+            throw new IOException("record reader is closed");
+        }
+        return await(next);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the prefetched result");
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ?
+                    e.getCause().getCause() : e.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            throw new IOException("failed to read ahead", cause);
+        }
+    }
+
+    @Override
+    public TypeDescription getResultSchema()
+    {
+        return reader.getResultSchema();
+    }
+
+    /**
+     * @return true if the last row batch has been returned to the consumer.
+     */
+    @Override
+    public boolean isEndOfFile()
+    {
+        return endOfFile;
+    }
+
+    /**
+     * @return the row number of the underlying reader, which is ahead of the consumer
+     * by the prefetched row batches.
+     */
+    @Override
+    public long getRowNumber()
+    {
+        return reader.getRowNumber();
+    }
+
+    /**
+     * Not supported, as the underlying reader has read ahead of the consumer.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean seekToRow(long rowIndex) throws IOException
+    {
+        throw new UnsupportedOperationException("seekToRow is not supported by the prefetching record reader");
+    }
+
+    /**
+     * Not supported, as the underlying reader has read ahead of the consumer.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean skip(long rowNum) throws IOException
+    {
+        throw new UnsupportedOperationException("skip is not supported by the prefetching record reader");
+    }
+
+    @Override
+    public long getCompletedBytes()
+    {
+        return reader.getCompletedBytes();
+    }
+
+    @Override
+    public long getReadTimeNanos()
+    {
+        return reader.getReadTimeNanos();
+    }
+
+    @Override
+    public long getMemoryUsage()
+    {
+        return reader.getMemoryUsage();
+    }
+
+    /**
+     * Cancel the reads that have not started, wait for the running read, and close the underlying reader.
+     * The next record reader is also closed if it has been opened but not taken.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        CompletableFuture<VectorizedRowBatch> tail;
+        CompletableFuture<PixelsRecordReader> next;
+        synchronized (this)
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            tail = this.tail;
+            next = nextTaken ? null : this.next;
+        }
+        // the scheduled reads are skipped as this reader is closed, the running read is not interrupted.
+        tail.handle((rowBatch, e) -> null).join();
+        synchronized (this)
+        {
+            for (CompletableFuture<VectorizedRowBatch> future : prefetched)
+            {
+                if (!future.isCompletedExceptionally())
+                {
+                    RowBatchPool.Instance().giveBack(future.join());
+                }
+            }
+            prefetched.clear();
+            RowBatchPool.Instance().giveBack(lastReused);
+            lastReused = null;
+        }
+        if (next != null)
+        {
+            try
+            {
+                next.join().close();
+            }
+            catch (CompletionException e)
+            {
+                logger.error("failed to open the next record reader", e);
+            }
+        }
+        reader.close();
+    }
+}
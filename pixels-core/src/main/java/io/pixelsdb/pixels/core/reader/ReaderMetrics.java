@@ -0,0 +1,102 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.core.reader;
+
+import io.pixelsdb.pixels.common.metrics.Counter;
+import io.pixelsdb.pixels.common.metrics.LogHistogram;
+import io.pixelsdb.pixels.common.metrics.MetricsHttpServer;
+import io.pixelsdb.pixels.common.metrics.MetricsRegistry;
+import io.pixelsdb.pixels.common.utils.ConfigFactory;
+import io.pixelsdb.pixels.core.TypeDescription;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The pre-resolved metric handles of the pixels readers.
+ * They are exported by {@link MetricsRegistry}, and are looked up only once,
+ * so that recording on the hot paths of the readers does not hash or allocate.
+ * <p>
+ * The Pixels daemon does not run in the processes of the query engine workers, thus
+ * the metrics of the readers are exposed by starting a {@link MetricsHttpServer} in
+ * the reader process when metrics.reader.http.port is positive.
+ * </p>
+ */
+public final class ReaderMetrics
+{
+    private static final Logger logger = LogManager.getLogger(ReaderMetrics.class);
+
+    public static final Counter CACHE_HIT;
+    public static final Counter CACHE_MISS;
+    public static final Counter FILE_TAIL_CACHE_HIT;
+    public static final Counter FILE_TAIL_CACHE_MISS;
+    public static final Counter RG_FOOTER_CACHE_HIT;
+    public static final Counter RG_FOOTER_CACHE_MISS;
+    private static final Map<TypeDescription.Category, LogHistogram> decodeLatencyNs =
+            new EnumMap<>(TypeDescription.Category.class);
+
+    static
+    {
+        MetricsRegistry registry = MetricsRegistry.Instance();
+        String help = "number of column chunk lookups in pixels cache";
+        CACHE_HIT = registry.counter("pixels_cache_lookup_total", help, "result", "hit");
+        CACHE_MISS = registry.counter("pixels_cache_lookup_total", help, "result", "miss");
+        help = "number of lookups in the footer cache";
+        FILE_TAIL_CACHE_HIT = registry.counter("pixels_footer_cache_lookup_total", help,
+                "footer", "file_tail", "result", "hit");
+        FILE_TAIL_CACHE_MISS = registry.counter("pixels_footer_cache_lookup_total", help,
+                "footer", "file_tail", "result", "miss");
+        RG_FOOTER_CACHE_HIT = registry.counter("pixels_footer_cache_lookup_total", help,
+                "footer", "row_group", "result", "hit");
+        RG_FOOTER_CACHE_MISS = registry.counter("pixels_footer_cache_lookup_total", help,
+                "footer", "row_group", "result", "miss");
+        for (TypeDescription.Category category : TypeDescription.Category.values())
+        {
+            decodeLatencyNs.put(category, registry.histogram("pixels_column_decode_latency_ns",
+                    "latency in nanoseconds of decoding a batch of values from a column chunk",
+                    "type", category.name().toLowerCase()));
+        }
+
+        // the property may be absent in the pixels.properties of older deployments.
+        String httpPortProp = ConfigFactory.Instance().getProperty("metrics.reader.http.port");
+        int httpPort = httpPortProp == null ? 0 : Integer.parseInt(httpPortProp.trim());
+        if (httpPort > 0)
+        {
+            try
+            {
+                MetricsHttpServer.startInProcess(httpPort);
+            }
+            catch (IOException e)
+            {
+                logger.error("failed to start metrics http server on port " + httpPort, e);
+            }
+        }
+    }
+
+    private ReaderMetrics() { }
+
+    public static LogHistogram decodeLatencyNs(TypeDescription.Category category)
+    {
+        return decodeLatencyNs.get(category);
+    }
+}
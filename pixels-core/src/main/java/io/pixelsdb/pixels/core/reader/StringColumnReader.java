@@ -21,6 +21,7 @@ package io.pixelsdb.pixels.core.reader;
 
 import io.pixelsdb.pixels.core.PixelsProto;
 import io.pixelsdb.pixels.core.TypeDescription;
+import io.pixelsdb.pixels.core.encoding.FsstSymbolTable;
 import io.pixelsdb.pixels.core.encoding.RunLenIntDecoder;
 import io.pixelsdb.pixels.core.utils.BitUtils;
 import io.pixelsdb.pixels.core.utils.DynamicIntArray;
@@ -72,7 +73,12 @@ public class StringColumnReader
      */
     private ByteBuf contentBuf = null;
     /**
-     * RLE decoder of string content element length if no dictionary encoded.
+     * The symbol table of the column chunk if FSST compressed.
+     */
+    private FsstSymbolTable symbolTable = null;
+    /**
+     * RLE decoder of string content element length if no dictionary encoded,
+     * the lengths are the compressed lengths if FSST compressed.
      */
     private RunLenIntDecoder lensDecoder = null;
     /**
@@ -85,6 +91,10 @@ public class StringColumnReader
     private int isNullOffset = 0;
 
     private int isNullBitIndex = 0;
+    /**
+     * The offset of the next compressed value in contentBuf if FSST compressed.
+     */
+    private int contentOffset = 0;
 
     /**
      * This is the predicted size (number of elements) of dictionary.
@@ -118,6 +128,7 @@ public class StringColumnReader
         this.orders = null;
         this.starts = null;
         this.isNull = null;
+        this.symbolTable = null;
         if (this.contentDecoder != null)
         {
             this.contentDecoder.close();
@@ -222,6 +233,54 @@ public class StringColumnReader
                 elementIndex++;
             }
         }
+        // if FSST compressed
+        else if (encoding.getKind().equals(PixelsProto.ColumnEncoding.Kind.FSST))
+        {
+            // the values are decompressed on demand into the buffer of the column vector.
+            byte[] buffer = contentBuf.array();
+            int bufferOffset = contentBuf.arrayOffset();
+            if (columnVector.bufferSize() == 0)
+            {
+                columnVector.initBuffer();
+            }
+            for (int i = 0; i < size; i++)
+            {
+                if (elementIndex % pixelStride == 0)
+                {
+                    int pixelId = elementIndex / pixelStride;
+                    hasNull = chunkIndex.getPixelStatistics(pixelId).getStatistic().getHasNull();
+                    if (hasNull && isNullBitIndex > 0)
+                    {
+                        BitUtils.bitWiseDeCompact(isNull, inputBuffer, isNullOffset++, 1);
+                        isNullBitIndex = 0;
+                    }
+                }
+                if (hasNull && isNullBitIndex >= 8)
+                {
+                    BitUtils.bitWiseDeCompact(isNull, inputBuffer, isNullOffset++, 1);
+                    isNullBitIndex = 0;
+                }
+                if (hasNull && isNull[isNullBitIndex] == 1)
+                {
+                    columnVector.isNull[i + vectorIndex] = true;
+                    columnVector.noNulls = false;
+                }
+                else
+                {
+                    int len = (int) lensDecoder.next();
+                    columnVector.ensureValPreallocated(FsstSymbolTable.maxDecompressedLength(len));
+                    int decompressedLen = symbolTable.decompress(buffer, contentOffset + bufferOffset, len,
+                            columnVector.getValPreallocatedBytes(), columnVector.getValPreallocatedStart());
+                    columnVector.setValPreallocated(i + vectorIndex, decompressedLen);
+                    contentOffset += len;
+                }
+                if (hasNull)
+                {
+                    isNullBitIndex++;
+                }
+                elementIndex++;
+            }
+        }
         // if un-encoded
         else
         {
@@ -329,9 +388,19 @@ public class StringColumnReader
         }
         else
         {
+            int lensEnd = inputLength - Integer.BYTES;
+            if (encoding.getKind().equals(PixelsProto.ColumnEncoding.Kind.FSST))
+            {
+                // read symbol table
+                int symbolTableOffset = inputBuffer.getInt(lensEnd);
+                symbolTable = FsstSymbolTable.readFrom(
+                        inputBuffer.nioBuffer(symbolTableOffset, lensEnd - symbolTableOffset));
+                lensEnd = symbolTableOffset - Integer.BYTES;
+                contentOffset = 0;
+            }
             // read lens field offset
             inputBuffer.markReaderIndex();
-            inputBuffer.skipBytes(inputLength - Integer.BYTES);
+            inputBuffer.skipBytes(lensEnd);
             int lensOffset = inputBuffer.readInt();
             inputBuffer.resetReaderIndex();
             // read strings
@@ -346,7 +415,7 @@ public class StringColumnReader
                 contentBuf = inputBuffer.slice(0, lensOffset);
             }
             // read lens field
-            ByteBuf lensBuf = inputBuffer.slice(lensOffset, inputLength - Integer.BYTES - lensOffset);
+            ByteBuf lensBuf = inputBuffer.slice(lensOffset, lensEnd - lensOffset);
             lensDecoder = new RunLenIntDecoder(new ByteBufInputStream(lensBuf), false);
         }
     }
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.core.utils;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The output stream that writes into a list of direct byte buffers (segments) borrowed from
+ * {@link DirectBufferPool}. The written bytes are never copied when the stream grows, and they can be
+ * appended to the physical writer by a gathering write of {@link #getBuffers()}.
+ * <p>
+ * The first segment is sized by the number of bytes written before the last {@link #reset()},
+ * which is a good estimation of the size of the next column chunk of the same column writer,
+ * and each of the following segments is as large as the bytes written so far.
+ * </p>
+ * This class is not thread safe.
+ */
+public class DirectBufferOutputStream extends OutputStream
+{
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private ByteBuffer current = null;
+    private int size = 0;
+    private int expectedSize;
+
+    /**
+     * @param expectedSize the expected number of bytes to write before the first reset
+     */
+    public DirectBufferOutputStream(int expectedSize)
+    {
+        this.expectedSize = expectedSize;
+    }
+
+    private void nextSegment(int needed)
+    {
+        int capacity = segments.isEmpty() ? Math.max(expectedSize, needed) : Math.max(size, needed);
+        current = DirectBufferPool.Instance().borrow(capacity);
+        segments.add(current);
+    }
+
+    @Override
+    public void write(int b)
+    {
+        if (current == null || !current.hasRemaining())
+        {
+            nextSegment(1);
+        }
+        current.put((byte) b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len)
+    {
+        while (len > 0)
+        {
+            if (current == null || !current.hasRemaining())
+            {
+                nextSegment(len);
+            }
+            int n = Math.min(len, current.remaining());
+            current.put(b, off, n);
+            off += n;
+            len -= n;
+            size += n;
+        }
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Get the written bytes without copying them. The returned buffers are read-only views of the segments,
+     * they are valid until this stream is reset or closed.
+     * @return the buffers whose remaining bytes are the written bytes, in order
+     */
+    public ByteBuffer[] getBuffers()
+    {
+        ByteBuffer[] buffers = new ByteBuffer[segments.size()];
+        for (int i = 0; i < buffers.length; i++)
+        {
+            ByteBuffer buffer = segments.get(i).asReadOnlyBuffer();
+            buffer.flip();
+            buffers[i] = buffer;
+        }
+        return buffers;
+    }
+
+    /**
+     * @return a copy of the written bytes
+     */
+    public byte[] toByteArray()
+    {
+        byte[] bytes = new byte[size];
+        int offset = 0;
+        for (ByteBuffer buffer : getBuffers())
+        {
+            int length = buffer.remaining();
+            buffer.get(bytes, offset, length);
+            offset += length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Discard the written bytes and return the segments to the pool. The first segment after
+     * reset is sized by the number of bytes written before reset.
+     */
+    public void reset()
+    {
+        if (size > 0)
+        {
+            expectedSize = size;
+        }
+        release();
+    }
+
+    private void release()
+    {
+        for (ByteBuffer segment : segments)
+        {
+            DirectBufferPool.Instance().giveBack(segment);
+        }
+        segments.clear();
+        current = null;
+        size = 0;
+    }
+
+    @Override
+    public void close()
+    {
+        release();
+    }
+}
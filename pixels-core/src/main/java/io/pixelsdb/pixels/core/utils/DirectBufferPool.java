@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.core.utils;
+
+import io.pixelsdb.pixels.common.metrics.Counter;
+import io.pixelsdb.pixels.common.metrics.MetricsRegistry;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The process-wide pool of the direct byte buffers that are used as the segments of
+ * {@link DirectBufferOutputStream}. The capacities of the buffers are powers of two between
+ * {@link #MIN_CAPACITY} and {@link #MAX_CAPACITY}, and the buffers are pooled by their capacities.
+ * The total capacity of the pooled buffers is bounded by column.writer.buffer.pool.max.bytes,
+ * the buffers returned to a full pool are dropped and released by GC.
+ */
+public final class DirectBufferPool
+{
+    public static final int MIN_CAPACITY = 4 * 1024;
+    public static final int MAX_CAPACITY = 8 * 1024 * 1024;
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_CAPACITY);
+    private static final int MAX_SHIFT = Integer.numberOfTrailingZeros(MAX_CAPACITY);
+
+    private static final DirectBufferPool instance = new DirectBufferPool();
+
+    public static DirectBufferPool Instance()
+    {
+        return instance;
+    }
+
+    private final long maxPooledBytes;
+    private final AtomicLong pooledBytes = new AtomicLong(0);
+    /**
+     * The pooled buffers, indexed by log2(capacity) - MIN_SHIFT.
+     */
+    private final Queue<ByteBuffer>[] pool;
+
+    private final Counter borrowHit;
+    private final Counter borrowMiss;
+
+    @SuppressWarnings("unchecked")
+    private DirectBufferPool()
+    {
+        this.maxPooledBytes = new PixelsCoreConfig().getColumnWriterBufferPoolMaxBytes();
+        this.pool = new Queue[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < pool.length; i++)
+        {
+            pool[i] = new ConcurrentLinkedQueue<>();
+        }
+        MetricsRegistry registry = MetricsRegistry.Instance();
+        String help = "number of direct buffers borrowed from the direct buffer pool";
+        this.borrowHit = registry.counter("pixels_direct_buffer_pool_borrow_total", help, "result", "hit");
+        this.borrowMiss = registry.counter("pixels_direct_buffer_pool_borrow_total", help, "result", "miss");
+    }
+
+    /**
+     * Borrow a direct buffer that has at least the given capacity, or the maximum capacity
+     * if the given capacity is larger than it.
+     * @param capacity the minimum capacity
+     * @return the cleared buffer
+     */
+    public ByteBuffer borrow(int capacity)
+    {
+        int shift = capacity <= MIN_CAPACITY ? MIN_SHIFT :
+                Math.min(MAX_SHIFT, 32 - Integer.numberOfLeadingZeros(capacity - 1));
+        ByteBuffer buffer = pool[shift - MIN_SHIFT].poll();
+        if (buffer == null)
+        {
+            borrowMiss.inc();
+            return ByteBuffer.allocateDirect(1 << shift);
+        }
+        borrowHit.inc();
+        pooledBytes.addAndGet(-buffer.capacity());
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer borrowed from this pool, the buffer must not be accessed after it is returned.
+     * @param buffer the buffer
+     */
+    public void giveBack(ByteBuffer buffer)
+    {
+        int capacity = buffer.capacity();
+        int shift = Integer.numberOfTrailingZeros(capacity);
+        if (!buffer.isDirect() || Integer.bitCount(capacity) != 1 || shift < MIN_SHIFT || shift > MAX_SHIFT)
+        {
+            return;
+        }
+        if (pooledBytes.addAndGet(capacity) > maxPooledBytes)
+        {
+            pooledBytes.addAndGet(-capacity);
+            return;
+        }
+        pool[shift - MIN_SHIFT].add(buffer);
+    }
+
+    /**
+     * @return the total capacity of the pooled buffers
+     */
+    public long getPooledBytes()
+    {
+        return pooledBytes.get();
+    }
+}
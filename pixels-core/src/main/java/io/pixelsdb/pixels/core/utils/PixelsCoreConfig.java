@@ -39,4 +39,29 @@ public class PixelsCoreConfig
     {
         return Float.valueOf(config.getProperty("metric.reader.collect.prob"));
     }
+
+    public boolean isRowBatchPoolEnabled()
+    {
+        return Boolean.parseBoolean(config.getProperty("row.batch.pool.enabled"));
+    }
+
+    public long getRowBatchPoolMaxBytes()
+    {
+        return Long.parseLong(config.getProperty("row.batch.pool.max.bytes"));
+    }
+
+    public int getRowBatchPoolMaxSizePerSchema()
+    {
+        return Integer.parseInt(config.getProperty("row.batch.pool.max.size.per.schema"));
+    }
+
+    public long getColumnWriterBufferPoolMaxBytes()
+    {
+        return Long.parseLong(config.getProperty("column.writer.buffer.pool.max.bytes"));
+    }
+
+    public boolean isColumnWriterFsstEnabled()
+    {
+        return Boolean.parseBoolean(config.getProperty("column.writer.fsst.enabled"));
+    }
 }
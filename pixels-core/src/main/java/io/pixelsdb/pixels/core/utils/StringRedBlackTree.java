@@ -271,6 +271,28 @@ public class StringRedBlackTree extends RedBlackTree
         return result.toString();
     }
 
+    /**
+     * Get the length in bytes of the string at the original position.
+     */
+    public int getLength(int originalPosition)
+    {
+        int offset = keyOffsets.get(originalPosition);
+        if (originalPosition + 1 == keyOffsets.size())
+        {
+            return byteArray.size() - offset;
+        }
+        return keyOffsets.get(originalPosition + 1) - offset;
+    }
+
+    /**
+     * Write the bytes of the string at the original position.
+     */
+    public void writeBytes(int originalPosition, OutputStream out)
+            throws IOException
+    {
+        byteArray.write(out, keyOffsets.get(originalPosition), getLength(originalPosition));
+    }
+
     /**
      * Get the size of the character data in the table.
      *
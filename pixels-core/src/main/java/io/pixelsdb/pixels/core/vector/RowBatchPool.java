@@ -0,0 +1,226 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.core.vector;
+
+import io.pixelsdb.pixels.common.metrics.Counter;
+import io.pixelsdb.pixels.common.metrics.MetricsRegistry;
+import io.pixelsdb.pixels.core.TypeDescription;
+import io.pixelsdb.pixels.core.utils.PixelsCoreConfig;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The process-wide pool of the row batches, keyed by the schema of the batches.
+ * <p>
+ * A row batch borrowed from this pool holds its column vectors, including the value arrays and the
+ * byte buffers of the binary column vectors, so that reusing it avoids allocating them again.
+ * The returned row batches are reset, and the references of the binary column vectors to the values
+ * are cleared, so that the pooled row batches do not pin the buffers of the column chunks.
+ * The memory usage of the pooled row batches is bounded in total (row.batch.pool.max.bytes), and
+ * the number of pooled row batches is bounded per schema (row.batch.pool.max.size.per.schema).
+ * The row batches returned to a full pool are dropped.
+ * </p>
+ * <p>
+ * The pool is enabled by row.batch.pool.enabled. If it is disabled, the row batches are created
+ * on each borrow and the returned row batches are ignored.
+ * </p>
+ * <p>
+ * A row batch must not be accessed after it is returned to the pool.
+ * </p>
+ */
+public final class RowBatchPool
+{
+    private static final RowBatchPool instance = new RowBatchPool();
+
+    public static RowBatchPool Instance()
+    {
+        return instance;
+    }
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private final int maxSizePerSchema;
+    private final AtomicInteger size = new AtomicInteger(0);
+    private final AtomicLong bytes = new AtomicLong(0);
+    /**
+     * Key: the string of the schema, value: the pooled row batches of the schema.
+     */
+    private final Map<String, Queue<VectorizedRowBatch>> pool = new ConcurrentHashMap<>();
+    /**
+     * The number of pooled row batches of each schema, as the size of the queue is not constant-time.
+     */
+    private final Map<String, AtomicInteger> schemaSizes = new ConcurrentHashMap<>();
+
+    private final Counter borrowHit;
+    private final Counter borrowMiss;
+    private final Counter returnPooled;
+    private final Counter returnDropped;
+
+    private RowBatchPool()
+    {
+        this(new PixelsCoreConfig());
+    }
+
+    private RowBatchPool(PixelsCoreConfig config)
+    {
+        this(config.isRowBatchPoolEnabled(), config.getRowBatchPoolMaxBytes(),
+                config.getRowBatchPoolMaxSizePerSchema());
+    }
+
+    /**
+     * @param enabled whether the row batches are pooled
+     * @param maxBytes the maximum memory usage in bytes of the pooled row batches
+     * @param maxSizePerSchema the maximum number of pooled row batches of each schema
+     */
+    RowBatchPool(boolean enabled, long maxBytes, int maxSizePerSchema)
+    {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.maxSizePerSchema = maxSizePerSchema;
+
+        MetricsRegistry registry = MetricsRegistry.Instance();
+        String help = "number of row batches borrowed from the row batch pool";
+        this.borrowHit = registry.counter("pixels_row_batch_pool_borrow_total", help, "result", "hit");
+        this.borrowMiss = registry.counter("pixels_row_batch_pool_borrow_total", help, "result", "miss");
+        help = "number of row batches returned to the row batch pool";
+        this.returnPooled = registry.counter("pixels_row_batch_pool_return_total", help, "result", "pooled");
+        this.returnDropped = registry.counter("pixels_row_batch_pool_return_total", help, "result", "dropped");
+    }
+
+    /**
+     * Borrow a row batch of the schema, which is created if there is no pooled row batch of the schema.
+     * @param schema the schema of the row batch, must be a struct
+     * @param maxSize the maximum number of rows in the row batch
+     * @return the row batch that has been reset
+     */
+    public VectorizedRowBatch borrow(TypeDescription schema, int maxSize)
+    {
+        if (!enabled)
+        {
+            return schema.createRowBatch(maxSize);
+        }
+        String key = schema.toString();
+        Queue<VectorizedRowBatch> batches = pool.get(key);
+        VectorizedRowBatch rowBatch = batches == null ? null : batches.poll();
+        if (rowBatch == null)
+        {
+            borrowMiss.inc();
+            rowBatch = schema.createRowBatch(maxSize);
+        }
+        else
+        {
+            borrowHit.inc();
+            schemaSizes.get(key).decrementAndGet();
+            size.decrementAndGet();
+            bytes.addAndGet(-rowBatch.poolBytes);
+            rowBatch.poolBytes = 0;
+            rowBatch.ensureSize(maxSize);
+            rowBatch.maxSize = maxSize;
+        }
+        rowBatch.poolKey = key;
+        return rowBatch;
+    }
+
+    /**
+     * Return a row batch borrowed from this pool. The row batches that are not borrowed
+     * from this pool are ignored.
+     * @param rowBatch the row batch
+     */
+    public void giveBack(VectorizedRowBatch rowBatch)
+    {
+        if (rowBatch == null || rowBatch.poolKey == null || rowBatch.cols == null)
+        {
+            return;
+        }
+        String key = rowBatch.poolKey;
+        // the row batch is not returned twice.
+        rowBatch.poolKey = null;
+        AtomicInteger schemaSize = schemaSizes.computeIfAbsent(key, k -> new AtomicInteger(0));
+        if (schemaSize.incrementAndGet() > maxSizePerSchema)
+        {
+            schemaSize.decrementAndGet();
+            returnDropped.inc();
+            return;
+        }
+        rowBatch.reset();
+        for (ColumnVector col : rowBatch.cols)
+        {
+            clearReferences(col);
+        }
+        // the memory usage is cumulative, thus it is an upper bound of the memory held by the row batch.
+        long batchBytes = rowBatch.getMemoryUsage();
+        if (bytes.addAndGet(batchBytes) > maxBytes)
+        {
+            bytes.addAndGet(-batchBytes);
+            schemaSize.decrementAndGet();
+            returnDropped.inc();
+            return;
+        }
+        rowBatch.poolBytes = batchBytes;
+        size.incrementAndGet();
+        pool.computeIfAbsent(key, k -> new ConcurrentLinkedQueue<>()).add(rowBatch);
+        returnPooled.inc();
+    }
+
+    /**
+     * Clear the references of the column vector to the values that are not owned by it,
+     * e.g., the binary values set by reference into the buffers of the column chunks.
+     */
+    private static void clearReferences(ColumnVector col)
+    {
+        if (col == null)
+        {
+            return;
+        }
+        if (col instanceof BinaryColumnVector)
+        {
+            Arrays.fill(((BinaryColumnVector) col).vector, null);
+        }
+        else if (col instanceof StructColumnVector)
+        {
+            for (ColumnVector field : ((StructColumnVector) col).fields)
+            {
+                clearReferences(field);
+            }
+        }
+    }
+
+    /**
+     * @return the number of row batches in the pool
+     */
+    public int size()
+    {
+        return size.get();
+    }
+
+    /**
+     * @return the memory usage in bytes of the row batches in the pool
+     */
+    public long bytes()
+    {
+        return bytes.get();
+    }
+}
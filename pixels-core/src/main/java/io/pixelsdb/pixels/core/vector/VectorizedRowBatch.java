@@ -41,6 +41,15 @@ public class VectorizedRowBatch implements AutoCloseable
     // If this is true, then there is no data in the batch -- we have hit the end of input.
     public boolean endOfFile;
 
+    /**
+     * The key of the row batch pool if this row batch is borrowed from {@link RowBatchPool}.
+     */
+    String poolKey = null;
+    /**
+     * The bytes of this row batch accounted by {@link RowBatchPool} while this row batch is pooled.
+     */
+    long poolBytes = 0;
+
     /*
      * This number is carefully chosen to minimize overhead and typically allows
      * one VectorizedRowBatch to fit in cache.
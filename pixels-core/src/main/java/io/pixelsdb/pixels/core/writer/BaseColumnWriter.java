@@ -24,10 +24,12 @@ import io.pixelsdb.pixels.core.TypeDescription;
 import io.pixelsdb.pixels.core.encoding.Encoder;
 import io.pixelsdb.pixels.core.stats.StatsRecorder;
 import io.pixelsdb.pixels.core.utils.BitUtils;
+import io.pixelsdb.pixels.core.utils.DirectBufferOutputStream;
 import io.pixelsdb.pixels.core.vector.ColumnVector;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import static java.util.Objects.requireNonNull;
 
@@ -58,7 +60,19 @@ public abstract class BaseColumnWriter implements ColumnWriter
     Encoder encoder;
     boolean hasNull = false;
 
-    final ByteArrayOutputStream outputStream;  // column chunk content
+    /**
+     * The encoded bytes are more expensive to decode than the plain bytes, thus a column chunk
+     * is encoded only if the estimated encoded size is smaller than the plain size by this factor.
+     */
+    static final double ENCODED_DECODE_COST_FACTOR = 1.25;
+    /**
+     * Whether the current column chunk is encoded. If encoding is enabled, it is decided on each column
+     * chunk by the first pixel of the chunk, see {@link #decideChunkEncoding(long, long)}.
+     */
+    boolean chunkEncoded;
+    boolean chunkEncodingDecided;
+
+    final DirectBufferOutputStream outputStream;  // column chunk content
     private final ByteArrayOutputStream isNullStream;  // column chunk isNull
 
     public BaseColumnWriter(TypeDescription type, int pixelStride, boolean isEncoding)
@@ -66,6 +80,8 @@ public abstract class BaseColumnWriter implements ColumnWriter
         this.type = requireNonNull(type, "type is null");
         this.pixelStride = pixelStride;
         this.isEncoding = isEncoding;
+        this.chunkEncoded = isEncoding;
+        this.chunkEncodingDecided = !isEncoding;
         this.isNull = new boolean[pixelStride];
 
         this.columnChunkIndex =
@@ -75,8 +91,8 @@ public abstract class BaseColumnWriter implements ColumnWriter
         this.pixelStatRecorder = StatsRecorder.create(type);
         this.columnChunkStatRecorder = StatsRecorder.create(type);
 
-        // todo a good estimation of chunk size is needed as the initial size of output stream
-        this.outputStream = new ByteArrayOutputStream(pixelStride);
+        // the first chunk starts with pixelStride bytes, the following chunks are sized by the previous one.
+        this.outputStream = new DirectBufferOutputStream(pixelStride);
         this.isNullStream = new ByteArrayOutputStream(pixelStride);
     }
 
@@ -104,6 +120,15 @@ public abstract class BaseColumnWriter implements ColumnWriter
         return outputStream.toByteArray();
     }
 
+    /**
+     * Get the buffers of column chunk content without copying, they are valid until reset
+     */
+    @Override
+    public ByteBuffer[] getColumnChunkBuffers()
+    {
+        return outputStream.getBuffers();
+    }
+
     /**
      * Get column chunk size in bytes
      */
@@ -178,9 +203,25 @@ public abstract class BaseColumnWriter implements ColumnWriter
         hasNull = false;
     }
 
+    /**
+     * Decide whether the current column chunk is encoded by the estimated sizes of the sample, which
+     * is usually the first pixel of the chunk. As the encoding is decided on each chunk, the column
+     * chunks of data whose distribution drifts within the file get different encodings, and the
+     * readers dispatch on the encoding of each chunk.
+     * @param encodedBytes the estimated size of the encoded sample
+     * @param plainBytes the size of the plain (un-encoded) sample
+     */
+    void decideChunkEncoding(long encodedBytes, long plainBytes)
+    {
+        chunkEncoded = encodedBytes * ENCODED_DECODE_COST_FACTOR < plainBytes;
+        chunkEncodingDecided = true;
+    }
+
     @Override
     public void reset()
     {
+        chunkEncoded = isEncoding;
+        chunkEncodingDecided = !isEncoding;
         lastPixelPosition = 0;
         curPixelPosition = 0;
         columnChunkIndex.clear();
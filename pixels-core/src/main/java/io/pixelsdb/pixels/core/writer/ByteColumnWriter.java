@@ -100,9 +100,16 @@ public class ByteColumnWriter extends BaseColumnWriter
             pixelStatRecorder.updateInteger(curPixelVector[i], 1);
         }
 
-        if (isEncoding)
+        byte[] encoded = null;
+        if (!chunkEncodingDecided)
         {
-            outputStream.write(encoder.encode(curPixelVector, 0, curPixelVectorIndex));
+            // the first pixel of the column chunk is the sample to decide the encoding of the chunk.
+            encoded = encoder.encode(curPixelVector, 0, curPixelVectorIndex);
+            decideChunkEncoding(encoded.length, curPixelVectorIndex);
+        }
+        if (chunkEncoded)
+        {
+            outputStream.write(encoded != null ? encoded : encoder.encode(curPixelVector, 0, curPixelVectorIndex));
         }
         else
         {
@@ -115,7 +122,7 @@ public class ByteColumnWriter extends BaseColumnWriter
     @Override
     public PixelsProto.ColumnEncoding.Builder getColumnChunkEncoding()
     {
-        if (isEncoding)
+        if (chunkEncoded)
         {
             return PixelsProto.ColumnEncoding.newBuilder()
                     .setKind(PixelsProto.ColumnEncoding.Kind.RUNLENGTH);
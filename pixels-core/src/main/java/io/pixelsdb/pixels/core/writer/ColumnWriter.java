@@ -25,6 +25,7 @@ import io.pixelsdb.pixels.core.stats.StatsRecorder;
 import io.pixelsdb.pixels.core.vector.ColumnVector;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * pixels
@@ -85,6 +86,12 @@ public interface ColumnWriter
 
     byte[] getColumnChunkContent();
 
+    /**
+     * Get the content of the column chunk without copying it.
+     * @return the buffers whose remaining bytes are the content, they are valid until reset()
+     */
+    ByteBuffer[] getColumnChunkBuffers();
+
     int getColumnChunkSize();
 
     PixelsProto.ColumnChunkIndex.Builder getColumnChunkIndex();
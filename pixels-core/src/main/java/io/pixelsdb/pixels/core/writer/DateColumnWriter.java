@@ -100,11 +100,21 @@ public class DateColumnWriter extends BaseColumnWriter
             pixelStatRecorder.updateDate(curPixelVector[i]);
         }
 
-        if (isEncoding)
+        byte[] encoded = null;
+        if (!chunkEncodingDecided || chunkEncoded)
         {
             int[] values = new int[curPixelVectorIndex];
             System.arraycopy(curPixelVector, 0, values, 0, curPixelVectorIndex);
-            outputStream.write(encoder.encode(values));
+            encoded = encoder.encode(values);
+        }
+        if (!chunkEncodingDecided)
+        {
+            // the first pixel of the column chunk is the sample to decide the encoding of the chunk.
+            decideChunkEncoding(encoded.length, (long) curPixelVectorIndex * Integer.BYTES);
+        }
+        if (chunkEncoded)
+        {
+            outputStream.write(encoded);
         }
         else
         {
@@ -123,7 +133,7 @@ public class DateColumnWriter extends BaseColumnWriter
     @Override
     public PixelsProto.ColumnEncoding.Builder getColumnChunkEncoding()
     {
-        if (isEncoding)
+        if (chunkEncoded)
         {
             return PixelsProto.ColumnEncoding.newBuilder()
                     .setKind(PixelsProto.ColumnEncoding.Kind.RUNLENGTH);
@@ -30,8 +30,8 @@ import java.nio.ByteBuffer;
 
 /**
  * Integer column writer.
- * If encoding, use RunLength;
- * Else isLong(1 byte) + content
+ * If encoding, use RunLength if it is smaller than the plain content on the first pixel of the chunk;
+ * Else isLong(1 byte) + content in each pixel
  *
  * @author guodong
  */
@@ -104,9 +104,17 @@ public class IntegerColumnWriter extends BaseColumnWriter
         }
 
         // write out current pixel vector
-        if (isEncoding)
+        byte[] encoded = null;
+        if (!chunkEncodingDecided)
         {
-            outputStream.write(encoder.encode(curPixelVector, 0, curPixelVectorIndex));
+            // the first pixel of the column chunk is the sample to decide the encoding of the chunk.
+            encoded = encoder.encode(curPixelVector, 0, curPixelVectorIndex);
+            decideChunkEncoding(encoded.length,
+                    (long) curPixelVectorIndex * (isLong ? Long.BYTES : Integer.BYTES) + 1);
+        }
+        if (chunkEncoded)
+        {
+            outputStream.write(encoded != null ? encoded : encoder.encode(curPixelVector, 0, curPixelVectorIndex));
         }
         else
         {
@@ -138,7 +146,7 @@ public class IntegerColumnWriter extends BaseColumnWriter
     @Override
     public PixelsProto.ColumnEncoding.Builder getColumnChunkEncoding()
     {
-        if (isEncoding)
+        if (chunkEncoded)
         {
             return PixelsProto.ColumnEncoding.newBuilder()
                     .setKind(PixelsProto.ColumnEncoding.Kind.RUNLENGTH);
@@ -22,12 +22,15 @@ package io.pixelsdb.pixels.core.writer;
 import io.pixelsdb.pixels.common.utils.Constants;
 import io.pixelsdb.pixels.core.PixelsProto;
 import io.pixelsdb.pixels.core.TypeDescription;
+import io.pixelsdb.pixels.core.encoding.FsstSymbolTable;
 import io.pixelsdb.pixels.core.encoding.RunLenIntEncoder;
 import io.pixelsdb.pixels.core.utils.DynamicIntArray;
+import io.pixelsdb.pixels.core.utils.PixelsCoreConfig;
 import io.pixelsdb.pixels.core.utils.StringRedBlackTree;
 import io.pixelsdb.pixels.core.vector.BinaryColumnVector;
 import io.pixelsdb.pixels.core.vector.ColumnVector;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
@@ -44,10 +47,17 @@ import java.nio.ByteBuffer;
  * 7. origins field offset (an integer value indicating offset of the origins field in the chunk)
  * 8. starts field offset (an integer value indicating offset of the starts field in the chunk)
  * 9. orders field offset (an integer value indicating offset of the orders field in the chunk)
+ * 10. symbol table field (the FSST symbol table)
+ * 11. symbol table field offset (an integer value indicating offset of the symbol table field in the chunk)
  * <p>
  * Pixels field is necessary in all cases.
- * Lengths field only exists when un-encoded.
+ * Lengths field only exists when un-encoded or FSST compressed, it holds the compressed lengths in the latter case.
+ * Symbol table field and its offset only exist when FSST compressed.
  * Other fields only exist when dictionary encoding is enabled.
+ * <p>
+ * If encoding is enabled, each column chunk is dictionary encoded, FSST compressed, or un-encoded,
+ * which is decided by the estimated sizes on the first pixel of the chunk. FSST compression is enabled by
+ * column.writer.fsst.enabled, and a file that has FSST compressed chunks is written in file version 2.
  *
  * @author guodong
  */
@@ -56,23 +66,38 @@ public class StringColumnWriter extends BaseColumnWriter
     private final long[] curPixelVector = new long[pixelStride];      // current vector holding encoded values of string
     private final DynamicIntArray lensArray = new DynamicIntArray();  // lengths of each string when un-encoded
     private final StringRedBlackTree dictionary = new StringRedBlackTree(Constants.INIT_DICT_SIZE);
-    private boolean futureUseDictionaryEncoding;
-    private boolean currentUseDictionaryEncoding;
-    private boolean doneDictionaryEncodingCheck = false;
+    /**
+     * The total length of the strings in the first pixel of the current column chunk, which is the sample
+     * to decide whether the chunk is dictionary encoded.
+     */
+    private long sampleBytes = 0;
+    /**
+     * The symbol table trained on the first pixel of the current column chunk,
+     * or null if the chunk is not FSST compressed.
+     */
+    private FsstSymbolTable symbolTable = null;
+    private byte[] compressBuffer = new byte[0];
+    private final boolean fsstEnabled;
 
     public StringColumnWriter(TypeDescription type, int pixelStride, boolean isEncoding)
+    {
+        this(type, pixelStride, isEncoding, new PixelsCoreConfig().isColumnWriterFsstEnabled());
+    }
+
+    /**
+     * @param fsstEnabled whether the column chunks that are not dictionary encoded may be FSST compressed
+     */
+    StringColumnWriter(TypeDescription type, int pixelStride, boolean isEncoding, boolean fsstEnabled)
     {
         super(type, pixelStride, isEncoding);
-        this.futureUseDictionaryEncoding = isEncoding;
-        this.currentUseDictionaryEncoding = isEncoding;
         encoder = new RunLenIntEncoder(false, true);
+        this.fsstEnabled = fsstEnabled;
     }
 
     @Override
     public int write(ColumnVector vector, int size)
             throws IOException
     {
-        currentUseDictionaryEncoding = futureUseDictionaryEncoding;
         BinaryColumnVector columnVector = (BinaryColumnVector) vector;
         byte[][] values = columnVector.vector;
         int[] vLens = columnVector.lens;
@@ -81,36 +106,36 @@ public class StringColumnWriter extends BaseColumnWriter
         int curPartOffset = 0;
         int nextPartLength = size;
 
-        if (currentUseDictionaryEncoding)
+        // the encoding may change after the first pixel of the chunk, thus it is checked for each part.
+        while ((curPixelIsNullIndex + nextPartLength) >= pixelStride)
         {
-            while ((curPixelIsNullIndex + nextPartLength) >= pixelStride)
-            {
-                curPartLength = pixelStride - curPixelIsNullIndex;
-                writeCurPartWithDict(columnVector, values, vLens, vOffsets, curPartLength, curPartOffset);
-                newPixel();
-                curPartOffset += curPartLength;
-                nextPartLength = size - curPartOffset;
-            }
+            curPartLength = pixelStride - curPixelIsNullIndex;
+            writeCurPart(columnVector, values, vLens, vOffsets, curPartLength, curPartOffset);
+            newPixel();
+            curPartOffset += curPartLength;
+            nextPartLength = size - curPartOffset;
+        }
+
+        curPartLength = nextPartLength;
+        writeCurPart(columnVector, values, vLens, vOffsets, curPartLength, curPartOffset);
+        return outputStream.size();
+    }
 
-            curPartLength = nextPartLength;
+    private void writeCurPart(BinaryColumnVector columnVector, byte[][] values, int[] vLens, int[] vOffsets, int curPartLength, int curPartOffset)
+    {
+        if (symbolTable != null)
+        {
+            writeCurPartWithFsst(columnVector, values, vLens, vOffsets, curPartLength, curPartOffset);
+        }
+        else if (chunkEncoded)
+        {
             writeCurPartWithDict(columnVector, values, vLens, vOffsets, curPartLength, curPartOffset);
         }
         else
         {
             // directly add to outputStream if not using dictionary encoding
-            while ((curPixelIsNullIndex + nextPartLength) >= pixelStride)
-            {
-                curPartLength = pixelStride - curPixelIsNullIndex;
-                writeCurPartWithoutDict(columnVector, values, vLens, vOffsets, curPartLength, curPartOffset);
-                newPixel();
-                curPartOffset += curPartLength;
-                nextPartLength = size - curPartOffset;
-            }
-
-            curPartLength = nextPartLength;
             writeCurPartWithoutDict(columnVector, values, vLens, vOffsets, curPartLength, curPartOffset);
         }
-        return outputStream.size();
     }
 
     private void writeCurPartWithoutDict(BinaryColumnVector columnVector, byte[][] values, int[] vLens, int[] vOffsets, int curPartLength, int curPartOffset)
@@ -136,6 +161,36 @@ public class StringColumnWriter extends BaseColumnWriter
         curPixelIsNullIndex += curPartLength;
     }
 
+    private void writeCurPartWithFsst(BinaryColumnVector columnVector, byte[][] values, int[] vLens, int[] vOffsets, int curPartLength, int curPartOffset)
+    {
+        for (int i = 0; i < curPartLength; i++)
+        {
+            curPixelEleIndex++;
+            if (columnVector.isNull[i + curPartOffset])
+            {
+                hasNull = true;
+                pixelStatRecorder.increment();
+            }
+            else
+            {
+                int maxLength = FsstSymbolTable.maxCompressedLength(vLens[curPartOffset + i]);
+                if (compressBuffer.length < maxLength)
+                {
+                    compressBuffer = new byte[maxLength];
+                }
+                int compressedLength = symbolTable.compress(values[curPartOffset + i], vOffsets[curPartOffset + i],
+                        vLens[curPartOffset + i], compressBuffer, 0);
+                outputStream.write(compressBuffer, 0, compressedLength);
+                lensArray.add(compressedLength);
+                pixelStatRecorder
+                        .updateString(values[curPartOffset + i], vOffsets[curPartOffset + i], vLens[curPartOffset + i],
+                                1);
+            }
+        }
+        System.arraycopy(columnVector.isNull, curPartOffset, isNull, curPixelIsNullIndex, curPartLength);
+        curPixelIsNullIndex += curPartLength;
+    }
+
     private void writeCurPartWithDict(BinaryColumnVector columnVector, byte[][] values, int[] vLens, int[] vOffsets, int curPartLength, int curPartOffset)
     {
         for (int i = 0; i < curPartLength; i++)
@@ -150,6 +205,7 @@ public class StringColumnWriter extends BaseColumnWriter
             {
                 curPixelVector[curPixelVectorIndex++] = dictionary
                         .add(values[curPartOffset + i], vOffsets[curPartOffset + i], vLens[curPartOffset + i]);
+                sampleBytes += vLens[curPartOffset + i];
                 pixelStatRecorder
                         .updateString(values[curPartOffset + i], vOffsets[curPartOffset + i], vLens[curPartOffset + i],
                                 1);
@@ -163,7 +219,11 @@ public class StringColumnWriter extends BaseColumnWriter
     public void newPixel()
             throws IOException
     {
-        if (currentUseDictionaryEncoding)
+        if (!chunkEncodingDecided)
+        {
+            decideStringEncoding();
+        }
+        if (chunkEncoded && symbolTable == null)
         {
             // for dictionary encoding. run length encode again.
             outputStream.write(encoder.encode(curPixelVector, 0, curPixelVectorIndex));
@@ -173,19 +233,96 @@ public class StringColumnWriter extends BaseColumnWriter
         super.newPixel();
     }
 
+    /**
+     * The first pixel of each column chunk is written with dictionary encoding as the sample. The estimated
+     * size of the dictionary encoded chunk (distinct strings, starts and orders, and the ids of the values)
+     * is compared with the plain size (strings and lengths). If the dictionary does not pay off, e.g., for the
+     * high-cardinality strings such as urls and log messages, an FSST symbol table is trained on the sample
+     * and the compressed size (symbol table, compressed strings and lengths) is compared with the plain size,
+     * unless FSST compression is disabled. If the chunk is not dictionary encoded, the strings in the first pixel are rewritten from the dictionary
+     * in their original order, compressed or not.
+     */
+    private void decideStringEncoding()
+            throws IOException
+    {
+        int valueNum = curPixelVectorIndex;
+        int distinctNum = dictionary.size();
+        int idBits = 32 - Integer.numberOfLeadingZeros(Math.max(distinctNum - 1, 1));
+        long dictBytes = dictionary.getCharacterSize() + 2L * Integer.BYTES * distinctNum +
+                ((long) valueNum * idBits + 7) / 8;
+        long plainBytes = sampleBytes + (long) valueNum * Short.BYTES;
+        decideChunkEncoding(dictBytes, plainBytes);
+        if (!chunkEncoded)
+        {
+            // the sample strings in their original order.
+            ByteArrayOutputStream sample = new ByteArrayOutputStream((int) sampleBytes);
+            int[] starts = new int[valueNum];
+            int[] lens = new int[valueNum];
+            for (int i = 0; i < valueNum; i++)
+            {
+                int id = (int) curPixelVector[i];
+                starts[i] = sample.size();
+                lens[i] = dictionary.getLength(id);
+                dictionary.writeBytes(id, sample);
+            }
+            byte[] sampleArray = sample.toByteArray();
+            FsstSymbolTable table = null;
+            ByteArrayOutputStream compressed = null;
+            int[] compressedLens = null;
+            if (fsstEnabled)
+            {
+                table = FsstSymbolTable.train(sampleArray, starts, lens, valueNum);
+                compressed = new ByteArrayOutputStream(sampleArray.length);
+                compressedLens = new int[valueNum];
+                for (int i = 0; i < valueNum; i++)
+                {
+                    int maxLength = FsstSymbolTable.maxCompressedLength(lens[i]);
+                    if (compressBuffer.length < maxLength)
+                    {
+                        compressBuffer = new byte[maxLength];
+                    }
+                    compressedLens[i] = table.compress(sampleArray, starts[i], lens[i], compressBuffer, 0);
+                    compressed.write(compressBuffer, 0, compressedLens[i]);
+                }
+                long fsstBytes = table.serializedSize() + compressed.size() + (long) valueNum * Short.BYTES;
+                decideChunkEncoding(fsstBytes, plainBytes);
+            }
+            if (chunkEncoded)
+            {
+                symbolTable = table;
+                compressed.writeTo(outputStream);
+                for (int i = 0; i < valueNum; i++)
+                {
+                    lensArray.add(compressedLens[i]);
+                }
+            }
+            else
+            {
+                outputStream.write(sampleArray, 0, sampleArray.length);
+                for (int i = 0; i < valueNum; i++)
+                {
+                    lensArray.add(lens[i]);
+                }
+            }
+            dictionary.clear();
+            curPixelVectorIndex = 0;
+        }
+        sampleBytes = 0;
+    }
+
     @Override
     public void flush()
             throws IOException
     {
         // flush out pixels field
         super.flush();
-        // check if continue using dictionary encoding or not in the coming chunks
-        if (!doneDictionaryEncodingCheck)
+        // flush out other fields
+        if (symbolTable != null)
         {
-            checkDictionaryEncoding();
+            flushLens();
+            flushSymbolTable();
         }
-        // flush out other fields
-        if (currentUseDictionaryEncoding)
+        else if (chunkEncoded)
         {
             flushDictionary();
         }
@@ -198,7 +335,12 @@ public class StringColumnWriter extends BaseColumnWriter
     @Override
     public PixelsProto.ColumnEncoding.Builder getColumnChunkEncoding()
     {
-        if (currentUseDictionaryEncoding)
+        if (symbolTable != null)
+        {
+            return PixelsProto.ColumnEncoding.newBuilder()
+                    .setKind(PixelsProto.ColumnEncoding.Kind.FSST);
+        }
+        if (chunkEncoded)
         {
             return PixelsProto.ColumnEncoding.newBuilder()
                     .setKind(PixelsProto.ColumnEncoding.Kind.DICTIONARY)
@@ -208,6 +350,19 @@ public class StringColumnWriter extends BaseColumnWriter
                 .setKind(PixelsProto.ColumnEncoding.Kind.NONE);
     }
 
+    /**
+     * The dictionary is built for each column chunk, and the encoding of the next chunk is decided again.
+     */
+    @Override
+    public void reset()
+    {
+        super.reset();
+        lensArray.clear();
+        dictionary.clear();
+        sampleBytes = 0;
+        symbolTable = null;
+    }
+
     @Override
     public void close()
             throws IOException
@@ -235,6 +390,17 @@ public class StringColumnWriter extends BaseColumnWriter
         outputStream.write(offsetBuf.array());
     }
 
+    private void flushSymbolTable()
+            throws IOException
+    {
+        int symbolTableFieldOffset = outputStream.size();
+        symbolTable.writeTo(outputStream);
+
+        ByteBuffer offsetBuf = ByteBuffer.allocate(Integer.BYTES);
+        offsetBuf.putInt(symbolTableFieldOffset);
+        outputStream.write(offsetBuf.array());
+    }
+
     private void flushDictionary()
             throws IOException
     {
@@ -279,12 +445,4 @@ public class StringColumnWriter extends BaseColumnWriter
         offsetsBuf.putInt(ordersFieldOffset);
         outputStream.write(offsetsBuf.array());
     }
-
-    private void checkDictionaryEncoding()
-    {
-        int valueNum = outputStream.size() / Integer.BYTES;
-        float ratio = valueNum > 0 ? (float) dictionary.size() / valueNum : 0.0f;
-        futureUseDictionaryEncoding = ratio <= Constants.DICT_KEY_SIZE_THRESHOLD;
-        doneDictionaryEncodingCheck = true;
-    }
 }
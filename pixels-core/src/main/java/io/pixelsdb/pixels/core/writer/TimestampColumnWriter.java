@@ -99,11 +99,21 @@ public class TimestampColumnWriter extends BaseColumnWriter
             pixelStatRecorder.updateTimestamp(curPixelVector[i]);
         }
 
-        if (isEncoding)
+        byte[] encoded = null;
+        if (!chunkEncodingDecided || chunkEncoded)
         {
             long[] values = new long[curPixelVectorIndex];
             System.arraycopy(curPixelVector, 0, values, 0, curPixelVectorIndex);
-            outputStream.write(encoder.encode(values));
+            encoded = encoder.encode(values);
+        }
+        if (!chunkEncodingDecided)
+        {
+            // the first pixel of the column chunk is the sample to decide the encoding of the chunk.
+            decideChunkEncoding(encoded.length, (long) curPixelVectorIndex * Long.BYTES);
+        }
+        if (chunkEncoded)
+        {
+            outputStream.write(encoded);
         }
         else
         {
@@ -122,7 +132,7 @@ public class TimestampColumnWriter extends BaseColumnWriter
     @Override
     public PixelsProto.ColumnEncoding.Builder getColumnChunkEncoding()
     {
-        if (isEncoding)
+        if (chunkEncoded)
         {
             return PixelsProto.ColumnEncoding.newBuilder()
                     .setKind(PixelsProto.ColumnEncoding.Kind.RUNLENGTH);
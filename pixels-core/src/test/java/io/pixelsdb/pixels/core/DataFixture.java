@@ -0,0 +1,276 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.core;
+
+import io.pixelsdb.pixels.common.physical.Storage;
+import io.pixelsdb.pixels.common.physical.StorageFactory;
+import io.pixelsdb.pixels.core.exception.PixelsWriterException;
+import io.pixelsdb.pixels.core.vector.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+import java.util.function.LongFunction;
+import java.util.function.LongPredicate;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The fixture of the tests that write the rows derived from the row ids into the column vectors, or into
+ * the files in a temporary directory, and check the rows read back.
+ */
+public class DataFixture implements AutoCloseable
+{
+    public static final int PIXEL_STRIDE = 100;
+
+    /**
+     * The values of a column derived from the row ids. The values are the longs stored in the column
+     * vectors, e.g., the bits of the floats and doubles, the unscaled decimals, and the days of the dates,
+     * or the strings of the string and binary columns.
+     */
+    public static class Column
+    {
+        private final String name;
+        private final String type;
+        private final LongPredicate isNull;
+        private final LongFunction<Object> valueOf;
+
+        public Column(String name, String type, LongPredicate isNull, LongFunction<Object> valueOf)
+        {
+            this.name = name;
+            this.type = type;
+            this.isNull = isNull;
+            this.valueOf = valueOf;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public boolean isNull(long row)
+        {
+            return isNull.test(row);
+        }
+
+        public Object valueOf(long row)
+        {
+            return valueOf.apply(row);
+        }
+    }
+
+    public static String schemaOf(Column... columns)
+    {
+        StringBuilder builder = new StringBuilder("struct<");
+        for (int i = 0; i < columns.length; ++i)
+        {
+            builder.append(i > 0 ? "," : "").append(columns[i].name).append(':').append(columns[i].type);
+        }
+        return builder.append('>').toString();
+    }
+
+    /**
+     * Set the value of the row into the element of the column vector.
+     */
+    public static void set(ColumnVector vector, int index, Column column, long row)
+    {
+        if (column.isNull(row))
+        {
+            vector.isNull[index] = true;
+            vector.noNulls = false;
+            return;
+        }
+        vector.isNull[index] = false;
+        Object value = column.valueOf(row);
+        if (value instanceof String)
+        {
+            ((BinaryColumnVector) vector).setVal(index, ((String) value).getBytes());
+            return;
+        }
+        long v = (Long) value;
+        if (vector instanceof LongColumnVector)
+        {
+            ((LongColumnVector) vector).vector[index] = v;
+        }
+        else if (vector instanceof ByteColumnVector)
+        {
+            ((ByteColumnVector) vector).vector[index] = (byte) v;
+        }
+        else if (vector instanceof DoubleColumnVector)
+        {
+            ((DoubleColumnVector) vector).vector[index] = v;
+        }
+        else if (vector instanceof DecimalColumnVector)
+        {
+            ((DecimalColumnVector) vector).vector[index] = v;
+        }
+        else if (vector instanceof DateColumnVector)
+        {
+            ((DateColumnVector) vector).dates[index] = (int) v;
+        }
+        else if (vector instanceof TimeColumnVector)
+        {
+            ((TimeColumnVector) vector).times[index] = (int) v;
+        }
+        else
+        {
+            ((TimestampColumnVector) vector).set(index, new Timestamp(v));
+        }
+    }
+
+    private static Object get(ColumnVector vector, int index)
+    {
+        if (vector instanceof BinaryColumnVector)
+        {
+            BinaryColumnVector v = (BinaryColumnVector) vector;
+            return new String(v.vector[index], v.start[index], v.lens[index]);
+        }
+        if (vector instanceof LongColumnVector)
+        {
+            return ((LongColumnVector) vector).vector[index];
+        }
+        if (vector instanceof ByteColumnVector)
+        {
+            return (long) ((ByteColumnVector) vector).vector[index];
+        }
+        if (vector instanceof DoubleColumnVector)
+        {
+            return ((DoubleColumnVector) vector).vector[index];
+        }
+        if (vector instanceof DecimalColumnVector)
+        {
+            return ((DecimalColumnVector) vector).vector[index];
+        }
+        if (vector instanceof DateColumnVector)
+        {
+            return (long) ((DateColumnVector) vector).dates[index];
+        }
+        if (vector instanceof TimeColumnVector)
+        {
+            return (long) ((TimeColumnVector) vector).times[index];
+        }
+        return ((TimestampColumnVector) vector).times[index];
+    }
+
+    /**
+     * Assert that the element of the column vector is the value of the row.
+     */
+    public static void assertRow(String message, Column column, long row, ColumnVector vector, int index)
+    {
+        assertEquals(message, column.isNull(row), vector.isNull[index]);
+        if (!column.isNull(row))
+        {
+            assertEquals(message, column.valueOf(row), get(vector, index));
+        }
+    }
+
+    private final Storage storage;
+    private final File dir;
+
+    /**
+     * Create the fixture on a new temporary directory of the local file system.
+     */
+    public DataFixture(String prefix) throws IOException
+    {
+        this.storage = StorageFactory.Instance().getStorage("file");
+        this.dir = Files.createTempDirectory(prefix).toFile();
+    }
+
+    public Storage getStorage()
+    {
+        return storage;
+    }
+
+    public String pathOf(String name)
+    {
+        return new File(dir, name).getPath();
+    }
+
+    /**
+     * Write the rows [firstRow, firstRow + numRows) of the columns into a file in the temporary directory.
+     * @param rowGroupRows the number of rows in each row group, the last row group may have fewer rows
+     * @return the path of the file
+     */
+    public String writeFile(String name, long firstRow, long numRows, int rowGroupRows, boolean encoding,
+                            Column... columns) throws IOException, PixelsWriterException
+    {
+        String path = pathOf(name);
+        TypeDescription schema = TypeDescription.fromString(schemaOf(columns));
+        PixelsWriter writer = PixelsWriterImpl.newBuilder()
+                .setSchema(schema)
+                .setPixelStride(PIXEL_STRIDE)
+                // each row batch of rowGroupRows rows is written as a row group.
+                .setRowGroupSize(1)
+                .setStorage(storage)
+                .setFilePath(path)
+                .setBlockSize(1024L * 1024L * 1024L)
+                .setReplication((short) 1)
+                .setBlockPadding(false)
+                .setEncoding(encoding)
+                .build();
+        VectorizedRowBatch rowBatch = schema.createRowBatch(rowGroupRows);
+        for (long r = firstRow; r < firstRow + numRows; ++r)
+        {
+            int row = rowBatch.size++;
+            for (int i = 0; i < columns.length; ++i)
+            {
+                set(rowBatch.cols[i], row, columns[i], r);
+            }
+            if (rowBatch.size == rowGroupRows)
+            {
+                writer.addRowBatch(rowBatch);
+                rowBatch.reset();
+            }
+        }
+        if (rowBatch.size > 0)
+        {
+            writer.addRowBatch(rowBatch);
+        }
+        writer.close();
+        return path;
+    }
+
+    public PixelsReader open(String path) throws IOException
+    {
+        return PixelsReaderImpl.newBuilder()
+                .setStorage(storage)
+                .setPath(path)
+                .setPixelsFooterCache(new PixelsFooterCache())
+                .build();
+    }
+
+    /**
+     * Delete the files and the temporary directory.
+     */
+    @Override
+    public void close()
+    {
+        File[] files = dir.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
@@ -24,10 +24,15 @@ import io.pixelsdb.pixels.core.utils.BitUtils;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Random;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * pixels
@@ -156,4 +161,49 @@ public class TestEncoding
         System.arraycopy(bytesRes, 0, bytes, 0, TestParams.rowNum);
         assertArrayEquals(exp, bytes);
     }
+
+    @Test
+    public void fsstTest() throws IOException
+    {
+        Random random = new Random(0);
+        String[] hosts = {"www.example.com", "pixelsdb.io", "github.com"};
+        String[] paths = {"/index.html", "/api/v1/query?id=", "/static/js/main.js?v="};
+        int num = 1000;
+        byte[][] values = new byte[num][];
+        ByteArrayOutputStream sample = new ByteArrayOutputStream();
+        int[] starts = new int[num];
+        int[] lens = new int[num];
+        for (int i = 0; i < num; i++)
+        {
+            String url = "https://" + hosts[random.nextInt(hosts.length)] +
+                    paths[random.nextInt(paths.length)] + random.nextInt(100000);
+            values[i] = url.getBytes(StandardCharsets.UTF_8);
+            starts[i] = sample.size();
+            lens[i] = values[i].length;
+            sample.write(values[i]);
+        }
+        FsstSymbolTable table = FsstSymbolTable.train(sample.toByteArray(), starts, lens, num);
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        table.writeTo(serialized);
+        assertEquals(table.serializedSize(), serialized.size());
+        FsstSymbolTable readTable = FsstSymbolTable.readFrom(ByteBuffer.wrap(serialized.toByteArray()));
+
+        int plainBytes = 0, compressedBytes = 0;
+        for (byte[] value : values)
+        {
+            byte[] compressed = table.compress(value, 0, value.length);
+            byte[] decompressed = new byte[FsstSymbolTable.maxDecompressedLength(compressed.length)];
+            int length = readTable.decompress(compressed, 0, compressed.length, decompressed, 0);
+            assertEquals(value.length, length);
+            for (int i = 0; i < length; i++)
+            {
+                assertEquals(value[i], decompressed[i]);
+            }
+            // equal strings have equal compressed bytes.
+            assertArrayEquals(compressed, table.compress(value.clone(), 0, value.length));
+            plainBytes += value.length;
+            compressedBytes += compressed.length;
+        }
+        assertTrue(compressedBytes * 2 < plainBytes);
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.core.reader;
+
+import io.pixelsdb.pixels.core.DataFixture;
+import io.pixelsdb.pixels.core.DataFixture.Column;
+import io.pixelsdb.pixels.core.PixelsProto;
+import io.pixelsdb.pixels.core.TypeDescription;
+import io.pixelsdb.pixels.core.vector.LongColumnVector;
+import io.pixelsdb.pixels.core.writer.ColumnWriter;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class TestIntegerColumnReader
+{
+    private static final int PIXEL_STRIDE = 100;
+    private static final int NUM_ROWS = 350;
+
+    private static boolean isNull(long row)
+    {
+        // the nulls are in the second and the last pixel.
+        return (row >= 100 && row < 200 && row % 9 == 0) || row == NUM_ROWS - 1;
+    }
+
+    private static long valueOf(long row, boolean isLong)
+    {
+        return isLong ? (row % 2 == 0 ? Long.MAX_VALUE - row : Long.MIN_VALUE + row) : (row % 2 == 0 ? row : -row);
+    }
+
+    /**
+     * Write a column chunk of several pixels, and read it with the given number of rows in each read,
+     * so that the reads start and end inside the pixels and across the pixel boundaries.
+     */
+    private void testRoundtrip(String type, boolean encoding, int readSize) throws IOException
+    {
+        TypeDescription schema = TypeDescription.fromString(type);
+        boolean isLong = schema.getCategory() == TypeDescription.Category.LONG;
+        Column column = new Column("v", type, TestIntegerColumnReader::isNull, r -> valueOf(r, isLong));
+        ColumnWriter writer = ColumnWriter.newColumnWriter(schema, PIXEL_STRIDE, encoding);
+        LongColumnVector vector = new LongColumnVector(NUM_ROWS);
+        for (int i = 0; i < NUM_ROWS; ++i)
+        {
+            DataFixture.set(vector, i, column, i);
+        }
+        writer.write(vector, NUM_ROWS);
+        writer.flush();
+        ByteBuffer chunk = ByteBuffer.wrap(writer.getColumnChunkContent());
+        PixelsProto.ColumnChunkIndex chunkIndex = writer.getColumnChunkIndex().build();
+        PixelsProto.ColumnEncoding chunkEncoding = writer.getColumnChunkEncoding().build();
+        if (!encoding)
+        {
+            assertEquals(PixelsProto.ColumnEncoding.Kind.NONE, chunkEncoding.getKind());
+        }
+        assertEquals(4, chunkIndex.getPixelPositionsCount());
+
+        ColumnReader reader = ColumnReader.newColumnReader(schema);
+        LongColumnVector result = new LongColumnVector(NUM_ROWS);
+        for (int offset = 0; offset < NUM_ROWS; offset += readSize)
+        {
+            int size = Math.min(readSize, NUM_ROWS - offset);
+            reader.read(chunk, chunkEncoding, offset, size, PIXEL_STRIDE, offset, result, chunkIndex);
+        }
+        for (int i = 0; i < NUM_ROWS; ++i)
+        {
+            DataFixture.assertRow(type + " row " + i, column, i, result, i);
+        }
+        reader.close();
+        writer.close();
+    }
+
+    @Test
+    public void testMultiPixelNoneInt() throws IOException
+    {
+        for (int readSize : new int[]{NUM_ROWS, PIXEL_STRIDE, 30, 1})
+        {
+            testRoundtrip("int", false, readSize);
+        }
+    }
+
+    @Test
+    public void testMultiPixelNoneLong() throws IOException
+    {
+        for (int readSize : new int[]{NUM_ROWS, PIXEL_STRIDE, 30, 1})
+        {
+            testRoundtrip("bigint", false, readSize);
+        }
+    }
+
+    @Test
+    public void testMultiPixelEncoded() throws IOException
+    {
+        for (int readSize : new int[]{NUM_ROWS, PIXEL_STRIDE, 30, 1})
+        {
+            testRoundtrip("int", true, readSize);
+            testRoundtrip("bigint", true, readSize);
+        }
+    }
+}
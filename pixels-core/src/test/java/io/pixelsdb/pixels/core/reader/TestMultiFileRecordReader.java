@@ -0,0 +1,289 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.core.reader;
+
+import io.pixelsdb.pixels.core.DataFixture;
+import io.pixelsdb.pixels.core.DataFixture.Column;
+import io.pixelsdb.pixels.core.PixelsFooterCache;
+import io.pixelsdb.pixels.core.TypeDescription;
+import io.pixelsdb.pixels.core.exception.PixelsWriterException;
+import io.pixelsdb.pixels.core.vector.BinaryColumnVector;
+import io.pixelsdb.pixels.core.vector.LongColumnVector;
+import io.pixelsdb.pixels.core.vector.VectorizedRowBatch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestMultiFileRecordReader
+{
+    private static final Column ID = new Column("id", "bigint", r -> false, r -> r);
+    private static final Column NAME = new Column("name", "string", r -> false, r -> "name-" + r);
+    private static final String SCHEMA = DataFixture.schemaOf(ID, NAME);
+
+    private DataFixture fixture;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        fixture = new DataFixture("pixels-multi-file");
+    }
+
+    @After
+    public void tearDown()
+    {
+        fixture.close();
+    }
+
+    /**
+     * Write a file of which the rows have the ids in [firstId, firstId + numRows).
+     */
+    private String writeFile(String name, long firstId, int numRows, Column... columns)
+            throws IOException, PixelsWriterException
+    {
+        return fixture.writeFile(name, firstId, numRows, 256, true, columns);
+    }
+
+    private String writeFile(String name, long firstId, int numRows) throws IOException, PixelsWriterException
+    {
+        return writeFile(name, firstId, numRows, ID, NAME);
+    }
+
+    private MultiFileRecordReader newReader(List<String> paths, String[] columns, int parallelism)
+    {
+        PixelsReaderOption option = new PixelsReaderOption();
+        option.includeCols(columns);
+        return MultiFileRecordReader.newBuilder()
+                .setStorage(fixture.getStorage())
+                .setPaths(paths)
+                .setOption(option)
+                .setParallelism(parallelism)
+                .setPixelsFooterCache(new PixelsFooterCache())
+                .build();
+    }
+
+    @Test
+    public void testReadInOrder() throws Exception
+    {
+        List<String> paths = new ArrayList<>();
+        int[] numRows = {300, 0, 1, 1000, 57, 250};
+        long totalRows = 0;
+        for (int i = 0; i < numRows.length; ++i)
+        {
+            paths.add(writeFile("file-" + i + ".pxl", totalRows, numRows[i]));
+            totalRows += numRows[i];
+        }
+
+        MultiFileRecordReader reader = newReader(paths, new String[]{"id", "name"}, 2);
+        assertEquals(TypeDescription.fromString(SCHEMA).toString(), reader.getResultSchema().toString());
+        long nextId = 0;
+        while (true)
+        {
+            VectorizedRowBatch rowBatch = reader.readBatch(128);
+            LongColumnVector ids = (LongColumnVector) rowBatch.cols[0];
+            BinaryColumnVector names = (BinaryColumnVector) rowBatch.cols[1];
+            for (int i = 0; i < rowBatch.size; ++i)
+            {
+                assertEquals(nextId, ids.vector[i]);
+                assertEquals("name-" + nextId, new String(names.vector[i], names.start[i], names.lens[i]));
+                nextId++;
+            }
+            // only the last row batch of the last file is marked as end of file.
+            assertEquals(nextId == totalRows, rowBatch.endOfFile);
+            if (rowBatch.endOfFile)
+            {
+                break;
+            }
+        }
+        assertTrue(reader.isEndOfFile());
+        assertEquals(totalRows, reader.getRowNumber());
+        reader.close();
+    }
+
+    @Test
+    public void testEndOfFileSchema() throws Exception
+    {
+        List<String> paths = Arrays.asList(
+                writeFile("a.pxl", 0, 10),
+                writeFile("b.pxl", 10, 10));
+        MultiFileRecordReader reader = newReader(paths, new String[]{"name"}, 4);
+        int numRows = 0;
+        VectorizedRowBatch rowBatch;
+        do
+        {
+            rowBatch = reader.readBatch(7);
+            numRows += rowBatch.size;
+        } while (!rowBatch.endOfFile);
+        assertEquals(20, numRows);
+
+        // the row batch read after the end of file has the projected schema.
+        rowBatch = reader.readBatch(7);
+        assertTrue(rowBatch.endOfFile);
+        assertEquals(0, rowBatch.size);
+        assertEquals(1, rowBatch.numCols);
+        assertEquals(1, rowBatch.projectionSize);
+        assertTrue(rowBatch.cols[0] instanceof BinaryColumnVector);
+        reader.close();
+    }
+
+    @Test
+    public void testOptionNotChanged() throws Exception
+    {
+        List<String> paths = Arrays.asList(
+                writeFile("a.pxl", 0, 10),
+                writeFile("b.pxl", 10, 10));
+        PixelsReaderOption option = new PixelsReaderOption();
+        option.includeCols(new String[]{"id"});
+        MultiFileRecordReader reader = MultiFileRecordReader.newBuilder()
+                .setStorage(fixture.getStorage())
+                .setPaths(paths)
+                .setOption(option)
+                .setPixelsFooterCache(new PixelsFooterCache())
+                .build();
+        // the option of the caller is still synchronous, the copy in the reader prefetches.
+        assertEquals(0, option.getPrefetchDepth());
+        int numRows = 0;
+        VectorizedRowBatch rowBatch;
+        do
+        {
+            rowBatch = reader.readBatch(8);
+            numRows += rowBatch.size;
+        } while (!rowBatch.endOfFile);
+        assertEquals(20, numRows);
+        reader.close();
+        assertEquals(0, option.getPrefetchDepth());
+    }
+
+    @Test
+    public void testNoFile() throws IOException
+    {
+        MultiFileRecordReader reader = newReader(new ArrayList<>(), new String[]{"id"}, 4);
+        VectorizedRowBatch rowBatch = reader.readBatch(16);
+        assertTrue(rowBatch.endOfFile);
+        assertEquals(0, rowBatch.size);
+        assertTrue(reader.isEndOfFile());
+        reader.close();
+    }
+
+    @Test
+    public void testSchemaMismatch() throws Exception
+    {
+        List<String> paths = Arrays.asList(
+                writeFile("a.pxl", 0, 10),
+                writeFile("b.pxl", 10, 10, new Column("id", "int", r -> false, r -> r), NAME));
+        MultiFileRecordReader reader = newReader(paths, new String[]{"id", "name"}, 2);
+        try
+        {
+            while (!reader.readBatch(16).endOfFile)
+            {
+            }
+            fail("the files of different result schemas should not be read as a stream");
+        }
+        catch (IOException e)
+        {
+            assertTrue(e.getMessage().contains("does not match"));
+        }
+        reader.close();
+    }
+
+    @Test
+    public void testMissingFile() throws Exception
+    {
+        List<String> paths = Arrays.asList(
+                writeFile("a.pxl", 0, 10),
+                fixture.pathOf("missing.pxl"));
+        MultiFileRecordReader reader = newReader(paths, new String[]{"id"}, 2);
+        try
+        {
+            while (!reader.readBatch(16).endOfFile)
+            {
+            }
+            fail("the missing file should fail the read");
+        }
+        catch (IOException e)
+        {
+            assertTrue(e.getMessage().contains("missing.pxl"));
+        }
+        reader.close();
+    }
+
+    @Test
+    public void testCloseBeforeReadToEnd() throws Exception
+    {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 8; ++i)
+        {
+            paths.add(writeFile("file-" + i + ".pxl", i * 100, 100));
+        }
+        MultiFileRecordReader reader = newReader(paths, new String[]{"id"}, 4);
+        assertEquals(0, ((LongColumnVector) reader.readBatch(16).cols[0]).vector[0]);
+        // the file being read and the files opened ahead are closed.
+        reader.close();
+        try
+        {
+            reader.readBatch(16);
+            fail("read after close should fail");
+        }
+        catch (IOException e)
+        {
+            assertEquals("record reader is closed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testUnsupported() throws IOException
+    {
+        MultiFileRecordReader reader = newReader(new ArrayList<>(), new String[]{"id"}, 1);
+        try
+        {
+            reader.prepareBatch(16);
+            fail("prepareBatch should not be supported");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            assertNotNull(e.getMessage());
+        }
+        try
+        {
+            reader.seekToRow(0);
+            fail("seekToRow should not be supported");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            assertNotNull(e.getMessage());
+        }
+        try
+        {
+            reader.skip(1);
+            fail("skip should not be supported");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            assertNotNull(e.getMessage());
+        }
+        reader.close();
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.core.reader;
+
+import io.pixelsdb.pixels.core.TypeDescription;
+import io.pixelsdb.pixels.core.vector.LongColumnVector;
+import io.pixelsdb.pixels.core.vector.VectorizedRowBatch;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TestPrefetchingRecordReader
+{
+    private static final TypeDescription SCHEMA = TypeDescription.fromString("struct<a:bigint>");
+
+    /**
+     * The record reader of which the i-th row batch has one row with the value i.
+     */
+    static class SequenceRecordReader implements PixelsRecordReader
+    {
+        private final int numBatches;
+        final AtomicInteger numRead = new AtomicInteger(0);
+        private final AtomicInteger running = new AtomicInteger(0);
+        volatile boolean concurrentReads = false;
+        volatile boolean closed = false;
+        /**
+         * The index of the row batch at which the read fails, or -1.
+         */
+        volatile int failAt = -1;
+        volatile RuntimeException failure = null;
+        /**
+         * The reads wait for this latch if it is not null.
+         */
+        volatile CountDownLatch blocker = null;
+        final CountDownLatch readStarted = new CountDownLatch(1);
+
+        SequenceRecordReader(int numBatches)
+        {
+            this.numBatches = numBatches;
+        }
+
+        @Override
+        public VectorizedRowBatch readBatch(int batchSize, boolean reuse) throws IOException
+        {
+            if (running.incrementAndGet() > 1)
+            {
+                concurrentReads = true;
+            }
+            try
+            {
+                readStarted.countDown();
+                if (blocker != null)
+                {
+                    blocker.await();
+                }
+                int i = numRead.getAndIncrement();
+                if (i == failAt)
+                {
+                    if (failure != null)
+                    {
+                        throw failure;
+                    }
+                    throw new IOException("failed to read row batch " + i);
+                }
+                VectorizedRowBatch rowBatch = SCHEMA.createRowBatch(batchSize);
+                if (i < numBatches)
+                {
+                    ((LongColumnVector) rowBatch.cols[0]).vector[0] = i;
+                    rowBatch.size = 1;
+                }
+                rowBatch.endOfFile = i >= numBatches - 1;
+                return rowBatch;
+            }
+            catch (InterruptedException e)
+            {
+                throw new IOException(e);
+            }
+            finally
+            {
+                running.decrementAndGet();
+            }
+        }
+
+        @Override
+        public int prepareBatch(int batchSize)
+        {
+            return batchSize;
+        }
+
+        @Override
+        public VectorizedRowBatch readBatch(int batchSize) throws IOException
+        {
+            return readBatch(batchSize, false);
+        }
+
+        @Override
+        public VectorizedRowBatch readBatch(boolean reuse) throws IOException
+        {
+            return readBatch(VectorizedRowBatch.DEFAULT_SIZE, reuse);
+        }
+
+        @Override
+        public VectorizedRowBatch readBatch() throws IOException
+        {
+            return readBatch(VectorizedRowBatch.DEFAULT_SIZE, false);
+        }
+
+        @Override
+        public TypeDescription getResultSchema()
+        {
+            return SCHEMA;
+        }
+
+        @Override
+        public boolean isEndOfFile()
+        {
+            return numRead.get() >= numBatches;
+        }
+
+        @Override
+        public long getRowNumber()
+        {
+            return Math.min(numRead.get(), numBatches);
+        }
+
+        @Override
+        public boolean seekToRow(long rowIndex)
+        {
+            return false;
+        }
+
+        @Override
+        public boolean skip(long rowNum)
+        {
+            return false;
+        }
+
+        @Override
+        public long getCompletedBytes()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getReadTimeNanos()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getMemoryUsage()
+        {
+            return 0;
+        }
+
+        @Override
+        public void close()
+        {
+            closed = true;
+        }
+    }
+
+    private static long valueOf(VectorizedRowBatch rowBatch)
+    {
+        return ((LongColumnVector) rowBatch.cols[0]).vector[0];
+    }
+
+    @Test
+    public void testOrder() throws IOException
+    {
+        SequenceRecordReader underlying = new SequenceRecordReader(20);
+        PrefetchingRecordReader reader = new PrefetchingRecordReader(underlying, 3);
+        for (int i = 0; i < 20; ++i)
+        {
+            assertFalse(reader.isEndOfFile());
+            VectorizedRowBatch rowBatch = reader.readBatch(16, i % 2 == 0);
+            assertEquals(1, rowBatch.size);
+            assertEquals(i, valueOf(rowBatch));
+            assertEquals(i == 19, rowBatch.endOfFile);
+        }
+        assertTrue(reader.isEndOfFile());
+        // the underlying reader is read by one thread at a time, and not beyond the end of file.
+        assertFalse(underlying.concurrentReads);
+        assertEquals(20, underlying.numRead.get());
+
+        VectorizedRowBatch rowBatch = reader.readBatch(16);
+        assertEquals(0, rowBatch.size);
+        assertTrue(rowBatch.endOfFile);
+        reader.close();
+        assertTrue(underlying.closed);
+    }
+
+    @Test
+    public void testCloseWhilePrefetching() throws Exception
+    {
+        SequenceRecordReader underlying = new SequenceRecordReader(100);
+        underlying.blocker = new CountDownLatch(1);
+        PrefetchingRecordReader reader = new PrefetchingRecordReader(underlying, 4);
+        reader.prefetch(16);
+        assertTrue(underlying.readStarted.await(10, TimeUnit.SECONDS));
+
+        CompletableFuture<Void> closing = CompletableFuture.runAsync(() ->
+        {
+            try
+            {
+                reader.close();
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        });
+        // close waits for the running read before closing the underlying reader.
+        Thread.sleep(100);
+        assertFalse(closing.isDone());
+        assertFalse(underlying.closed);
+
+        underlying.blocker.countDown();
+        closing.get(10, TimeUnit.SECONDS);
+        assertTrue(underlying.closed);
+        // the reads scheduled behind the running read are skipped.
+        assertEquals(1, underlying.numRead.get());
+        try
+        {
+            reader.readBatch(16);
+            fail("read after close should fail");
+        }
+        catch (IOException e)
+        {
+            assertEquals("record reader is closed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testErrorPropagation() throws IOException
+    {
+        SequenceRecordReader underlying = new SequenceRecordReader(10);
+        underlying.failAt = 2;
+        PrefetchingRecordReader reader = new PrefetchingRecordReader(underlying, 4);
+        assertEquals(0, valueOf(reader.readBatch(16)));
+        assertEquals(1, valueOf(reader.readBatch(16)));
+        try
+        {
+            reader.readBatch(16);
+            fail("the failure of the underlying reader should be propagated");
+        }
+        catch (IOException e)
+        {
+            assertEquals("failed to read row batch 2", e.getMessage());
+        }
+        reader.close();
+        assertTrue(underlying.closed);
+    }
+
+    @Test
+    public void testUncheckedErrorPropagation() throws IOException
+    {
+        SequenceRecordReader underlying = new SequenceRecordReader(10);
+        underlying.failAt = 0;
+        underlying.failure = new IllegalStateException("corrupted chunk");
+        PrefetchingRecordReader reader = new PrefetchingRecordReader(underlying, 2);
+        try
+        {
+            reader.readBatch(16);
+            fail("the failure of the underlying reader should be propagated");
+        }
+        catch (IOException e)
+        {
+            assertSame(underlying.failure, e.getCause());
+        }
+        reader.close();
+    }
+
+    @Test
+    public void testSeekAndSkipUnsupported() throws IOException
+    {
+        PrefetchingRecordReader reader = new PrefetchingRecordReader(new SequenceRecordReader(1), 1);
+        try
+        {
+            reader.seekToRow(0);
+            fail("seekToRow should not be supported");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            assertNotNull(e.getMessage());
+        }
+        try
+        {
+            reader.skip(1);
+            fail("skip should not be supported");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            assertNotNull(e.getMessage());
+        }
+        reader.close();
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.core.reader;
+
+import io.pixelsdb.pixels.core.DataFixture;
+import io.pixelsdb.pixels.core.DataFixture.Column;
+import io.pixelsdb.pixels.core.PixelsReader;
+import io.pixelsdb.pixels.core.exception.PixelsWriterException;
+import io.pixelsdb.pixels.core.vector.VectorizedRowBatch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static io.pixelsdb.pixels.core.DataFixture.PIXEL_STRIDE;
+import static org.junit.Assert.*;
+
+/**
+ * The tests of {@link PixelsRecordReader#readRows(long[])}. The files have 5 row groups of 1000 rows,
+ * and the pixel stride is 100. The row of row id r has id = r, and the values of the other columns are
+ * derived from r, each column has its own period of nulls.
+ */
+public class TestReadRows
+{
+    private static final int ROW_GROUP_ROWS = 1000;
+    private static final int NUM_ROW_GROUPS = 5;
+    private static final int NUM_ROWS = ROW_GROUP_ROWS * NUM_ROW_GROUPS;
+
+    private static final Column[] COLUMNS = {
+            new Column("id", "bigint", r -> false, r -> r),
+            new Column("v", "int", r -> r % 7 == 3, r -> (r * 31) % 1000 - 500),
+            new Column("s", "string", r -> r % 5 == 1, r -> "s" + (r % 97)),
+            new Column("b", "boolean", r -> r % 11 == 4, r -> r % 3 == 0 ? 1L : 0L),
+            new Column("sh", "smallint", r -> r % 13 == 5, r -> (r * 17) % 60000 - 30000),
+            new Column("f", "float", r -> r % 17 == 6, r -> (long) Float.floatToIntBits((r % 400) * 0.25f - 50)),
+            new Column("d", "double", r -> r % 19 == 7, r -> Double.doubleToLongBits(r * 1.5 - 3000.125)),
+            new Column("dec", "decimal(10,2)", r -> r % 23 == 8, r -> (r * 12345) % 100000000 - 50000000),
+            new Column("dt", "date", r -> r % 29 == 9, r -> 18000 + r % 3650),
+            new Column("t", "time", r -> r % 31 == 10, r -> (r * 7001) % 86400000),
+            new Column("ts", "timestamp", r -> r % 37 == 11, r -> 1600000000000L + r * 1001)
+    };
+
+    private static final String[] ALL_COLUMNS = new String[COLUMNS.length];
+
+    static
+    {
+        for (int i = 0; i < COLUMNS.length; ++i)
+        {
+            ALL_COLUMNS[i] = COLUMNS[i].getName();
+        }
+    }
+
+    private DataFixture fixture;
+    /**
+     * The file with encoded column chunks, and the file with the column chunks of NONE encoding.
+     */
+    private String[] paths;
+
+    @Before
+    public void setUp() throws IOException, PixelsWriterException
+    {
+        fixture = new DataFixture("pixels-read-rows");
+        paths = new String[]{
+                fixture.writeFile("encoded.pxl", 0, NUM_ROWS, ROW_GROUP_ROWS, true, COLUMNS),
+                fixture.writeFile("none.pxl", 0, NUM_ROWS, ROW_GROUP_ROWS, false, COLUMNS)};
+    }
+
+    @After
+    public void tearDown()
+    {
+        fixture.close();
+    }
+
+    private static Column columnOf(String name)
+    {
+        for (Column column : COLUMNS)
+        {
+            if (column.getName().equals(name))
+            {
+                return column;
+            }
+        }
+        throw new IllegalArgumentException("no column " + name);
+    }
+
+    private VectorizedRowBatch readRows(String path, String[] columns, long[] rowIds) throws IOException
+    {
+        PixelsReader pixelsReader = fixture.open(path);
+        try
+        {
+            assertEquals(NUM_ROW_GROUPS, pixelsReader.getRowGroupNum());
+            PixelsReaderOption option = new PixelsReaderOption();
+            option.includeCols(columns);
+            PixelsRecordReader recordReader = pixelsReader.read(option);
+            return recordReader.readRows(rowIds);
+        }
+        finally
+        {
+            pixelsReader.close();
+        }
+    }
+
+    /**
+     * Read the rows from both files and check the values of the given columns.
+     */
+    private void checkRows(String[] columns, long[] rowIds) throws IOException
+    {
+        for (String path : paths)
+        {
+            VectorizedRowBatch rowBatch = readRows(path, columns, rowIds);
+            assertEquals(rowIds.length, rowBatch.size);
+            for (int c = 0; c < columns.length; ++c)
+            {
+                Column column = columnOf(columns[c]);
+                for (int i = 0; i < rowIds.length; ++i)
+                {
+                    DataFixture.assertRow(path + ": column " + columns[c] + ", row " + rowIds[i],
+                            column, rowIds[i], rowBatch.cols[c], i);
+                }
+            }
+        }
+    }
+
+    private void checkRows(long[] rowIds) throws IOException
+    {
+        checkRows(ALL_COLUMNS, rowIds);
+    }
+
+    @Test
+    public void testSortedRowIds() throws IOException
+    {
+        checkRows(new long[]{0, 1, 2, 99, 100, 101, 555, 999});
+    }
+
+    @Test
+    public void testUnsortedRowIds() throws IOException
+    {
+        checkRows(new long[]{999, 0, 450, 101, 100, 3, 998});
+        Random random = new Random(20220428L);
+        long[] rowIds = new long[300];
+        for (int i = 0; i < rowIds.length; ++i)
+        {
+            rowIds[i] = random.nextInt(NUM_ROWS);
+        }
+        checkRows(rowIds);
+    }
+
+    @Test
+    public void testDuplicateRowIds() throws IOException
+    {
+        checkRows(new long[]{5, 5, 1200, 5, 1200, 4999, 4999});
+    }
+
+    @Test
+    public void testRowIdsAcrossRowGroupsAndPixels() throws IOException
+    {
+        // the first and last rows of the pixels and the row groups.
+        checkRows(new long[]{4999, 4900, 4899, 3000, 2999, 2100, 2099, 1000, 999, 900, 899, 0});
+        // all the rows of a pixel in the middle of a row group, and the next pixel.
+        long[] rowIds = new long[2 * PIXEL_STRIDE];
+        for (int i = 0; i < rowIds.length; ++i)
+        {
+            rowIds[i] = 3400 + i;
+        }
+        checkRows(rowIds);
+    }
+
+    @Test
+    public void testNullBearingPixels() throws IOException
+    {
+        // the rows with nulls in some columns, and their neighbours.
+        checkRows(new long[]{3, 1, 2, 4, 10, 11, 17, 1003, 1001, 1006, 4996, 4998});
+        // the rows of a pixel in which all the columns but id have nulls.
+        long[] rowIds = new long[PIXEL_STRIDE];
+        for (int i = 0; i < rowIds.length; ++i)
+        {
+            rowIds[i] = 2500 + i;
+        }
+        checkRows(rowIds);
+    }
+
+    @Test
+    public void testProjection() throws IOException
+    {
+        long[] rowIds = {2046, 7, 1111, 4, 1234};
+        checkRows(new String[]{"s", "id"}, rowIds);
+        checkRows(new String[]{"ts", "b", "dec", "s", "f"}, rowIds);
+        checkRows(new String[]{"t"}, rowIds);
+    }
+
+    @Test
+    public void testEmptyRowIds() throws IOException
+    {
+        for (String path : paths)
+        {
+            assertEquals(0, readRows(path, ALL_COLUMNS, new long[0]).size);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRowIdOutOfRange() throws IOException
+    {
+        readRows(paths[0], new String[]{"id"}, new long[]{0, NUM_ROWS});
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.core.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class TestDirectBufferOutputStream
+{
+    @Test
+    public void testWriteAndReset()
+    {
+        DirectBufferOutputStream out = new DirectBufferOutputStream(16);
+        byte[] bytes = new byte[3 * DirectBufferPool.MIN_CAPACITY + 7];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            bytes[i] = (byte) i;
+        }
+        out.write(bytes[0]);
+        out.write(bytes, 1, bytes.length - 1);
+        assertEquals(bytes.length, out.size());
+        assertArrayEquals(bytes, out.toByteArray());
+
+        ByteBuffer[] buffers = out.getBuffers();
+        assertTrue(buffers.length > 1);
+        int length = 0;
+        for (ByteBuffer buffer : buffers)
+        {
+            assertTrue(buffer.isDirect());
+            length += buffer.remaining();
+        }
+        assertEquals(bytes.length, length);
+
+        // the first segment after reset is sized by the previous content.
+        out.reset();
+        assertEquals(0, out.size());
+        out.write(1);
+        buffers = out.getBuffers();
+        assertEquals(1, buffers.length);
+        assertEquals(1, buffers[0].remaining());
+        out.write(bytes, 0, bytes.length - 1);
+        assertEquals(1, out.getBuffers().length);
+        out.close();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.core.vector;
+
+import io.pixelsdb.pixels.core.TypeDescription;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestRowBatchPool
+{
+    private static final TypeDescription SCHEMA = TypeDescription.fromString("struct<a:bigint,b:varchar(16)>");
+
+    @Test
+    public void testBorrowAndGiveBack()
+    {
+        RowBatchPool pool = new RowBatchPool(true, Long.MAX_VALUE, 16);
+        VectorizedRowBatch rowBatch = pool.borrow(SCHEMA, 1024);
+        BinaryColumnVector strings = (BinaryColumnVector) rowBatch.cols[1];
+        strings.add("pixels");
+        rowBatch.size = 1;
+        pool.giveBack(rowBatch);
+        assertEquals(1, pool.size());
+        assertEquals(rowBatch.getMemoryUsage(), pool.bytes());
+        // giving back twice has no effect.
+        pool.giveBack(rowBatch);
+        assertEquals(1, pool.size());
+
+        VectorizedRowBatch reused = pool.borrow(SCHEMA, 2048);
+        assertSame(rowBatch, reused);
+        assertEquals(0, pool.size());
+        assertEquals(0, pool.bytes());
+        assertEquals(0, reused.size);
+        assertEquals(2048, reused.getMaxSize());
+        assertTrue(reused.cols[0] instanceof LongColumnVector);
+
+        TypeDescription other = TypeDescription.fromString("struct<a:bigint>");
+        assertNotSame(rowBatch, pool.borrow(other, 1024));
+    }
+
+    @Test
+    public void testReferencesCleared()
+    {
+        TypeDescription schema = TypeDescription.fromString("struct<a:varchar(16),b:struct<c:varchar(16)>>");
+        RowBatchPool pool = new RowBatchPool(true, Long.MAX_VALUE, 16);
+        VectorizedRowBatch rowBatch = pool.borrow(schema, 16);
+        byte[] chunk = "pixels".getBytes();
+        BinaryColumnVector strings = (BinaryColumnVector) rowBatch.cols[0];
+        strings.setRef(0, chunk, 0, chunk.length);
+        BinaryColumnVector nested = (BinaryColumnVector) ((StructColumnVector) rowBatch.cols[1]).fields[0];
+        nested.setRef(0, chunk, 0, chunk.length);
+        rowBatch.size = 1;
+        pool.giveBack(rowBatch);
+        assertEquals(1, pool.size());
+        // the pooled row batch does not pin the buffer of the column chunk.
+        for (byte[] value : strings.vector)
+        {
+            assertNull(value);
+        }
+        for (byte[] value : nested.vector)
+        {
+            assertNull(value);
+        }
+    }
+
+    @Test
+    public void testBytesBound()
+    {
+        VectorizedRowBatch probe = SCHEMA.createRowBatch(1024);
+        long batchBytes = probe.getMemoryUsage();
+        RowBatchPool pool = new RowBatchPool(true, batchBytes * 2 + batchBytes / 2, 16);
+        VectorizedRowBatch[] rowBatches = new VectorizedRowBatch[3];
+        for (int i = 0; i < rowBatches.length; ++i)
+        {
+            rowBatches[i] = pool.borrow(SCHEMA, 1024);
+        }
+        for (VectorizedRowBatch rowBatch : rowBatches)
+        {
+            pool.giveBack(rowBatch);
+        }
+        // the third row batch exceeds the bytes bound and is dropped.
+        assertEquals(2, pool.size());
+        assertTrue(pool.bytes() <= batchBytes * 2 + batchBytes / 2);
+        assertSame(rowBatches[0], pool.borrow(SCHEMA, 1024));
+        assertSame(rowBatches[1], pool.borrow(SCHEMA, 1024));
+        assertNotSame(rowBatches[2], pool.borrow(SCHEMA, 1024));
+        assertEquals(0, pool.bytes());
+    }
+
+    @Test
+    public void testSizeBoundPerSchema()
+    {
+        RowBatchPool pool = new RowBatchPool(true, Long.MAX_VALUE, 1);
+        VectorizedRowBatch first = pool.borrow(SCHEMA, 1024);
+        VectorizedRowBatch second = pool.borrow(SCHEMA, 1024);
+        TypeDescription other = TypeDescription.fromString("struct<a:bigint>");
+        VectorizedRowBatch third = pool.borrow(other, 1024);
+        pool.giveBack(first);
+        pool.giveBack(second);
+        pool.giveBack(third);
+        assertEquals(2, pool.size());
+        assertSame(first, pool.borrow(SCHEMA, 1024));
+        assertNotSame(second, pool.borrow(SCHEMA, 1024));
+        assertSame(third, pool.borrow(other, 1024));
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        RowBatchPool pool = new RowBatchPool(false, Long.MAX_VALUE, 16);
+        VectorizedRowBatch rowBatch = pool.borrow(SCHEMA, 1024);
+        pool.giveBack(rowBatch);
+        assertEquals(0, pool.size());
+        assertEquals(0, pool.bytes());
+        assertNotSame(rowBatch, pool.borrow(SCHEMA, 1024));
+    }
+}
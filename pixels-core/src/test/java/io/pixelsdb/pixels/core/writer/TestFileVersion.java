@@ -0,0 +1,118 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.core.writer;
+
+import io.pixelsdb.pixels.common.utils.ConfigFactory;
+import io.pixelsdb.pixels.core.*;
+import io.pixelsdb.pixels.core.DataFixture.Column;
+import io.pixelsdb.pixels.core.reader.PixelsReaderOption;
+import io.pixelsdb.pixels.core.reader.PixelsRecordReader;
+import io.pixelsdb.pixels.core.vector.VectorizedRowBatch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * The files with FSST compressed column chunks are written in file version 2, so that the readers
+ * of version 1 reject them instead of decoding them as un-encoded chunks.
+ */
+public class TestFileVersion
+{
+    private static final String FSST_ENABLED = "column.writer.fsst.enabled";
+    private static final int NUM_ROWS = 1000;
+    /**
+     * The high-cardinality strings that do not pay off with dictionary encoding, but are compressible.
+     */
+    private static final Column S = new Column("s", "string", r -> false,
+            r -> "https://www.pixelsdb.io/tables/orders/partition=" + (r * 7919) + "/part-" + (r % 13) + ".pxl");
+
+    private String fsstEnabled;
+    private DataFixture fixture;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        fsstEnabled = ConfigFactory.Instance().getProperty(FSST_ENABLED);
+        fixture = new DataFixture("pixels-file-version");
+    }
+
+    @After
+    public void tearDown()
+    {
+        ConfigFactory.Instance().addProperty(FSST_ENABLED, fsstEnabled);
+        fixture.close();
+    }
+
+    private PixelsReader writeAndOpen(String name) throws Exception
+    {
+        // the rows are written as one row group.
+        return fixture.open(fixture.writeFile(name, 0, NUM_ROWS, NUM_ROWS, true, S));
+    }
+
+    private static void checkRows(PixelsReader reader) throws IOException
+    {
+        PixelsReaderOption option = new PixelsReaderOption();
+        option.includeCols(new String[]{"s"});
+        PixelsRecordReader recordReader = reader.read(option);
+        VectorizedRowBatch rowBatch = recordReader.readBatch(NUM_ROWS);
+        assertEquals(NUM_ROWS, rowBatch.size);
+        for (int r = 0; r < NUM_ROWS; ++r)
+        {
+            DataFixture.assertRow("row " + r, S, r, rowBatch.cols[0], r);
+        }
+    }
+
+    @Test
+    public void testFsstFileIsVersion2() throws Exception
+    {
+        ConfigFactory.Instance().addProperty(FSST_ENABLED, "true");
+        PixelsReader reader = writeAndOpen("fsst.pxl");
+        assertEquals(PixelsProto.ColumnEncoding.Kind.FSST, reader.getRowGroupFooter(0)
+                .getRowGroupEncoding().getColumnChunkEncodings(0).getKind());
+        assertEquals(PixelsVersion.V2, reader.getFileVersion());
+        checkRows(reader);
+        reader.close();
+    }
+
+    @Test
+    public void testFileWithoutFsstIsVersion1() throws Exception
+    {
+        ConfigFactory.Instance().addProperty(FSST_ENABLED, "false");
+        PixelsReader reader = writeAndOpen("plain.pxl");
+        assertNotEquals(PixelsProto.ColumnEncoding.Kind.FSST, reader.getRowGroupFooter(0)
+                .getRowGroupEncoding().getColumnChunkEncodings(0).getKind());
+        assertEquals(PixelsVersion.V1, reader.getFileVersion());
+        checkRows(reader);
+        reader.close();
+    }
+
+    @Test
+    public void testVersions()
+    {
+        assertTrue(PixelsVersion.matchVersion(1));
+        assertTrue(PixelsVersion.matchVersion(2));
+        assertFalse(PixelsVersion.matchVersion(3));
+        assertEquals(PixelsVersion.V2, PixelsVersion.from(2));
+    }
+}
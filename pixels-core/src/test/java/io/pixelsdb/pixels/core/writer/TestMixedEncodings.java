@@ -0,0 +1,122 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.core.writer;
+
+import io.pixelsdb.pixels.core.*;
+import io.pixelsdb.pixels.core.DataFixture.Column;
+import io.pixelsdb.pixels.core.exception.PixelsWriterException;
+import io.pixelsdb.pixels.core.reader.PixelsReaderOption;
+import io.pixelsdb.pixels.core.reader.PixelsRecordReader;
+import io.pixelsdb.pixels.core.vector.VectorizedRowBatch;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The encoding of each column chunk is decided on the chunk, thus the row groups of a file whose data
+ * distribution drifts have column chunks of different encodings, and they must all be read back.
+ */
+public class TestMixedEncodings
+{
+    private static final int ROW_GROUP_ROWS = 1000;
+    private static final int NUM_ROW_GROUPS = 3;
+
+    /**
+     * The rows of the middle row group are random, and the rows of the other row groups repeat.
+     */
+    private static boolean isRandom(long row)
+    {
+        return row / ROW_GROUP_ROWS == 1;
+    }
+
+    @Test
+    public void testMixedEncodings() throws IOException, PixelsWriterException
+    {
+        int numRows = ROW_GROUP_ROWS * NUM_ROW_GROUPS;
+        long[] ints = new long[numRows];
+        String[] strings = new String[numRows];
+        Random random = new Random(20220428L);
+        for (int r = 0; r < numRows; ++r)
+        {
+            if (isRandom(r))
+            {
+                ints[r] = random.nextInt();
+                StringBuilder builder = new StringBuilder();
+                for (int k = 0; k < 24; ++k)
+                {
+                    builder.append((char) (33 + random.nextInt(94)));
+                }
+                strings[r] = builder.toString();
+            }
+            else
+            {
+                ints[r] = r / 100;
+                strings[r] = "value-" + (r % 4);
+            }
+        }
+        Column intColumn = new Column("i", "int", r -> false, r -> ints[(int) r]);
+        Column stringColumn = new Column("s", "string", r -> false, r -> strings[(int) r]);
+
+        try (DataFixture fixture = new DataFixture("pixels-mixed-encodings"))
+        {
+            PixelsReader pixelsReader = fixture.open(
+                    fixture.writeFile("mixed.pxl", 0, numRows, ROW_GROUP_ROWS, true, intColumn, stringColumn));
+            assertEquals(NUM_ROW_GROUPS, pixelsReader.getRowGroupNum());
+            for (int rg = 0; rg < NUM_ROW_GROUPS; ++rg)
+            {
+                PixelsProto.ColumnEncoding.Kind intKind = pixelsReader.getRowGroupFooter(rg)
+                        .getRowGroupEncoding().getColumnChunkEncodings(0).getKind();
+                PixelsProto.ColumnEncoding.Kind stringKind = pixelsReader.getRowGroupFooter(rg)
+                        .getRowGroupEncoding().getColumnChunkEncodings(1).getKind();
+                if (isRandom((long) rg * ROW_GROUP_ROWS))
+                {
+                    assertEquals(PixelsProto.ColumnEncoding.Kind.NONE, intKind);
+                    assertNotEquals(PixelsProto.ColumnEncoding.Kind.DICTIONARY, stringKind);
+                }
+                else
+                {
+                    assertEquals(PixelsProto.ColumnEncoding.Kind.RUNLENGTH, intKind);
+                    assertEquals(PixelsProto.ColumnEncoding.Kind.DICTIONARY, stringKind);
+                }
+            }
+
+            PixelsReaderOption option = new PixelsReaderOption();
+            option.includeCols(new String[]{"i", "s"});
+            PixelsRecordReader recordReader = pixelsReader.read(option);
+            int r = 0;
+            VectorizedRowBatch result;
+            do
+            {
+                // the row batches span the row groups.
+                result = recordReader.readBatch(700);
+                for (int k = 0; k < result.size; ++k, ++r)
+                {
+                    DataFixture.assertRow("row " + r, intColumn, r, result.cols[0], k);
+                    DataFixture.assertRow("row " + r, stringColumn, r, result.cols[1], k);
+                }
+            } while (!result.endOfFile);
+            assertEquals(numRows, r);
+            pixelsReader.close();
+        }
+    }
+}
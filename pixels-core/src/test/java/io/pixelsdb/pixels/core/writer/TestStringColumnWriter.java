@@ -0,0 +1,182 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.core.writer;
+
+import io.pixelsdb.pixels.core.DataFixture;
+import io.pixelsdb.pixels.core.DataFixture.Column;
+import io.pixelsdb.pixels.core.PixelsProto;
+import io.pixelsdb.pixels.core.TypeDescription;
+import io.pixelsdb.pixels.core.reader.ColumnReader;
+import io.pixelsdb.pixels.core.vector.BinaryColumnVector;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * The roundtrip of the string column chunks from {@link StringColumnWriter} to the string column reader.
+ */
+public class TestStringColumnWriter
+{
+    private static final TypeDescription TYPE = TypeDescription.createString();
+    private static final int PIXEL_STRIDE = 100;
+    private static final int NUM_ROWS = 450;
+
+    /**
+     * The nulls are in the first pixel (the sample), sparse in the third pixel, and fill the fourth pixel.
+     */
+    private static boolean isNull(long row)
+    {
+        return row == 3 || (row >= 200 && row < 300 && row % 11 == 0) || (row >= 300 && row < 400);
+    }
+
+    /**
+     * The high-cardinality strings that do not pay off with dictionary encoding, but are compressible.
+     */
+    private static Column columnOf(int chunk)
+    {
+        return new Column("s", "string", TestStringColumnWriter::isNull, row ->
+                "https://www.pixelsdb.io/tables/orders/" + chunk + "/partition=" + (row * 7919) +
+                "/part-" + (row % 13) + ".pxl?version=" + (row * 31));
+    }
+
+    private static class Chunk
+    {
+        private final ByteBuffer content;
+        private final PixelsProto.ColumnChunkIndex index;
+        private final PixelsProto.ColumnEncoding encoding;
+
+        private Chunk(ColumnWriter writer)
+        {
+            this.content = ByteBuffer.wrap(writer.getColumnChunkContent());
+            this.index = writer.getColumnChunkIndex().build();
+            this.encoding = writer.getColumnChunkEncoding().build();
+        }
+    }
+
+    private static Chunk writeChunk(ColumnWriter writer, int chunk) throws IOException
+    {
+        Column column = columnOf(chunk);
+        BinaryColumnVector vector = new BinaryColumnVector(NUM_ROWS);
+        for (int i = 0; i < NUM_ROWS; ++i)
+        {
+            DataFixture.set(vector, i, column, i);
+        }
+        // write in several parts, so that the parts start and end inside the pixels.
+        int[] parts = {37, 150, 13, 250};
+        int offset = 0;
+        for (int part : parts)
+        {
+            BinaryColumnVector partVector = new BinaryColumnVector(part);
+            for (int i = 0; i < part; ++i)
+            {
+                partVector.setElement(i, offset + i, vector);
+            }
+            writer.write(partVector, part);
+            offset += part;
+        }
+        assertEquals(NUM_ROWS, offset);
+        writer.flush();
+        return new Chunk(writer);
+    }
+
+    private static void checkChunk(Chunk chunk, int chunkId, int readSize) throws IOException
+    {
+        assertEquals((NUM_ROWS + PIXEL_STRIDE - 1) / PIXEL_STRIDE, chunk.index.getPixelPositionsCount());
+        ColumnReader reader = ColumnReader.newColumnReader(TYPE);
+        BinaryColumnVector result = new BinaryColumnVector(NUM_ROWS);
+        for (int offset = 0; offset < NUM_ROWS; offset += readSize)
+        {
+            int size = Math.min(readSize, NUM_ROWS - offset);
+            reader.read(chunk.content, chunk.encoding, offset, size, PIXEL_STRIDE, offset, result, chunk.index);
+        }
+        Column column = columnOf(chunkId);
+        for (int i = 0; i < NUM_ROWS; ++i)
+        {
+            DataFixture.assertRow("row " + i, column, i, result, i);
+        }
+        reader.close();
+    }
+
+    @Test
+    public void testFsstRoundtrip() throws IOException
+    {
+        StringColumnWriter writer = new StringColumnWriter(TYPE, PIXEL_STRIDE, true, true);
+        // each column chunk has its own symbol table.
+        for (int chunkId = 0; chunkId < 3; ++chunkId)
+        {
+            Chunk chunk = writeChunk(writer, chunkId);
+            assertEquals(PixelsProto.ColumnEncoding.Kind.FSST, chunk.encoding.getKind());
+            // the chunk ends with the lengths, the lengths offset, the symbol table, and the symbol table offset.
+            int limit = chunk.content.limit();
+            int symbolTableOffset = chunk.content.getInt(limit - Integer.BYTES);
+            int lensOffset = chunk.content.getInt(symbolTableOffset - Integer.BYTES);
+            assertTrue(chunk.index.getIsNullOffset() <= lensOffset);
+            assertTrue(lensOffset < symbolTableOffset - Integer.BYTES);
+            assertTrue(symbolTableOffset < limit - Integer.BYTES);
+
+            for (int readSize : new int[]{NUM_ROWS, PIXEL_STRIDE, 33, 1})
+            {
+                checkChunk(chunk, chunkId, readSize);
+            }
+            writer.reset();
+        }
+        writer.close();
+    }
+
+    @Test
+    public void testFsstDisabled() throws IOException
+    {
+        StringColumnWriter writer = new StringColumnWriter(TYPE, PIXEL_STRIDE, true, false);
+        Chunk chunk = writeChunk(writer, 0);
+        assertEquals(PixelsProto.ColumnEncoding.Kind.NONE, chunk.encoding.getKind());
+        for (int readSize : new int[]{NUM_ROWS, PIXEL_STRIDE, 33, 1})
+        {
+            checkChunk(chunk, 0, readSize);
+        }
+        writer.close();
+    }
+
+    @Test
+    public void testDictionaryRoundtrip() throws IOException
+    {
+        StringColumnWriter writer = new StringColumnWriter(TYPE, PIXEL_STRIDE, true, true);
+        BinaryColumnVector vector = new BinaryColumnVector(NUM_ROWS);
+        for (int i = 0; i < NUM_ROWS; ++i)
+        {
+            vector.setVal(i, ("status-" + (i % 3)).getBytes());
+        }
+        writer.write(vector, NUM_ROWS);
+        writer.flush();
+        Chunk chunk = new Chunk(writer);
+        assertEquals(PixelsProto.ColumnEncoding.Kind.DICTIONARY, chunk.encoding.getKind());
+        ColumnReader reader = ColumnReader.newColumnReader(TYPE);
+        BinaryColumnVector result = new BinaryColumnVector(NUM_ROWS);
+        reader.read(chunk.content, chunk.encoding, 0, NUM_ROWS, PIXEL_STRIDE, 0, result, chunk.index);
+        for (int i = 0; i < NUM_ROWS; ++i)
+        {
+            assertEquals("status-" + (i % 3), new String(result.vector[i], result.start[i], result.lens[i]));
+        }
+        reader.close();
+        writer.close();
+    }
+}
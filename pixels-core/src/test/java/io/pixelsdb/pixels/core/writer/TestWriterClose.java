@@ -0,0 +1,160 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.core.writer;
+
+import io.pixelsdb.pixels.core.*;
+import io.pixelsdb.pixels.core.exception.PixelsWriterException;
+import io.pixelsdb.pixels.core.reader.PixelsReaderOption;
+import io.pixelsdb.pixels.core.reader.PixelsRecordReader;
+import io.pixelsdb.pixels.core.vector.LongColumnVector;
+import io.pixelsdb.pixels.core.vector.VectorizedRowBatch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link PixelsWriterImpl#close()} writes the rows of the last row batch as a row group only if they
+ * have not been written out yet, thus a file never ends with an empty row group.
+ */
+public class TestWriterClose
+{
+    private static final int BATCH_ROWS = 100;
+
+    private DataFixture fixture;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        fixture = new DataFixture("pixels-writer-close");
+    }
+
+    @After
+    public void tearDown()
+    {
+        fixture.close();
+    }
+
+    /**
+     * Write the row batches of the given sizes, the ids of the rows are 0, 1, 2, and so on.
+     * @param rowGroupSize the row group size in bytes, 1 to write each row batch as a row group
+     */
+    private PixelsReader writeAndOpen(String name, long rowGroupSize, int... batchSizes)
+            throws IOException, PixelsWriterException
+    {
+        String path = fixture.pathOf(name);
+        TypeDescription schema = TypeDescription.fromString("struct<id:bigint>");
+        PixelsWriter writer = PixelsWriterImpl.newBuilder()
+                .setSchema(schema)
+                .setPixelStride(10)
+                .setRowGroupSize(rowGroupSize)
+                .setStorage(fixture.getStorage())
+                .setFilePath(path)
+                .setBlockSize(1024L * 1024L * 1024L)
+                .setReplication((short) 1)
+                .setBlockPadding(false)
+                .setEncoding(true)
+                .build();
+        long id = 0;
+        for (int batchSize : batchSizes)
+        {
+            VectorizedRowBatch rowBatch = schema.createRowBatch(Math.max(batchSize, 1));
+            LongColumnVector ids = (LongColumnVector) rowBatch.cols[0];
+            for (int r = 0; r < batchSize; ++r)
+            {
+                ids.vector[rowBatch.size++] = id++;
+            }
+            writer.addRowBatch(rowBatch);
+        }
+        writer.close();
+        return fixture.open(path);
+    }
+
+    private static void checkRows(PixelsReader reader, long numRows) throws IOException
+    {
+        assertEquals(numRows, reader.getNumberOfRows());
+        long rowGroupRows = 0;
+        for (PixelsProto.RowGroupInformation info : reader.getRowGroupInfos())
+        {
+            assertTrue(info.getNumberOfRows() > 0);
+            rowGroupRows += info.getNumberOfRows();
+        }
+        assertEquals(numRows, rowGroupRows);
+
+        PixelsReaderOption option = new PixelsReaderOption();
+        option.includeCols(new String[]{"id"});
+        PixelsRecordReader recordReader = reader.read(option);
+        long id = 0;
+        VectorizedRowBatch rowBatch;
+        do
+        {
+            rowBatch = recordReader.readBatch(64);
+            LongColumnVector ids = (LongColumnVector) rowBatch.cols[0];
+            for (int i = 0; i < rowBatch.size; ++i)
+            {
+                assertEquals(id++, ids.vector[i]);
+            }
+        } while (!rowBatch.endOfFile);
+        assertEquals(numRows, id);
+    }
+
+    @Test
+    public void testLastBatchFillsRowGroup() throws Exception
+    {
+        // the last row batch is written out by addRowBatch, close does not add an empty row group.
+        PixelsReader reader = writeAndOpen("filled.pxl", 1, BATCH_ROWS, BATCH_ROWS, BATCH_ROWS);
+        assertEquals(3, reader.getRowGroupNum());
+        for (int i = 0; i < 3; ++i)
+        {
+            assertEquals(BATCH_ROWS, reader.getRowGroupInfo(i).getNumberOfRows());
+        }
+        checkRows(reader, 3 * BATCH_ROWS);
+        reader.close();
+    }
+
+    @Test
+    public void testLastBatchInRowGroup() throws Exception
+    {
+        // the row batches are buffered in the row group, close writes them out.
+        PixelsReader reader = writeAndOpen("buffered.pxl", 64L * 1024L * 1024L, BATCH_ROWS, BATCH_ROWS, 7);
+        assertEquals(1, reader.getRowGroupNum());
+        assertEquals(2 * BATCH_ROWS + 7, reader.getRowGroupInfo(0).getNumberOfRows());
+        checkRows(reader, 2 * BATCH_ROWS + 7);
+        reader.close();
+    }
+
+    @Test
+    public void testNoRows() throws Exception
+    {
+        PixelsReader reader = writeAndOpen("no-batch.pxl", 1);
+        assertEquals(0, reader.getRowGroupNum());
+        assertEquals(0, reader.getNumberOfRows());
+        reader.close();
+
+        // an empty row batch is not written as a row group, neither by addRowBatch nor by close.
+        reader = writeAndOpen("empty-batch.pxl", 1, BATCH_ROWS, 0);
+        assertEquals(1, reader.getRowGroupNum());
+        checkRows(reader, BATCH_ROWS);
+        reader.close();
+    }
+}
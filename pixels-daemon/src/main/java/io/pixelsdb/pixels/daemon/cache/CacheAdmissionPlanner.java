@@ -0,0 +1,117 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.daemon.cache;
+
+import java.util.*;
+
+/**
+ * The planner of the columnlets to be cached on a cache node, by the access frequencies on the node.
+ * <p>
+ * Caching a columnlet saves (access frequency * chunk size) bytes of reads from the storage, and it costs
+ * (chunk size * number of files on the node) bytes of the cache space, as the same columnlets of all the
+ * files on a node are cached. The columnlets are admitted greedily in the descending order of the benefit
+ * per byte, until the cache capacity is used up. The remaining capacity, if any, is filled by the columnlets
+ * in the columnlet order of the compact layout, so that a node without enough access statistics (e.g., a
+ * newly started node) caches the same columnlets as before.
+ * <p>
+ * The ssd tier is planned in the same way after the memory tier, excluding the columnlets planned for memory,
+ * thus the ssd tier caches the next-best columnlets that do not fit in memory.
+ */
+class CacheAdmissionPlanner
+{
+    private CacheAdmissionPlanner() { }
+
+    /**
+     * @param stats the access frequencies of the columnlets on the node
+     * @param chunkSizes the (estimated) sizes of the columnlets, key: rowGroupId:columnId
+     * @param numFiles the number of files allocated to the node
+     * @param capacity the capacity of the cache in bytes
+     * @param columnletOrder the columnlet order of the compact layout
+     * @return the columnlets to be cached, in the format of rowGroupId:columnId
+     */
+    public static List<String> plan(ColumnletAccessStats stats, Map<String, Long> chunkSizes,
+                                    int numFiles, long capacity, List<String> columnletOrder)
+    {
+        return plan(stats, chunkSizes, numFiles, capacity, columnletOrder, Collections.emptySet());
+    }
+
+    /**
+     * @param stats the access frequencies of the columnlets on the node
+     * @param chunkSizes the (estimated) sizes of the columnlets, key: rowGroupId:columnId
+     * @param numFiles the number of files allocated to the node
+     * @param capacity the capacity of the cache in bytes
+     * @param columnletOrder the columnlet order of the compact layout
+     * @param excluded the columnlets that are not planned, e.g., the ones cached in a faster tier
+     * @return the columnlets to be cached, in the format of rowGroupId:columnId
+     */
+    public static List<String> plan(ColumnletAccessStats stats, Map<String, Long> chunkSizes, int numFiles,
+                                    long capacity, List<String> columnletOrder, Collection<String> excluded)
+    {
+        List<String> planned = new ArrayList<>();
+        if (numFiles <= 0)
+        {
+            return planned;
+        }
+        Set<String> admitted = new HashSet<>(excluded);
+        List<String> candidates = new ArrayList<>();
+        for (String columnlet : stats.getFrequencies().keySet())
+        {
+            if (!admitted.contains(columnlet) && chunkSizes.getOrDefault(columnlet, 0L) > 0)
+            {
+                candidates.add(columnlet);
+            }
+        }
+        /*
+         * benefit / cost = (frequency * chunkSize) / (chunkSize * numFiles), thus the columnlets are ordered by
+         * the frequency. For the same benefit per byte, the larger columnlet saves more bytes of reads.
+         */
+        candidates.sort(Comparator.comparingDouble((String columnlet) ->
+                benefitPerByte(stats.get(columnlet), chunkSizes.get(columnlet), numFiles))
+                .thenComparingLong(chunkSizes::get).reversed());
+
+        long remaining = capacity;
+        for (String columnlet : candidates)
+        {
+            long cost = chunkSizes.get(columnlet) * numFiles;
+            if (cost <= remaining)
+            {
+                planned.add(columnlet);
+                admitted.add(columnlet);
+                remaining -= cost;
+            }
+        }
+        for (String columnlet : columnletOrder)
+        {
+            long chunkSize = chunkSizes.getOrDefault(columnlet, 0L);
+            if (!admitted.contains(columnlet) && chunkSize > 0 && chunkSize * numFiles <= remaining)
+            {
+                planned.add(columnlet);
+                admitted.add(columnlet);
+                remaining -= chunkSize * numFiles;
+            }
+        }
+        return planned;
+    }
+
+    private static double benefitPerByte(double frequency, long chunkSize, int numFiles)
+    {
+        return (frequency * chunkSize) / ((double) chunkSize * numFiles);
+    }
+}
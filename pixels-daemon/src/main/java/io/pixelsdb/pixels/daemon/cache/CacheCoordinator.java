@@ -28,10 +28,12 @@ import io.etcd.jetcd.options.WatchOption;
 import io.etcd.jetcd.watch.WatchEvent;
 import io.pixelsdb.pixels.cache.CacheLocationDistribution;
 import io.pixelsdb.pixels.cache.PixelsCacheConfig;
+import io.pixelsdb.pixels.cache.PixelsCacheUtil;
+import io.pixelsdb.pixels.cache.PixelsPhysicalReader;
 import io.pixelsdb.pixels.common.balance.AbsoluteBalancer;
 import io.pixelsdb.pixels.common.balance.Balancer;
+import io.pixelsdb.pixels.common.balance.ConsistentHashBalancer;
 import io.pixelsdb.pixels.common.balance.HostAddress;
-import io.pixelsdb.pixels.common.balance.ReplicaBalancer;
 import io.pixelsdb.pixels.common.exception.BalancerException;
 import io.pixelsdb.pixels.common.exception.MetadataException;
 import io.pixelsdb.pixels.common.metadata.MetadataService;
@@ -43,6 +45,7 @@ import io.pixelsdb.pixels.common.physical.StorageFactory;
 import io.pixelsdb.pixels.common.utils.ConfigFactory;
 import io.pixelsdb.pixels.common.utils.Constants;
 import io.pixelsdb.pixels.common.utils.EtcdUtil;
+import io.pixelsdb.pixels.core.PixelsProto;
 import io.pixelsdb.pixels.daemon.Server;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -324,7 +327,8 @@ public class CacheCoordinator
         Layout layout = metadataService.getLayout(cacheConfig.getSchema(), cacheConfig.getTable(), layoutVersion);
         // select: decide which files to cache
         assert layout != null;
-        String[] paths = select(layout);
+        Map<String, Long> fileSizes = select(layout);
+        String[] paths = fileSizes.keySet().toArray(new String[0]);
         // allocate: decide which node to cache each file
         List<KeyValue> nodes = etcdUtil.getKeyValuesByPrefix(Constants.CACHE_NODE_STATUS_LITERAL);
         if (nodes == null || nodes.isEmpty()) {
@@ -340,46 +344,50 @@ public class CacheCoordinator
                 hosts[hostIndex++] = HostAddress.fromString(node.getKey().toString(StandardCharsets.UTF_8).substring(5));
             }
         }
-        allocate(paths, hosts, hostIndex, layoutVersion);
+        allocate(fileSizes, hosts, hostIndex, layoutVersion);
+        if (cacheConfig.isAdmissionEnabled())
+        {
+            // plan: decide which columnlets to cache on each node
+            plan(layout, paths, hosts, hostIndex, layoutVersion);
+        }
     }
 
     /**
      * get the file paths under the compact path of the first layout.
      * @param layout
-     * @return the file paths
+     * @return the file paths and the file sizes in bytes
      * @throws IOException
      */
-    private String[] select(Layout layout)
+    private Map<String, Long> select(Layout layout)
             throws IOException
     {
         String compactPath = layout.getCompactPath();
-        List<String> files = new ArrayList<>();
+        Map<String, Long> files = new LinkedHashMap<>();
         List<Status> statuses = storage.listStatus(compactPath);
         if (statuses != null) {
             for (Status status : statuses)
             {
                 if (status.isFile()) {
-                    files.add(status.getPath());
+                    files.put(status.getPath(), status.getLength());
                 }
             }
         }
-        String[] result = new String[files.size()];
-        files.toArray(result);
-        return result;
+        return files;
     }
 
     /**
      * allocate (maps) file paths to nodes, and persists the result in etcd.
-     * @param paths
+     * @param fileSizes the file paths and the file sizes in bytes
      * @param nodes
      * @param size
      * @param layoutVersion
      * @throws IOException
      */
-    private void allocate(String[] paths, HostAddress[] nodes, int size, int layoutVersion)
+    private void allocate(Map<String, Long> fileSizes, HostAddress[] nodes, int size, int layoutVersion)
             throws IOException
     {
-        CacheLocationDistribution cacheLocationDistribution = assignCacheLocations(paths, nodes, size);
+        CacheLocationDistribution cacheLocationDistribution =
+                assignCacheLocations(fileSizes, nodes, size, getPreviousLocations());
         for (int i = 0; i < size; i++)
         {
             HostAddress node = nodes[i];
@@ -391,14 +399,142 @@ public class CacheCoordinator
     }
 
     /**
-     * assign files / objects to cache manager nodes randomly, guaranty load balance.
+     * plan the columnlets to be cached on each node by the access frequencies reported by
+     * the cache manager on the node, and persists the result in etcd.
+     * If a node has no access statistics, no plan is persisted for it and the cache writer on the node
+     * caches the columnlets before the cache border in the compact layout.
+     * If the ssd tier is enabled (cache.ssd.location is set), the next-best columnlets after the ones planned
+     * for memory are planned for the ssd tier of the node under the ssd capacity.
+     * @param layout
      * @param paths
      * @param nodes
      * @param size
+     * @param layoutVersion
+     * @throws IOException
+     */
+    private void plan(Layout layout, String[] paths, HostAddress[] nodes, int size, int layoutVersion)
+            throws IOException
+    {
+        if (paths.length == 0)
+        {
+            return;
+        }
+        Map<String, Long> chunkSizes = getChunkSizes(paths[0]);
+        List<String> columnletOrder = layout.getCompactObject().getColumnletOrder();
+        long capacity = cacheConfig.getCacheSize() - PixelsCacheUtil.CACHE_DATA_OFFSET;
+        long ssdCapacity = cacheConfig.isSsdEnabled() ? cacheConfig.getSsdSize() - PixelsCacheUtil.CACHE_DATA_OFFSET : 0;
+        for (int i = 0; i < size; i++)
+        {
+            HostAddress node = nodes[i];
+            KeyValue statsKV = etcdUtil.getKeyValue(Constants.CACHE_ACCESS_LITERAL + node);
+            if (statsKV == null)
+            {
+                continue;
+            }
+            ColumnletAccessStats stats = ColumnletAccessStats.parse(statsKV.getValue().toString(StandardCharsets.UTF_8));
+            if (stats.isEmpty())
+            {
+                continue;
+            }
+            KeyValue filesKV = etcdUtil.getKeyValue(Constants.CACHE_LOCATION_LITERAL + layoutVersion + "_" + node);
+            String filesStr = filesKV == null ? "" : filesKV.getValue().toString(StandardCharsets.UTF_8);
+            int numFiles = filesStr.isEmpty() ? 0 : filesStr.split(";").length;
+            List<String> columnlets = CacheAdmissionPlanner.plan(stats, chunkSizes, numFiles, capacity, columnletOrder);
+            String key = Constants.CACHE_PLAN_LITERAL + layoutVersion + "_" + node;
+            logger.debug(columnlets.size() + " columnlets are planned for " + node + " at version" + layoutVersion);
+            etcdUtil.putKeyValue(key, String.join(";", columnlets));
+            if (ssdCapacity > 0)
+            {
+                List<String> ssdColumnlets = CacheAdmissionPlanner.plan(
+                        stats, chunkSizes, numFiles, ssdCapacity, columnletOrder, columnlets);
+                String ssdKey = Constants.CACHE_SSD_PLAN_LITERAL + layoutVersion + "_" + node;
+                logger.debug(ssdColumnlets.size() + " columnlets are planned in the ssd tier for " + node +
+                        " at version" + layoutVersion);
+                etcdUtil.putKeyValue(ssdKey, String.join(";", ssdColumnlets));
+            }
+        }
+    }
+
+    /**
+     * get the sizes of the columnlets in a sample file. The files under the compact path
+     * have the same layout, thus the sizes of the columnlets are similar in different files.
+     * @param path the path of the sample file
+     * @return the sizes of the columnlets, key: rowGroupId:columnId
+     * @throws IOException
+     */
+    private Map<String, Long> getChunkSizes(String path)
+            throws IOException
+    {
+        Map<String, Long> chunkSizes = new HashMap<>();
+        PixelsPhysicalReader physicalReader = new PixelsPhysicalReader(storage, path);
+        try
+        {
+            for (int rgId = 0; rgId < physicalReader.getRowGroupNum(); rgId++)
+            {
+                PixelsProto.RowGroupIndex rowGroupIndex =
+                        physicalReader.readRowGroupFooter(rgId).getRowGroupIndexEntry();
+                for (int colId = 0; colId < rowGroupIndex.getColumnChunkIndexEntriesCount(); colId++)
+                {
+                    chunkSizes.put(rgId + ":" + colId,
+                            rowGroupIndex.getColumnChunkIndexEntries(colId).getChunkLength());
+                }
+            }
+        }
+        finally
+        {
+            physicalReader.close();
+        }
+        return chunkSizes;
+    }
+
+    /**
+     * get the cache locations of the files in the current cache version, which are
+     * preserved in the new cache version if possible to avoid reloading the cache.
+     * @return the file paths and the nodes caching them
+     */
+    private Map<String, HostAddress> getPreviousLocations()
+    {
+        Map<String, HostAddress> previous = new HashMap<>();
+        KeyValue cacheVersionKV = etcdUtil.getKeyValue(Constants.CACHE_VERSION_LITERAL);
+        if (cacheVersionKV == null)
+        {
+            return previous;
+        }
+        String prefix = Constants.CACHE_LOCATION_LITERAL +
+                cacheVersionKV.getValue().toString(StandardCharsets.UTF_8) + "_";
+        List<KeyValue> locations = etcdUtil.getKeyValuesByPrefix(prefix);
+        if (locations == null)
+        {
+            return previous;
+        }
+        for (KeyValue location : locations)
+        {
+            HostAddress node = HostAddress.fromString(
+                    location.getKey().toString(StandardCharsets.UTF_8).substring(prefix.length()));
+            String files = location.getValue().toString(StandardCharsets.UTF_8);
+            if (!files.isEmpty())
+            {
+                for (String file : files.split(";"))
+                {
+                    previous.put(file, node);
+                }
+            }
+        }
+        return previous;
+    }
+
+    /**
+     * assign files / objects to cache manager nodes by consistent hashing with bounded loads,
+     * guaranty the balance of the cached bytes and preserve the previous locations if possible.
+     * @param fileSizes the file paths and the file sizes in bytes
+     * @param nodes
+     * @param size
+     * @param previous the previous locations of the files
      * @return
      * @throws IOException
      */
-    private CacheLocationDistribution assignCacheLocations(String[] paths, HostAddress[] nodes, int size)
+    private CacheLocationDistribution assignCacheLocations(Map<String, Long> fileSizes, HostAddress[] nodes,
+                                                           int size, Map<String, HostAddress> previous)
             throws IOException
     {
         CacheLocationDistribution locationDistribution = new CacheLocationDistribution(nodes, size);
@@ -408,9 +544,17 @@ public class CacheCoordinator
             cacheNodes.add(nodes[i]);
         }
 
-        Balancer replicaBalancer = new ReplicaBalancer(cacheNodes);
-        for (String path : paths)
+        /**
+         * The same columnlets of each file are cached, thus the cached bytes of a file are
+         * proportional to the file size, which is used as the weight of the file.
+         */
+        ConsistentHashBalancer balancer =
+                new ConsistentHashBalancer(cacheNodes, cacheConfig.getPlacementLoadFactor());
+        balancer.setPrevious(previous);
+        for (Map.Entry<String, Long> file : fileSizes.entrySet())
         {
+            String path = file.getKey();
+            balancer.setWeight(path, file.getValue());
             if (storage.hasLocality())
             {
                 // get a set of nodes where the blocks of the file is located (location_set)
@@ -421,24 +565,24 @@ public class CacheCoordinator
                     addresses.addAll(toHostAddress(location.getHosts()));
                 }
                 // addresses should not be empty.
-                replicaBalancer.put(path, addresses);
+                balancer.put(path, addresses);
             }
             else
             {
-                replicaBalancer.autoSelect(path);
+                balancer.autoSelect(path);
             }
         }
         try
         {
-            replicaBalancer.balance();
-            if (replicaBalancer.isBalanced())
+            balancer.balance();
+            if (balancer.isBalanced())
             {
                 boolean enableAbsolute = Boolean.parseBoolean(
                         ConfigFactory.Instance().getProperty("enable.absolute.balancer"));
                 if (enableAbsolute)
                 {
                     Balancer absoluteBalancer = new AbsoluteBalancer();
-                    replicaBalancer.cascade(absoluteBalancer);
+                    balancer.cascade(absoluteBalancer);
                     absoluteBalancer.balance();
                     if (absoluteBalancer.isBalanced())
                     {
@@ -455,7 +599,7 @@ public class CacheCoordinator
                     }
                 } else
                 {
-                    Map<String, HostAddress> balanced = replicaBalancer.getAll();
+                    Map<String, HostAddress> balanced = balancer.getAll();
                     for (Map.Entry<String, HostAddress> entry : balanced.entrySet())
                     {
                         String host = entry.getValue().toString();
@@ -465,7 +609,7 @@ public class CacheCoordinator
                 }
             } else
             {
-                throw new BalancerException("replica balancer failed to balance paths.");
+                throw new BalancerException("consistent hash balancer failed to balance paths.");
             }
         } catch (BalancerException e)
         {
@@ -25,9 +25,13 @@ import io.etcd.jetcd.Lease;
 import io.etcd.jetcd.Watch;
 import io.etcd.jetcd.options.WatchOption;
 import io.etcd.jetcd.watch.WatchEvent;
+import io.pixelsdb.pixels.cache.CacheWriter;
+import io.pixelsdb.pixels.cache.ColumnletAccessMessage;
 import io.pixelsdb.pixels.cache.PixelsCacheConfig;
-import io.pixelsdb.pixels.cache.PixelsCacheUtil;
 import io.pixelsdb.pixels.cache.PixelsCacheWriter;
+import io.pixelsdb.pixels.cache.PixelsPartitionCacheWriter;
+import io.pixelsdb.pixels.cache.mq.SharedMQ;
+import io.pixelsdb.pixels.common.error.ErrorCode;
 import io.pixelsdb.pixels.common.exception.MetadataException;
 import io.pixelsdb.pixels.common.metadata.MetadataService;
 import io.pixelsdb.pixels.common.metadata.domain.Layout;
@@ -69,9 +73,10 @@ public class CacheManager
     // cache status: unhealthy(-1), ready(0), updating(1), out_of_size(2)
     private static AtomicInteger cacheStatus = new AtomicInteger(CacheNodeStatus.READY.StatusCode);
 
-    private PixelsCacheWriter cacheWriter = null;
+    private CacheWriter cacheWriter = null;
     private MetadataService metadataService = null;
     private CacheManagerRegister cacheManagerRegister;
+    private ColumnletAccessCollector accessCollector = null;
     private final PixelsCacheConfig cacheConfig;
     private final EtcdUtil etcdUtil;
     private final ScheduledExecutorService scheduledExecutor;
@@ -134,21 +139,12 @@ public class CacheManager
             if (cacheConfig.isCacheEnabled())
             {
                 // 2. init cache writer and metadata service
-                this.cacheWriter =
-                        PixelsCacheWriter.newBuilder()
-                                .setCacheLocation(cacheConfig.getCacheLocation())
-                                .setCacheSize(cacheConfig.getCacheSize())
-                                .setIndexLocation(cacheConfig.getIndexLocation())
-                                .setIndexSize(cacheConfig.getIndexSize())
-                                .setOverwrite(false)
-                                .setHostName(hostName)
-                                .setCacheConfig(cacheConfig)
-                                .build(); // cache version in the index file is cleared if its first 6 bytes are not magic ("PIXELS").
+                this.cacheWriter = buildCacheWriter();
                 this.metadataService = new MetadataService(cacheConfig.getMetaHost(), cacheConfig.getMetaPort());
 
                 // 3. Update cache if necessary.
                 // If the cache is new created using start-vm.sh script, the local cache version would be zero.
-                localCacheVersion = PixelsCacheUtil.getIndexVersion(cacheWriter.getIndexFile());
+                localCacheVersion = cacheWriter.getCacheVersion();
                 logger.debug("Local cache version: " + localCacheVersion);
                 // If Pixels has been reset by reset-pixels.sh, the cache version in etcd would be zero too.
                 KeyValue globalCacheVersionKV = etcdUtil.getKeyValue(Constants.CACHE_VERSION_LITERAL);
@@ -171,6 +167,13 @@ public class CacheManager
             this.cacheManagerRegister = new CacheManagerRegister(leaseClient, leaseId);
             scheduledExecutor.scheduleAtFixedRate(cacheManagerRegister,
                     0, cacheConfig.getNodeHeartbeatPeriod(), TimeUnit.SECONDS);
+            if (cacheConfig.isCacheEnabled() && cacheConfig.isAdmissionEnabled())
+            {
+                // start a scheduled thread to collect the columnlet accesses reported by the readers on this node
+                this.accessCollector = new ColumnletAccessCollector(hostName, cacheConfig);
+                scheduledExecutor.scheduleAtFixedRate(accessCollector, cacheConfig.getAccessReportInterval(),
+                        cacheConfig.getAccessReportInterval(), TimeUnit.SECONDS);
+            }
             initializeSuccess = true;
             etcdUtil.putKeyValue(Constants.CACHE_NODE_STATUS_LITERAL + hostName, "" + cacheStatus.get());
         }
@@ -180,6 +183,44 @@ public class CacheManager
         }
     }
 
+    /**
+     * Build the partitioned cache writer with the ssd tier if cache.ssd.location is set, so that the warm
+     * columnlets that do not fit in memory are cached on the local ssd. Otherwise, build the cache writer
+     * of the cache in memory.
+     * <p>
+     * The cache version in the index file is cleared if its first 6 bytes are not magic ("PIXELS").
+     * </p>
+     */
+    private CacheWriter buildCacheWriter() throws Exception
+    {
+        if (cacheConfig.isSsdEnabled())
+        {
+            return PixelsPartitionCacheWriter.newBuilder()
+                    .setCacheLocation(cacheConfig.getCacheLocation())
+                    .setCacheSize(cacheConfig.getCacheSize())
+                    .setIndexLocation(cacheConfig.getIndexLocation())
+                    .setIndexSize(cacheConfig.getIndexSize())
+                    .setIndexDiskLocation(cacheConfig.getIndexDiskLocation())
+                    .setPartitions(cacheConfig.getPartitions())
+                    .setSsdLocation(cacheConfig.getSsdLocation())
+                    .setSsdSize(cacheConfig.getSsdSize())
+                    .setWriteContent(true)
+                    .setOverwrite(false)
+                    .setHostName(hostName)
+                    .setCacheConfig(cacheConfig)
+                    .build();
+        }
+        return PixelsCacheWriter.newBuilder()
+                .setCacheLocation(cacheConfig.getCacheLocation())
+                .setCacheSize(cacheConfig.getCacheSize())
+                .setIndexLocation(cacheConfig.getIndexLocation())
+                .setIndexSize(cacheConfig.getIndexSize())
+                .setOverwrite(false)
+                .setHostName(hostName)
+                .setCacheConfig(cacheConfig)
+                .build();
+    }
+
     private void updateLocalCache(int version)
             throws MetadataException
     {
@@ -302,6 +343,10 @@ public class CacheManager
             cacheManagerRegister.stop();
         }
         etcdUtil.delete(Constants.CACHE_NODE_STATUS_LITERAL + hostName);
+        if (accessCollector != null)
+        {
+            etcdUtil.delete(Constants.CACHE_ACCESS_LITERAL + hostName);
+        }
         if (metadataService != null)
         {
             try
@@ -367,4 +412,54 @@ public class CacheManager
             leaseClient.close();
         }
     }
+
+    /**
+     * Scheduled collector to consume the columnlet accesses in the access message queue,
+     * and publish the decayed access frequencies of this node in etcd.
+     * */
+    private static class ColumnletAccessCollector
+            implements Runnable
+    {
+        private final String key;
+        private final double decay;
+        private final SharedMQ accessMQ;
+        private final ColumnletAccessMessage message = new ColumnletAccessMessage();
+        private final ColumnletAccessStats stats = new ColumnletAccessStats();
+
+        ColumnletAccessCollector(String hostName, PixelsCacheConfig cacheConfig) throws Exception
+        {
+            this.key = Constants.CACHE_ACCESS_LITERAL + hostName;
+            this.decay = cacheConfig.getAccessDecay();
+            this.accessMQ = new SharedMQ(cacheConfig.getAccessMQLocation(), cacheConfig.getAccessMQSize());
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                stats.decay(decay);
+                int ret;
+                while ((ret = accessMQ.nextForRead(message)) != ErrorCode.ERROR_MQ_IS_EMPTY)
+                {
+                    if (ret == ErrorCode.SUCCESS)
+                    {
+                        accessMQ.readMessage(message);
+                        for (int i = 0; i < message.getNumEntries(); ++i)
+                        {
+                            stats.add(message.getRowGroupId(i), message.getColumnId(i), message.getCount(i));
+                        }
+                    }
+                    else if (ret != ErrorCode.ERROR_MQ_WRITER_IS_ROLLBACK)
+                    {
+                        // e.g., the message is being written, consume it in the next round.
+                        break;
+                    }
+                }
+                EtcdUtil.Instance().putKeyValue(key, stats.toString());
+            }
+            catch (Exception e) {
+                logger.error("failed to collect the columnlet accesses", e);
+            }
+        }
+    }
 }
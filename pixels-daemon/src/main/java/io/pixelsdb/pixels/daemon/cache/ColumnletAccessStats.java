@@ -0,0 +1,108 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.daemon.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The exponentially decayed access frequencies of the columnlets on a cache node.
+ * It is maintained by the {@link CacheManager} and published in etcd for the
+ * {@link CacheCoordinator} to plan the cached columnlets, in the format of
+ * rowGroupId:columnId:frequency;...
+ */
+class ColumnletAccessStats
+{
+    /**
+     * The columnlets whose frequencies decay below this threshold are removed.
+     */
+    private static final double MIN_FREQUENCY = 0.5;
+
+    /**
+     * Key: the columnlet in the format of rowGroupId:columnId, value: the access frequency.
+     */
+    private final Map<String, Double> frequencies = new HashMap<>();
+
+    public void add(String columnlet, double count)
+    {
+        frequencies.merge(columnlet, count, Double::sum);
+    }
+
+    public void add(short rowGroupId, short columnId, double count)
+    {
+        add(rowGroupId + ":" + columnId, count);
+    }
+
+    /**
+     * Multiply the frequencies by the decay, so that the recent accesses weigh more.
+     */
+    public void decay(double decay)
+    {
+        frequencies.replaceAll((columnlet, frequency) -> frequency * decay);
+        frequencies.values().removeIf(frequency -> frequency < MIN_FREQUENCY);
+    }
+
+    public double get(String columnlet)
+    {
+        return frequencies.getOrDefault(columnlet, 0.0);
+    }
+
+    public Map<String, Double> getFrequencies()
+    {
+        return frequencies;
+    }
+
+    public boolean isEmpty()
+    {
+        return frequencies.isEmpty();
+    }
+
+    /**
+     * Parse the access stats from the string published in etcd.
+     */
+    public static ColumnletAccessStats parse(String statsStr)
+    {
+        ColumnletAccessStats stats = new ColumnletAccessStats();
+        if (statsStr == null || statsStr.isEmpty())
+        {
+            return stats;
+        }
+        for (String entry : statsStr.split(";"))
+        {
+            int split = entry.lastIndexOf(':');
+            if (split > 0)
+            {
+                stats.add(entry.substring(0, split), Double.parseDouble(entry.substring(split + 1)));
+            }
+        }
+        return stats;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Double> entry : frequencies.entrySet())
+        {
+            builder.append(entry.getKey()).append(':').append(Math.round(entry.getValue())).append(';');
+        }
+        return builder.toString();
+    }
+}
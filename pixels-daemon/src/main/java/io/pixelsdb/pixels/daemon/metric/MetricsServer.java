@@ -19,6 +19,7 @@
  */
 package io.pixelsdb.pixels.daemon.metric;
 
+import io.pixelsdb.pixels.common.metrics.MetricsHttpServer;
 import io.pixelsdb.pixels.common.metrics.ReadPerfHistogram;
 import io.pixelsdb.pixels.common.metrics.ReadPerfMetrics;
 import io.pixelsdb.pixels.common.utils.ConfigFactory;
@@ -43,6 +44,7 @@ public class MetricsServer implements Server
     private static Logger log = LogManager.getLogger(MetricsServer.class);
 
     private boolean running = false;
+    private MetricsHttpServer httpServer = null;
 
     @Override
     public boolean isRunning()
@@ -54,12 +56,34 @@ public class MetricsServer implements Server
     public void shutdown()
     {
         this.running = false;
+        if (this.httpServer != null)
+        {
+            this.httpServer.stop();
+            this.httpServer = null;
+        }
     }
 
     @Override
     public void run()
     {
         this.running = true;
+        /**
+         * Expose the in-process metrics (e.g., read request latencies and cache hits)
+         * of this process at http://host:metrics.http.port/metrics.
+         * The metrics of the readers in other processes (e.g., query engine workers) are
+         * exposed by those processes at http://host:metrics.reader.http.port/metrics.
+         */
+        int httpPort = Integer.parseInt(ConfigFactory.Instance().getProperty("metrics.http.port"));
+        if (httpPort > 0)
+        {
+            try
+            {
+                this.httpServer = new MetricsHttpServer(httpPort);
+            } catch (IOException e)
+            {
+                log.error("failed to start metrics http server on port " + httpPort, e);
+            }
+        }
         while (this.running)
         {
             try
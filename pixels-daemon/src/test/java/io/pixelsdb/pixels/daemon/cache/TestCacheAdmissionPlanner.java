@@ -0,0 +1,99 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.daemon.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TestCacheAdmissionPlanner
+{
+    @Test
+    public void testStats()
+    {
+        ColumnletAccessStats stats = new ColumnletAccessStats();
+        stats.add((short) 0, (short) 1, 10);
+        stats.add((short) 0, (short) 1, 10);
+        stats.add((short) 1, (short) 2, 1);
+        stats.decay(0.4);
+        Assert.assertEquals(8.0, stats.get("0:1"), 1e-9);
+        // 0.4 is below the minimum frequency.
+        Assert.assertEquals(0.0, stats.get("1:2"), 1e-9);
+        ColumnletAccessStats parsed = ColumnletAccessStats.parse(stats.toString());
+        Assert.assertEquals(8.0, parsed.get("0:1"), 1e-9);
+        Assert.assertEquals(1, parsed.getFrequencies().size());
+    }
+
+    @Test
+    public void testPlan()
+    {
+        Map<String, Long> chunkSizes = new HashMap<>();
+        chunkSizes.put("0:0", 100L);
+        chunkSizes.put("0:1", 200L);
+        chunkSizes.put("0:2", 300L);
+        chunkSizes.put("0:3", 50L);
+        ColumnletAccessStats stats = new ColumnletAccessStats();
+        stats.add("0:2", 100);
+        stats.add("0:1", 50);
+        stats.add("0:0", 10);
+        List<String> order = Arrays.asList("0:0", "0:3", "0:1", "0:2");
+
+        // 2 files: 0:2 costs 600, 0:1 costs 400, 0:0 costs 200 and does not fit, 0:3 costs 100 from the order.
+        List<String> planned = CacheAdmissionPlanner.plan(stats, chunkSizes, 2, 1150, order);
+        Assert.assertEquals(Arrays.asList("0:2", "0:1", "0:3"), planned);
+
+        // without access statistics, the columnlet order is followed.
+        planned = CacheAdmissionPlanner.plan(new ColumnletAccessStats(), chunkSizes, 2, 300, order);
+        Assert.assertEquals(Arrays.asList("0:0", "0:3"), planned);
+    }
+
+    @Test
+    public void testPlanSsdTier()
+    {
+        Map<String, Long> chunkSizes = new HashMap<>();
+        chunkSizes.put("0:0", 100L);
+        chunkSizes.put("0:1", 200L);
+        chunkSizes.put("0:2", 300L);
+        chunkSizes.put("0:3", 50L);
+        chunkSizes.put("0:4", 400L);
+        ColumnletAccessStats stats = new ColumnletAccessStats();
+        stats.add("0:2", 100);
+        stats.add("0:1", 50);
+        stats.add("0:4", 20);
+        stats.add("0:0", 10);
+        List<String> order = Arrays.asList("0:3", "0:0", "0:1", "0:2", "0:4");
+
+        // 1 file: the memory tier holds 0:2 and 0:1, the remaining 50 bytes are filled by 0:3 from the order.
+        List<String> memory = CacheAdmissionPlanner.plan(stats, chunkSizes, 1, 550, order);
+        Assert.assertEquals(Arrays.asList("0:2", "0:1", "0:3"), memory);
+
+        // the ssd tier holds the next-best columnlets by the access frequencies, not the columnlet order.
+        List<String> ssd = CacheAdmissionPlanner.plan(stats, chunkSizes, 1, 500, order, memory);
+        Assert.assertEquals(Arrays.asList("0:4", "0:0"), ssd);
+
+        // the columnlets without access statistics fill the ssd tier in the columnlet order.
+        ssd = CacheAdmissionPlanner.plan(new ColumnletAccessStats(), chunkSizes, 1, 500, order, memory);
+        Assert.assertEquals(Arrays.asList("0:0", "0:4"), ssd);
+    }
+}
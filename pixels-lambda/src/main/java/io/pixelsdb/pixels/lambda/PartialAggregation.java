@@ -0,0 +1,528 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.lambda;
+
+import com.google.gson.Gson;
+import io.pixelsdb.pixels.core.TypeDescription;
+import io.pixelsdb.pixels.core.vector.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The partial aggregation pushed down into the scan worker. It is serialized in json, e.g.:
+ * <pre>
+ * {"groupBy":["o_orderstatus"],
+ *  "aggregates":[{"func":"COUNT"},{"func":"SUM","column":"o_totalprice"}]}
+ * </pre>
+ * COUNT without column is count(*). The partial results of the scan threads are merged
+ * by {@link #merge(PartialAggregation)}, and the final partial result of the worker is
+ * returned to the coordinator by {@link #resultToJson()}, which is a list of rows, each
+ * row contains the group-by values followed by the aggregate values.
+ * <p>
+ * Integers, dates and decimals are aggregated as long values (dates in days since the epoch,
+ * decimals in unscaled values), floating-point numbers are aggregated as double values.
+ * Strings and booleans can be used as group-by keys and in COUNT, MIN and MAX.
+ * </p>
+ */
+public class PartialAggregation
+{
+    public enum Function
+    {
+        COUNT, SUM, MIN, MAX
+    }
+
+    public static class Aggregate
+    {
+        private Function func;
+        private String column;
+
+        public Aggregate() { }
+
+        public Aggregate(Function func, String column)
+        {
+            this.func = func;
+            this.column = column;
+        }
+
+        public Function getFunc()
+        {
+            return func;
+        }
+
+        public String getColumn()
+        {
+            return column;
+        }
+    }
+
+    private List<String> groupBy = new ArrayList<>();
+    private List<Aggregate> aggregates = new ArrayList<>();
+
+    /**
+     * The hash table of the groups. The values are the accumulators of the aggregates.
+     */
+    private transient Map<GroupKey, Accumulator[]> groups = new HashMap<>();
+    /**
+     * The reusable key to probe the hash table, it is copied only when a new group is created.
+     */
+    private transient GroupKey probeKey;
+    private transient TypeDescription.Category[] groupByCategories;
+    private transient TypeDescription.Category[] aggregateCategories;
+
+    public PartialAggregation() { }
+
+    public PartialAggregation(List<String> groupBy, List<Aggregate> aggregates)
+    {
+        this.groupBy = groupBy;
+        this.aggregates = aggregates;
+    }
+
+    public static PartialAggregation fromJson(String json)
+    {
+        PartialAggregation aggregation = new Gson().fromJson(json, PartialAggregation.class);
+        if (aggregation.groupBy == null)
+        {
+            aggregation.groupBy = new ArrayList<>();
+        }
+        if (aggregation.aggregates == null)
+        {
+            aggregation.aggregates = new ArrayList<>();
+        }
+        aggregation.groups = new HashMap<>();
+        return aggregation;
+    }
+
+    public String toJson()
+    {
+        return new Gson().toJson(this);
+    }
+
+    /**
+     * @return a new partial aggregation with the same definition and empty groups.
+     */
+    public PartialAggregation copy()
+    {
+        PartialAggregation copy = new PartialAggregation(this.groupBy, this.aggregates);
+        copy.groupByCategories = this.groupByCategories;
+        copy.aggregateCategories = this.aggregateCategories;
+        return copy;
+    }
+
+    public List<String> getGroupBy()
+    {
+        return groupBy;
+    }
+
+    public List<Aggregate> getAggregates()
+    {
+        return aggregates;
+    }
+
+    /**
+     * @return the distinct names of the columns referenced by this aggregation.
+     */
+    public Set<String> getColumns()
+    {
+        Set<String> columns = new LinkedHashSet<>(groupBy);
+        for (Aggregate aggregate : aggregates)
+        {
+            if (aggregate.column != null)
+            {
+                columns.add(aggregate.column);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Bind this aggregation to the schema of the file to be scanned.
+     * @param fileSchema the schema of the file.
+     */
+    public void bind(TypeDescription fileSchema)
+    {
+        groupByCategories = new TypeDescription.Category[groupBy.size()];
+        for (int i = 0; i < groupBy.size(); ++i)
+        {
+            groupByCategories[i] = findType(fileSchema, groupBy.get(i)).getCategory();
+        }
+        aggregateCategories = new TypeDescription.Category[aggregates.size()];
+        for (int i = 0; i < aggregates.size(); ++i)
+        {
+            Aggregate aggregate = aggregates.get(i);
+            if (aggregate.column == null)
+            {
+                if (aggregate.func != Function.COUNT)
+                {
+                    throw new IllegalArgumentException(aggregate.func + " requires an input column");
+                }
+                continue;
+            }
+            TypeDescription.Category category = findType(fileSchema, aggregate.column).getCategory();
+            if (aggregate.func == Function.SUM && !isNumeric(category))
+            {
+                throw new UnsupportedOperationException("SUM on column type '" + category + "' is not supported");
+            }
+            aggregateCategories[i] = category;
+        }
+    }
+
+    private static TypeDescription findType(TypeDescription fileSchema, String column)
+    {
+        List<String> fieldNames = fileSchema.getFieldNames();
+        for (int i = 0; i < fieldNames.size(); ++i)
+        {
+            if (fieldNames.get(i).equalsIgnoreCase(column))
+            {
+                return fileSchema.getChildren().get(i);
+            }
+        }
+        throw new IllegalArgumentException("aggregation column '" + column + "' does not exist in file schema");
+    }
+
+    private static boolean isNumeric(TypeDescription.Category category)
+    {
+        switch (category)
+        {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case DATE:
+            case DECIMAL:
+            case FLOAT:
+            case DOUBLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Accumulate the selected rows in the row batch.
+     * @param rowBatch the row batch.
+     * @param selected the indexes of the selected rows.
+     * @param size the number of selected rows.
+     * @param groupByIndexes the index in rowBatch.cols of each group-by column.
+     * @param aggregateIndexes the index in rowBatch.cols of the input column of each aggregate,
+     *                         -1 for count(*).
+     */
+    public void accumulate(VectorizedRowBatch rowBatch, int[] selected, int size,
+                           int[] groupByIndexes, int[] aggregateIndexes)
+    {
+        if (probeKey == null || probeKey.values.length != groupByIndexes.length)
+        {
+            probeKey = new GroupKey(new Object[groupByIndexes.length]);
+        }
+        GroupKey key = probeKey;
+        for (int i = 0; i < size; ++i)
+        {
+            int row = selected[i];
+            for (int g = 0; g < groupByIndexes.length; ++g)
+            {
+                key.values[g] = getValue(rowBatch.cols[groupByIndexes[g]], row, groupByCategories[g]);
+            }
+            key.rehash();
+            Accumulator[] accumulators = groups.get(key);
+            if (accumulators == null)
+            {
+                accumulators = new Accumulator[aggregates.size()];
+                for (int a = 0; a < accumulators.length; ++a)
+                {
+                    accumulators[a] = new Accumulator(aggregates.get(a).func);
+                }
+                groups.put(key.copy(), accumulators);
+            }
+            for (int a = 0; a < accumulators.length; ++a)
+            {
+                if (aggregateIndexes[a] < 0)
+                {
+                    accumulators[a].count++;
+                    continue;
+                }
+                Object value = getValue(rowBatch.cols[aggregateIndexes[a]], row, aggregateCategories[a]);
+                if (value != null)
+                {
+                    accumulators[a].add(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge the groups of the other partial aggregation into this one.
+     * @param other the other partial aggregation with the same definition.
+     */
+    public void merge(PartialAggregation other)
+    {
+        for (Map.Entry<GroupKey, Accumulator[]> entry : other.groups.entrySet())
+        {
+            Accumulator[] accumulators = this.groups.get(entry.getKey());
+            if (accumulators == null)
+            {
+                this.groups.put(entry.getKey(), entry.getValue());
+                continue;
+            }
+            for (int a = 0; a < accumulators.length; ++a)
+            {
+                accumulators[a].merge(entry.getValue()[a]);
+            }
+        }
+    }
+
+    public int getNumGroups()
+    {
+        return groups.size();
+    }
+
+    /**
+     * @return the partial result in json, which is a list of rows. Each row contains the
+     * group-by values followed by the aggregate values.
+     */
+    public String resultToJson()
+    {
+        List<List<Object>> rows = new ArrayList<>(groups.size());
+        for (Map.Entry<GroupKey, Accumulator[]> entry : groups.entrySet())
+        {
+            List<Object> row = new ArrayList<>(entry.getKey().values.length + aggregates.size());
+            for (Object value : entry.getKey().values)
+            {
+                row.add(value instanceof Text ? value.toString() : value);
+            }
+            for (Accumulator accumulator : entry.getValue())
+            {
+                row.add(accumulator.result());
+            }
+            rows.add(row);
+        }
+        return new Gson().toJson(rows);
+    }
+
+    /**
+     * @return the value of the row in the column vector, or null if the value is null.
+     * Strings are returned as {@link Text} so that they can be compared and hashed.
+     */
+    private static Object getValue(ColumnVector vector, int row, TypeDescription.Category category)
+    {
+        int idx = vector.isRepeating ? 0 : row;
+        if (!vector.noNulls && vector.isNull[idx])
+        {
+            return null;
+        }
+        switch (category)
+        {
+            case BOOLEAN:
+            case BYTE:
+                return (long) ((ByteColumnVector) vector).vector[idx];
+            case SHORT:
+            case INT:
+            case LONG:
+                return ((LongColumnVector) vector).vector[idx];
+            case DATE:
+                return (long) ((DateColumnVector) vector).dates[idx];
+            case DECIMAL:
+                return ((DecimalColumnVector) vector).vector[idx];
+            case FLOAT:
+            case DOUBLE:
+                return Double.longBitsToDouble(((DoubleColumnVector) vector).vector[idx]);
+            case STRING:
+            case CHAR:
+            case VARCHAR:
+            case BINARY:
+            case VARBINARY:
+            {
+                BinaryColumnVector binary = (BinaryColumnVector) vector;
+                return new Text(Arrays.copyOfRange(binary.vector[idx],
+                        binary.start[idx], binary.start[idx] + binary.lens[idx]));
+            }
+            default:
+                throw new UnsupportedOperationException("column type '" + category + "' is not supported");
+        }
+    }
+
+    /**
+     * The group-by values of a group. The hash code is cached, and must be recomputed
+     * by {@link #rehash()} after the values are changed.
+     */
+    private static class GroupKey
+    {
+        private final Object[] values;
+        private int hash;
+
+        private GroupKey(Object[] values)
+        {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        private void rehash()
+        {
+            this.hash = Arrays.hashCode(values);
+        }
+
+        private GroupKey copy()
+        {
+            return new GroupKey(values.clone());
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof GroupKey && hash == ((GroupKey) o).hash &&
+                    Arrays.equals(values, ((GroupKey) o).values);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    /**
+     * The wrapper of string values, with content-based equals and hashCode.
+     */
+    private static class Text implements Comparable<Text>
+    {
+        private final byte[] bytes;
+
+        private Text(byte[] bytes)
+        {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof Text && Arrays.equals(bytes, ((Text) o).bytes);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public int compareTo(Text o)
+        {
+            int n = Math.min(bytes.length, o.bytes.length);
+            for (int i = 0; i < n; ++i)
+            {
+                int cmp = (bytes[i] & 0xff) - (o.bytes[i] & 0xff);
+                if (cmp != 0)
+                {
+                    return cmp;
+                }
+            }
+            return bytes.length - o.bytes.length;
+        }
+
+        @Override
+        public String toString()
+        {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class Accumulator
+    {
+        private final Function func;
+        private long count = 0;
+        private long longSum = 0;
+        private double doubleSum = 0;
+        private boolean isDouble = false;
+        private Comparable<Object> extreme = null;
+
+        private Accumulator(Function func)
+        {
+            this.func = func;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void add(Object value)
+        {
+            count++;
+            switch (func)
+            {
+                case SUM:
+                    if (value instanceof Double)
+                    {
+                        isDouble = true;
+                        doubleSum += (Double) value;
+                    }
+                    else
+                    {
+                        longSum += (Long) value;
+                    }
+                    break;
+                case MIN:
+                    if (extreme == null || extreme.compareTo(value) > 0)
+                    {
+                        extreme = (Comparable<Object>) value;
+                    }
+                    break;
+                case MAX:
+                    if (extreme == null || extreme.compareTo(value) < 0)
+                    {
+                        extreme = (Comparable<Object>) value;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void merge(Accumulator other)
+        {
+            count += other.count;
+            longSum += other.longSum;
+            doubleSum += other.doubleSum;
+            isDouble |= other.isDouble;
+            if (other.extreme != null)
+            {
+                if (extreme == null ||
+                        (func == Function.MIN && extreme.compareTo(other.extreme) > 0) ||
+                        (func == Function.MAX && extreme.compareTo(other.extreme) < 0))
+                {
+                    extreme = other.extreme;
+                }
+            }
+        }
+
+        private Object result()
+        {
+            switch (func)
+            {
+                case COUNT:
+                    return count;
+                case SUM:
+                    if (count == 0)
+                    {
+                        return null;
+                    }
+                    return isDouble ? (Object) (doubleSum + longSum) : (Object) longSum;
+                default:
+                    return extreme == null ? null : extreme instanceof Text ? extreme.toString() : extreme;
+            }
+        }
+    }
+}
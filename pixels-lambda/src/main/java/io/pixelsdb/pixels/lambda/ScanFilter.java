@@ -0,0 +1,466 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.lambda;
+
+import com.google.gson.Gson;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.pixelsdb.pixels.core.TypeDescription;
+import io.pixelsdb.pixels.core.predicate.PixelsPredicate;
+import io.pixelsdb.pixels.core.stats.ColumnStats;
+import io.pixelsdb.pixels.core.stats.RangeStats;
+import io.pixelsdb.pixels.core.utils.DatetimeUtils;
+import io.pixelsdb.pixels.core.vector.*;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.util.*;
+
+/**
+ * The filter pushed down into the scan worker. It is a conjunction of
+ * column-literal comparisons, and is serialized in json, e.g.:
+ * <pre>
+ * {"conjuncts":[{"column":"o_orderdate","op":"GE","value":"1995-01-01"},
+ *               {"column":"o_orderstatus","op":"EQ","value":"F"}]}
+ * </pre>
+ * The filter is used in two places: {@link #toPredicate(TypeDescription)} creates
+ * a predicate for the record reader to skip row groups by the column statistics,
+ * and {@link #filter(VectorizedRowBatch, int[], int[])} filters the rows in the
+ * row batches read by the record reader.
+ * <p>
+ * Comparisons on null values are always false, as in SQL.
+ * </p>
+ */
+public class ScanFilter
+{
+    public enum Operator
+    {
+        EQ, NE, LT, LE, GT, GE
+    }
+
+    public static class ColumnFilter
+    {
+        private String column;
+        private Operator op;
+        private String value;
+
+        public ColumnFilter() { }
+
+        public ColumnFilter(String column, Operator op, String value)
+        {
+            this.column = column;
+            this.op = op;
+            this.value = value;
+        }
+
+        public String getColumn()
+        {
+            return column;
+        }
+
+        public Operator getOp()
+        {
+            return op;
+        }
+
+        public String getValue()
+        {
+            return value;
+        }
+    }
+
+    private List<ColumnFilter> conjuncts = new ArrayList<>();
+
+    /**
+     * The literals converted into the physical representations of the column vectors.
+     * They are initialized in bind().
+     */
+    private transient Object[] literals = null;
+    private transient TypeDescription.Category[] categories = null;
+
+    public ScanFilter() { }
+
+    public ScanFilter(List<ColumnFilter> conjuncts)
+    {
+        this.conjuncts = conjuncts;
+    }
+
+    public static ScanFilter fromJson(String json)
+    {
+        ScanFilter filter = new Gson().fromJson(json, ScanFilter.class);
+        if (filter.conjuncts == null)
+        {
+            filter.conjuncts = new ArrayList<>();
+        }
+        return filter;
+    }
+
+    public String toJson()
+    {
+        return new Gson().toJson(this);
+    }
+
+    public List<ColumnFilter> getConjuncts()
+    {
+        return conjuncts;
+    }
+
+    public boolean isEmpty()
+    {
+        return conjuncts.isEmpty();
+    }
+
+    /**
+     * @return the distinct names of the columns referenced by this filter.
+     */
+    public Set<String> getColumns()
+    {
+        Set<String> columns = new LinkedHashSet<>();
+        for (ColumnFilter conjunct : conjuncts)
+        {
+            columns.add(conjunct.column);
+        }
+        return columns;
+    }
+
+    /**
+     * Bind this filter to the schema of the file to be scanned, i.e., convert the literals
+     * into the physical representations of the columns. This must be called before filter().
+     * The file schema of the files scanned by the same worker must be the same.
+     * @param fileSchema the schema of the file.
+     */
+    public synchronized void bind(TypeDescription fileSchema)
+    {
+        if (this.literals != null)
+        {
+            return;
+        }
+        Object[] literals = new Object[conjuncts.size()];
+        TypeDescription.Category[] categories = new TypeDescription.Category[conjuncts.size()];
+        for (int i = 0; i < conjuncts.size(); ++i)
+        {
+            ColumnFilter conjunct = conjuncts.get(i);
+            TypeDescription type = findType(fileSchema, conjunct.column);
+            categories[i] = type.getCategory();
+            literals[i] = parseLiteral(type, conjunct.value);
+        }
+        this.categories = categories;
+        this.literals = literals;
+    }
+
+    private static TypeDescription findType(TypeDescription fileSchema, String column)
+    {
+        List<String> fieldNames = fileSchema.getFieldNames();
+        for (int i = 0; i < fieldNames.size(); ++i)
+        {
+            if (fieldNames.get(i).equalsIgnoreCase(column))
+            {
+                return fileSchema.getChildren().get(i);
+            }
+        }
+        throw new IllegalArgumentException("filter column '" + column + "' does not exist in file schema");
+    }
+
+    private static Object parseLiteral(TypeDescription type, String value)
+    {
+        switch (type.getCategory())
+        {
+            case BOOLEAN:
+                return Boolean.parseBoolean(value) ? 1L : 0L;
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                return Long.parseLong(value);
+            case DATE:
+                // the same conversion as DateColumnVector.set().
+                return (long) DatetimeUtils.millisToDay(Date.valueOf(value).getTime());
+            case DECIMAL:
+                return new BigDecimal(value).setScale(type.getScale(), BigDecimal.ROUND_HALF_UP)
+                        .unscaledValue().longValueExact();
+            case FLOAT:
+            case DOUBLE:
+                return Double.parseDouble(value);
+            case STRING:
+            case CHAR:
+            case VARCHAR:
+            case BINARY:
+            case VARBINARY:
+                return value.getBytes(StandardCharsets.UTF_8);
+            default:
+                throw new UnsupportedOperationException(
+                        "filter on column type '" + type.getCategory() + "' is not supported");
+        }
+    }
+
+    /**
+     * Create the predicate on the column statistics for the record reader.
+     * Only the column types with comparable statistics are used to skip row groups,
+     * the other conjuncts are always considered as matched.
+     * @param fileSchema the schema of the file.
+     * @return the predicate.
+     */
+    public PixelsPredicate toPredicate(TypeDescription fileSchema)
+    {
+        bind(fileSchema);
+        if (conjuncts.isEmpty())
+        {
+            return PixelsPredicate.TRUE_PREDICATE;
+        }
+        List<String> fieldNames = fileSchema.getFieldNames();
+        int[] columnIds = new int[conjuncts.size()];
+        for (int i = 0; i < conjuncts.size(); ++i)
+        {
+            columnIds[i] = -1;
+            for (int j = 0; j < fieldNames.size(); ++j)
+            {
+                if (fieldNames.get(j).equalsIgnoreCase(conjuncts.get(i).column))
+                {
+                    columnIds[i] = j;
+                    break;
+                }
+            }
+        }
+        return new StatsPredicate(columnIds);
+    }
+
+    /**
+     * Filter the rows in the row batch.
+     * @param rowBatch the row batch.
+     * @param columnIndexes the index in rowBatch.cols of the column referenced by each conjunct.
+     * @param selected the array to store the indexes of the selected rows, its length
+     *                 should not be less than rowBatch.size.
+     * @return the number of selected rows.
+     */
+    public int filter(VectorizedRowBatch rowBatch, int[] columnIndexes, int[] selected)
+    {
+        int size = rowBatch.size;
+        for (int i = 0; i < size; ++i)
+        {
+            selected[i] = i;
+        }
+        for (int c = 0; c < conjuncts.size() && size > 0; ++c)
+        {
+            ColumnVector vector = rowBatch.cols[columnIndexes[c]];
+            Operator op = conjuncts.get(c).op;
+            int newSize = 0;
+            for (int i = 0; i < size; ++i)
+            {
+                int row = selected[i];
+                int idx = vector.isRepeating ? 0 : row;
+                if (!vector.noNulls && vector.isNull[idx])
+                {
+                    continue;
+                }
+                if (test(op, compare(c, vector, idx)))
+                {
+                    selected[newSize++] = row;
+                }
+            }
+            size = newSize;
+        }
+        return size;
+    }
+
+    private int compare(int conjunct, ColumnVector vector, int idx)
+    {
+        switch (categories[conjunct])
+        {
+            case BOOLEAN:
+            case BYTE:
+                return Long.compare(((ByteColumnVector) vector).vector[idx], (Long) literals[conjunct]);
+            case SHORT:
+            case INT:
+            case LONG:
+                return Long.compare(((LongColumnVector) vector).vector[idx], (Long) literals[conjunct]);
+            case DATE:
+                return Long.compare(((DateColumnVector) vector).dates[idx], (Long) literals[conjunct]);
+            case DECIMAL:
+                return Long.compare(((DecimalColumnVector) vector).vector[idx], (Long) literals[conjunct]);
+            case FLOAT:
+            case DOUBLE:
+                return Double.compare(Double.longBitsToDouble(((DoubleColumnVector) vector).vector[idx]),
+                        (Double) literals[conjunct]);
+            default:
+                BinaryColumnVector binary = (BinaryColumnVector) vector;
+                return compareBytes(binary.vector[idx], binary.start[idx], binary.lens[idx],
+                        (byte[]) literals[conjunct]);
+        }
+    }
+
+    private static int compareBytes(byte[] buffer, int start, int length, byte[] literal)
+    {
+        int n = Math.min(length, literal.length);
+        for (int i = 0; i < n; ++i)
+        {
+            int cmp = (buffer[start + i] & 0xff) - (literal[i] & 0xff);
+            if (cmp != 0)
+            {
+                return cmp;
+            }
+        }
+        return length - literal.length;
+    }
+
+    private static boolean test(Operator op, int cmp)
+    {
+        switch (op)
+        {
+            case EQ:
+                return cmp == 0;
+            case NE:
+                return cmp != 0;
+            case LT:
+                return cmp < 0;
+            case LE:
+                return cmp <= 0;
+            case GT:
+                return cmp > 0;
+            case GE:
+                return cmp >= 0;
+            default:
+                throw new UnsupportedOperationException("operator '" + op + "' is not supported");
+        }
+    }
+
+    /**
+     * The predicate on the column statistics. The conjuncts whose column statistics
+     * are not range statistics are considered as matched.
+     */
+    private class StatsPredicate implements PixelsPredicate
+    {
+        private final int[] columnIds;
+
+        private StatsPredicate(int[] columnIds)
+        {
+            this.columnIds = columnIds;
+        }
+
+        @Override
+        public boolean matches(long numberOfRows, Map<Integer, ColumnStats> statisticsByColumnIndex)
+        {
+            for (int i = 0; i < conjuncts.size(); ++i)
+            {
+                ColumnStats stats = statisticsByColumnIndex.get(columnIds[i]);
+                if (stats == null)
+                {
+                    continue;
+                }
+                if (stats.getNumberOfValues() == 0)
+                {
+                    if (numberOfRows > 0 && stats.hasNull())
+                    {
+                        // all the values are null, no row can satisfy the comparison.
+                        return false;
+                    }
+                    continue;
+                }
+                if (!(stats instanceof RangeStats))
+                {
+                    continue;
+                }
+                RangeStats<?> range = (RangeStats<?>) stats;
+                int minCmp, maxCmp;
+                switch (categories[i])
+                {
+                    case SHORT:
+                    case INT:
+                    case LONG:
+                    case DATE:
+                    {
+                        long literal = (Long) literals[i];
+                        minCmp = Long.compare(((Number) range.getMinimum()).longValue(), literal);
+                        maxCmp = Long.compare(((Number) range.getMaximum()).longValue(), literal);
+                        break;
+                    }
+                    case FLOAT:
+                    case DOUBLE:
+                    {
+                        double literal = (Double) literals[i];
+                        minCmp = Double.compare(((Number) range.getMinimum()).doubleValue(), literal);
+                        maxCmp = Double.compare(((Number) range.getMaximum()).doubleValue(), literal);
+                        break;
+                    }
+                    case STRING:
+                    case CHAR:
+                    case VARCHAR:
+                    {
+                        Slice literal = Slices.wrappedBuffer((byte[]) literals[i]);
+                        minCmp = ((Slice) range.getMinimum()).compareTo(literal);
+                        maxCmp = ((Slice) range.getMaximum()).compareTo(literal);
+                        break;
+                    }
+                    default:
+                        continue;
+                }
+                if (!rangeMayMatch(conjuncts.get(i).op, minCmp, maxCmp))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @param minCmp the result of comparing the minimum with the literal.
+         * @param maxCmp the result of comparing the maximum with the literal.
+         * @return false if no value in [min, max] can satisfy the comparison.
+         */
+        private boolean rangeMayMatch(Operator op, int minCmp, int maxCmp)
+        {
+            switch (op)
+            {
+                case EQ:
+                    return minCmp <= 0 && maxCmp >= 0;
+                case NE:
+                    return !(minCmp == 0 && maxCmp == 0);
+                case LT:
+                    return minCmp < 0;
+                case LE:
+                    return minCmp <= 0;
+                case GT:
+                    return maxCmp > 0;
+                case GE:
+                    return maxCmp >= 0;
+                default:
+                    return true;
+            }
+        }
+
+        @Override
+        public boolean matchesNone()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean matchesAll()
+        {
+            return conjuncts.isEmpty();
+        }
+
+        @Override
+        public String toString()
+        {
+            return toJson();
+        }
+    }
+}
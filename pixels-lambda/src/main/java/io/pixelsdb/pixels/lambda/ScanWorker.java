@@ -21,8 +21,10 @@ package io.pixelsdb.pixels.lambda;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.google.gson.Gson;
 import io.pixelsdb.pixels.common.physical.Storage;
 import io.pixelsdb.pixels.common.physical.StorageFactory;
+import io.pixelsdb.pixels.common.utils.ConfigFactory;
 import io.pixelsdb.pixels.core.*;
 import io.pixelsdb.pixels.core.reader.PixelsReaderOption;
 import io.pixelsdb.pixels.core.reader.PixelsRecordReader;
@@ -38,25 +40,60 @@ import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 
 /**
- * response is a list of files read and then written to s3
+ * The scan worker reads the given columns from the given files, with optional filter and
+ * partial aggregation pushed down.
+ * <p>
+ * The event contains:
+ * <ul>
+ *     <li>fileNames: the paths of the files to scan;</li>
+ *     <li>cols: the columns to project;</li>
+ *     <li>filter: optional, a single-element list of the json of {@link ScanFilter},
+ *     the filter is used to skip row groups by statistics and to filter rows;</li>
+ *     <li>aggregation: optional, a single-element list of the json of {@link PartialAggregation};</li>
+ *     <li>outputPath: optional, a single-element list of the s3 path prefix for the output files,
+ *     lambda.scan.output.path in pixels.properties is used if it is not given.</li>
+ * </ul>
+ * Without aggregation, the selected rows of the projected columns are written to one output file
+ * per input file, in small row groups. With aggregation, nothing is written and the partial
+ * aggregation result is returned in the response.
+ * </p>
+ * The response is a json object containing the output files, the files failed to scan with the
+ * error messages, the number of scanned and selected rows, and the partial aggregation result if any.
+ * The output files, row counts and aggregation result only include the files scanned successfully.
  */
 public class ScanWorker implements RequestHandler<Map<String, ArrayList<String>>, String>
 {
     // slf4j is used in the official example java-blank.
     private static final Logger logger = LoggerFactory.getLogger(ScanWorker.class);
 
+    private static final String DEFAULT_OUTPUT_PATH =
+            ConfigFactory.Instance().getProperty("lambda.scan.output.path");
+    /**
+     * The scan threads are mostly waiting for s3 responses, thus we use more threads than cpus.
+     */
+    private static final int THREADS_PER_CPU = 2;
+    /**
+     * The estimated memory footprint of a scan thread, including the reader buffers,
+     * the row batch, and the writer buffers of a row group.
+     */
+    private static final int MEMORY_PER_THREAD_MB = 128;
+    private static final int ROW_BATCH_SIZE = 1024;
+    /**
+     * The output is written in small row groups, so that the writer does not buffer
+     * a large row group in memory and the coordinator can read the output in a streaming way.
+     */
+    private static final int OUTPUT_ROW_GROUP_SIZE = 8 * 1024 * 1024;
+
     @Override
     public String handleRequest(Map<String, ArrayList<String>> event, Context context)
     {
-        ExecutorService threadPool = Executors.newFixedThreadPool(8);
         logger.info("enter handleRequest");
         long lambdaStartTime = System.nanoTime();
         String requestId = context.getAwsRequestId();
@@ -65,43 +102,132 @@ public class ScanWorker implements RequestHandler<Map<String, ArrayList<String>>
         ArrayList<String> fileNames = event.get("fileNames");
         //https://stackoverflow.com/questions/4042434/converting-arrayliststring-to-string-in-java
         String[] cols = event.get("cols").toArray(new String[0]);
+        ScanFilter filter = event.containsKey("filter") ?
+                ScanFilter.fromJson(event.get("filter").get(0)) : null;
+        PartialAggregation aggregation = event.containsKey("aggregation") ?
+                PartialAggregation.fromJson(event.get("aggregation").get(0)) : null;
+        String outputPath = event.containsKey("outputPath") ? event.get("outputPath").get(0) : DEFAULT_OUTPUT_PATH;
+        if (!outputPath.endsWith("/"))
+        {
+            outputPath += "/";
+        }
 
-        // for each file to read, create a thread which uses a reader to read one file and writes the results to s3
-        // Thread[] threads = new Thread[fileNames.size()];
-        logger.debug("start submitting tasks to thread pool");
+        int threadNum = getThreadNum(context, fileNames.size());
+        ExecutorService threadPool = Executors.newFixedThreadPool(threadNum);
+        logger.debug("start submitting tasks to thread pool of " + threadNum + " threads");
+        List<Future<ScanResult>> results = new ArrayList<>(fileNames.size());
         for (int i = 0; i < fileNames.size(); i++)
         {
-            int finalI = i;
-            threadPool.execute(() -> scanFile(fileNames.get(finalI), 1024, cols, requestId + "file" + finalI));
-            // runnables[i] = () -> scanFile(fileNames.get(finalI), 1024, cols, requestId+"file"+finalI);
+            String fileName = fileNames.get(i);
+            String resultFile = aggregation == null ? outputPath + requestId + "file" + i : null;
+            PartialAggregation threadAggregation = aggregation == null ? null : aggregation.copy();
+            results.add(threadPool.submit(() ->
+                    scanFile(fileName, ROW_BATCH_SIZE, cols, filter, threadAggregation, resultFile)));
         }
         threadPool.shutdown();
-        try
-        {
-            threadPool.awaitTermination(300, TimeUnit.SECONDS);//TODO maybe threadpool shouldn't be class method as that might be shared between lambda instances. and shut down one threadpool would shut down all? maybe after shutdown can restart?
-        } catch (InterruptedException e)
-        {
-            e.printStackTrace();
-        }
-        logger.debug("thread pool shut down");
-
 
-        // create response to inform invoker which are the s3 paths of files written
-        String response = "";
-        for (int i = 0; i < fileNames.size(); i++)
+        // create response to inform invoker the s3 paths of files written or the aggregation result.
+        List<String> outputs = new ArrayList<>();
+        Map<String, String> failures = new LinkedHashMap<>();
+        long numRowsScanned = 0, numRowsSelected = 0;
+        for (int i = 0; i < results.size(); i++)
         {
-            if (i < fileNames.size() - 1)
+            ScanResult result;
+            try
+            {
+                result = results.get(i).get();
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                result = ScanResult.failed("interrupted while waiting for the scan");
+            } catch (ExecutionException e)
+            {
+                logger.error("failed to scan file: " + fileNames.get(i), e.getCause());
+                result = ScanResult.failed(String.valueOf(e.getCause()));
+            }
+            if (result.error != null)
+            {
+                // the partial output and aggregation result of a failed file are not returned.
+                failures.put(fileNames.get(i), result.error);
+                continue;
+            }
+            if (result.outputFile != null)
             {
-                response = response + requestId + "file" + i + ",";
-            } else
+                outputs.add(result.outputFile);
+            }
+            numRowsScanned += result.numRowsScanned;
+            numRowsSelected += result.numRowsSelected;
+            if (aggregation != null && result.aggregation != null)
             {
-                response = response + requestId + "file" + i;
+                aggregation.merge(result.aggregation);
             }
         }
+        logger.debug("thread pool shut down");
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("outputs", outputs);
+        response.put("failures", failures);
+        response.put("numRowsScanned", numRowsScanned);
+        response.put("numRowsSelected", numRowsSelected);
+        String responseJson = new Gson().toJson(response);
+        if (aggregation != null)
+        {
+            // the aggregation result is already json, append it to avoid escaping.
+            responseJson = responseJson.substring(0, responseJson.length() - 1) +
+                    ",\"aggregation\":" + aggregation.resultToJson() + "}";
+        }
+
         long lambdaEndTime = System.nanoTime();
         double lambdaDurationMs = 1.0 * (lambdaEndTime - lambdaStartTime) / Math.pow(10, 6);
         logger.debug("lambda requestid " + requestId + " duration: " + lambdaDurationMs);
-        return response;
+        return responseJson;
+    }
+
+    /**
+     * Size the scan thread pool by the number of cpus and the memory limit of the function.
+     * In AWS Lambda, the cpu share is proportional to the configured memory.
+     */
+    private static int getThreadNum(Context context, int numFiles)
+    {
+        int byCpu = Runtime.getRuntime().availableProcessors() * THREADS_PER_CPU;
+        int byMemory = context.getMemoryLimitInMB() / MEMORY_PER_THREAD_MB;
+        return Math.max(1, Math.min(numFiles, Math.min(byCpu, byMemory)));
+    }
+
+    /**
+     * The result of scanning a file.
+     */
+    public static class ScanResult
+    {
+        public final String outputFile;
+        public final long numRowsScanned;
+        public final long numRowsSelected;
+        public final PartialAggregation aggregation;
+        /**
+         * The error message if the scan has failed, null if the scan has succeeded.
+         */
+        public final String error;
+
+        public ScanResult(String outputFile, long numRowsScanned, long numRowsSelected,
+                          PartialAggregation aggregation)
+        {
+            this(outputFile, numRowsScanned, numRowsSelected, aggregation, null);
+        }
+
+        private ScanResult(String outputFile, long numRowsScanned, long numRowsSelected,
+                           PartialAggregation aggregation, String error)
+        {
+            this.outputFile = outputFile;
+            this.numRowsScanned = numRowsScanned;
+            this.numRowsSelected = numRowsSelected;
+            this.aggregation = aggregation;
+            this.error = error;
+        }
+
+        public static ScanResult failed(String error)
+        {
+            return new ScanResult(null, 0, 0, null, error);
+        }
     }
 
     /**
@@ -113,118 +239,251 @@ public class ScanWorker implements RequestHandler<Map<String, ArrayList<String>>
      */
     public String scanFile(String fileName, int batchSize, String[] cols, String resultFile)
     {
-        PixelsReaderOption option = new PixelsReaderOption();
-        option.skipCorruptRecords(true);
-        option.tolerantSchemaEvolution(true);
-        option.includeCols(cols);
-
-        VectorizedRowBatch rowBatch;
+        ScanResult result = scanFile(fileName, batchSize, cols, null, null, DEFAULT_OUTPUT_PATH + resultFile);
+        return result.error == null ? "success" : result.error;
+    }
 
-        try (PixelsReader pixelsReader = getReader(fileName);
-             PixelsRecordReader recordReader = pixelsReader.read(option))
+    /**
+     * Scan a file with the filter and the partial aggregation.
+     * @param fileName the file to scan.
+     * @param batchSize the row batch size.
+     * @param cols the projected columns, ignored if aggregation is not null.
+     * @param filter the filter, null if there is no filter.
+     * @param aggregation the partial aggregation, null if there is no aggregation.
+     * @param resultFile the s3 path of the output file, ignored if aggregation is not null.
+     * @return the scan result, with the error message if the scan has failed.
+     */
+    public ScanResult scanFile(String fileName, int batchSize, String[] cols, ScanFilter filter,
+                               PartialAggregation aggregation, String resultFile)
+    {
+        long numRowsScanned = 0, numRowsSelected = 0;
+        PixelsWriter pixelsWriter = null;
+        String error = null;
+        try (PixelsReader pixelsReader = getReader(fileName))
         {
             logger.debug("start scan file: " + fileName);
             TypeDescription allSchema = pixelsReader.getFileSchema();
             List<TypeDescription> allColTypes = allSchema.getChildren();
             List<String> fieldNames = allSchema.getFieldNames();
-            System.out.println(allColTypes);
-            System.out.println(fieldNames);
-            TypeDescription queriedSchema = TypeDescription.createStruct();
-            // for each queried col find its type
-            ArrayList<TypeDescription> queriedColTypes = new ArrayList<>();
-            for (int i = 0; i < cols.length; i++)
+
+            // the columns to read: the projected columns (or the aggregation columns) and the filter columns.
+            List<String> readCols = new ArrayList<>();
+            if (aggregation != null)
+            {
+                aggregation.bind(allSchema);
+                readCols.addAll(aggregation.getColumns());
+            }
+            else
+            {
+                readCols.addAll(Arrays.asList(cols));
+            }
+            boolean hasFilter = filter != null && !filter.isEmpty();
+            if (hasFilter)
             {
-                // here assume fieldNames and colTypes are in same order
-                queriedSchema.addField(cols[i], allColTypes.get(fieldNames.indexOf(cols[i])));
+                for (String col : filter.getColumns())
+                {
+                    if (!readCols.contains(col))
+                    {
+                        readCols.add(col);
+                    }
+                }
             }
 
-            String s3Path = "tiannan-test/" + resultFile;
-            PixelsWriter pixelsWriter = getWriter(queriedSchema, s3Path);
-            int batch = 0;
+            PixelsReaderOption option = new PixelsReaderOption();
+            option.skipCorruptRecords(true);
+            option.tolerantSchemaEvolution(true);
+            option.includeCols(readCols.toArray(new String[0]));
+            if (hasFilter)
+            {
+                option.predicate(filter.toPredicate(allSchema));
+            }
 
-            while (true)
+            int[] filterIndexes = null;
+            if (hasFilter)
             {
-                rowBatch = recordReader.readBatch(batchSize);
-                pixelsWriter.addRowBatch(rowBatch);
-                if (rowBatch.endOfFile)
+                filterIndexes = new int[filter.getConjuncts().size()];
+                for (int i = 0; i < filterIndexes.length; ++i)
+                {
+                    filterIndexes[i] = readCols.indexOf(filter.getConjuncts().get(i).getColumn());
+                }
+            }
+
+            VectorizedRowBatch outputBatch = null;
+            int[] groupByIndexes = null, aggregateIndexes = null;
+            if (aggregation != null)
+            {
+                groupByIndexes = new int[aggregation.getGroupBy().size()];
+                for (int i = 0; i < groupByIndexes.length; ++i)
+                {
+                    groupByIndexes[i] = readCols.indexOf(aggregation.getGroupBy().get(i));
+                }
+                aggregateIndexes = new int[aggregation.getAggregates().size()];
+                for (int i = 0; i < aggregateIndexes.length; ++i)
+                {
+                    String column = aggregation.getAggregates().get(i).getColumn();
+                    aggregateIndexes[i] = column == null ? -1 : readCols.indexOf(column);
+                }
+            }
+            else
+            {
+                TypeDescription queriedSchema = TypeDescription.createStruct();
+                // for each queried col find its type
+                for (int i = 0; i < cols.length; i++)
+                {
+                    // here assume fieldNames and colTypes are in same order
+                    queriedSchema.addField(cols[i], allColTypes.get(fieldNames.indexOf(cols[i])));
+                }
+                pixelsWriter = getWriter(queriedSchema, resultFile);
+                if (hasFilter)
+                {
+                    outputBatch = queriedSchema.createRowBatch(batchSize);
+                }
+            }
+
+            int[] selected = new int[batchSize];
+            try (PixelsRecordReader recordReader = pixelsReader.read(option))
+            {
+                while (true)
+                {
+                    VectorizedRowBatch rowBatch = recordReader.readBatch(batchSize);
+                    numRowsScanned += rowBatch.size;
+                    if (selected.length < rowBatch.size)
+                    {
+                        selected = new int[rowBatch.size];
+                    }
+                    int numSelected;
+                    if (hasFilter)
+                    {
+                        numSelected = filter.filter(rowBatch, filterIndexes, selected);
+                    }
+                    else
+                    {
+                        numSelected = rowBatch.size;
+                        for (int i = 0; i < numSelected; ++i)
+                        {
+                            selected[i] = i;
+                        }
+                    }
+                    numRowsSelected += numSelected;
+
+                    if (aggregation != null)
+                    {
+                        aggregation.accumulate(rowBatch, selected, numSelected, groupByIndexes, aggregateIndexes);
+                    }
+                    else if (!hasFilter)
+                    {
+                        // the projected columns are the first columns in the row batch.
+                        pixelsWriter.addRowBatch(rowBatch);
+                    }
+                    else if (numSelected > 0)
+                    {
+                        outputBatch.reset();
+                        outputBatch.ensureSize(numSelected);
+                        for (int c = 0; c < outputBatch.numCols; ++c)
+                        {
+                            ColumnVector input = rowBatch.cols[c];
+                            ColumnVector output = outputBatch.cols[c];
+                            for (int i = 0; i < numSelected; ++i)
+                            {
+                                output.setElement(i, selected[i], input);
+                            }
+                        }
+                        outputBatch.size = numSelected;
+                        pixelsWriter.addRowBatch(outputBatch);
+                    }
+                    if (rowBatch.endOfFile)
+                    {
+                        break;
+                    }
+                }
+            }
+        } catch (Exception e)
+        {
+            logger.error("failed to scan file: " + fileName, e);
+            error = String.valueOf(e);
+        }
+        finally
+        {
+            if (pixelsWriter != null)
+            {
+                try
                 {
-                    pixelsReader.close();
                     pixelsWriter.close();
-                    break;
+                } catch (IOException e)
+                {
+                    logger.error("failed to close writer", e);
+                    if (error == null)
+                    {
+                        error = String.valueOf(e);
+                    }
                 }
-                batch += 1;
             }
-        } catch (IOException e)
+        }
+        if (error != null)
         {
-            e.printStackTrace();
-            logger.error("failed to scan", e);
+            if (pixelsWriter != null)
+            {
+                deleteOutput(resultFile);
+            }
+            return ScanResult.failed(error);
         }
         logger.debug("finish scanning file: " + fileName);
-        return "success";
+        return new ScanResult(aggregation == null ? resultFile : null,
+                numRowsScanned, numRowsSelected, aggregation);
     }
 
-    private PixelsReader getReader(String fileName)
+    /**
+     * Delete the partially written output file of a failed scan, so that it is not mistaken as a valid output.
+     */
+    private void deleteOutput(String resultFile)
     {
-        PixelsReader pixelsReader = null;
         try
         {
             Storage storage = StorageFactory.Instance().getStorage(Storage.Scheme.s3);
-            PixelsReaderImpl.Builder builder = PixelsReaderImpl.newBuilder()
-                    .setStorage(storage)
-                    .setPath(fileName)
-                    .setEnableCache(false)
-                    .setCacheOrder(new ArrayList<>())
-                    .setPixelsCacheReader(null)
-                    .setPixelsFooterCache(new PixelsFooterCache());
-            pixelsReader = builder.build();
-
+            if (storage.exists(resultFile))
+            {
+                storage.delete(resultFile, false);
+            }
         } catch (IOException e)
         {
-            e.printStackTrace();
+            logger.error("failed to delete the output file of the failed scan: " + resultFile, e);
         }
+    }
 
-        return pixelsReader;
+    private PixelsReader getReader(String fileName) throws IOException
+    {
+        Storage storage = StorageFactory.Instance().getStorage(Storage.Scheme.s3);
+        PixelsReaderImpl.Builder builder = PixelsReaderImpl.newBuilder()
+                .setStorage(storage)
+                .setPath(fileName)
+                .setEnableCache(false)
+                .setCacheOrder(new ArrayList<>())
+                .setPixelsCacheReader(null)
+                .setPixelsFooterCache(new PixelsFooterCache());
+        return builder.build();
     }
 
-    private PixelsWriter getWriter(TypeDescription schema, String filePath)
+    private PixelsWriter getWriter(TypeDescription schema, String filePath) throws IOException
     {
         logger.debug("try to create storage.");
-        Storage storage = null;
-        try
-        {
-            storage = StorageFactory.Instance().getStorage("s3");
-        } catch (IOException e)
-        {
-            e.printStackTrace();
-            logger.error("failed to get storage", e);
-        }
+        Storage storage = StorageFactory.Instance().getStorage("s3");
         int pixelStride = 10000;
-        int rowGroupSize = 256 * 1024 * 1024;
+        int rowGroupSize = OUTPUT_ROW_GROUP_SIZE;
         long blockSize = 2048l * 1024l * 1024l;
         short replication = (short) 1;
         logger.debug("start create writer");
-        PixelsWriter pixelsWriter = null;
-        try
-        {
-            pixelsWriter = PixelsWriterImpl.newBuilder()
-                    .setSchema(schema)
-                    .setPixelStride(pixelStride)
-                    .setRowGroupSize(rowGroupSize)
-                    .setStorage(storage)
-                    .setFilePath(filePath)
-                    .setBlockSize(blockSize)
-                    .setReplication(replication)
-                    .setBlockPadding(true)
-                    .setEncoding(true)
-                    .setCompressionBlockSize(1)
-                    .build();
-        } catch (Exception e)
-        {
-            e.printStackTrace();
-            logger.error("failed to create writer", e);
-        }
-
-        return pixelsWriter;
+        return PixelsWriterImpl.newBuilder()
+                .setSchema(schema)
+                .setPixelStride(pixelStride)
+                .setRowGroupSize(rowGroupSize)
+                .setStorage(storage)
+                .setFilePath(filePath)
+                .setBlockSize(blockSize)
+                .setReplication(replication)
+                .setBlockPadding(true)
+                .setEncoding(true)
+                .setCompressionBlockSize(1)
+                .build();
     }
 
     // filedNames and colTypes should be in the same order, for example
@@ -299,13 +558,13 @@ public class ScanWorker implements RequestHandler<Map<String, ArrayList<String>>
     }
 
     //TODO: need to decide how much to write to s3.
-    public void writeToS3(Object obj, String requestId)
+    public void writeToS3(Object obj, String bucket, String requestId)
     {
         S3Client s3 = S3Client.builder()
                 .region(Region.US_WEST_2)
                 .build();
         PutObjectRequest objectRequest = PutObjectRequest.builder()
-                .bucket("tiannan-test")
+                .bucket(bucket)
                 .key(requestId)
                 .build();
         s3.putObject(objectRequest, RequestBody.fromBytes(convertObjectToBytes(obj)));
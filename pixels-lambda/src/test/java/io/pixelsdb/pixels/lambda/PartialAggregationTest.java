@@ -0,0 +1,83 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.lambda;
+
+import io.pixelsdb.pixels.core.TypeDescription;
+import io.pixelsdb.pixels.core.vector.BinaryColumnVector;
+import io.pixelsdb.pixels.core.vector.LongColumnVector;
+import io.pixelsdb.pixels.core.vector.VectorizedRowBatch;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PartialAggregationTest
+{
+    private final TypeDescription schema =
+            TypeDescription.fromString("struct<o_orderkey:bigint,o_orderstatus:varchar(1)>");
+
+    private VectorizedRowBatch createRowBatch()
+    {
+        VectorizedRowBatch rowBatch = schema.createRowBatch(8);
+        LongColumnVector keys = (LongColumnVector) rowBatch.cols[0];
+        BinaryColumnVector status = (BinaryColumnVector) rowBatch.cols[1];
+        String[] statuses = {"F", "O", "F", "P", "O", "F", "O", "F"};
+        for (int i = 0; i < 8; ++i)
+        {
+            keys.add(i);
+            status.add(statuses[i]);
+        }
+        rowBatch.size = 8;
+        return rowBatch;
+    }
+
+    @Test
+    public void testPartialAggregation()
+    {
+        PartialAggregation aggregation = PartialAggregation.fromJson("{\"groupBy\":[\"o_orderstatus\"]," +
+                "\"aggregates\":[{\"func\":\"COUNT\"},{\"func\":\"SUM\",\"column\":\"o_orderkey\"}]}");
+        aggregation.bind(schema);
+        PartialAggregation other = aggregation.copy();
+        int[] selected = {0, 1, 2, 3, 4, 5, 6, 7};
+        aggregation.accumulate(createRowBatch(), selected, 4, new int[]{1}, new int[]{-1, 0});
+        other.accumulate(createRowBatch(), new int[]{4, 5, 6, 7}, 4, new int[]{1}, new int[]{-1, 0});
+        aggregation.merge(other);
+        Assert.assertEquals(3, aggregation.getNumGroups());
+        String result = aggregation.resultToJson();
+        Assert.assertTrue(result.contains("[\"F\",4,14]"));
+        Assert.assertTrue(result.contains("[\"O\",3,11]"));
+        Assert.assertTrue(result.contains("[\"P\",1,3]"));
+    }
+
+    @Test
+    public void testGroupByMultipleColumns()
+    {
+        PartialAggregation aggregation = PartialAggregation.fromJson("{\"groupBy\":[\"o_orderstatus\",\"o_orderkey\"]," +
+                "\"aggregates\":[{\"func\":\"COUNT\"}]}");
+        aggregation.bind(schema);
+        int[] selected = {0, 1, 2, 3, 4, 5, 6, 7};
+        // accumulate twice, the groups created in the first batch must not be changed by the reused probe key.
+        aggregation.accumulate(createRowBatch(), selected, 8, new int[]{1, 0}, new int[]{-1});
+        aggregation.accumulate(createRowBatch(), selected, 8, new int[]{1, 0}, new int[]{-1});
+        Assert.assertEquals(8, aggregation.getNumGroups());
+        String result = aggregation.resultToJson();
+        Assert.assertTrue(result.contains("[\"F\",0,2]"));
+        Assert.assertTrue(result.contains("[\"O\",6,2]"));
+        Assert.assertTrue(result.contains("[\"P\",3,2]"));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.lambda;
+
+import io.pixelsdb.pixels.core.TypeDescription;
+import io.pixelsdb.pixels.core.vector.BinaryColumnVector;
+import io.pixelsdb.pixels.core.vector.LongColumnVector;
+import io.pixelsdb.pixels.core.vector.VectorizedRowBatch;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ScanFilterTest
+{
+    private final TypeDescription schema =
+            TypeDescription.fromString("struct<o_orderkey:bigint,o_orderstatus:varchar(1)>");
+
+    private VectorizedRowBatch createRowBatch()
+    {
+        VectorizedRowBatch rowBatch = schema.createRowBatch(8);
+        LongColumnVector keys = (LongColumnVector) rowBatch.cols[0];
+        BinaryColumnVector status = (BinaryColumnVector) rowBatch.cols[1];
+        String[] statuses = {"F", "O", "F", "P", "O", "F", "O", "F"};
+        for (int i = 0; i < 8; ++i)
+        {
+            keys.add(i);
+            status.add(statuses[i]);
+        }
+        rowBatch.size = 8;
+        return rowBatch;
+    }
+
+    @Test
+    public void testFilter()
+    {
+        ScanFilter filter = ScanFilter.fromJson("{\"conjuncts\":[" +
+                "{\"column\":\"o_orderkey\",\"op\":\"GE\",\"value\":\"2\"}," +
+                "{\"column\":\"o_orderstatus\",\"op\":\"EQ\",\"value\":\"F\"}]}");
+        filter.bind(schema);
+        int[] selected = new int[8];
+        int size = filter.filter(createRowBatch(), new int[]{0, 1}, selected);
+        Assert.assertEquals(3, size);
+        Assert.assertArrayEquals(new int[]{2, 5, 7}, java.util.Arrays.copyOf(selected, size));
+    }
+}
@@ -42,6 +42,15 @@ public class Config
     private String pixelsPath;
     private String schema;
     private int[] orderMapping;
+    /**
+     * The names of the cluster key columns, null if the rows are not clustered.
+     */
+    private String[] clusterKeys;
+    private RowClusterer.Mode clusterMode;
+    /**
+     * The index of each cluster key column in the schema.
+     */
+    private int[] clusterKeyIds;
 
     public String getPixelsPath()
     {
@@ -73,6 +82,19 @@ public class Config
         return format;
     }
 
+    /**
+     * @return the index of each cluster key column in the schema, or null if the rows are not clustered
+     */
+    public int[] getClusterKeyIds()
+    {
+        return clusterKeyIds;
+    }
+
+    public RowClusterer.Mode getClusterMode()
+    {
+        return clusterMode;
+    }
+
     public Config(String dbName, String tableName, int maxRowNum, String regex, String format, String pixelsPath)
     {
         this.dbName = dbName;
@@ -83,6 +105,21 @@ public class Config
         this.pixelsPath = pixelsPath;
     }
 
+    /**
+     * @param clusterKeys the comma-separated names of 1 to 3 cluster key columns, null if the rows are not clustered
+     * @param clusterMode sort or zorder, sort if it is null
+     */
+    public Config(String dbName, String tableName, int maxRowNum, String regex, String format, String pixelsPath,
+                  String clusterKeys, String clusterMode)
+    {
+        this(dbName, tableName, maxRowNum, regex, format, pixelsPath);
+        if (clusterKeys != null && !clusterKeys.isEmpty())
+        {
+            this.clusterKeys = clusterKeys.split(",");
+            this.clusterMode = clusterMode == null ? RowClusterer.Mode.SORT : RowClusterer.Mode.from(clusterMode);
+        }
+    }
+
     public boolean load(ConfigFactory configFactory) throws MetadataException, InterruptedException
     {
         // init metadata service
@@ -158,6 +195,25 @@ public class Config
         }
         schemaBuilder.replace(schemaBuilder.length() - 1, schemaBuilder.length(), ">");
 
+        // map the cluster keys to the columns of the schema
+        int[] clusterKeyIds = null;
+        if (this.clusterKeys != null)
+        {
+            if (this.clusterKeys.length > RowClusterer.MAX_KEY_NUM)
+            {
+                return false;
+            }
+            clusterKeyIds = new int[this.clusterKeys.length];
+            for (int i = 0; i < this.clusterKeys.length; i++)
+            {
+                clusterKeyIds[i] = layoutColumnOrder.indexOf(this.clusterKeys[i].trim());
+                if (clusterKeyIds[i] < 0)
+                {
+                    return false;
+                }
+            }
+        }
+
         // get path of loading
         if(this.pixelsPath == null)
         {
@@ -178,6 +234,7 @@ public class Config
         // init the params
         this.schema = schemaBuilder.toString();
         this.orderMapping = orderMapping;
+        this.clusterKeyIds = clusterKeyIds;
         metadataService.shutdown();
         return true;
     }
@@ -57,6 +57,8 @@ public class ConsumerGenerator
         prop.setProperty("row.group.size", configFactory.getProperty("row.group.size"));
         prop.setProperty("block.size", configFactory.getProperty("block.size"));
         prop.setProperty("block.replication", configFactory.getProperty("block.replication"));
+        prop.setProperty("cluster.memory.size", configFactory.getProperty("cluster.memory.size"));
+        prop.setProperty("cluster.spill.dir", configFactory.getProperty("cluster.spill.dir"));
 
         boolean option = false;
         try
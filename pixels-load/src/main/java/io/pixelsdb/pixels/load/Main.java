@@ -63,6 +63,12 @@ import java.util.concurrent.atomic.AtomicInteger;
  * -l hdfs://dbiir10:9000/pixels/pixels/test_105/v_0_order_orc/
  * </p>
  * [-l] is optional, assign a path not the 'OrderPath' in db(Defined in Config.java)
+ * <p>
+ * LOAD -f pixels -o hdfs://dbiir27:9000/pixels/pixels/test_105/source -d pixels -t test_105 -n 220000 -r \t -c 16
+ * -k col1,col2 -z zorder
+ * </p>
+ * [-k] and [-z] are optional, the cluster key columns (1 to 3) and the clustering mode (sort or zorder, default sort)
+ * to reorder the rows of each pixels file before they are written
  *
  * <br>This should be run under root user to execute cache cleaning commands
  * <p>
@@ -75,8 +81,9 @@ import java.util.concurrent.atomic.AtomicInteger;
  * COPY -p .pxl -s hdfs://dbiir27:9000/pixels/pixels/test_105/v_1_order -d hdfs://dbiir27:9000/pixels/pixels/test_105/v_1_order -n 3
  * </p>
  * <p>
- * COMPACT -s pixels -t test_105 -l 3 -n yes -c 8
+ * COMPACT -s pixels -t test_105 -l 3 -n yes -c 8 -r 4 -b 256
  * </p>
+ * [-r] and [-b] are optional, the number of prefetch threads and the max in-flight bytes (in MB) of each compactor
  */
 public class Main
 {
@@ -144,6 +151,10 @@ public class Main
                         .help("specify the option of choosing producer");
                 argumentParser.addArgument("-l", "--loading_data_path")
                         .help("specify the path of loading data");
+                argumentParser.addArgument("-k", "--cluster_keys")
+                        .help("specify the comma-separated cluster key columns (1 to 3) to reorder the rows of each file");
+                argumentParser.addArgument("-z", "--cluster_mode").setDefault("sort")
+                        .help("specify the clustering mode of the cluster keys: sort or zorder");
 
                 Namespace ns = null;
                 try
@@ -165,6 +176,8 @@ public class Main
                     int rowNum = Integer.parseInt(ns.getString("row_num"));
                     String regex = ns.getString("row_regex");
                     String loadingDataPath = ns.getString("loading_data_path");
+                    String clusterKeys = ns.getString("cluster_keys");
+                    String clusterMode = ns.getString("cluster_mode");
 
                     int threadNum = Integer.parseInt(ns.getString("consumer_thread_num"));
                     boolean producer = ns.getBoolean("producer");
@@ -173,7 +186,8 @@ public class Main
 
                     if (format != null)
                     {
-                        config = new Config(dbName, tableName, rowNum, regex, format, loadingDataPath);
+                        config = new Config(dbName, tableName, rowNum, regex, format, loadingDataPath,
+                                clusterKeys, clusterMode);
                     }
 
                     if (producer && config != null)
@@ -448,6 +462,12 @@ public class Main
                 argumentParser.addArgument("-c", "--concurrency")
                         .setDefault("4").required(true)
                         .help("specify the number of threads used for data compaction");
+                argumentParser.addArgument("-r", "--read_concurrency")
+                        .setDefault("4")
+                        .help("specify the number of threads used by each compactor to prefetch column chunks");
+                argumentParser.addArgument("-b", "--max_in_flight_mb")
+                        .setDefault("256")
+                        .help("specify the max size in MB of the prefetched column chunks in each compactor");
 
                 Namespace ns = null;
                 try
@@ -467,6 +487,8 @@ public class Main
                     int layoutId = Integer.parseInt(ns.getString("layout"));
                     String naive = ns.getString("naive");
                     int threadNum = Integer.parseInt(ns.getString("concurrency"));
+                    int readConcurrency = Integer.parseInt(ns.getString("read_concurrency"));
+                    long maxInFlightBytes = Long.parseLong(ns.getString("max_in_flight_mb")) * 1024L * 1024L;
                     ExecutorService compactExecutor = Executors.newFixedThreadPool(threadNum);
 
                     String metadataHost = ConfigFactory.Instance().getProperty("metadata.server.host");
@@ -559,7 +581,9 @@ public class Main
                                         .setFilePath(filePath)
                                         .setBlockSize(blockSize)
                                         .setReplication(replication)
-                                        .setBlockPadding(false);
+                                        .setBlockPadding(false)
+                                        .setReadConcurrency(readConcurrency)
+                                        .setMaxInFlightBytes(maxInFlightBytes);
 
                         long threadStart = System.currentTimeMillis();
                         compactExecutor.execute(() -> {
@@ -568,8 +592,15 @@ public class Main
                             {
                                 // build() spends some time to read file footers and should be called inside sub-thread.
                                 PixelsCompactor pixelsCompactor = compactorBuilder.build();
-                                pixelsCompactor.compact();
-                                pixelsCompactor.close();
+                                try
+                                {
+                                    pixelsCompactor.compact();
+                                }
+                                finally
+                                {
+                                    // the compacted file is deleted by close() if compact() has failed.
+                                    pixelsCompactor.close();
+                                }
                             } catch (IOException e)
                             {
                                 e.printStackTrace();
@@ -585,7 +616,8 @@ public class Main
 
                     long endTime = System.currentTimeMillis();
                     System.out.println("Pixels files in '" + layout.getOrderPath() + "' are compacted into '" +
-                            layout.getCompactPath() + "' by " + threadNum + " threads in " +
+                            layout.getCompactPath() + "' by " + threadNum + " threads (" +
+                            readConcurrency + " prefetch threads each) in " +
                             (endTime - startTime) / 1000 + "s.");
                 }
                 catch (MetadataException | IOException | InterruptedException e)
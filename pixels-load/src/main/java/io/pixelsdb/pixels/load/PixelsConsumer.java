@@ -49,6 +49,7 @@ public class PixelsConsumer extends Consumer
     private BlockingQueue<String> queue;
     private Properties prop;
     private Config config;
+    private RowClusterer clusterer = null;
 
     public Properties getProp()
     {
@@ -87,7 +88,6 @@ public class PixelsConsumer extends Consumer
             // System.out.println(schemaStr);
             // System.out.println(loadingDataPath);
             VectorizedRowBatch rowBatch = schema.createRowBatch();
-            ColumnVector[] columnVectors = rowBatch.cols;
 
             BufferedReader reader;
             String line;
@@ -99,6 +99,15 @@ public class PixelsConsumer extends Consumer
 
             Storage targetStorage = StorageFactory.Instance().getStorage(targetDirPath);
 
+            // the rows of each file are reordered by the cluster keys before they are written, if any.
+            int[] clusterKeyIds = config.getClusterKeyIds();
+            if (clusterKeyIds != null)
+            {
+                long clusterMemorySize = Long.parseLong(prop.getProperty("cluster.memory.size")) * 1024L * 1024L;
+                clusterer = new RowClusterer(schema, clusterKeyIds, orderMapping, config.getClusterMode(),
+                        clusterMemorySize, prop.getProperty("cluster.spill.dir"));
+            }
+
             while (isRunning)
             {
                 String originalFilePath = queue.poll(2, TimeUnit.SECONDS);
@@ -139,26 +148,25 @@ public class PixelsConsumer extends Consumer
                         line = StringUtil.replaceAll(line, "False", "0");
                         line = StringUtil.replaceAll(line, "true", "1");
                         line = StringUtil.replaceAll(line, "True", "1");
-                        int rowId = rowBatch.size++;
                         rowCounter++;
                         if (regex.equals("\\s"))
                         {
                             regex = " ";
                         }
                         String[] colsInLine = line.split(regex);
-                        for (int i = 0; i < columnVectors.length; i++)
+                        if (clusterer != null)
                         {
-                            int valueIdx = orderMapping[i];
-                            if (colsInLine[valueIdx].isEmpty() ||
-                                    colsInLine[valueIdx].equalsIgnoreCase("\\N"))
-                            {
-                                columnVectors[i].isNull[rowId] = true;
-                                columnVectors[i].noNulls = false;
-                            } else
+                            clusterer.add(colsInLine);
+                            if (rowCounter >= maxRowNum)
                             {
-                                columnVectors[i].add(colsInLine[valueIdx]);
+                                writeClusteredRows(pixelsWriter, rowBatch, orderMapping);
+                                pixelsWriter.close();
+                                rowCounter = 0;
+                                initPixelsFile = true;
                             }
+                            continue;
                         }
+                        addRow(rowBatch, colsInLine, orderMapping);
 
                         if (rowBatch.size >= rowBatch.getMaxSize())
                         {
@@ -185,6 +193,10 @@ public class PixelsConsumer extends Consumer
             if (rowCounter > 0)
             {
                 // left last file to write
+                if (clusterer != null)
+                {
+                    writeClusteredRows(pixelsWriter, rowBatch, orderMapping);
+                }
                 if (rowBatch.size != 0)
                 {
                     pixelsWriter.addRowBatch(rowBatch);
@@ -204,8 +216,59 @@ public class PixelsConsumer extends Consumer
             e.printStackTrace();
         } finally
         {
+            if (clusterer != null)
+            {
+                try
+                {
+                    clusterer.close();
+                } catch (IOException e)
+                {
+                    e.printStackTrace();
+                }
+            }
             System.out.println(currentThread().getName() + ":" + count);
             System.out.println("Exit PixelsConsumer, " + currentThread().getName() + ", time: " + DateUtil.formatTime(new Date()));
         }
     }
+
+    /**
+     * Write the rows of the current file buffered in the clusterer in the clustered order.
+     */
+    private void writeClusteredRows(PixelsWriter pixelsWriter, VectorizedRowBatch rowBatch, int[] orderMapping)
+            throws IOException
+    {
+        clusterer.drain(row ->
+        {
+            addRow(rowBatch, row, orderMapping);
+            if (rowBatch.size >= rowBatch.getMaxSize())
+            {
+                pixelsWriter.addRowBatch(rowBatch);
+                rowBatch.reset();
+            }
+        });
+        if (rowBatch.size != 0)
+        {
+            pixelsWriter.addRowBatch(rowBatch);
+            rowBatch.reset();
+        }
+    }
+
+    private static void addRow(VectorizedRowBatch rowBatch, String[] colsInLine, int[] orderMapping)
+    {
+        ColumnVector[] columnVectors = rowBatch.cols;
+        int rowId = rowBatch.size++;
+        for (int i = 0; i < columnVectors.length; i++)
+        {
+            int valueIdx = orderMapping[i];
+            if (colsInLine[valueIdx].isEmpty() ||
+                    colsInLine[valueIdx].equalsIgnoreCase("\\N"))
+            {
+                columnVectors[i].isNull[rowId] = true;
+                columnVectors[i].noNulls = false;
+            } else
+            {
+                columnVectors[i].add(colsInLine[valueIdx]);
+            }
+        }
+    }
 }
@@ -0,0 +1,548 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.load;
+
+import io.pixelsdb.pixels.core.TypeDescription;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The clustering stage of the loader, which reorders the rows of an output file by the cluster keys
+ * before they are written, so that the min/max statistics of the row groups and pixels on the key
+ * columns are narrow and the range queries on the keys skip most of the row groups and pixels.
+ * <p>
+ * The rows are ordered either lexicographically by the keys (SORT), or by the z-value that interleaves the
+ * bits of the keys (ZORDER), which clusters on each of the keys instead of only the first one. For z-order,
+ * each key is normalized into its range, which is taken from the first run of the file.
+ * </p>
+ * <p>
+ * The rows are buffered in memory up to the memory size. If the rows exceed the memory, the buffered rows
+ * are sorted and spilled as a run into a temporary file in the spill directory, and the runs are merged
+ * when the rows are drained. Thus the memory of the clustering is bounded regardless of the file size.
+ * </p>
+ */
+public class RowClusterer implements Closeable
+{
+    public static final int MAX_KEY_NUM = 3;
+
+    public enum Mode
+    {
+        SORT, ZORDER;
+
+        public static Mode from(String value)
+        {
+            return valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    public interface RowConsumer
+    {
+        void accept(String[] row) throws IOException;
+    }
+
+    private static class Row
+    {
+        private final String[] fields;
+        /**
+         * The unsigned values of the keys for z-order, null for sort.
+         */
+        private final long[] dims;
+        private byte[] key;
+
+        private Row(String[] fields, long[] dims, byte[] key)
+        {
+            this.fields = fields;
+            this.dims = dims;
+            this.key = key;
+        }
+    }
+
+    private static final Comparator<byte[]> KEY_COMPARATOR = (a, b) ->
+    {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++)
+        {
+            int c = (a[i] & 0xff) - (b[i] & 0xff);
+            if (c != 0)
+            {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    };
+
+    /**
+     * The estimated memory overhead in bytes of a buffered row and of each of its fields.
+     */
+    private static final int ROW_OVERHEAD = 64;
+    private static final int FIELD_OVERHEAD = 48;
+
+    private final TypeDescription.Category[] keyCategories;
+    /**
+     * The index of each key in the fields of a row.
+     */
+    private final int[] keyFieldIds;
+    private final Mode mode;
+    private final long memorySize;
+    private final Path spillDir;
+
+    private final List<Row> rows = new ArrayList<>();
+    private long memoryUsage = 0;
+    private final List<Path> runs = new ArrayList<>();
+    /**
+     * The minimum and the range of the unsigned values of each key for z-order, decided on the first run.
+     */
+    private long[] dimMins = null;
+    private int[] dimShifts = null;
+
+    /**
+     * @param schema the schema of the file
+     * @param keyColumnIds the index of each key column in the schema, 1 to 3 keys
+     * @param orderMapping the index of each column of the schema in the fields of a row
+     * @param mode the clustering mode
+     * @param memorySize the maximum bytes of the rows buffered in memory
+     * @param spillDir the local directory of the spilled runs
+     */
+    public RowClusterer(TypeDescription schema, int[] keyColumnIds, int[] orderMapping,
+                        Mode mode, long memorySize, String spillDir)
+    {
+        requireNonNull(schema, "schema is null");
+        requireNonNull(keyColumnIds, "keyColumnIds is null");
+        checkArgument(keyColumnIds.length > 0 && keyColumnIds.length <= MAX_KEY_NUM,
+                "the number of cluster keys must be between 1 and " + MAX_KEY_NUM);
+        checkArgument(memorySize > 0, "memorySize must be positive");
+        this.keyCategories = new TypeDescription.Category[keyColumnIds.length];
+        this.keyFieldIds = new int[keyColumnIds.length];
+        for (int i = 0; i < keyColumnIds.length; i++)
+        {
+            this.keyCategories[i] = schema.getChildren().get(keyColumnIds[i]).getCategory();
+            this.keyFieldIds[i] = orderMapping[keyColumnIds[i]];
+        }
+        this.mode = requireNonNull(mode, "mode is null");
+        this.memorySize = memorySize;
+        this.spillDir = Paths.get(requireNonNull(spillDir, "spillDir is null"));
+    }
+
+    /**
+     * Add a row, the sorted run is spilled if the buffered rows exceed the memory.
+     * @param fields the fields of the row, in the order of the source file
+     */
+    public void add(String[] fields) throws IOException
+    {
+        Row row;
+        if (mode == Mode.SORT)
+        {
+            row = new Row(fields, null, sortKey(fields));
+        }
+        else
+        {
+            long[] dims = new long[keyFieldIds.length];
+            for (int i = 0; i < keyFieldIds.length; i++)
+            {
+                dims[i] = unsignedValue(keyCategories[i], fields[keyFieldIds[i]]);
+            }
+            row = new Row(fields, dims, null);
+        }
+        rows.add(row);
+        memoryUsage += ROW_OVERHEAD + (row.key == null ? Long.BYTES * keyFieldIds.length : row.key.length);
+        for (String field : fields)
+        {
+            memoryUsage += FIELD_OVERHEAD + 2L * field.length();
+        }
+        if (memoryUsage >= memorySize)
+        {
+            spill();
+        }
+    }
+
+    /**
+     * @return true if there is no row to drain
+     */
+    public boolean isEmpty()
+    {
+        return rows.isEmpty() && runs.isEmpty();
+    }
+
+    /**
+     * Drain the added rows in the clustered order, and reset this clusterer for the next file.
+     * @param consumer the consumer of the rows
+     */
+    public void drain(RowConsumer consumer) throws IOException
+    {
+        try
+        {
+            sortRun();
+            if (runs.isEmpty())
+            {
+                for (Row row : rows)
+                {
+                    consumer.accept(row.fields);
+                }
+                return;
+            }
+            merge(consumer);
+        }
+        finally
+        {
+            reset();
+        }
+    }
+
+    /**
+     * Merge the spilled runs and the rows in memory.
+     */
+    private void merge(RowConsumer consumer) throws IOException
+    {
+        List<DataInputStream> inputs = new ArrayList<>(runs.size());
+        try
+        {
+            // each entry is the current row of a run, and the index of the run (or -1 for the rows in memory).
+            PriorityQueue<Object[]> heap = new PriorityQueue<>(runs.size() + 1,
+                    (a, b) -> KEY_COMPARATOR.compare(((Row) a[0]).key, ((Row) b[0]).key));
+            for (int i = 0; i < runs.size(); i++)
+            {
+                DataInputStream input = new DataInputStream(new BufferedInputStream(
+                        Files.newInputStream(runs.get(i)), 64 * 1024));
+                inputs.add(input);
+                Row row = readRow(input);
+                if (row != null)
+                {
+                    heap.add(new Object[]{row, i});
+                }
+            }
+            int memoryIndex = 0;
+            if (!rows.isEmpty())
+            {
+                heap.add(new Object[]{rows.get(memoryIndex++), -1});
+            }
+            while (!heap.isEmpty())
+            {
+                Object[] top = heap.poll();
+                consumer.accept(((Row) top[0]).fields);
+                int runId = (int) top[1];
+                Row next;
+                if (runId < 0)
+                {
+                    next = memoryIndex < rows.size() ? rows.get(memoryIndex++) : null;
+                }
+                else
+                {
+                    next = readRow(inputs.get(runId));
+                }
+                if (next != null)
+                {
+                    heap.add(new Object[]{next, runId});
+                }
+            }
+        }
+        finally
+        {
+            for (DataInputStream input : inputs)
+            {
+                input.close();
+            }
+        }
+    }
+
+    private void sortRun()
+    {
+        if (mode == Mode.ZORDER)
+        {
+            if (dimMins == null)
+            {
+                decideDimRanges();
+            }
+            for (Row row : rows)
+            {
+                row.key = zValue(row.dims);
+            }
+        }
+        rows.sort((a, b) -> KEY_COMPARATOR.compare(a.key, b.key));
+    }
+
+    private void spill() throws IOException
+    {
+        sortRun();
+        Files.createDirectories(spillDir);
+        Path run = Files.createTempFile(spillDir, "cluster-run-", ".tmp");
+        runs.add(run);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(run), 64 * 1024)))
+        {
+            for (Row row : rows)
+            {
+                writeRow(output, row);
+            }
+        }
+        rows.clear();
+        memoryUsage = 0;
+    }
+
+    private static void writeRow(DataOutputStream output, Row row) throws IOException
+    {
+        output.writeInt(row.key.length);
+        output.write(row.key);
+        output.writeInt(row.fields.length);
+        for (String field : row.fields)
+        {
+            byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * @return the next row of the run, or null if the run is exhausted
+     */
+    private static Row readRow(DataInputStream input) throws IOException
+    {
+        int keyLength;
+        try
+        {
+            keyLength = input.readInt();
+        }
+        catch (EOFException e)
+        {
+            return null;
+        }
+        byte[] key = new byte[keyLength];
+        input.readFully(key);
+        String[] fields = new String[input.readInt()];
+        for (int i = 0; i < fields.length; i++)
+        {
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            fields[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new Row(fields, null, key);
+    }
+
+    /**
+     * The sort key is the concatenation of the memcmp-comparable encodings of the keys.
+     * A null key is encoded as 0, and a non-null key is prefixed by 1, so that nulls go first.
+     */
+    private byte[] sortKey(String[] fields)
+    {
+        ByteArrayOutputStream key = new ByteArrayOutputStream(keyFieldIds.length * (Long.BYTES + 1));
+        for (int i = 0; i < keyFieldIds.length; i++)
+        {
+            String field = fields[keyFieldIds[i]];
+            if (isNull(field))
+            {
+                key.write(0);
+                continue;
+            }
+            key.write(1);
+            if (isString(keyCategories[i]))
+            {
+                // 0x00 is escaped as 0x00 0xff, and the string is terminated by 0x00 0x00.
+                for (byte b : field.getBytes(StandardCharsets.UTF_8))
+                {
+                    key.write(b);
+                    if (b == 0)
+                    {
+                        key.write(0xff);
+                    }
+                }
+                key.write(0);
+                key.write(0);
+            }
+            else
+            {
+                long value = unsignedValue(keyCategories[i], field);
+                for (int j = Long.BYTES - 1; j >= 0; j--)
+                {
+                    key.write((int) (value >>> (j * Byte.SIZE)));
+                }
+            }
+        }
+        return key.toByteArray();
+    }
+
+    /**
+     * Decide the minimum and the shift of each key, so that (value - min) >>> shift fits in the bits
+     * of the key in the z-value. The values out of the range in the later runs are clamped.
+     */
+    private void decideDimRanges()
+    {
+        int dimNum = keyFieldIds.length;
+        int bitsPerDim = Long.SIZE / dimNum;
+        dimMins = new long[dimNum];
+        dimShifts = new int[dimNum];
+        for (int d = 0; d < dimNum; d++)
+        {
+            long min = -1L, max = 0L;
+            for (Row row : rows)
+            {
+                if (Long.compareUnsigned(row.dims[d], min) < 0)
+                {
+                    min = row.dims[d];
+                }
+                if (Long.compareUnsigned(row.dims[d], max) > 0)
+                {
+                    max = row.dims[d];
+                }
+            }
+            if (rows.isEmpty())
+            {
+                min = 0L;
+            }
+            int rangeBits = Long.SIZE - Long.numberOfLeadingZeros(max - min);
+            dimMins[d] = min;
+            dimShifts[d] = Math.max(0, rangeBits - bitsPerDim);
+        }
+    }
+
+    /**
+     * @return the big-endian bytes of the z-value that interleaves the bits of the normalized keys
+     */
+    private byte[] zValue(long[] dims)
+    {
+        int dimNum = dims.length;
+        int bitsPerDim = Long.SIZE / dimNum;
+        long[] normalized = new long[dimNum];
+        for (int d = 0; d < dimNum; d++)
+        {
+            long value = dims[d];
+            long offset = Long.compareUnsigned(value, dimMins[d]) < 0 ? 0 : value - dimMins[d];
+            long maxNormalized = bitsPerDim == Long.SIZE ? -1L : (1L << bitsPerDim) - 1;
+            normalized[d] = offset >>> dimShifts[d];
+            if (Long.compareUnsigned(normalized[d], maxNormalized) > 0)
+            {
+                normalized[d] = maxNormalized;
+            }
+        }
+        long z = 0;
+        int bit = Long.SIZE - 1;
+        for (int b = bitsPerDim - 1; b >= 0; b--)
+        {
+            for (int d = 0; d < dimNum; d++)
+            {
+                z |= ((normalized[d] >>> b) & 1L) << bit--;
+            }
+        }
+        byte[] key = new byte[Long.BYTES];
+        for (int i = 0; i < Long.BYTES; i++)
+        {
+            key[i] = (byte) (z >>> ((Long.BYTES - 1 - i) * Byte.SIZE));
+        }
+        return key;
+    }
+
+    /**
+     * @return the order-preserving unsigned value of the key, i.e., the unsigned order of the returned
+     * values is the order of the keys; null is 0, and a string is represented by its first 8 bytes
+     */
+    private static long unsignedValue(TypeDescription.Category category, String field)
+    {
+        if (isNull(field))
+        {
+            return 0L;
+        }
+        switch (category)
+        {
+            case BOOLEAN:
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                return Long.parseLong(field.trim()) ^ Long.MIN_VALUE;
+            case FLOAT:
+            case DOUBLE:
+            case DECIMAL:
+            {
+                long bits = Double.doubleToLongBits(Double.parseDouble(field.trim()));
+                return bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+            }
+            case DATE:
+                return Date.valueOf(field.trim()).getTime() ^ Long.MIN_VALUE;
+            case TIME:
+                return Time.valueOf(field.trim()).getTime() ^ Long.MIN_VALUE;
+            case TIMESTAMP:
+                return Timestamp.valueOf(field.trim()).getTime() ^ Long.MIN_VALUE;
+            default:
+            {
+                byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+                long value = 0L;
+                for (int i = 0; i < Long.BYTES; i++)
+                {
+                    value = (value << Byte.SIZE) | (i < bytes.length ? bytes[i] & 0xffL : 0L);
+                }
+                return value;
+            }
+        }
+    }
+
+    private static boolean isString(TypeDescription.Category category)
+    {
+        switch (category)
+        {
+            case STRING:
+            case VARCHAR:
+            case CHAR:
+            case BINARY:
+            case VARBINARY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * The same null representations as the loader.
+     */
+    private static boolean isNull(String field)
+    {
+        return field.isEmpty() || field.equalsIgnoreCase("\\N");
+    }
+
+    private void reset() throws IOException
+    {
+        rows.clear();
+        memoryUsage = 0;
+        dimMins = null;
+        dimShifts = null;
+        for (Path run : runs)
+        {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        reset();
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2022 PixelsDB.
+ *
+ * This file is part of Pixels.
+ *
+ * Pixels is free software: you can redistribute it and/or modify
+ * it under the terms of the Affero GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Pixels is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Affero GNU General Public License for more details.
+ *
+ * You should have received a copy of the Affero GNU General Public
+ * License along with Pixels.  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package io.pixelsdb.pixels.load;
+
+import io.pixelsdb.pixels.core.TypeDescription;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TestRowClusterer
+{
+    private File spillDir;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        spillDir = Files.createTempDirectory("pixels-cluster-spill").toFile();
+    }
+
+    @After
+    public void tearDown()
+    {
+        File[] files = spillDir.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        spillDir.delete();
+    }
+
+    private int numRunFiles()
+    {
+        String[] files = spillDir.list();
+        return files == null ? 0 : files.length;
+    }
+
+    private static List<String[]> drain(RowClusterer clusterer) throws IOException
+    {
+        List<String[]> rows = new ArrayList<>();
+        clusterer.drain(rows::add);
+        return rows;
+    }
+
+    private static boolean isNull(String field)
+    {
+        return field.isEmpty() || field.equalsIgnoreCase("\\N");
+    }
+
+    /**
+     * The expected sort order on the key fields of the given categories: nulls first, numbers by value,
+     * and strings by the unsigned order of their bytes (the same as the order of the ASCII strings).
+     */
+    private static Comparator<String[]> expectedOrder(int[] keyFieldIds, boolean[] isString)
+    {
+        return (a, b) ->
+        {
+            for (int i = 0; i < keyFieldIds.length; ++i)
+            {
+                String x = a[keyFieldIds[i]], y = b[keyFieldIds[i]];
+                int c;
+                if (isNull(x) || isNull(y))
+                {
+                    c = Boolean.compare(!isNull(x), !isNull(y));
+                }
+                else if (isString[i])
+                {
+                    c = x.compareTo(y);
+                }
+                else
+                {
+                    c = Long.compare(Long.parseLong(x.trim()), Long.parseLong(y.trim()));
+                }
+                if (c != 0)
+                {
+                    return c;
+                }
+            }
+            return 0;
+        };
+    }
+
+    private static void assertSameRows(List<String[]> expected, List<String[]> actual)
+    {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String[] row : expected)
+        {
+            counts.merge(String.join("|", row), 1, Integer::sum);
+        }
+        for (String[] row : actual)
+        {
+            counts.merge(String.join("|", row), -1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> count : counts.entrySet())
+        {
+            assertEquals(count.getKey(), 0, (int) count.getValue());
+        }
+    }
+
+    @Test
+    public void testSortOrder() throws IOException
+    {
+        TypeDescription schema = TypeDescription.fromString("struct<a:int,b:string,c:string>");
+        // the fields of a row are in the order of c, a, b.
+        int[] orderMapping = {1, 2, 0};
+        List<String[]> input = Arrays.asList(
+                new String[]{"c0", "5", "b"},
+                new String[]{"c1", "-3", "a\u0000b"},
+                new String[]{"c2", "\\N", "z"},
+                new String[]{"c3", "-3", "a"},
+                new String[]{"c4", "0", ""},
+                new String[]{"c5", "-3", "ab"},
+                new String[]{"c6", "-2147483648", "x"},
+                new String[]{"c7", "-3", "a\u0000"},
+                new String[]{"c8", "", "\u0000"},
+                new String[]{"c9", "2147483647", "\\N"},
+                new String[]{"c10", "-3", "\u0000"},
+                new String[]{"c11", "5", "a"},
+                new String[]{"c12", "0", "\u0000\u0000"});
+        try (RowClusterer clusterer = new RowClusterer(schema, new int[]{0, 1}, orderMapping,
+                RowClusterer.Mode.SORT, 64L * 1024L * 1024L, spillDir.getPath()))
+        {
+            for (String[] row : input)
+            {
+                clusterer.add(row);
+            }
+            assertFalse(clusterer.isEmpty());
+            assertEquals(0, numRunFiles());
+            List<String[]> output = drain(clusterer);
+            assertTrue(clusterer.isEmpty());
+
+            String[] expected = {"c8", "c2", "c6", "c10", "c3", "c7", "c1", "c5", "c4", "c12", "c11", "c0", "c9"};
+            assertEquals(expected.length, output.size());
+            for (int i = 0; i < expected.length; ++i)
+            {
+                assertEquals("row " + i, expected[i], output.get(i)[0]);
+            }
+        }
+    }
+
+    @Test
+    public void testZOrderClamping() throws IOException
+    {
+        TypeDescription schema = TypeDescription.fromString("struct<x:bigint,y:bigint>");
+        long huge = 1L << 40;
+        // the first row is the first run, which decides the ranges of x and y to be [0, 0] with 32 bits each.
+        // the values below the range are clamped to 0, and the values above are clamped to 2^32 - 1.
+        List<String[]> input = Arrays.asList(
+                new String[]{"0", "0"},
+                new String[]{String.valueOf(huge), "0"},
+                new String[]{"1", "1"},
+                new String[]{"3", String.valueOf(huge)},
+                new String[]{"-1000", "1"},
+                new String[]{"1", "0"});
+        try (RowClusterer clusterer = new RowClusterer(schema, new int[]{0, 1}, new int[]{0, 1},
+                RowClusterer.Mode.ZORDER, 1, spillDir.getPath()))
+        {
+            for (String[] row : input)
+            {
+                clusterer.add(row);
+            }
+            // each row exceeds the memory and is spilled as a run.
+            assertEquals(input.size(), numRunFiles());
+            List<String[]> output = drain(clusterer);
+
+            // the z-values are 0, 1 (x = -1000 is clamped to 0), 2, 3, 0x5...5f, and 0xa...a.
+            String[][] expected = {
+                    {"0", "0"},
+                    {"-1000", "1"},
+                    {"1", "0"},
+                    {"1", "1"},
+                    {"3", String.valueOf(huge)},
+                    {String.valueOf(huge), "0"}};
+            assertEquals(expected.length, output.size());
+            for (int i = 0; i < expected.length; ++i)
+            {
+                assertArrayEquals("row " + i, expected[i], output.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testSpillAndMerge() throws IOException
+    {
+        TypeDescription schema = TypeDescription.fromString("struct<k:bigint,s:varchar(16),v:double>");
+        Random random = new Random(20220428L);
+        List<String[]> input = new ArrayList<>();
+        for (int i = 0; i < 5000; ++i)
+        {
+            input.add(new String[]{
+                    random.nextInt(20) == 0 ? "\\N" : String.valueOf(random.nextInt(200) - 100),
+                    random.nextInt(20) == 0 ? "" : "s" + random.nextInt(50),
+                    String.valueOf(random.nextDouble())});
+        }
+        try (RowClusterer clusterer = new RowClusterer(schema, new int[]{0, 1}, new int[]{0, 1, 2},
+                RowClusterer.Mode.SORT, 16 * 1024, spillDir.getPath()))
+        {
+            for (String[] row : input)
+            {
+                clusterer.add(row);
+            }
+            assertTrue(numRunFiles() > 10);
+            List<String[]> output = drain(clusterer);
+            assertEquals(0, numRunFiles());
+            assertTrue(clusterer.isEmpty());
+
+            assertEquals(input.size(), output.size());
+            assertSameRows(input, output);
+            Comparator<String[]> order = expectedOrder(new int[]{0, 1}, new boolean[]{false, true});
+            for (int i = 1; i < output.size(); ++i)
+            {
+                assertTrue("row " + i, order.compare(output.get(i - 1), output.get(i)) <= 0);
+            }
+
+            // the clusterer is reused for the next file.
+            clusterer.add(new String[]{"1", "b", "0.5"});
+            clusterer.add(new String[]{"1", "a", "0.5"});
+            output = drain(clusterer);
+            assertEquals(2, output.size());
+            assertEquals("a", output.get(0)[1]);
+            assertEquals("b", output.get(1)[1]);
+        }
+    }
+
+    @Test
+    public void testRunFilesDeleted() throws IOException
+    {
+        TypeDescription schema = TypeDescription.fromString("struct<k:int>");
+        RowClusterer clusterer = new RowClusterer(schema, new int[]{0}, new int[]{0},
+                RowClusterer.Mode.SORT, 1024, spillDir.getPath());
+        for (int i = 0; i < 1000; ++i)
+        {
+            clusterer.add(new String[]{String.valueOf(1000 - i)});
+        }
+        assertTrue(numRunFiles() > 1);
+        // the run files are deleted even if the consumer fails.
+        try
+        {
+            clusterer.drain(row ->
+            {
+                throw new IOException("consumer failed");
+            });
+            fail("the failure of the consumer should be thrown");
+        }
+        catch (IOException e)
+        {
+            assertEquals("consumer failed", e.getMessage());
+        }
+        assertEquals(0, numRunFiles());
+        assertTrue(clusterer.isEmpty());
+
+        // the run files are deleted if the clusterer is closed without draining.
+        for (int i = 0; i < 1000; ++i)
+        {
+            clusterer.add(new String[]{String.valueOf(i)});
+        }
+        assertTrue(numRunFiles() > 1);
+        clusterer.close();
+        assertEquals(0, numRunFiles());
+        assertTrue(clusterer.isEmpty());
+    }
+}